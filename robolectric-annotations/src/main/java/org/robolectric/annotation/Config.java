@@ -111,6 +111,20 @@ public @interface Config {
    */
   String[] libraries() default {};
 
+  /**
+   * Keep the application set up for the first test in a class for later tests in the class, rather than creating
+   * it again for each test. Between tests, shadow state is reset, schedulers and the package manager are replaced,
+   * and the application and its base context get new shadows, but the application itself isn't recreated, so any
+   * state it holds carries over. The application is set up again if a test's qualifiers, SDK, manifest,
+   * application class or shadows differ from the previous test's.
+   *
+   * Like {@link #sdk()}, this is an array so that it can be left unset and inherited: a test method annotated with
+   * {@code reuseApplication = false} turns off reuse set up by its class.
+   *
+   * @return Whether to reuse the application across the tests in a class: one value, or none if unset.
+   */
+  boolean[] reuseApplication() default {};
+
   class Implementation implements Config {
     private final int[] sdk;
     private final String manifest;
@@ -122,6 +136,7 @@ public @interface Config {
     private final Class<?>[] shadows;
     private final Class<? extends Application> application;
     private final String[] libraries;
+    private final boolean[] reuseApplication;
 
     public static Config fromProperties(Properties properties) {
       if (properties == null || properties.size() == 0) return null;
@@ -135,7 +150,8 @@ public @interface Config {
           parseClasses(properties.getProperty("shadows", "")),
           parseApplication(properties.getProperty("application", "android.app.Application")),
           parseStringArrayProperty(properties.getProperty("libraries", "")),
-          parseClass(properties.getProperty("constants", ""))
+          parseClass(properties.getProperty("constants", "")),
+          parseBooleanArrayProperty(properties.getProperty("reuseApplication", ""))
       );
     }
 
@@ -168,6 +184,16 @@ public @interface Config {
       return property.split("[, ]+");
     }
 
+    private static boolean[] parseBooleanArrayProperty(String property) {
+      String[] parts = parseStringArrayProperty(property);
+      boolean[] result = new boolean[parts.length];
+      for (int i = 0; i < parts.length; i++) {
+        result[i] = Boolean.parseBoolean(parts[i]);
+      }
+
+      return result;
+    }
+
     private static int[] parseIntArrayProperty(String property) {
       String[] parts = parseStringArrayProperty(property);
       int[] result = new int[parts.length];
@@ -179,6 +205,10 @@ public @interface Config {
     }
 
     public Implementation(int[] sdk, String manifest, String qualifiers, String packageName, String resourceDir, String assetDir, Class<?>[] shadows, Class<? extends Application> application, String[] libraries, Class<?> constants) {
+      this(sdk, manifest, qualifiers, packageName, resourceDir, assetDir, shadows, application, libraries, constants, new boolean[0]);
+    }
+
+    public Implementation(int[] sdk, String manifest, String qualifiers, String packageName, String resourceDir, String assetDir, Class<?>[] shadows, Class<? extends Application> application, String[] libraries, Class<?> constants, boolean[] reuseApplication) {
       this.sdk = sdk;
       this.manifest = manifest;
       this.qualifiers = qualifiers;
@@ -189,6 +219,7 @@ public @interface Config {
       this.application = application;
       this.libraries = libraries;
       this.constants = constants;
+      this.reuseApplication = reuseApplication;
     }
 
     public Implementation(Config other) {
@@ -202,6 +233,7 @@ public @interface Config {
       this.shadows = other.shadows();
       this.application = other.application();
       this.libraries = other.libraries();
+      this.reuseApplication = other.reuseApplication();
     }
 
     public Implementation(Config baseConfig, Config overlayConfig) {
@@ -224,6 +256,8 @@ public @interface Config {
       libraries.addAll(Arrays.asList(baseConfig.libraries()));
       libraries.addAll(Arrays.asList(overlayConfig.libraries()));
       this.libraries = libraries.toArray(new String[libraries.size()]);
+
+      this.reuseApplication = pickReuseApplication(baseConfig.reuseApplication(), overlayConfig.reuseApplication());
     }
 
     private <T> T pick(T baseValue, T overlayValue, T nullValue) {
@@ -234,6 +268,10 @@ public @interface Config {
       return Arrays.equals(overlayValue, nullValue) ? baseValue : overlayValue;
     }
 
+    private boolean[] pickReuseApplication(boolean[] baseValue, boolean[] overlayValue) {
+      return overlayValue.length == 0 ? baseValue : overlayValue;
+    }
+
     @Override
     public int[] sdk() {
       return sdk;
@@ -284,6 +322,11 @@ public @interface Config {
       return libraries;
     }
 
+    @Override
+    public boolean[] reuseApplication() {
+      return reuseApplication;
+    }
+
     @NotNull @Override
     public Class<? extends Annotation> annotationType() {
       return Config.class;
@@ -0,0 +1,12 @@
+package org.robolectric.benchmarks;
+
+/**
+ * Lets benchmarks call an instrumented class without reflection. Not acquired by the InstrumentingClassLoader.
+ */
+public interface DispatchTarget {
+  String shadowedMethod(String arg);
+
+  int shadowedPrimitiveMethod(int arg);
+
+  int unshadowedMethod(int arg);
+}
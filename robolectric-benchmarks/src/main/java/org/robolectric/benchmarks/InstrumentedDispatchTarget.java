@@ -0,0 +1,21 @@
+package org.robolectric.benchmarks;
+
+import org.robolectric.annotation.internal.Instrument;
+
+@Instrument
+public class InstrumentedDispatchTarget implements DispatchTarget {
+  @Override
+  public String shadowedMethod(String arg) {
+    return arg;
+  }
+
+  @Override
+  public int shadowedPrimitiveMethod(int arg) {
+    return arg;
+  }
+
+  @Override
+  public int unshadowedMethod(int arg) {
+    return arg + 1;
+  }
+}
@@ -0,0 +1,95 @@
+package org.robolectric.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.internal.bytecode.ShadowConfig;
+import org.robolectric.internal.bytecode.ShadowMap;
+import org.robolectric.internal.bytecode.ShadowWrangler;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of {@link ShadowWrangler#createShadowFor(Object)} with creating the same shadows
+ * reflectively, as it used to. Run with {@code -prof gc} to compare allocation too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ShadowCreationBenchmark {
+  private final ShadowMap shadowMap = new ShadowMap.Builder()
+      .addShadowClass(Created.class, ShadowCreated.class, true, false, false)
+      .build();
+  private final Created instance = new SubclassOfCreated();
+
+  private ShadowWrangler shadowWrangler;
+  private Map<Class<?>, ShadowConfig> shadowConfigs;
+  private List<Field> realObjectFields;
+
+  @Setup
+  public void setUp() throws Exception {
+    shadowWrangler = new ShadowWrangler(shadowMap);
+    // ShadowWrangler cached shadow configs by class, but looked them up for each class in the hierarchy
+    shadowConfigs = new ConcurrentHashMap<>();
+    shadowConfigs.put(Created.class, shadowMap.get(Created.class));
+    realObjectFields = new ArrayList<>();
+    for (Class<?> clazz = ShadowCreated.class; clazz != null; clazz = clazz.getSuperclass()) {
+      for (Field field : clazz.getDeclaredFields()) {
+        if (field.isAnnotationPresent(RealObject.class)) {
+          field.setAccessible(true);
+          realObjectFields.add(field);
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public Object shadowFactory() {
+    return shadowWrangler.createShadowFor(instance);
+  }
+
+  @Benchmark
+  public Object reflection() throws Exception {
+    String shadowClassName = null;
+    for (Class<?> clazz = instance.getClass(); shadowClassName == null && clazz != null; clazz = clazz.getSuperclass()) {
+      ShadowConfig shadowConfig = shadowConfigs.get(clazz);
+      shadowClassName = shadowConfig == null ? null : shadowConfig.shadowClassName;
+    }
+    Class<?> shadowClass = ShadowWrangler.loadClass(shadowClassName, instance.getClass().getClassLoader());
+    Object shadow = shadowClass.newInstance();
+    for (Field realObjectField : realObjectFields) {
+      realObjectField.set(shadow, instance);
+    }
+    return shadow;
+  }
+
+  public static class Created {
+  }
+
+  public static class SubclassOfCreated extends Created {
+  }
+
+  public static class BaseShadowCreated {
+    @RealObject private Object realObject;
+  }
+
+  public static class ShadowCreated extends BaseShadowCreated {
+    @RealObject private Created realCreated;
+  }
+}
@@ -0,0 +1,66 @@
+package org.robolectric.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.InstrumentingClassLoader;
+import org.robolectric.internal.bytecode.ShadowMap;
+import org.robolectric.internal.bytecode.ShadowWrangler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of calling instrumented methods through {@link org.robolectric.internal.bytecode.ClassHandler.Plan}
+ * lookups with calling them through invokedynamic call sites.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ShadowDispatchBenchmark {
+  @Param({"false", "true"})
+  public boolean invokeDynamic;
+
+  private DispatchTarget target;
+  private String stringArg = "arg";
+  private int intArg = 42;
+
+  @Setup
+  public void setUp() throws Exception {
+    InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder()
+        .doNotAquireClass(DispatchTarget.class.getName())
+        .useInvokeDynamic(invokeDynamic)
+        .build();
+    ClassLoader classLoader = new InstrumentingClassLoader(config);
+    ShadowMap shadowMap = new ShadowMap.Builder().addShadowClass(ShadowDispatchTarget.class).build();
+    RobolectricTestRunner.injectClassHandler(classLoader, new ShadowWrangler(shadowMap));
+    target = (DispatchTarget) classLoader.loadClass(InstrumentedDispatchTarget.class.getName()).newInstance();
+  }
+
+  @Benchmark
+  public String shadowedMethod() {
+    return target.shadowedMethod(stringArg);
+  }
+
+  @Benchmark
+  public int shadowedPrimitiveMethod() {
+    return target.shadowedPrimitiveMethod(intArg);
+  }
+
+  @Benchmark
+  public int unshadowedMethod() {
+    return target.unshadowedMethod(intArg);
+  }
+}
@@ -0,0 +1,17 @@
+package org.robolectric.benchmarks;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+@Implements(InstrumentedDispatchTarget.class)
+public class ShadowDispatchTarget {
+  @Implementation
+  public String shadowedMethod(String arg) {
+    return arg;
+  }
+
+  @Implementation
+  public int shadowedPrimitiveMethod(int arg) {
+    return arg + 1;
+  }
+}
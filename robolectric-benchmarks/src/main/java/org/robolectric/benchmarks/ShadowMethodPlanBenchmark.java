@@ -0,0 +1,103 @@
+package org.robolectric.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.internal.bytecode.ShadowWrangler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-call cost of {@link ShadowWrangler.ShadowMethodPlan} with invoking the same shadow methods
+ * reflectively, as plans used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ShadowMethodPlanBenchmark {
+  private final PlanTarget shadow = new PlanTarget();
+  private final Object[] instanceParams = {"arg", 42};
+  private final Object[] staticParams = {"arg"};
+  private final Object[] primitiveParams = {42};
+
+  private Method instanceMethod;
+  private Method staticMethod;
+  private Method primitiveMethod;
+  private ShadowWrangler.ShadowMethodPlan instancePlan;
+  private ShadowWrangler.ShadowMethodPlan staticPlan;
+  private ShadowWrangler.ShadowMethodPlan primitivePlan;
+
+  @Setup
+  public void setUp() throws Exception {
+    instanceMethod = PlanTarget.class.getMethod("instanceMethod", String.class, int.class);
+    staticMethod = PlanTarget.class.getMethod("staticMethod", String.class);
+    primitiveMethod = PlanTarget.class.getMethod("primitiveMethod", int.class);
+    instancePlan = new ShadowWrangler.ShadowMethodPlan(instanceMethod);
+    staticPlan = new ShadowWrangler.ShadowMethodPlan(staticMethod);
+    primitivePlan = new ShadowWrangler.ShadowMethodPlan(primitiveMethod);
+  }
+
+  @Benchmark
+  public Object instanceMethodPlan() throws Throwable {
+    return instancePlan.run(null, shadow, instanceParams);
+  }
+
+  @Benchmark
+  public Object instanceMethodReflection() throws Throwable {
+    return invoke(instanceMethod, shadow, instanceParams);
+  }
+
+  @Benchmark
+  public Object staticMethodPlan() throws Throwable {
+    return staticPlan.run(null, null, staticParams);
+  }
+
+  @Benchmark
+  public Object staticMethodReflection() throws Throwable {
+    return invoke(staticMethod, null, staticParams);
+  }
+
+  @Benchmark
+  public Object primitiveMethodPlan() throws Throwable {
+    return primitivePlan.run(null, shadow, primitiveParams);
+  }
+
+  @Benchmark
+  public Object primitiveMethodReflection() throws Throwable {
+    return invoke(primitiveMethod, shadow, primitiveParams);
+  }
+
+  private static Object invoke(Method method, Object shadow, Object[] params) throws Throwable {
+    try {
+      return method.invoke(shadow, params);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  public static class PlanTarget {
+    public String instanceMethod(String stringArg, int intArg) {
+      return stringArg;
+    }
+
+    public static String staticMethod(String stringArg) {
+      return stringArg;
+    }
+
+    public int primitiveMethod(int intArg) {
+      return intArg + 1;
+    }
+  }
+}
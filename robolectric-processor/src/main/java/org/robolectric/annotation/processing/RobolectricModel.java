@@ -277,6 +277,7 @@ public class RobolectricModel {
     imports.add("java.util.Map");
     imports.add("java.util.HashMap");
     imports.add("javax.annotation.Generated");
+    imports.add("org.robolectric.internal.ResetterTracker");
     imports.add("org.robolectric.internal.ShadowExtractor");
     imports.add("org.robolectric.internal.ShadowProvider");
   }
@@ -3,6 +3,7 @@ package org.robolectric.annotation.processing;
 import org.robolectric.annotation.processing.generator.Generator;
 import org.robolectric.annotation.processing.generator.ServiceLoaderGenerator;
 import org.robolectric.annotation.processing.generator.ShadowProviderGenerator;
+import org.robolectric.annotation.processing.generator.ShadowedMethodIndexGenerator;
 import org.robolectric.annotation.processing.validator.ImplementationValidator;
 import org.robolectric.annotation.processing.validator.ImplementsValidator;
 import org.robolectric.annotation.processing.validator.RealObjectValidator;
@@ -76,6 +77,7 @@ public class RobolectricProcessor extends AbstractProcessor {
 
     generators.add(new ShadowProviderGenerator(model, environment));
     generators.add(new ServiceLoaderGenerator(model, environment));
+    generators.add(new ShadowedMethodIndexGenerator(model, environment));
   }
 
   @Override
@@ -117,7 +117,11 @@ public class ShadowProviderGenerator extends Generator {
 
       writer.println("  public void reset() {");
       for (Map.Entry<TypeElement, ExecutableElement> entry : model.getResetters()) {
-        writer.println("    " + model.getReferentFor(entry.getKey()) + "." + entry.getValue().getSimpleName() + "();");
+        final String shadow = model.getReferentFor(entry.getKey());
+        writer.println("    if (ResetterTracker.isTouched(" + shadow + ".class)) {");
+        writer.println("      " + shadow + "." + entry.getValue().getSimpleName() + "();");
+        writer.println("      ResetterTracker.resetterInvoked(" + shadow + ".class);");
+        writer.println("    }");
       }
       writer.println("  }");
       writer.println();
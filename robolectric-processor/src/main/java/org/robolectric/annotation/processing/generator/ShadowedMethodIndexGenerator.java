@@ -0,0 +1,85 @@
+package org.robolectric.annotation.processing.generator;
+
+import com.google.common.base.Joiner;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.processing.RobolectricModel;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Generator that creates an index of the methods a shadow package could shadow, so the instrumenting class loader
+ * can skip interception of all other methods.
+ *
+ * Each line names a shadowed class and either {@code *}, if its shadow doesn't call through by default, or the
+ * names of the public methods of its shadow and the shadow's superclasses.
+ */
+public class ShadowedMethodIndexGenerator extends Generator {
+  public static final String INDEX_PATH = "META-INF/robolectric/shadowed-methods/";
+
+  private final Filer filer;
+  private final Messager messager;
+  private final Elements elements;
+  private final RobolectricModel model;
+
+  public ShadowedMethodIndexGenerator(RobolectricModel model, ProcessingEnvironment environment) {
+    this.filer = environment.getFiler();
+    this.messager = environment.getMessager();
+    this.elements = environment.getElementUtils();
+    this.model = model;
+  }
+
+  @Override
+  public void generate(String shadowPackage) {
+    final String fileName = INDEX_PATH + shadowPackage + '.' + GEN_CLASS;
+    messager.printMessage(Diagnostic.Kind.NOTE, "Writing " + fileName);
+
+    Map<String, String> index = new TreeMap<>();
+    for (Map.Entry<TypeElement, TypeElement> entry : model.getAllShadowTypes().entrySet()) {
+      index.put(elements.getBinaryName(entry.getValue()).toString(), shadowedMethodsOf(entry.getKey()));
+    }
+
+    try {
+      FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", fileName);
+      PrintWriter pw = new PrintWriter(new OutputStreamWriter(file.openOutputStream(), "UTF-8"));
+      for (Map.Entry<String, String> entry : index.entrySet()) {
+        pw.println(entry.getKey() + ':' + entry.getValue());
+      }
+      pw.close();
+    } catch (IOException e) {
+      messager.printMessage(Diagnostic.Kind.ERROR, "Failed to write shadowed method index: " + e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  private String shadowedMethodsOf(TypeElement shadowType) {
+    if (!shadowType.getAnnotation(Implements.class).callThroughByDefault()) {
+      return "*";
+    }
+
+    // ShadowWrangler looks shadow methods up with Class.getMethod(), so any public method can match
+    TypeElement object = elements.getTypeElement(Object.class.getName());
+    TreeSet<String> methodNames = new TreeSet<>();
+    for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(shadowType))) {
+      if (method.getModifiers().contains(Modifier.PUBLIC) && !method.getEnclosingElement().equals(object)) {
+        methodNames.add(method.getSimpleName().toString());
+      }
+    }
+    return Joiner.on(',').join(methodNames);
+  }
+}
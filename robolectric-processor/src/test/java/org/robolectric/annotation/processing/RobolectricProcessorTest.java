@@ -8,6 +8,7 @@ import static org.robolectric.annotation.processing.RobolectricProcessor.PACKAGE
 import static org.robolectric.annotation.processing.validator.Utils.ROBO_SOURCE;
 import static org.robolectric.annotation.processing.validator.Utils.SHADOW_PROVIDER_SOURCE;
 import static org.robolectric.annotation.processing.validator.Utils.SHADOW_EXTRACTOR_SOURCE;
+import static org.robolectric.annotation.processing.validator.Utils.RESETTER_TRACKER_SOURCE;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -38,6 +39,7 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forSourceString("HelloWorld", "final class HelloWorld {}")))
       .processedWith(new RobolectricProcessor())
       .compilesWithoutError();
@@ -54,6 +56,7 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowOuterDummy.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowUniqueDummy.java")))
@@ -70,6 +73,7 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowPrivate.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowOuterDummy2.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
@@ -86,6 +90,7 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowAnything.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
       .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
@@ -100,6 +105,7 @@ public class RobolectricProcessorTest {
       .that(ImmutableList.of(
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowClassNameOnly.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
       .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
@@ -114,6 +120,7 @@ public class RobolectricProcessorTest {
         .that(ImmutableList.of(
             SHADOW_PROVIDER_SOURCE,
             SHADOW_EXTRACTOR_SOURCE,
+            RESETTER_TRACKER_SOURCE,
             forResource("org/robolectric/annotation/processing/shadows/ShadowExcludedFromAndroidSdk.java")))
         .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
         .compilesWithoutError()
@@ -140,6 +147,7 @@ public class RobolectricProcessorTest {
       .that(ImmutableList.of(
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowClassNameOnly.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
       .processedWith(new RobolectricProcessor(opts))
@@ -154,6 +162,7 @@ public class RobolectricProcessorTest {
         .that(ImmutableList.of(
             SHADOW_PROVIDER_SOURCE,
             SHADOW_EXTRACTOR_SOURCE,
+            RESETTER_TRACKER_SOURCE,
             forResource("org/robolectric/annotation/processing/shadows/ShadowClassNameOnly.java"),
             forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
         .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
@@ -162,6 +171,22 @@ public class RobolectricProcessorTest {
         .generatesFiles(forResource("META-INF/services/org.robolectric.internal.ShadowProvider"));
   }
   
+  @Test
+  public void shouldGenerateShadowedMethodIndex() {
+    ASSERT.about(javaSources())
+        .that(ImmutableList.of(
+            SHADOW_PROVIDER_SOURCE,
+            SHADOW_EXTRACTOR_SOURCE,
+            RESETTER_TRACKER_SOURCE,
+            forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java"),
+            forResource("org/robolectric/annotation/processing/shadows/ShadowOuterDummy.java"),
+            forResource("org/robolectric/annotation/processing/shadows/ShadowUniqueDummyWithoutCallThrough.java")))
+        .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
+        .compilesWithoutError()
+        .and()
+        .generatesFiles(forResource("META-INF/robolectric/shadowed-methods/org.robolectric.Shadows"));
+  }
+
   @Test
   public void shouldGracefullyHandleUnrecognisedAnnotation() {
     ASSERT.about(javaSources())
@@ -169,6 +194,7 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forResource("org/robolectric/annotation/TestWithUnrecognizedAnnotation.java")))
       .processedWith(new RobolectricProcessor())
       .compilesWithoutError();
@@ -188,6 +214,7 @@ public class RobolectricProcessorTest {
       .that(ImmutableList.of(
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowRealObjectWithCorrectAnything.java")))
       .processedWith(new RobolectricProcessor())
       .failsToCompile();
@@ -200,6 +227,7 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowParameterizedDummy.java")))
       .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
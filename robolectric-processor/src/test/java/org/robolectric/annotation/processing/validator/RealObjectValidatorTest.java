@@ -4,6 +4,7 @@ import static com.google.testing.compile.JavaFileObjects.forResource;
 import static com.google.testing.compile.JavaSourcesSubjectFactory.javaSources;
 import static org.truth0.Truth.ASSERT;
 import static org.robolectric.annotation.processing.validator.Utils.SHADOW_EXTRACTOR_SOURCE;
+import static org.robolectric.annotation.processing.validator.Utils.RESETTER_TRACKER_SOURCE;
 import static org.robolectric.annotation.processing.validator.SingleClassSubject.singleClass;
 
 import org.junit.Test;
@@ -102,6 +103,7 @@ public class RealObjectValidatorTest {
     ASSERT.about(javaSources())
     .that(ImmutableList.of(
         SHADOW_EXTRACTOR_SOURCE,
+        RESETTER_TRACKER_SOURCE,
         forResource("org/robolectric/annotation/processing/shadows/ShadowRealObjectWithCorrectType.java")))
     .processedWith(new RobolectricProcessor())
       .compilesWithoutError();
@@ -120,6 +122,7 @@ public class RealObjectValidatorTest {
     ASSERT.about(javaSources())
       .that(ImmutableList.of(
           SHADOW_EXTRACTOR_SOURCE,
+          RESETTER_TRACKER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowRealObjectWithCorrectClassName.java")))
       .processedWith(new RobolectricProcessor())
       .compilesWithoutError();
@@ -37,7 +37,7 @@ public final class SingleClassSubject extends Subject<SingleClassSubject, String
     super(failureStrategy, subject);
     source = JavaFileObjects.forResource(Utils.toResourcePath(subject));
     tester = ASSERT.about(javaSources())
-      .that(ImmutableList.of(source, Utils.ROBO_SOURCE, Utils.SHADOW_EXTRACTOR_SOURCE))
+      .that(ImmutableList.of(source, Utils.ROBO_SOURCE, Utils.SHADOW_EXTRACTOR_SOURCE, Utils.RESETTER_TRACKER_SOURCE))
       .processedWith(new RobolectricProcessor());
   }
 
@@ -14,6 +14,7 @@ public class Utils {
   public static final JavaFileObject ROBO_SOURCE = forResource("mock-source/Robolectric.java");
   public static final JavaFileObject SHADOW_PROVIDER_SOURCE = forResource("mock-source/org/robolectric/internal/ShadowProvider.java");
   public static final JavaFileObject SHADOW_EXTRACTOR_SOURCE = forResource("mock-source/org/robolectric/internal/ShadowExtractor.java");
+  public static final JavaFileObject RESETTER_TRACKER_SOURCE = forResource("mock-source/org/robolectric/internal/ResetterTracker.java");
 
   public static String toResourcePath(String clazzName) {
     return clazzName.replace('.', '/') + ".java";
@@ -0,0 +1,11 @@
+package org.robolectric.internal;
+
+public class ResetterTracker {
+
+  public static boolean isTouched(Class<?> shadowClass) {
+    return true;
+  }
+
+  public static void resetterInvoked(Class<?> shadowClass) {
+  }
+}
@@ -8,6 +8,7 @@ import org.robolectric.annotation.processing.objects.AnyObject;
 import org.robolectric.annotation.processing.objects.Dummy;
 import org.robolectric.annotation.processing.shadows.ShadowClassNameOnly;
 import org.robolectric.annotation.processing.shadows.ShadowDummy;
+import org.robolectric.internal.ResetterTracker;
 import org.robolectric.internal.ShadowExtractor;
 import org.robolectric.internal.ShadowProvider;
 
@@ -30,8 +31,14 @@ public class Shadows implements ShadowProvider {
   }
   
   public void reset() {
-    ShadowClassNameOnly.anotherResetter();
-    ShadowDummy.resetter_method();
+    if (ResetterTracker.isTouched(ShadowClassNameOnly.class)) {
+      ShadowClassNameOnly.anotherResetter();
+      ResetterTracker.resetterInvoked(ShadowClassNameOnly.class);
+    }
+    if (ResetterTracker.isTouched(ShadowDummy.class)) {
+      ShadowDummy.resetter_method();
+      ResetterTracker.resetterInvoked(ShadowDummy.class);
+    }
   }
 
   @Override
@@ -12,6 +12,7 @@ import org.robolectric.annotation.processing.shadows.ShadowOuterDummy2.ShadowInn
 import org.robolectric.annotation.processing.shadows.ShadowOuterDummy2.ShadowInnerPrivate;
 import org.robolectric.annotation.processing.shadows.ShadowOuterDummy2.ShadowInnerProtected;
 import org.robolectric.annotation.processing.shadows.ShadowPrivate;
+import org.robolectric.internal.ResetterTracker;
 import org.robolectric.internal.ShadowExtractor;
 import org.robolectric.internal.ShadowProvider;
 
@@ -38,8 +39,14 @@ public class Shadows implements ShadowProvider {
   }
   
   public void reset() {
-    ShadowDummy.resetter_method();
-    ShadowPrivate.resetMethod();
+    if (ResetterTracker.isTouched(ShadowDummy.class)) {
+      ShadowDummy.resetter_method();
+      ResetterTracker.resetterInvoked(ShadowDummy.class);
+    }
+    if (ResetterTracker.isTouched(ShadowPrivate.class)) {
+      ShadowPrivate.resetMethod();
+      ResetterTracker.resetterInvoked(ShadowPrivate.class);
+    }
   }
 
   @Override
@@ -12,6 +12,7 @@ import org.robolectric.annotation.processing.shadows.ShadowDummy;
 import org.robolectric.annotation.processing.shadows.ShadowOuterDummy;
 import org.robolectric.annotation.processing.shadows.ShadowUniqueDummy;
 import org.robolectric.annotation.processing.shadows.ShadowUniqueDummy.ShadowUniqueInnerDummy;
+import org.robolectric.internal.ResetterTracker;
 import org.robolectric.internal.ShadowExtractor;
 import org.robolectric.internal.ShadowProvider;
 
@@ -54,7 +55,10 @@ public class Shadows implements ShadowProvider {
   }
   
   public void reset() {
-    ShadowDummy.resetter_method();
+    if (ResetterTracker.isTouched(ShadowDummy.class)) {
+      ShadowDummy.resetter_method();
+      ResetterTracker.resetterInvoked(ShadowDummy.class);
+    }
   }
 
   @Override
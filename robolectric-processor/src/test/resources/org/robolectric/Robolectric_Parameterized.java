@@ -8,6 +8,7 @@ import org.robolectric.annotation.processing.objects.Dummy;
 import org.robolectric.annotation.processing.objects.ParameterizedDummy;
 import org.robolectric.annotation.processing.shadows.ShadowDummy;
 import org.robolectric.annotation.processing.shadows.ShadowParameterizedDummy;
+import org.robolectric.internal.ResetterTracker;
 import org.robolectric.internal.ShadowExtractor;
 import org.robolectric.internal.ShadowProvider;
 
@@ -30,7 +31,10 @@ public class Shadows implements ShadowProvider {
   }
 
   public void reset() {
-    ShadowDummy.resetter_method();
+    if (ResetterTracker.isTouched(ShadowDummy.class)) {
+      ShadowDummy.resetter_method();
+      ResetterTracker.resetterInvoked(ShadowDummy.class);
+    }
   }
 
   @Override
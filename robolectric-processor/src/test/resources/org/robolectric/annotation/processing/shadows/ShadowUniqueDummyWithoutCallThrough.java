@@ -0,0 +1,8 @@
+package org.robolectric.annotation.processing.shadows;
+
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.processing.objects.UniqueDummy;
+
+@Implements(value = UniqueDummy.class, callThroughByDefault = false)
+public class ShadowUniqueDummyWithoutCallThrough {
+}
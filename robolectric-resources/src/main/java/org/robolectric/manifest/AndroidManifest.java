@@ -123,7 +123,7 @@ public class AndroidManifest {
     }
   }
 
-  void parseAndroidManifest() {
+  synchronized void parseAndroidManifest() {
     if (manifestIsParsed) {
       return;
     }
@@ -31,6 +31,10 @@ public class AttrData {
     return null;
   }
 
+  List<Pair> getPairs() {
+    return pairs;
+  }
+
   public boolean isValue(String value) {
     if (pairs == null) {
       return false;
@@ -72,5 +76,13 @@ public class AttrData {
       this.name = name;
       this.value = value;
     }
+
+    String getName() {
+      return name;
+    }
+
+    String getValue() {
+      return value;
+    }
   }
 }
@@ -12,6 +12,11 @@ public class AttrResourceLoader extends XpathResourceXmlLoader {
     this.resBunch = resBunch;
   }
 
+  @Override
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return new AttrResourceLoader(targets.get(resBunch));
+  }
+
   @Override
   protected void processNode(String name, XmlNode xmlNode, XmlContext xmlContext)
       throws XPathExpressionException {
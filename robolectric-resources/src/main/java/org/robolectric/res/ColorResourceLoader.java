@@ -10,6 +10,11 @@ public class ColorResourceLoader extends XpathResourceXmlLoader {
     this.data = data;
   }
 
+  @Override
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return new ColorResourceLoader(targets.get(data));
+  }
+
   @Override
   protected void processNode(String name, XmlNode xmlNode, XmlContext xmlContext) throws XPathExpressionException {
     TypedResource value = new FileTypedResource(xmlContext.getXmlFile().getPath(), ResType.COLOR_STATE_LIST);
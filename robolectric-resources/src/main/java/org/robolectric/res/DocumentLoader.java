@@ -3,21 +3,58 @@ package org.robolectric.res;
 import com.ximpleware.VTDGen;
 import com.ximpleware.VTDNav;
 import org.jetbrains.annotations.NotNull;
+import org.robolectric.util.Trace;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Loads resource xml files and passes them to {@link XmlLoader}s.
+ *
+ * Files are parsed on a fork-join pool of {@link #THREADS_PROPERTY} threads, by default one per processor. Each
+ * file's resources are put into bundles of its own, which are added to the loaders' bundles in file order once every
+ * file is done, so resources end up in the same order, and override each other in the same way, as when files are
+ * loaded one at a time. Loaders which can't do that (see {@link XmlLoader#forFile(FileTargets)}) load files one at a
+ * time on the calling thread.
+ */
 public class DocumentLoader {
+
+  /**
+   * The number of threads to parse resource files on. Set to 1 to parse them one at a time on the calling thread.
+   */
+  public static final String THREADS_PROPERTY = "robolectric.resources.threads";
+
   private static final FsFile.Filter ENDS_WITH_XML = new FsFile.Filter() {
     @Override public boolean accept(@NotNull FsFile fsFile) {
       return fsFile.getName().endsWith(".xml");
     }
   };
 
+  // small enough to spread a values directory across threads, big enough that tasks aren't mostly overhead
+  private static final int FILES_PER_TASK = 4;
+
+  private static final Map<Integer, ForkJoinPool> poolsBySize = new HashMap<>();
+
   private final FsFile resourceBase;
   private final String packageName;
+  private final int threads;
   private final VTDGen vtdGen;
 
   public DocumentLoader(ResourcePath resourcePath) {
+    this(resourcePath, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+  }
+
+  DocumentLoader(ResourcePath resourcePath, int threads) {
     this.resourceBase = resourcePath.resourceBase;
     this.packageName = resourcePath.getPackageName();
+    this.threads = threads;
     vtdGen = new VTDGen();
   }
 
@@ -26,8 +63,17 @@ public class DocumentLoader {
     if (files == null) {
       throw new RuntimeException(resourceBase.join(folderBaseName) + " is not a directory");
     }
-    for (FsFile dir : files) {
-      loadFile(dir, xmlLoaders);
+    Trace.Span span = Trace.begin("DocumentLoader.load", packageName + ":" + folderBaseName);
+    try {
+      if (threads > 1 && canLoadConcurrently(xmlLoaders)) {
+        loadConcurrently(listXmlFiles(files), xmlLoaders);
+      } else {
+        for (FsFile dir : files) {
+          loadFile(dir, xmlLoaders);
+        }
+      }
+    } finally {
+      span.end();
     }
   }
 
@@ -37,18 +83,47 @@ public class DocumentLoader {
     }
 
     for (FsFile file : dir.listFiles(ENDS_WITH_XML)) {
-      loadResourceXmlFile(file, xmlLoaders);
+      loadResourceXmlFile(vtdGen, file, xmlLoaders);
+    }
+  }
+
+  private List<FsFile> listXmlFiles(FsFile[] dirs) {
+    List<FsFile> files = new ArrayList<>();
+    for (FsFile dir : dirs) {
+      if (!dir.exists()) {
+        throw new RuntimeException("no such directory " + dir);
+      }
+      files.addAll(Arrays.asList(dir.listFiles(ENDS_WITH_XML)));
     }
+    return files;
   }
 
-  private void loadResourceXmlFile(FsFile fsFile, XmlLoader... xmlLoaders) throws Exception {
-    VTDNav vtdNav = parse(fsFile);
+  private static boolean canLoadConcurrently(XmlLoader[] xmlLoaders) {
+    for (XmlLoader xmlLoader : xmlLoaders) {
+      if (xmlLoader.forFile(new FileTargets()) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void loadConcurrently(List<FsFile> files, XmlLoader[] xmlLoaders) {
+    List<FileTargets> targetsByFile = new ArrayList<>(Collections.<FileTargets>nCopies(files.size(), null));
+    getPool(threads).invoke(new LoadTask(files, 0, files.size(), xmlLoaders, targetsByFile));
+
+    for (FileTargets targets : targetsByFile) {
+      targets.putAll();
+    }
+  }
+
+  private void loadResourceXmlFile(VTDGen vtdGen, FsFile fsFile, XmlLoader... xmlLoaders) throws Exception {
+    VTDNav vtdNav = parse(vtdGen, fsFile);
     for (XmlLoader xmlLoader : xmlLoaders) {
       xmlLoader.processResourceXml(fsFile, vtdNav, packageName);
     }
   }
 
-  private VTDNav parse(FsFile xmlFile) throws Exception {
+  private static VTDNav parse(VTDGen vtdGen, FsFile xmlFile) throws Exception {
     byte[] bytes = xmlFile.getBytes();
     vtdGen.setDoc(bytes);
     vtdGen.parse(true);
@@ -56,6 +131,100 @@ public class DocumentLoader {
     return vtdGen.getNav();
   }
 
+  private static ForkJoinPool getPool(int threads) {
+    synchronized (poolsBySize) {
+      ForkJoinPool pool = poolsBySize.get(threads);
+      if (pool == null) {
+        pool = new ForkJoinPool(threads);
+        poolsBySize.put(threads, pool);
+      }
+      return pool;
+    }
+  }
+
+  /**
+   * Bundles standing in for loaders' own while a single file, or anything else that should be added all at once, is
+   * loaded. Loaders which share a bundle share its stand-in, so resources go in in the same order as they would have.
+   */
+  public static class FileTargets {
+    private final Map<ResBunch, ResBunch> bunches = new IdentityHashMap<>();
+    private final Map<ResBundle<?>, ResBundle<?>> bundles = new IdentityHashMap<>();
+
+    public ResBunch get(ResBunch target) {
+      ResBunch bunch = bunches.get(target);
+      if (bunch == null) {
+        bunches.put(target, bunch = new ResBunch());
+      }
+      return bunch;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> ResBundle<T> get(ResBundle<T> target) {
+      ResBundle<T> bundle = (ResBundle<T>) bundles.get(target);
+      if (bundle == null) {
+        bundles.put(target, bundle = new ResBundle<>());
+      }
+      return bundle;
+    }
+
+    @SuppressWarnings("unchecked")
+    void putAll() {
+      for (Map.Entry<ResBunch, ResBunch> entry : bunches.entrySet()) {
+        entry.getKey().putAll(entry.getValue());
+      }
+      for (Map.Entry<ResBundle<?>, ResBundle<?>> entry : bundles.entrySet()) {
+        ((ResBundle<Object>) entry.getKey()).putAll((ResBundle<Object>) entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Loads a range of files, splitting it up until it's small enough to do on one thread.
+   */
+  private class LoadTask extends RecursiveAction {
+    private final List<FsFile> files;
+    private final int start;
+    private final int end;
+    private final XmlLoader[] xmlLoaders;
+    private final List<FileTargets> targetsByFile;
+
+    LoadTask(List<FsFile> files, int start, int end, XmlLoader[] xmlLoaders, List<FileTargets> targetsByFile) {
+      this.files = files;
+      this.start = start;
+      this.end = end;
+      this.xmlLoaders = xmlLoaders;
+      this.targetsByFile = targetsByFile;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > FILES_PER_TASK) {
+        int middle = (start + end) >>> 1;
+        invokeAll(new LoadTask(files, start, middle, xmlLoaders, targetsByFile),
+            new LoadTask(files, middle, end, xmlLoaders, targetsByFile));
+        return;
+      }
+
+      VTDGen vtdGen = new VTDGen();
+      for (int i = start; i < end; i++) {
+        FsFile file = files.get(i);
+        FileTargets targets = new FileTargets();
+        XmlLoader[] fileLoaders = new XmlLoader[xmlLoaders.length];
+        for (int j = 0; j < xmlLoaders.length; j++) {
+          fileLoaders[j] = xmlLoaders[j].forFile(targets);
+        }
+        try {
+          loadResourceXmlFile(vtdGen, file, fileLoaders);
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new RuntimeException("couldn't load " + file, e);
+        }
+        targetsByFile.set(i, targets);
+      }
+    }
+  }
+
   private static class DirectoryMatchingFilter implements FsFile.Filter {
     private final String folderBaseName;
 
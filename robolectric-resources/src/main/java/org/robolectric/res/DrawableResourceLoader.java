@@ -14,6 +14,11 @@ public class DrawableResourceLoader extends XmlLoader {
     this.drawableNodes = drawableNodes;
   }
 
+  @Override
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return new DrawableResourceLoader(targets.get(drawableNodes));
+  }
+
   @Override
   protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
     String name = toResourceName(xmlFile);
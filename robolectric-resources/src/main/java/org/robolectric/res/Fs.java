@@ -1,6 +1,7 @@
 package org.robolectric.res;
 
 import org.robolectric.util.Join;
+import org.robolectric.util.Trace;
 import org.robolectric.util.Util;
 
 import java.io.BufferedInputStream;
@@ -78,11 +79,16 @@ abstract public class Fs {
       }
 
       if (cachedMap == null) {
+        Trace.Span span = Trace.begin("Fs.JarFs.index", file.getName());
         cachedMap = new TreeMap<>();
-        Enumeration<JarEntry> entries = jarFile.entries();
-        while (entries.hasMoreElements()) {
-          JarEntry jarEntry = entries.nextElement();
-          cachedMap.put(jarEntry.getName(), jarEntry);
+        try {
+          Enumeration<JarEntry> entries = jarFile.entries();
+          while (entries.hasMoreElements()) {
+            JarEntry jarEntry = entries.nextElement();
+            cachedMap.put(jarEntry.getName(), jarEntry);
+          }
+        } finally {
+          span.end();
         }
         synchronized (CACHE) {
           CACHE.put(file.getAbsoluteFile(), cachedMap);
@@ -197,6 +203,13 @@ abstract public class Fs {
         return true;
       }
 
+      /**
+       * The jar's entries under this directory, keyed by name.
+       */
+      NavigableMap<String, JarEntry> getEntries() {
+        return jarEntryMap.subMap(path + "/", true, path + "0", false);
+      }
+
       private String getJarFileName() {
         return jarFile.getName();
       }
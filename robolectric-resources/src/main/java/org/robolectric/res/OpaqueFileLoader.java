@@ -9,6 +9,11 @@ public class OpaqueFileLoader extends XmlLoader {
     this.attrType = attrType;
   }
 
+  @Override
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return new OpaqueFileLoader(targets.get(resBunch), attrType);
+  }
+
   @Override
   protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
     resBunch.put(attrType, xmlFile.getBaseName(), new FileTypedResource<>(xmlFile.getPath(), ResType.LAYOUT), xmlContext);
@@ -2,9 +2,13 @@ package org.robolectric.res;
 
 import org.jetbrains.annotations.NotNull;
 import org.robolectric.res.builder.XmlBlock;
+import org.robolectric.util.Logger;
 
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class OverlayResourceLoader extends XResourceLoader {
   private final String packageName;
@@ -18,17 +22,50 @@ public class OverlayResourceLoader extends XResourceLoader {
 
   @Override
   void doInitialize() {
+    Set<String> parts = new LinkedHashSet<>(Arrays.asList(PLURALS, DRAWABLES, PREFERENCES, RAW));
     for (PackageResourceLoader subResourceLoader : subResourceLoaders) {
       subResourceLoader.initialize();
 
-      pluralsData.mergeLibraryStyle(subResourceLoader.pluralsData, packageName);
-      stringData.mergeLibraryStyle(subResourceLoader.stringData, packageName);
-      drawableData.mergeLibraryStyle(subResourceLoader.drawableData, packageName);
-      preferenceData.mergeLibraryStyle(subResourceLoader.preferenceData, packageName);
-      xmlDocuments.mergeLibraryStyle(subResourceLoader.xmlDocuments, packageName);
-      rawResources.mergeLibraryStyle(subResourceLoader.rawResources, packageName);
-      data.mergeLibraryStyle(subResourceLoader.data, packageName);
+      for (String type : subResourceLoader.data.getBundles().keySet()) {
+        parts.add(dataOfType(type));
+      }
+      for (ResName resName : subResourceLoader.xmlDocuments.getValues().keySet()) {
+        parts.add(xmlDocumentsOfType(resName.type));
+      }
+    }
+
+    for (String part : parts) {
+      if (!isLoaded(part)) {
+        doLoad(part);
+      }
+    }
+  }
+
+  @Override
+  void doLoad(String part) {
+    long startTime = System.currentTimeMillis();
+    for (PackageResourceLoader subResourceLoader : subResourceLoaders) {
+      subResourceLoader.ensureLoaded(part);
+
+      if (part.equals(PLURALS)) {
+        pluralsData.mergeLibraryStyle(subResourceLoader.pluralsData, packageName);
+        stringData.mergeLibraryStyle(subResourceLoader.stringData, packageName);
+      } else if (part.equals(DRAWABLES)) {
+        drawableData.mergeLibraryStyle(subResourceLoader.drawableData, packageName);
+      } else if (part.equals(PREFERENCES)) {
+        preferenceData.mergeLibraryStyle(subResourceLoader.preferenceData, packageName);
+      } else if (part.equals(RAW)) {
+        rawResources.mergeLibraryStyle(subResourceLoader.rawResources, packageName);
+      } else {
+        String type = part.substring(part.indexOf(':') + 1);
+        if (part.equals(dataOfType(type))) {
+          data.getBundle(type).mergeLibraryStyle(subResourceLoader.data.getBundle(type), packageName);
+        } else {
+          xmlDocuments.mergeLibraryStyle(subResourceLoader.xmlDocuments, packageName, type);
+        }
+      }
     }
+    Logger.debug("Merged %s resources for %s in %dms", part, packageName, System.currentTimeMillis() - startTime);
   }
 
   @Override public DrawableNode getDrawableNode(ResName resName, String qualifiers) {
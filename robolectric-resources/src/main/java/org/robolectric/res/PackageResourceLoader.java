@@ -1,9 +1,37 @@
 package org.robolectric.res;
 
+import org.robolectric.res.builder.XmlBlock;
 import org.robolectric.util.Logger;
+import org.robolectric.util.Trace;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads a package's resources, one family of resource directories at a time, as they're first needed.
+ */
 public class PackageResourceLoader extends XResourceLoader {
+  private static final String VALUES = "values";
+  // directories of xml files, each of which is a resource of the directory's type
+  private static final List<String> DOCUMENT_FAMILIES = Arrays.asList(
+      "layout", "menu", "drawable", "anim", "animator", "color", "xml", "transition", "interpolator");
+  private static final List<String> ALL_FAMILIES = new ArrayList<>();
+
+  static {
+    ALL_FAMILIES.add(VALUES);
+    ALL_FAMILIES.addAll(DOCUMENT_FAMILIES);
+    ALL_FAMILIES.add(DRAWABLES);
+    ALL_FAMILIES.add(RAW);
+  }
+
   private final ResourcePath resourcePath;
+  private final ResourceSnapshotCache snapshotCache = ResourceSnapshotCache.fromSystemProperties();
+  // guarded by this
+  private final Set<String> loadedFamilies = new HashSet<>();
+  private boolean loadedOtherResources;
 
   public PackageResourceLoader(ResourcePath resourcePath) {
     this(resourcePath, new ResourceExtractor(resourcePath));
@@ -14,59 +42,147 @@ public class PackageResourceLoader extends XResourceLoader {
     this.resourcePath = resourcePath;
   }
 
+  @Override
   void doInitialize() {
+    Trace.Span span = Trace.begin("PackageResourceLoader.loadEverything", resourcePath.getPackageName());
     try {
       loadEverything();
+    } finally {
+      span.end();
+    }
+  }
+
+  @Override
+  void doLoad(String part) {
+    if (snapshotCache != null) {
+      // snapshots hold every kind of resource, so there's no point reading one just for a part
+      loadEverything();
+    } else if (part.equals(PLURALS)) {
+      loadFamily(VALUES);
+    } else if (part.equals(PREFERENCES)) {
+      loadFamily("xml");
+    } else if (part.equals(DRAWABLES) || part.equals(RAW)) {
+      loadFamily(part);
+    } else {
+      String type = part.substring(part.indexOf(':') + 1);
+      loadFamily(VALUES);
+      if (DOCUMENT_FAMILIES.contains(type)) {
+        loadFamily(type);
+      }
+    }
+    loadOtherResourcesOnceEverythingIsLoaded();
+  }
+
+  private void loadEverything() {
+    if (loadedFamilies.isEmpty() && snapshotCache != null && snapshotCache.restore(resourcePath, this)) {
+      loadedFamilies.addAll(ALL_FAMILIES);
+      loadOtherResourcesOnceEverythingIsLoaded();
+      return;
+    }
+
+    boolean loadedNothingYet = loadedFamilies.isEmpty();
+    for (String family : ALL_FAMILIES) {
+      loadFamily(family);
+    }
+    // snapshots only hold what's in the resource files
+    if (loadedNothingYet && snapshotCache != null) {
+      snapshotCache.save(resourcePath, this);
+    }
+    loadOtherResourcesOnceEverythingIsLoaded();
+  }
+
+  private void loadOtherResourcesOnceEverythingIsLoaded() {
+    if (!loadedOtherResources && loadedFamilies.containsAll(ALL_FAMILIES)) {
+      loadedOtherResources = true;
+      loadOtherResources(resourcePath);
+    }
+  }
+
+  /**
+   * Load one family of resource directories, unless it's already been loaded. Values are always loaded before any
+   * other xml directories, so resources defined in both are found in the same order as when everything is loaded.
+   *
+   * A family's resources are loaded into bundles of their own and only added to the tables once all of them have been
+   * loaded, so a family that fails to load leaves nothing behind and is loaded from scratch when next asked for.
+   */
+  private void loadFamily(String family) {
+    if (loadedFamilies.contains(family)) return;
+    if (DOCUMENT_FAMILIES.contains(family)) {
+      loadFamily(VALUES);
+    }
+
+    long startTime = System.currentTimeMillis();
+    Trace.Span span = Trace.begin("PackageResourceLoader.loadFamily", resourcePath.getPackageName() + ":" + family);
+    DocumentLoader.FileTargets staged = new DocumentLoader.FileTargets();
+    try {
+      doLoadFamily(family, staged);
     } catch (RuntimeException e) {
       throw e;
     } catch (Exception e) {
       throw new RuntimeException(e);
+    } finally {
+      span.end();
     }
+    staged.putAll();
+    loadedFamilies.add(family);
+    Logger.debug("Loaded %s resources for %s from %s in %dms", family, resourcePath.getPackageName(),
+        resourcePath.resourceBase, System.currentTimeMillis() - startTime);
   }
 
-  private void loadEverything() throws Exception {
-    Logger.debug("Loading resources for %s from %s...", resourcePath.getPackageName(), resourcePath.resourceBase);
-
+  private void doLoadFamily(String family, DocumentLoader.FileTargets staged) throws Exception {
+    ResBunch data = staged.get(this.data);
+    ResBundle<PluralResourceLoader.PluralRules> pluralsData = staged.get(this.pluralsData);
+    ResBundle<DrawableNode> drawableData = staged.get(this.drawableData);
+    ResBundle<PreferenceNode> preferenceData = staged.get(this.preferenceData);
+    ResBundle<XmlBlock> xmlDocuments = staged.get(this.xmlDocuments);
+    ResBundle<FsFile> rawResources = staged.get(this.rawResources);
     DocumentLoader documentLoader = new DocumentLoader(resourcePath);
-
-    documentLoader.load("values",
-        new ValueResourceLoader(data, "/resources/bool", "bool", ResType.BOOLEAN),
-        new ValueResourceLoader(data, "/resources/item[@type='bool']", "bool", ResType.BOOLEAN),
-        new ValueResourceLoader(data, "/resources/color", "color", ResType.COLOR),
-        new ValueResourceLoader(data, "/resources/drawable", "drawable", ResType.DRAWABLE),
-        new ValueResourceLoader(data, "/resources/item[@type='color']", "color", ResType.COLOR),
-        new ValueResourceLoader(data, "/resources/dimen", "dimen", ResType.DIMEN),
-        new ValueResourceLoader(data, "/resources/item[@type='dimen']", "dimen", ResType.DIMEN),
-        new ValueResourceLoader(data, "/resources/integer", "integer", ResType.INTEGER),
-        new ValueResourceLoader(data, "/resources/item[@type='integer']", "integer", ResType.INTEGER),
-        new ValueResourceLoader(data, "/resources/integer-array", "array", ResType.INTEGER_ARRAY),
-        new ValueResourceLoader(data, "/resources/fraction", "fraction", ResType.FRACTION),
-        new ValueResourceLoader(data, "/resources/item[@type='fraction']", "fraction", ResType.FRACTION),
-        new ValueResourceLoader(data, "/resources/item", "layout", ResType.LAYOUT),
-        new PluralResourceLoader(pluralsData),
-        new ValueResourceLoader(data, "/resources/string", "string", ResType.CHAR_SEQUENCE),
-        new ValueResourceLoader(data, "/resources/item[@type='string']", "string", ResType.CHAR_SEQUENCE),
-        new ValueResourceLoader(data, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
-        new AttrResourceLoader(data),
-        new StyleResourceLoader(data)
-    );
-
-    documentLoader.load("layout", new OpaqueFileLoader(data, "layout"), new XmlBlockLoader(xmlDocuments, "layout"));
-    documentLoader.load("menu", new OpaqueFileLoader(data, "menu"), new XmlBlockLoader(xmlDocuments, "menu"));
-    documentLoader.load("drawable", new OpaqueFileLoader(data, "drawable"), new XmlBlockLoader(xmlDocuments, "drawable"));
-    documentLoader.load("anim", new OpaqueFileLoader(data, "anim"), new XmlBlockLoader(xmlDocuments, "anim"));
-    documentLoader.load("animator", new OpaqueFileLoader(data, "animator"), new XmlBlockLoader(xmlDocuments, "animator"));
-    documentLoader.load("color", new ColorResourceLoader(data), new XmlBlockLoader(xmlDocuments, "color"));
-    documentLoader.load("xml", new PreferenceLoader(preferenceData), new XmlBlockLoader(xmlDocuments, "xml"));
-    documentLoader.load("transition", new OpaqueFileLoader(data, "transition"), new XmlBlockLoader(xmlDocuments, "transition"));
-    documentLoader.load("interpolator", new OpaqueFileLoader(data, "interpolator"), new XmlBlockLoader(xmlDocuments, "interpolator"));
-
-    new DrawableResourceLoader(drawableData).findDrawableResources(resourcePath);
-    new RawResourceLoader(resourcePath).loadTo(rawResources);
-
-    loadOtherResources(resourcePath);
+    switch (family) {
+      case VALUES:
+        documentLoader.load("values",
+            new ValueResourceLoader(data, "/resources/bool", "bool", ResType.BOOLEAN),
+            new ValueResourceLoader(data, "/resources/item[@type='bool']", "bool", ResType.BOOLEAN),
+            new ValueResourceLoader(data, "/resources/color", "color", ResType.COLOR),
+            new ValueResourceLoader(data, "/resources/drawable", "drawable", ResType.DRAWABLE),
+            new ValueResourceLoader(data, "/resources/item[@type='color']", "color", ResType.COLOR),
+            new ValueResourceLoader(data, "/resources/dimen", "dimen", ResType.DIMEN),
+            new ValueResourceLoader(data, "/resources/item[@type='dimen']", "dimen", ResType.DIMEN),
+            new ValueResourceLoader(data, "/resources/integer", "integer", ResType.INTEGER),
+            new ValueResourceLoader(data, "/resources/item[@type='integer']", "integer", ResType.INTEGER),
+            new ValueResourceLoader(data, "/resources/integer-array", "array", ResType.INTEGER_ARRAY),
+            new ValueResourceLoader(data, "/resources/fraction", "fraction", ResType.FRACTION),
+            new ValueResourceLoader(data, "/resources/item[@type='fraction']", "fraction", ResType.FRACTION),
+            new ValueResourceLoader(data, "/resources/item", "layout", ResType.LAYOUT),
+            new PluralResourceLoader(pluralsData),
+            new ValueResourceLoader(data, "/resources/string", "string", ResType.CHAR_SEQUENCE),
+            new ValueResourceLoader(data, "/resources/item[@type='string']", "string", ResType.CHAR_SEQUENCE),
+            new ValueResourceLoader(data, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
+            new AttrResourceLoader(data),
+            new StyleResourceLoader(data)
+        );
+        break;
+      case "color":
+        documentLoader.load("color", new ColorResourceLoader(data), new XmlBlockLoader(xmlDocuments, "color"));
+        break;
+      case "xml":
+        documentLoader.load("xml", new PreferenceLoader(preferenceData), new XmlBlockLoader(xmlDocuments, "xml"));
+        break;
+      case DRAWABLES:
+        new DrawableResourceLoader(drawableData).findDrawableResources(resourcePath);
+        break;
+      case RAW:
+        new RawResourceLoader(resourcePath).loadTo(rawResources);
+        break;
+      default:
+        documentLoader.load(family, new OpaqueFileLoader(data, family), new XmlBlockLoader(xmlDocuments, family));
+    }
   }
 
+  /**
+   * Called once every family of resources has been loaded, to add resources from elsewhere. When resources are loaded
+   * as they're needed, that's only once every kind of resource has been asked for, or {@link #initialize()} is
+   * called, so subclasses whose resources must always be present should be initialized up front.
+   */
   protected void loadOtherResources(ResourcePath resourcePath) {
   }
 
@@ -12,6 +12,11 @@ public class PluralResourceLoader extends XpathResourceXmlLoader {
     this.pluralRulesResBundle = pluralRulesResBundle;
   }
 
+  @Override
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return new PluralResourceLoader(targets.get(pluralRulesResBundle));
+  }
+
   @Override protected void processNode(String name, XmlNode xmlNode, XmlContext xmlContext) throws XPathExpressionException {
     PluralRules rules = new PluralRules();
     for (XmlNode item : xmlNode.selectElements("item")) {
@@ -14,6 +14,11 @@ public class PreferenceLoader extends XmlLoader {
     this.resBundle = resBundle;
   }
 
+  @Override
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return new PreferenceLoader(targets.get(resBundle));
+  }
+
   @Override
   protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
     PreferenceNode topLevelNode = new PreferenceNode("top-level", new ArrayList<Attribute>());
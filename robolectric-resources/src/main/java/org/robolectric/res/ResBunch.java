@@ -1,22 +1,23 @@
 package org.robolectric.res;
 
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.jetbrains.annotations.NotNull;
 
 public class ResBunch {
-  private final Map<String, ResBundle<TypedResource>> types = new LinkedHashMap<>();
+  private final ConcurrentMap<String, ResBundle<TypedResource>> types = new ConcurrentHashMap<>();
 
   public void put(String attrType, String name, TypedResource value, XmlLoader.XmlContext xmlContext) {
     ResBundle<TypedResource> bundle = getBundle(attrType);
     bundle.put(attrType, name, value, xmlContext);
   }
 
-  private ResBundle<TypedResource> getBundle(String attrType) {
+  ResBundle<TypedResource> getBundle(String attrType) {
     ResBundle<TypedResource> bundle = types.get(attrType);
     if (bundle == null) {
-      bundle = new ResBundle<>();
-      types.put(attrType, bundle);
+      ResBundle<TypedResource> existing = types.putIfAbsent(attrType, bundle = new ResBundle<>());
+      if (existing != null) bundle = existing;
     }
     return bundle;
   }
@@ -45,6 +46,26 @@ public class ResBunch {
     }
   }
 
+  Map<String, ResBundle<TypedResource>> getBundles() {
+    return types;
+  }
+
+  /**
+   * Add the resources put into {@code other}, a bunch which was loaded separately, as if they'd been put into this one
+   * in the same order.
+   */
+  void putAll(ResBunch other) {
+    for (Map.Entry<String, ResBundle<TypedResource>> entry : other.types.entrySet()) {
+      getBundle(entry.getKey()).putAll(entry.getValue());
+    }
+  }
+
+  void addAll(ResBunch other) {
+    for (Map.Entry<String, ResBundle<TypedResource>> entry : other.types.entrySet()) {
+      getBundle(entry.getKey()).addAll(entry.getValue());
+    }
+  }
+
   public void mergeLibraryStyle(ResBunch fromResBundle, String packageName) {
     for (Map.Entry<String, ResBundle<TypedResource>> entry : fromResBundle.types.entrySet()) {
       getBundle(entry.getKey()).mergeLibraryStyle(entry.getValue(), packageName);
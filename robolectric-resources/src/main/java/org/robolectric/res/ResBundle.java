@@ -3,10 +3,11 @@ package org.robolectric.res;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -158,11 +159,42 @@ public class ResBundle<T> {
     return overrideNamespace == null ? resName : new ResName(overrideNamespace, resName.type, resName.name);
   }
 
+  Map<ResName, List<Value<T>>> getValues() {
+    return valuesMap.map;
+  }
+
+  void putValue(ResName resName, Value<T> value) {
+    valuesMap.find(resName).add(value);
+  }
+
+  /**
+   * Add the resources put into {@code other}, a bundle which was loaded separately, as if they'd been put into this
+   * one in the same order.
+   */
+  void putAll(ResBundle<T> other) {
+    for (Map.Entry<ResName, List<Value<T>>> entry : other.valuesMap.map.entrySet()) {
+      List<Value<T>> values = valuesMap.find(maybeOverride(entry.getKey()));
+      values.addAll(entry.getValue());
+      Collections.sort(values);
+    }
+  }
+
+  void addAll(ResBundle<T> other) {
+    valuesMap.merge(null, other.valuesMap);
+  }
+
   public void mergeLibraryStyle(ResBundle<T> fromResBundle, String packageName) {
     valuesMap.merge(packageName, fromResBundle.valuesMap);
     valuesArrayMap.merge(packageName, fromResBundle.valuesArrayMap);
   }
 
+  /**
+   * Like {@link #mergeLibraryStyle(ResBundle, String)}, but only for resources of one type.
+   */
+  void mergeLibraryStyle(ResBundle<T> fromResBundle, String packageName, String type) {
+    valuesMap.merge(packageName, fromResBundle.valuesMap, type);
+  }
+
   public static class Value<T> implements Comparable<Value<T>> {
     private final String qualifiers;
     private final T value;
@@ -198,22 +230,31 @@ public class ResBundle<T> {
   }
 
   private static class ResMap<T> {
-    private final Map<ResName, List<Value<T>>> map = new HashMap<>();
+    // concurrent, since one type's resources may be looked up while another's are loaded
+    private final ConcurrentMap<ResName, List<Value<T>>> map = new ConcurrentHashMap<>();
     private boolean immutable;
 
     public List<Value<T>> find(ResName resName) {
       List<Value<T>> values = map.get(resName);
-      if (values == null) map.put(resName, values = new ArrayList<>());
+      if (values == null) {
+        List<Value<T>> existing = map.putIfAbsent(resName, values = new ArrayList<>());
+        if (existing != null) values = existing;
+      }
       return values;
     }
 
     private void merge(String packageName, ResMap<T> sourceMap) {
+      merge(packageName, sourceMap, null);
+    }
+
+    private void merge(String packageName, ResMap<T> sourceMap, String type) {
       if (immutable) {
         throw new IllegalStateException("immutable!");
       }
 
       for (Map.Entry<ResName, List<Value<T>>> entry : sourceMap.map.entrySet()) {
-        ResName resName = entry.getKey().withPackageName(packageName);
+        if (type != null && !type.equals(entry.getKey().type)) continue;
+        ResName resName = packageName == null ? entry.getKey() : entry.getKey().withPackageName(packageName);
         find(resName).addAll(entry.getValue());
       }
     }
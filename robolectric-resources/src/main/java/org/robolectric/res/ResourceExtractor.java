@@ -1,5 +1,7 @@
 package org.robolectric.res;
 
+import org.robolectric.util.Trace;
+
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
@@ -48,7 +50,16 @@ public class ResourceExtractor extends ResourceIndex {
   }
 
   private void gatherResourceIdsAndNames(Class<?> rClass, String packageName, boolean checkForCollisions) {
-    for (Class innerClass : rClass.getClasses()) {
+    Trace.Span span = Trace.begin("ResourceExtractor.gatherResourceIdsAndNames", rClass.getName());
+    try {
+      gatherResourceIdsAndNames(rClass.getClasses(), packageName, checkForCollisions);
+    } finally {
+      span.end();
+    }
+  }
+
+  private void gatherResourceIdsAndNames(Class<?>[] rInnerClasses, String packageName, boolean checkForCollisions) {
+    for (Class innerClass : rInnerClasses) {
       for (Field field : innerClass.getDeclaredFields()) {
         if (field.getType().equals(Integer.TYPE) && Modifier.isStatic(field.getModifiers())) {
           String section = innerClass.getSimpleName();
@@ -0,0 +1,646 @@
+package org.robolectric.res;
+
+import org.robolectric.res.builder.XmlBlock;
+import org.robolectric.util.Digests;
+import org.robolectric.util.Logger;
+import org.robolectric.util.Trace;
+import org.w3c.dom.Document;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.jar.JarEntry;
+
+/**
+ * Persistent cache of the resource tables built by {@link PackageResourceLoader}, shared across JVM runs.
+ *
+ * Each package's tables (values, plurals, styles, attrs, xml blocks, drawables, preferences and raw resources) are
+ * written to a binary snapshot after they're first loaded, and later runs memory-map the snapshot instead of parsing
+ * the resource files. A snapshot is keyed by a stamp of its resource directory's contents: the path, size and
+ * timestamp of every file in a directory, or the name, size and CRC of every entry under a jar's resource
+ * directory. If any of these change, the snapshot is ignored and replaced after the resources are parsed again.
+ *
+ * Restored xml blocks are parsed when they're first asked for, rather than up front.
+ */
+public class ResourceSnapshotCache {
+
+  /**
+   * When set, parsed resources are cached in this directory and reused by later runs.
+   */
+  public static final String CACHE_DIR_PROPERTY = "robolectric.resourcecache.dir";
+
+  private static final int MAGIC = 0x52524553; // "RRES"
+  private static final int FORMAT_VERSION = 1;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final byte STRING = 0;
+  private static final byte ARRAY = 1;
+  private static final byte ATTR_DATA = 2;
+  private static final byte STYLE_DATA = 3;
+
+  private static String codeStamp;
+
+  private final File cacheDir;
+
+  public ResourceSnapshotCache(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * @return A cache in the directory named by {@link #CACHE_DIR_PROPERTY}, or null if it isn't set.
+   */
+  public static ResourceSnapshotCache fromSystemProperties() {
+    String cacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+    return cacheDir == null ? null : new ResourceSnapshotCache(new File(cacheDir));
+  }
+
+  /**
+   * Fill an empty loader's tables from its package's snapshot.
+   *
+   * @return True if an up-to-date snapshot was found, otherwise false, in which case the loader is left untouched.
+   */
+  boolean restore(ResourcePath resourcePath, PackageResourceLoader loader) {
+    File file = snapshotFile(resourcePath);
+    if (!file.isFile()) return false;
+    byte[] key = key(resourcePath);
+    if (key == null) return false;
+
+    Trace.Span span = Trace.begin("ResourceSnapshotCache.restore", resourcePath.getPackageName());
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      Decoder in = new Decoder(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), resourcePath.resourceBase);
+      if (!in.readHeader(key)) {
+        Logger.debug("Resource snapshot %s is out of date", file);
+        return false;
+      }
+
+      // decode everything before touching the loader, so a corrupt snapshot doesn't leave it half-filled
+      ResBunch data = new ResBunch();
+      int typeCount = in.readInt();
+      for (int i = 0; i < typeCount; i++) {
+        String type = in.readString();
+        in.readBundle(data.getBundle(type), TYPED_RESOURCE);
+      }
+      ResBundle<PluralResourceLoader.PluralRules> pluralsData = in.readBundle(new ResBundle<PluralResourceLoader.PluralRules>(), PLURAL_RULES);
+      ResBundle<String> stringData = in.readBundle(new ResBundle<String>(), STRINGS);
+      ResBundle<DrawableNode> drawableData = in.readBundle(new ResBundle<DrawableNode>(), DRAWABLE_NODE);
+      ResBundle<PreferenceNode> preferenceData = in.readBundle(new ResBundle<PreferenceNode>(), PREFERENCE_NODE);
+      ResBundle<XmlBlock> xmlDocuments = in.readBundle(new ResBundle<XmlBlock>(), XML_BLOCK);
+      ResBundle<FsFile> rawResources = in.readBundle(new ResBundle<FsFile>(), FS_FILE);
+
+      loader.data.addAll(data);
+      loader.pluralsData.addAll(pluralsData);
+      loader.stringData.addAll(stringData);
+      loader.drawableData.addAll(drawableData);
+      loader.preferenceData.addAll(preferenceData);
+      loader.xmlDocuments.addAll(xmlDocuments);
+      loader.rawResources.addAll(rawResources);
+      Logger.debug("Restored resources for %s from %s", resourcePath.getPackageName(), file);
+      return true;
+    } catch (IOException | BufferUnderflowException e) {
+      Logger.debug("Failed to read resource snapshot %s: %s", file, e);
+      return false;
+    } finally {
+      span.end();
+    }
+  }
+
+  /**
+   * Write a snapshot of a loader's tables. Failures are logged and otherwise ignored.
+   */
+  void save(ResourcePath resourcePath, PackageResourceLoader loader) {
+    File file = snapshotFile(resourcePath);
+    byte[] key = key(resourcePath);
+    if (key == null) {
+      Logger.debug("Can't cache resources from %s", resourcePath.resourceBase);
+      return;
+    }
+
+    Trace.Span span = Trace.begin("ResourceSnapshotCache.save", resourcePath.getPackageName());
+    try {
+      Encoder out = new Encoder(resourcePath.resourceBase);
+      out.writeInt(loader.data.getBundles().size());
+      for (Map.Entry<String, ResBundle<TypedResource>> entry : loader.data.getBundles().entrySet()) {
+        out.writeString(entry.getKey());
+        out.writeBundle(entry.getValue(), TYPED_RESOURCE);
+      }
+      out.writeBundle(loader.pluralsData, PLURAL_RULES);
+      out.writeBundle(loader.stringData, STRINGS);
+      out.writeBundle(loader.drawableData, DRAWABLE_NODE);
+      out.writeBundle(loader.preferenceData, PREFERENCE_NODE);
+      out.writeBundle(loader.xmlDocuments, XML_BLOCK);
+      out.writeBundle(loader.rawResources, FS_FILE);
+
+      if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+        throw new IOException("couldn't create " + cacheDir);
+      }
+      File tempFile = File.createTempFile(file.getName(), ".tmp", cacheDir);
+      try {
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+          out.writeTo(stream, key);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        tempFile.delete();
+      }
+      Logger.debug("Saved resources for %s to %s", resourcePath.getPackageName(), file);
+    } catch (IOException | UncacheableException e) {
+      Logger.debug("Failed to write resource snapshot %s: %s", file, e);
+    } finally {
+      span.end();
+    }
+  }
+
+  File snapshotFile(ResourcePath resourcePath) {
+    return new File(cacheDir, Digests.sha1Hex((resourcePath.getPackageName() + '\n' + resourcePath.resourceBase.getPath()).getBytes(UTF8)) + ".res");
+  }
+
+  /**
+   * @return A digest of everything a snapshot depends on, or null if the resources aren't in a directory or jar.
+   */
+  private static byte[] key(ResourcePath resourcePath) {
+    StringBuilder key = new StringBuilder();
+    key.append(FORMAT_VERSION).append('\n').append(codeStamp()).append('\n')
+        .append(resourcePath.getPackageName()).append('\n')
+        .append(resourcePath.resourceBase.getPath()).append('\n');
+
+    FsFile resourceBase = resourcePath.resourceBase;
+    if (resourceBase instanceof FileFsFile) {
+      appendDirectoryStamp(key, ((FileFsFile) resourceBase).getFile(), "");
+    } else if (resourceBase instanceof Fs.JarFs.JarFsFile) {
+      for (JarEntry entry : ((Fs.JarFs.JarFsFile) resourceBase).getEntries().values()) {
+        key.append(entry.getName()).append(':').append(entry.getSize()).append(':').append(entry.getCrc()).append('\n');
+      }
+    } else {
+      return null;
+    }
+    return Digests.newSha1().digest(key.toString().getBytes(UTF8));
+  }
+
+  private static void appendDirectoryStamp(StringBuilder key, File dir, String relativePath) {
+    File[] files = dir.listFiles();
+    if (files == null) return;
+    Arrays.sort(files);
+    for (File file : files) {
+      String path = relativePath + "/" + file.getName();
+      if (file.isDirectory()) {
+        key.append(path).append("/\n");
+        appendDirectoryStamp(key, file, path);
+      } else {
+        key.append(path).append(':').append(file.length()).append(':').append(file.lastModified()).append('\n');
+      }
+    }
+  }
+
+  // the tables' layout depends on the loaders, so a snapshot is only good for the code that wrote it
+  private static synchronized String codeStamp() {
+    if (codeStamp == null) {
+      codeStamp = computeCodeStamp();
+    }
+    return codeStamp;
+  }
+
+  private static String computeCodeStamp() {
+    CodeSource codeSource = ResourceSnapshotCache.class.getProtectionDomain().getCodeSource();
+    URL location = codeSource == null ? null : codeSource.getLocation();
+    if (location == null || !"file".equals(location.getProtocol())) return String.valueOf(location);
+    try {
+      File file = new File(location.toURI());
+      if (file.isFile()) {
+        return file + ":" + file.length() + ":" + file.lastModified();
+      }
+      // classes compiled into a directory, as when building robolectric itself: stamp every class file
+      StringBuilder stamp = new StringBuilder(file.toString()).append('\n');
+      appendDirectoryStamp(stamp, file, "");
+      return Digests.sha1Hex(stamp.toString().getBytes(UTF8));
+    } catch (URISyntaxException e) {
+      return location.toString();
+    }
+  }
+
+  private interface Codec<T> {
+    void write(Encoder out, T value) throws IOException, UncacheableException;
+
+    T read(Decoder in) throws IOException;
+  }
+
+  /**
+   * Thrown while writing a snapshot when a loader holds something snapshots can't represent, such as a resource of a
+   * kind they don't know or a file outside the resource directory.
+   */
+  static class UncacheableException extends Exception {
+    UncacheableException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Writes a snapshot's body, collecting its strings into a table so each is stored once.
+   */
+  private static class Encoder {
+    private final FsFile resourceBase;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream body = new DataOutputStream(bytes);
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    Encoder(FsFile resourceBase) {
+      this.resourceBase = resourceBase;
+    }
+
+    void writeInt(int value) throws IOException {
+      body.writeInt(value);
+    }
+
+    void writeBoolean(boolean value) throws IOException {
+      body.writeBoolean(value);
+    }
+
+    void writeByte(int value) throws IOException {
+      body.writeByte(value);
+    }
+
+    void writeString(String value) throws IOException {
+      if (value == null) {
+        body.writeInt(-1);
+        return;
+      }
+      Integer index = stringIndexes.get(value);
+      if (index == null) {
+        index = strings.size();
+        stringIndexes.put(value, index);
+        strings.add(value);
+      }
+      body.writeInt(index);
+    }
+
+    void writeResName(ResName resName) throws IOException {
+      writeString(resName.packageName);
+      writeString(resName.type);
+      writeString(resName.name);
+    }
+
+    void writeAttribute(Attribute attribute) throws IOException {
+      writeResName(attribute.resName);
+      writeString(attribute.value);
+      writeString(attribute.contextPackageName);
+    }
+
+    void writePath(String path) throws IOException, UncacheableException {
+      String basePath = resourceBase.getPath();
+      if (!path.startsWith(basePath) || path.length() <= basePath.length() + 1
+          || (path.charAt(basePath.length()) != '/' && path.charAt(basePath.length()) != File.separatorChar)) {
+        throw new UncacheableException(path + " isn't in " + basePath);
+      }
+      writeString(path.substring(basePath.length() + 1).replace(File.separatorChar, '/'));
+    }
+
+    <T> void writeBundle(ResBundle<T> bundle, Codec<T> codec) throws IOException, UncacheableException {
+      Map<ResName, List<ResBundle.Value<T>>> values = bundle.getValues();
+      writeInt(values.size());
+      for (Map.Entry<ResName, List<ResBundle.Value<T>>> entry : values.entrySet()) {
+        writeResName(entry.getKey());
+        writeInt(entry.getValue().size());
+        for (ResBundle.Value<T> value : entry.getValue()) {
+          String qualifiers = value.getQualifiers();
+          writeString(qualifiers.equals("--") ? null : qualifiers.substring(1, qualifiers.length() - 1));
+          codec.write(this, value.getValue());
+        }
+      }
+    }
+
+    void writeTo(DataOutputStream out, byte[] key) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.write(key);
+      out.writeInt(strings.size());
+      for (String string : strings) {
+        byte[] stringBytes = string.getBytes(UTF8);
+        out.writeInt(stringBytes.length);
+        out.write(stringBytes);
+      }
+      body.flush();
+      bytes.writeTo(out);
+    }
+  }
+
+  private static class Decoder {
+    private final ByteBuffer buffer;
+    private final FsFile resourceBase;
+    private String[] strings;
+
+    Decoder(ByteBuffer buffer, FsFile resourceBase) {
+      this.buffer = buffer;
+      this.resourceBase = resourceBase;
+    }
+
+    boolean readHeader(byte[] expectedKey) throws IOException {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) return false;
+      byte[] key = new byte[expectedKey.length];
+      buffer.get(key);
+      if (!Arrays.equals(key, expectedKey)) return false;
+
+      strings = new String[readLength()];
+      for (int i = 0; i < strings.length; i++) {
+        byte[] stringBytes = new byte[readLength()];
+        buffer.get(stringBytes);
+        strings[i] = new String(stringBytes, UTF8);
+      }
+      return true;
+    }
+
+    int readInt() {
+      return buffer.getInt();
+    }
+
+    private int readLength() throws IOException {
+      int length = buffer.getInt();
+      if (length < 0 || length > buffer.remaining()) {
+        throw new IOException("bad length " + length);
+      }
+      return length;
+    }
+
+    boolean readBoolean() {
+      return buffer.get() != 0;
+    }
+
+    byte readByte() {
+      return buffer.get();
+    }
+
+    String readString() throws IOException {
+      int index = buffer.getInt();
+      if (index < -1 || index >= strings.length) {
+        throw new IOException("bad string index " + index);
+      }
+      return index == -1 ? null : strings[index];
+    }
+
+    ResName readResName() throws IOException {
+      return new ResName(readString(), readString(), readString());
+    }
+
+    Attribute readAttribute() throws IOException {
+      return new Attribute(readResName(), readString(), readString());
+    }
+
+    FsFile readFile() throws IOException {
+      String path = readString();
+      if (path == null) {
+        throw new IOException("missing file path");
+      }
+      return resourceBase.join(path.split("/"));
+    }
+
+    ResType readResType() throws IOException {
+      String name = readString();
+      for (ResType resType : ResType.values()) {
+        if (resType.name().equals(name)) {
+          return resType;
+        }
+      }
+      throw new IOException("unknown resource type " + name);
+    }
+
+    <T> ResBundle<T> readBundle(ResBundle<T> bundle, Codec<T> codec) throws IOException {
+      int entryCount = readInt();
+      for (int i = 0; i < entryCount; i++) {
+        ResName resName = readResName();
+        int valueCount = readInt();
+        for (int j = 0; j < valueCount; j++) {
+          String qualifiers = readString();
+          bundle.putValue(resName, new ResBundle.Value<>(qualifiers, codec.read(this)));
+        }
+      }
+      return bundle;
+    }
+  }
+
+  private static final Codec<TypedResource> TYPED_RESOURCE = new Codec<TypedResource>() {
+    @Override
+    public void write(Encoder out, TypedResource value) throws IOException, UncacheableException {
+      if (value.getClass() != TypedResource.class && value.getClass() != FileTypedResource.class) {
+        throw new UncacheableException("can't cache " + value);
+      }
+      out.writeBoolean(value.isFile());
+      out.writeString(value.getResType().name());
+
+      Object data = value.getData();
+      if (data instanceof String) {
+        out.writeByte(STRING);
+        out.writeString((String) data);
+      } else if (data instanceof TypedResource[]) {
+        TypedResource[] items = (TypedResource[]) data;
+        out.writeByte(ARRAY);
+        out.writeInt(items.length);
+        for (TypedResource item : items) {
+          write(out, item);
+        }
+      } else if (data instanceof AttrData) {
+        AttrData attrData = (AttrData) data;
+        out.writeByte(ATTR_DATA);
+        out.writeString(attrData.getName());
+        out.writeString(attrData.getFormat());
+        List<AttrData.Pair> pairs = attrData.getPairs();
+        out.writeInt(pairs == null ? -1 : pairs.size());
+        if (pairs != null) {
+          for (AttrData.Pair pair : pairs) {
+            out.writeString(pair.getName());
+            out.writeString(pair.getValue());
+          }
+        }
+      } else if (data instanceof StyleData) {
+        StyleData styleData = (StyleData) data;
+        out.writeByte(STYLE_DATA);
+        out.writeString(styleData.getPackageName());
+        out.writeString(styleData.getName());
+        out.writeString(styleData.getParent());
+        out.writeInt(styleData.getItems().size());
+        for (Map.Entry<ResName, Attribute> entry : styleData.getItems().entrySet()) {
+          out.writeResName(entry.getKey());
+          out.writeAttribute(entry.getValue());
+        }
+      } else {
+        throw new UncacheableException("can't cache " + value);
+      }
+    }
+
+    @Override
+    public TypedResource read(Decoder in) throws IOException {
+      boolean isFile = in.readBoolean();
+      ResType resType = in.readResType();
+
+      Object data;
+      byte kind = in.readByte();
+      switch (kind) {
+        case STRING:
+          data = in.readString();
+          break;
+        case ARRAY:
+          TypedResource[] items = new TypedResource[in.readInt()];
+          for (int i = 0; i < items.length; i++) {
+            items[i] = read(in);
+          }
+          data = items;
+          break;
+        case ATTR_DATA:
+          String name = in.readString();
+          String format = in.readString();
+          int pairCount = in.readInt();
+          List<AttrData.Pair> pairs = null;
+          if (pairCount != -1) {
+            pairs = new ArrayList<>(pairCount);
+            for (int i = 0; i < pairCount; i++) {
+              pairs.add(new AttrData.Pair(in.readString(), in.readString()));
+            }
+          }
+          data = new AttrData(name, format, pairs);
+          break;
+        case STYLE_DATA:
+          StyleData styleData = new StyleData(in.readString(), in.readString(), in.readString());
+          int itemCount = in.readInt();
+          for (int i = 0; i < itemCount; i++) {
+            styleData.add(in.readResName(), in.readAttribute());
+          }
+          data = styleData;
+          break;
+        default:
+          throw new IOException("unknown resource kind " + kind);
+      }
+      return isFile ? new FileTypedResource<>(data, resType) : new TypedResource<>(data, resType);
+    }
+  };
+
+  private static final Codec<PluralResourceLoader.PluralRules> PLURAL_RULES = new Codec<PluralResourceLoader.PluralRules>() {
+    @Override
+    public void write(Encoder out, PluralResourceLoader.PluralRules value) throws IOException {
+      out.writeInt(value.plurals.size());
+      for (Plural plural : value.plurals) {
+        out.writeString(plural.quantity);
+        out.writeString(plural.string);
+      }
+    }
+
+    @Override
+    public PluralResourceLoader.PluralRules read(Decoder in) throws IOException {
+      PluralResourceLoader.PluralRules rules = new PluralResourceLoader.PluralRules();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        rules.add(new Plural(in.readString(), in.readString()));
+      }
+      return rules;
+    }
+  };
+
+  private static final Codec<String> STRINGS = new Codec<String>() {
+    @Override
+    public void write(Encoder out, String value) throws IOException {
+      out.writeString(value);
+    }
+
+    @Override
+    public String read(Decoder in) throws IOException {
+      return in.readString();
+    }
+  };
+
+  private static final Codec<DrawableNode> DRAWABLE_NODE = new Codec<DrawableNode>() {
+    @Override
+    public void write(Encoder out, DrawableNode value) throws IOException, UncacheableException {
+      if (!(value instanceof DrawableNode.ImageFile)) {
+        throw new UncacheableException("can't cache " + value);
+      }
+      out.writePath(value.getFsFile().getPath());
+      out.writeBoolean(((DrawableNode.ImageFile) value).isNinePatch);
+    }
+
+    @Override
+    public DrawableNode read(Decoder in) throws IOException {
+      return new DrawableNode.ImageFile(in.readFile(), in.readBoolean());
+    }
+  };
+
+  private static final Codec<PreferenceNode> PREFERENCE_NODE = new Codec<PreferenceNode>() {
+    @Override
+    public void write(Encoder out, PreferenceNode value) throws IOException {
+      out.writeString(value.getName());
+      out.writeInt(value.getAttributes().size());
+      for (Attribute attribute : value.getAttributes()) {
+        out.writeAttribute(attribute);
+      }
+      out.writeInt(value.getChildren().size());
+      for (PreferenceNode child : value.getChildren()) {
+        write(out, child);
+      }
+    }
+
+    @Override
+    public PreferenceNode read(Decoder in) throws IOException {
+      String name = in.readString();
+      int attributeCount = in.readInt();
+      List<Attribute> attributes = new ArrayList<>(attributeCount);
+      for (int i = 0; i < attributeCount; i++) {
+        attributes.add(in.readAttribute());
+      }
+      PreferenceNode node = new PreferenceNode(name, attributes);
+      int childCount = in.readInt();
+      for (int i = 0; i < childCount; i++) {
+        node.addChild(read(in));
+      }
+      return node;
+    }
+  };
+
+  private static final Codec<XmlBlock> XML_BLOCK = new Codec<XmlBlock>() {
+    @Override
+    public void write(Encoder out, XmlBlock value) throws IOException, UncacheableException {
+      out.writeString(value.getFilename());
+      out.writeString(value.getPackageName());
+      out.writePath(value.getFilename());
+    }
+
+    @Override
+    public XmlBlock read(Decoder in) throws IOException {
+      String filename = in.readString();
+      String packageName = in.readString();
+      final FsFile xmlFile = in.readFile();
+      return XmlBlock.createLazily(new Callable<Document>() {
+        @Override
+        public Document call() {
+          return XmlLoader.parseDocument(xmlFile);
+        }
+      }, filename, packageName);
+    }
+  };
+
+  private static final Codec<FsFile> FS_FILE = new Codec<FsFile>() {
+    @Override
+    public void write(Encoder out, FsFile value) throws IOException, UncacheableException {
+      out.writePath(value.getPath());
+    }
+
+    @Override
+    public FsFile read(Decoder in) throws IOException {
+      return in.readFile();
+    }
+  };
+}
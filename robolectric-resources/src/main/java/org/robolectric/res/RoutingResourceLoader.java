@@ -105,6 +105,9 @@ public class RoutingResourceLoader implements ResourceLoader {
     @Override void doInitialize() {
     }
 
+    @Override void doLoad(String part) {
+    }
+
     @Override
     public String getNameForId(int id) {
       return null;
@@ -10,6 +10,11 @@ public class StyleResourceLoader extends XpathResourceXmlLoader {
     this.data = data;
   }
 
+  @Override
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return new StyleResourceLoader(targets.get(data));
+  }
+
   @Override
   protected void processNode(String name, XmlNode xmlNode, XmlContext xmlContext) throws XPathExpressionException {
     String styleName = xmlNode.getAttrValue("name");
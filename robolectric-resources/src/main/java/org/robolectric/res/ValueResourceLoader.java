@@ -4,16 +4,23 @@ import javax.xml.xpath.XPathExpressionException;
 
 class ValueResourceLoader extends XpathResourceXmlLoader {
   private final ResBunch resBunch;
+  private final String xpathExpr;
   private final String attrType;
   private final ResType resType;
 
   public ValueResourceLoader(ResBunch resBunch, String xpathExpr, String attrType, ResType resType) {
     super(xpathExpr);
     this.resBunch = resBunch;
+    this.xpathExpr = xpathExpr;
     this.attrType = attrType;
     this.resType = resType;
   }
 
+  @Override
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return new ValueResourceLoader(targets.get(resBunch), xpathExpr, attrType, resType);
+  }
+
   @Override
   protected void processResourceXml(FsFile xmlFile, XmlNode xmlNode, XmlContext xmlContext) throws Exception {
     super.processResourceXml(xmlFile, xmlNode, xmlContext);
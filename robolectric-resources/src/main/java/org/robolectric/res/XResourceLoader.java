@@ -5,9 +5,24 @@ import org.robolectric.res.builder.XmlBlock;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 // TODO: Give me a better name
+/**
+ * Loads resources into tables the first time they're needed.
+ *
+ * Each table, or for {@link #data} and {@link #xmlDocuments} each resource type, is a separate part that's loaded on
+ * first access by {@link #doLoad(String)}, so a test that only reads strings doesn't parse layouts, drawables and
+ * the rest. {@link #initialize()} loads everything at once.
+ */
 abstract class XResourceLoader implements ResourceLoader {
+  static final String PLURALS = "plurals";
+  static final String DRAWABLES = "drawables";
+  static final String PREFERENCES = "preferences";
+  static final String RAW = "raw";
+
   final ResBunch data = new ResBunch();
   final ResBundle<PluralResourceLoader.PluralRules> pluralsData = new ResBundle<>();
   final ResBundle<String> stringData = new ResBundle<>();
@@ -16,7 +31,9 @@ abstract class XResourceLoader implements ResourceLoader {
   final ResBundle<XmlBlock> xmlDocuments = new ResBundle<>();
   final ResBundle<FsFile> rawResources = new ResBundle<>();
   private final ResourceIndex resourceIndex;
-  boolean isInitialized = false;
+  // loaders may be shared by tests running concurrently in separate environments
+  volatile boolean isInitialized = false;
+  private final Set<String> loadedParts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
   protected XResourceLoader(ResourceIndex resourceIndex) {
     this.resourceIndex = resourceIndex;
@@ -24,12 +41,46 @@ abstract class XResourceLoader implements ResourceLoader {
 
   abstract void doInitialize();
 
-  void initialize() {
-    if (isInitialized) return;
-    doInitialize();
-    isInitialized = true;
+  /**
+   * Load one part of the tables. Called at most once per part, while holding this loader's lock.
+   */
+  abstract void doLoad(String part);
+
+  static String dataOfType(String type) {
+    return "data:" + type;
+  }
 
-    makeImmutable();
+  static String xmlDocumentsOfType(String type) {
+    return "xmlDocuments:" + type;
+  }
+
+  /**
+   * Load a part of the tables, unless it's already been loaded.
+   */
+  void ensureLoaded(String part) {
+    if (isInitialized || loadedParts.contains(part)) return;
+    synchronized (this) {
+      if (isInitialized || loadedParts.contains(part)) return;
+      doLoad(part);
+      loadedParts.add(part);
+    }
+  }
+
+  boolean isLoaded(String part) {
+    return isInitialized || loadedParts.contains(part);
+  }
+
+  /**
+   * Load the resources now, rather than when they're first needed.
+   */
+  public void initialize() {
+    if (isInitialized) return;
+    synchronized (this) {
+      if (isInitialized) return;
+      doInitialize();
+      makeImmutable();
+      isInitialized = true;
+    }
   }
 
   protected void makeImmutable() {
@@ -49,14 +100,14 @@ abstract class XResourceLoader implements ResourceLoader {
   }
 
   public TypedResource getValue(@NotNull ResName resName, String qualifiers) {
-    initialize();
+    ensureLoaded(dataOfType(resName.type));
     ResBundle.Value<TypedResource> value = data.getValue(resName, qualifiers);
     return value == null ? null : value.getValue();
   }
 
   @Override
   public Plural getPlural(ResName resName, int quantity, String qualifiers) {
-    initialize();
+    ensureLoaded(PLURALS);
     PluralResourceLoader.PluralRules pluralRules = pluralsData.get(resName, qualifiers);
     if (pluralRules == null) return null;
 
@@ -65,18 +116,19 @@ abstract class XResourceLoader implements ResourceLoader {
 
   @Override
   public XmlBlock getXml(ResName resName, String qualifiers) {
-    initialize();
+    ensureLoaded(xmlDocumentsOfType(resName.type));
     return xmlDocuments.get(resName, qualifiers);
   }
 
   @Override
   public DrawableNode getDrawableNode(ResName resName, String qualifiers) {
+    ensureLoaded(DRAWABLES);
     return drawableData.get(resName, qualifiers);
   }
 
   @Override
   public InputStream getRawValue(ResName resName) {
-    initialize();
+    ensureLoaded(RAW);
 
     FsFile file = rawResources.get(resName, "");
     try {
@@ -88,7 +140,7 @@ abstract class XResourceLoader implements ResourceLoader {
 
   @Override
   public PreferenceNode getPreferenceNode(ResName resName, String qualifiers) {
-    initialize();
+    ensureLoaded(PREFERENCES);
 
     return preferenceData.get(resName, qualifiers);
   }
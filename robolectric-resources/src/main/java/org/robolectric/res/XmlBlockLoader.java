@@ -20,6 +20,11 @@ public class XmlBlockLoader extends XmlLoader {
     this.resBundle = resBundle;
   }
 
+  @Override
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return new XmlBlockLoader(targets.get(resBundle), attrType);
+  }
+
   @Override
   protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
     XmlBlock block = XmlBlock.create(parse(xmlFile), xmlFile.getPath(), xmlContext.packageName);
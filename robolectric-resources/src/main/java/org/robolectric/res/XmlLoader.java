@@ -21,17 +21,30 @@ public abstract class XmlLoader {
     documentBuilderFactory.setIgnoringElementContentWhitespace(true);
   }
 
-  private DocumentBuilder documentBuilder;
+  // builders aren't thread-safe, and DocumentLoader may run a loader on several threads at once
+  private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+    @Override protected DocumentBuilder initialValue() {
+      try {
+        return documentBuilderFactory.newDocumentBuilder();
+      } catch (ParserConfigurationException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  };
+
+  public Document parse(FsFile xmlFile) {
+    return parseDocument(xmlFile);
+  }
 
-  synchronized public Document parse(FsFile xmlFile) {
+  /**
+   * Parse a file outside of any loader, e.g. for a resource restored from a {@link ResourceSnapshotCache}.
+   */
+  public static Document parseDocument(FsFile xmlFile) {
     InputStream inputStream = null;
     try {
-      if (documentBuilder == null) {
-        documentBuilder = documentBuilderFactory.newDocumentBuilder();
-      }
       inputStream = xmlFile.getInputStream();
-      return documentBuilder.parse(inputStream);
-    } catch (ParserConfigurationException | IOException | SAXException e) {
+      return documentBuilder.get().parse(inputStream);
+    } catch (IOException | SAXException e) {
       throw new RuntimeException(e);
     } finally {
       if (inputStream != null) try {
@@ -42,6 +55,16 @@ public abstract class XmlLoader {
     }
   }
 
+  /**
+   * Create a loader like this one which puts resources into {@code targets}' stand-ins for its own bundles, so that
+   * {@link DocumentLoader} can load a file alongside others and add its resources in order afterwards.
+   *
+   * @return The loader, or null if this loader can only load files one at a time.
+   */
+  protected XmlLoader forFile(DocumentLoader.FileTargets targets) {
+    return null;
+  }
+
   protected void processResourceXml(FsFile xmlFile, VTDNav vtdNav, String packageName) throws Exception {
     processResourceXml(xmlFile, new XpathResourceXmlLoader.XmlNode(vtdNav), new XmlContext(packageName, xmlFile));
   }
@@ -2,20 +2,40 @@ package org.robolectric.res.builder;
 
 import org.w3c.dom.Document;
 
+import java.util.concurrent.Callable;
+
 /**
  * An XML block is a parsed representation of a resource XML file. Similar in nature
  * to Android's XmlBlock class.
  */
 public class XmlBlock {
-  private final Document document;
+  private Document document;
+  private Callable<Document> documentLoader;
   private final String filename;
   private final String packageName;
 
   public static XmlBlock create(Document document, String file, String packageName) {
-    return new XmlBlock(document, file, packageName);
+    return new XmlBlock(document, null, file, packageName);
+  }
+
+  /**
+   * Create a block whose document isn't parsed until it's first asked for.
+   */
+  public static XmlBlock createLazily(Callable<Document> documentLoader, String file, String packageName) {
+    return new XmlBlock(null, documentLoader, file, packageName);
   }
 
-  public Document getDocument() {
+  public synchronized Document getDocument() {
+    if (documentLoader != null) {
+      try {
+        document = documentLoader.call();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      documentLoader = null;
+    }
     return document;
   }
 
@@ -27,8 +47,9 @@ public class XmlBlock {
     return packageName;
   }
 
-  private XmlBlock(Document document, String filename, String packageName) {
+  private XmlBlock(Document document, Callable<Document> documentLoader, String filename, String packageName) {
     this.document = document;
+    this.documentLoader = documentLoader;
     this.filename = filename;
     this.packageName = packageName;
   }
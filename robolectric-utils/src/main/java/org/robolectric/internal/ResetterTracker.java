@@ -0,0 +1,75 @@
+package org.robolectric.internal;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks which shadows have been used since their {@code @Resetter} methods last ran, so
+ * {@link ShadowProvider#reset()} can skip the rest.
+ *
+ * The instrumenting class loader adds a static {@link ShadowConstants#TOUCHED_FIELD_NAME} flag to shadow classes with
+ * resetters, and sets it at the start of each of their methods. It leaves the flag out when the shadow's static state
+ * could change without any of its methods being called, e.g. when it has non-private static fields, and such shadows
+ * are always considered used.
+ *
+ * Like shadow classes, this class is loaded separately by each instrumenting class loader.
+ */
+public class ResetterTracker {
+  private static final Map<Class<?>, Field> touchedFields = new HashMap<>();
+  private static int resetterCount;
+
+  /**
+   * @param shadowClass A shadow class with a resetter.
+   * @return True if the shadow has been used since it was last reset, or if its use isn't tracked.
+   */
+  public static boolean isTouched(Class<?> shadowClass) {
+    Field touchedField = getTouchedField(shadowClass);
+    try {
+      return touchedField == null || touchedField.getBoolean(null);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Record that a shadow's resetter has run.
+   *
+   * @param shadowClass A shadow class with a resetter.
+   */
+  public static void resetterInvoked(Class<?> shadowClass) {
+    Field touchedField = getTouchedField(shadowClass);
+    try {
+      if (touchedField != null) {
+        touchedField.setBoolean(null, false);
+      }
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+    synchronized (ResetterTracker.class) {
+      resetterCount++;
+    }
+  }
+
+  /**
+   * @return The number of resetters which have run since this class was loaded.
+   */
+  public static synchronized int getResetterCount() {
+    return resetterCount;
+  }
+
+  private static synchronized Field getTouchedField(Class<?> shadowClass) {
+    if (touchedFields.containsKey(shadowClass)) {
+      return touchedFields.get(shadowClass);
+    }
+
+    Field touchedField;
+    try {
+      touchedField = shadowClass.getField(ShadowConstants.TOUCHED_FIELD_NAME);
+    } catch (NoSuchFieldException e) {
+      touchedField = null;
+    }
+    touchedFields.put(shadowClass, touchedField);
+    return touchedField;
+  }
+}
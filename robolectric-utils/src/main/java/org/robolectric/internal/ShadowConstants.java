@@ -6,4 +6,5 @@ public class ShadowConstants {
   public static final String STATIC_INITIALIZER_METHOD_NAME = "__staticInitializer__";
   public static final String CONSTRUCTOR_METHOD_NAME = "__constructor__";
   public static final String GET_ROBO_DATA_METHOD_NAME = "$$robo$getData";
+  public static final String TOUCHED_FIELD_NAME = "$$robo$touched";
 }
@@ -8,7 +8,8 @@ import java.util.Map;
 public interface ShadowProvider {
 
   /**
-   * Reset the static state of all shadows provided by this package.
+   * Reset the static state of the shadows provided by this package which have been used since they were last
+   * reset. See {@link ResetterTracker}.
    */
   void reset();
 
@@ -0,0 +1,26 @@
+package org.robolectric.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads, so that background work never keeps the JVM from exiting once the tests are done.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+  private final String namePrefix;
+  private final AtomicInteger count = new AtomicInteger();
+
+  /**
+   * @param namePrefix Each thread's name, which is followed by its number.
+   */
+  public DaemonThreadFactory(String namePrefix) {
+    this.namePrefix = namePrefix;
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
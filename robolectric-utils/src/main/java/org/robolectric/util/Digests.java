@@ -0,0 +1,52 @@
+package org.robolectric.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility methods for message digests, e.g. for naming cache files after their contents.
+ */
+public class Digests {
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  // Cloned rather than looked up each time: once Android code has installed its security providers, a lookup can
+  // end up loading provider classes through the InstrumentingClassLoader that's asking for the digest.
+  private static final MessageDigest SHA1;
+
+  static {
+    try {
+      SHA1 = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return A new SHA-1 digest, e.g. for hashing something a piece at a time.
+   */
+  public static MessageDigest newSha1() {
+    try {
+      return (MessageDigest) SHA1.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return The SHA-1 digest of some bytes, as lower case hex.
+   */
+  public static String sha1Hex(byte[] bytes) {
+    return toHex(newSha1().digest(bytes));
+  }
+
+  /**
+   * @return Bytes as lower case hex, two digits per byte.
+   */
+  public static String toHex(byte[] bytes) {
+    StringBuilder buf = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      buf.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+    return buf.toString();
+  }
+}
@@ -29,4 +29,25 @@ public class Strings {
   public static String nullToEmpty(String string) {
     return string == null ? "" : string;
   }
+
+  /**
+   * @param value A string, or null.
+   * @return The string as a quoted JSON string literal, or {@code null}.
+   */
+  public static String toJsonString(String value) {
+    if (value == null) {
+      return "null";
+    }
+    StringBuilder buf = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        buf.append('\\').append(c);
+      } else if (c < 0x20) {
+        buf.append(String.format("\\u%04x", (int) c));
+      } else {
+        buf.append(c);
+      }
+    }
+    return buf.append('"').toString();
+  }
 }
@@ -0,0 +1,168 @@
+package org.robolectric.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records spans of time spent in Robolectric's startup phases, such as resolving dependencies, indexing jars,
+ * instrumenting classes and loading resources, and writes them in Chrome's
+ * <a href="https://github.com/catapult-project/catapult/wiki/Trace-Event-Format">trace event format</a>, for
+ * viewing in {@code chrome://tracing}.
+ *
+ * Tracing is enabled by setting {@code robolectric.trace} to the file to write the trace to when the JVM exits.
+ * Spans are recorded like this:
+ *
+ * <pre>
+ * Trace.Span span = Trace.begin("PackageResourceLoader.loadEverything", packageName);
+ * try {
+ *   ...
+ * } finally {
+ *   span.end();
+ * }
+ * </pre>
+ */
+public class Trace {
+
+  /**
+   * When set, a trace is recorded and written to this file when the JVM exits.
+   */
+  public static final String TRACE_FILE_PROPERTY = "robolectric.trace";
+
+  private static final Span NO_SPAN = new Span(null, null, null);
+  private static volatile Recorder recorder = Recorder.fromSystemProperties();
+
+  /**
+   * Start a span on the current thread.
+   *
+   * @param name The name of the phase.
+   * @param detail A description of what the phase is working on, e.g. a class or file name, or null.
+   * @return The span, which must be ended on the same thread.
+   */
+  public static Span begin(String name, Object detail) {
+    Recorder recorder = Trace.recorder;
+    return recorder == null ? NO_SPAN : new Span(recorder, name, detail == null ? null : detail.toString());
+  }
+
+  public static boolean isEnabled() {
+    return recorder != null;
+  }
+
+  static void setRecorder(Recorder recorder) {
+    Trace.recorder = recorder;
+  }
+
+  public static class Span {
+    private final Recorder recorder;
+    private final String name;
+    private final String detail;
+    private final long startNanos;
+
+    private Span(Recorder recorder, String name, String detail) {
+      this.recorder = recorder;
+      this.name = name;
+      this.detail = detail;
+      this.startNanos = recorder == null ? 0 : System.nanoTime();
+    }
+
+    public void end() {
+      if (recorder != null) {
+        recorder.record(this, System.nanoTime());
+      }
+    }
+  }
+
+  static class Recorder {
+    private final long originNanos = System.nanoTime();
+    private final ConcurrentLinkedQueue<String> events = new ConcurrentLinkedQueue<>();
+    private final Map<Long, String> threadNames = new LinkedHashMap<>();
+
+    static Recorder fromSystemProperties() {
+      String fileName = System.getProperty(TRACE_FILE_PROPERTY);
+      if (fileName == null) {
+        return null;
+      }
+
+      final File file = new File(fileName);
+      final Recorder recorder = new Recorder();
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        @Override public void run() {
+          try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            recorder.write(writer);
+          } catch (IOException e) {
+            Logger.error("Couldn't write trace to %s: %s", file, e);
+          }
+        }
+      }));
+      return recorder;
+    }
+
+    void record(Span span, long endNanos) {
+      Thread thread = Thread.currentThread();
+      synchronized (threadNames) {
+        if (!threadNames.containsKey(thread.getId())) {
+          threadNames.put(thread.getId(), thread.getName());
+        }
+      }
+
+      StringBuilder event = new StringBuilder("{\"name\": ").append(Strings.toJsonString(span.name))
+          .append(", \"cat\": \"robolectric\", \"ph\": \"X\", \"pid\": 1, \"tid\": ").append(thread.getId())
+          .append(", \"ts\": ").append(micros(span.startNanos - originNanos))
+          .append(", \"dur\": ").append(micros(endNanos - span.startNanos));
+      if (span.detail != null) {
+        event.append(", \"args\": {\"detail\": ").append(Strings.toJsonString(span.detail)).append("}");
+      }
+      events.add(event.append("}").toString());
+    }
+
+    void write(Writer out) {
+      List<String> allEvents = new ArrayList<>();
+      allEvents.add("{\"name\": \"process_name\", \"ph\": \"M\", \"pid\": 1, \"args\": {\"name\": \"Robolectric\"}}");
+      synchronized (threadNames) {
+        for (Map.Entry<Long, String> entry : threadNames.entrySet()) {
+          allEvents.add("{\"name\": \"thread_name\", \"ph\": \"M\", \"pid\": 1, \"tid\": " + entry.getKey()
+              + ", \"args\": {\"name\": " + Strings.toJsonString(entry.getValue()) + "}}");
+        }
+      }
+      allEvents.addAll(events);
+
+      PrintWriter writer = new PrintWriter(out);
+      writer.println("{\"traceEvents\": [");
+      for (int i = 0; i < allEvents.size(); i++) {
+        writer.println("  " + allEvents.get(i) + (i < allEvents.size() - 1 ? "," : ""));
+      }
+      writer.println("], \"displayTimeUnit\": \"ms\", \"otherData\": {"
+          + "\"robolectricVersion\": " + Strings.toJsonString(robolectricVersion())
+          + ", \"javaVersion\": " + Strings.toJsonString(System.getProperty("java.version")) + "}}");
+      writer.flush();
+    }
+
+    private static String robolectricVersion() {
+      try (InputStream is = Trace.class.getClassLoader().getResourceAsStream("robolectric-version.properties")) {
+        if (is == null) {
+          return null;
+        }
+        Properties properties = new Properties();
+        properties.load(is);
+        return properties.getProperty("robolectric.version");
+      } catch (IOException e) {
+        return null;
+      }
+    }
+
+    private static String micros(long nanos) {
+      return String.format(Locale.US, "%.3f", nanos / 1000.0);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package org.robolectric.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.ThreadFactory;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class DaemonThreadFactoryTest {
+  @Test
+  public void shouldCreateNumberedDaemonThreads() throws Exception {
+    ThreadFactory threadFactory = new DaemonThreadFactory("worker ");
+    Thread first = threadFactory.newThread(new Runnable() {
+      @Override public void run() {
+      }
+    });
+    Thread second = threadFactory.newThread(first);
+
+    assertEquals("worker 1", first.getName());
+    assertEquals("worker 2", second.getName());
+    assertTrue(first.isDaemon());
+    assertTrue(second.isDaemon());
+  }
+}
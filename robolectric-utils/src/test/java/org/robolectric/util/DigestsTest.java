@@ -0,0 +1,17 @@
+package org.robolectric.util;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class DigestsTest {
+  @Test
+  public void shouldHashToLowerCaseHex() throws Exception {
+    assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", Digests.sha1Hex("abc".getBytes("UTF-8")));
+  }
+
+  @Test
+  public void shouldWriteTwoDigitsPerByte() throws Exception {
+    assertEquals("000fa0ff", Digests.toHex(new byte[] {0x00, 0x0f, (byte) 0xa0, (byte) 0xff}));
+  }
+}
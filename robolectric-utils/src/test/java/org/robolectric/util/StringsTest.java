@@ -13,4 +13,10 @@ public class StringsTest {
     InputStream stream = new ByteArrayInputStream("some random string".getBytes());
     assertEquals("some random string", Strings.fromStream(stream));
   }
+
+  @Test
+  public void toJsonString_shouldQuoteAndEscape() throws Exception {
+    assertEquals("\"say \\\"hi\\\" \\\\ \\u000a\"", Strings.toJsonString("say \"hi\" \\ \n"));
+    assertEquals("null", Strings.toJsonString(null));
+  }
 }
@@ -0,0 +1,77 @@
+package org.robolectric.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TraceTest {
+  private static final Pattern SPAN = Pattern.compile(
+      "\\{\"name\": \"([^\"]+)\", \"cat\": \"robolectric\", \"ph\": \"X\", \"pid\": 1, \"tid\": (\\d+), \"ts\": ([0-9.]+), \"dur\": ([0-9.]+)");
+
+  @After
+  public void tearDown() throws Exception {
+    Trace.setRecorder(null);
+  }
+
+  @Test
+  public void whenDisabled_shouldNotRecordSpans() throws Exception {
+    Trace.setRecorder(null);
+    assertThat(Trace.isEnabled()).isFalse();
+    Trace.begin("nothing", null).end();
+  }
+
+  @Test
+  public void shouldWriteNestedSpansForEachThread() throws Exception {
+    Trace.Recorder recorder = new Trace.Recorder();
+    Trace.setRecorder(recorder);
+
+    Trace.Span outer = Trace.begin("outer", "some \"detail\"");
+    Trace.Span inner = Trace.begin("inner", null);
+    Thread.sleep(5);
+    inner.end();
+    outer.end();
+
+    Thread thread = new Thread(new Runnable() {
+      @Override public void run() {
+        Trace.begin("elsewhere", null).end();
+      }
+    }, "other thread");
+    thread.start();
+    thread.join();
+
+    StringWriter out = new StringWriter();
+    recorder.write(out);
+    String trace = out.toString();
+
+    assertThat(trace)
+        .startsWith("{\"traceEvents\": [\n")
+        .contains("{\"name\": \"process_name\", \"ph\": \"M\", \"pid\": 1, \"args\": {\"name\": \"Robolectric\"}}")
+        .contains("\"tid\": " + Thread.currentThread().getId() + ", \"args\": {\"name\": " + "\"" + Thread.currentThread().getName() + "\"}}")
+        .contains("\"tid\": " + thread.getId() + ", \"args\": {\"name\": \"other thread\"}}")
+        .contains("\"args\": {\"detail\": \"some \\\"detail\\\"\"}")
+        .contains("\"otherData\": {");
+
+    Matcher matcher = SPAN.matcher(trace);
+    assertThat(matcher.find()).isTrue();
+    assertThat(matcher.group(1)).isEqualTo("inner");
+    double innerStart = Double.parseDouble(matcher.group(3));
+    double innerDuration = Double.parseDouble(matcher.group(4));
+    assertThat(innerDuration).isGreaterThanOrEqualTo(5000);
+
+    assertThat(matcher.find()).isTrue();
+    assertThat(matcher.group(1)).isEqualTo("outer");
+    double outerStart = Double.parseDouble(matcher.group(3));
+    double outerDuration = Double.parseDouble(matcher.group(4));
+    assertThat(outerStart).isLessThanOrEqualTo(innerStart);
+    assertThat(outerStart + outerDuration).isGreaterThanOrEqualTo(innerStart + innerDuration);
+
+    assertThat(matcher.find()).isTrue();
+    assertThat(matcher.group(1)).isEqualTo("elsewhere");
+    assertThat(matcher.group(2)).isEqualTo(String.valueOf(thread.getId()));
+  }
+}
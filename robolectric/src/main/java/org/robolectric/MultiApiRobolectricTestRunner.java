@@ -2,24 +2,54 @@ package org.robolectric;
 
 import android.os.Build;
 
+import org.junit.runner.Description;
 import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
 import org.junit.runners.Suite;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
+import org.junit.runners.model.Statement;
 import org.robolectric.annotation.Config;
+import org.robolectric.internal.InstrumentingClassLoaderFactory;
 import org.robolectric.internal.SdkConfig;
 import org.robolectric.manifest.AndroidManifest;
+import org.robolectric.util.DaemonThreadFactory;
+import org.robolectric.util.ReflectionHelpers;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A test runner for Robolectric that will run a test against multiple API versions.
+ *
+ * Set {@link #THREADS_PROPERTY} to run the API versions concurrently. Each API version has its own
+ * {@link org.robolectric.internal.SdkEnvironment}, and runs all of its tests on one thread, which is its Android main
+ * thread. Environments set up on those threads are kept for them alone, as with
+ * {@link InstrumentingClassLoaderFactory#PARALLEL_PROPERTY}, rather than being shared with tests run on other threads.
+ * Results are reported in API order once each API version has finished, as if they had been run one after another.
  */
 public class MultiApiRobolectricTestRunner extends Suite {
 
+  /**
+   * The number of API versions to run at once. Defaults to 1, running them one after another on the calling thread.
+   * Runners with the same number of threads share them, and so the environments kept for them.
+   */
+  public static final String THREADS_PROPERTY = "robolectric.multiapi.threads";
+
+  private static final Map<Integer, ExecutorService> executorsBySize = new HashMap<>();
+
   protected static class TestRunnerForApiVersion extends RobolectricTestRunner {
 
     private final String name;
@@ -90,6 +120,7 @@ public class MultiApiRobolectricTestRunner extends Suite {
   }
 
   private final ArrayList<Runner> runners = new ArrayList<>();
+  private ConcurrentScheduler concurrentScheduler;
 
   /*
    * Only called reflectively. Do not use programmatically.
@@ -100,7 +131,13 @@ public class MultiApiRobolectricTestRunner extends Suite {
     for (Integer integer : getSupportedApis()) {
       runners.add(createTestRunner(integer));
     }
-   }
+
+    int threads = Integer.getInteger(THREADS_PROPERTY, 1);
+    if (threads > 1) {
+      concurrentScheduler = new ConcurrentScheduler(getExecutor(threads));
+      setScheduler(concurrentScheduler);
+    }
+  }
 
   protected Set<Integer> getSupportedApis() {
     return SdkConfig.getSupportedApis();
@@ -114,4 +151,229 @@ public class MultiApiRobolectricTestRunner extends Suite {
   protected List<Runner> getChildren() {
     return runners;
   }
+
+  @Override
+  protected Statement childrenInvoker(RunNotifier notifier) {
+    if (concurrentScheduler != null) {
+      concurrentScheduler.notifier = notifier;
+    }
+    return super.childrenInvoker(notifier);
+  }
+
+  @Override
+  protected void runChild(Runner runner, RunNotifier notifier) {
+    EventLog eventLog = EventLog.current.get();
+    if (eventLog == null) {
+      super.runChild(runner, notifier);
+    } else if (isStopRequested(notifier)) {
+      // as if the child's first test had been started on the stopped notifier
+      throw new StoppedByUserException();
+    } else {
+      super.runChild(runner, eventLog.recordFor(notifier));
+    }
+  }
+
+  /**
+   * @return True if {@link RunNotifier#pleaseStop()} has been called on {@code notifier}, which JUnit doesn't expose.
+   */
+  private static boolean isStopRequested(RunNotifier notifier) {
+    for (String fieldName : new String[] {"fPleaseStop", "pleaseStop"}) {
+      try {
+        return ReflectionHelpers.<Boolean>getField(notifier, fieldName);
+      } catch (RuntimeException e) {
+        // try the name used by other versions of JUnit
+      }
+    }
+    return false;
+  }
+
+  private static ExecutorService getExecutor(final int threads) {
+    synchronized (executorsBySize) {
+      ExecutorService executor = executorsBySize.get(threads);
+      if (executor == null) {
+        executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("Robolectric API runner " + threads + "-") {
+          @Override
+          public Thread newThread(final Runnable runnable) {
+            return super.newThread(new Runnable() {
+              @Override
+              public void run() {
+                InstrumentingClassLoaderFactory.confineEnvironmentsToThread();
+                runnable.run();
+              }
+            });
+          }
+        });
+        executorsBySize.put(threads, executor);
+      }
+      return executor;
+    }
+  }
+
+  /**
+   * Runs each child on the executor, then reports their results in order. Once the suite's notifier is asked to
+   * stop, no more children are started.
+   */
+  private static class ConcurrentScheduler implements RunnerScheduler {
+    private final ExecutorService executor;
+    private final List<Future<?>> futures = new ArrayList<>();
+    private final List<EventLog> eventLogs = new ArrayList<>();
+    private RunNotifier notifier;
+    private boolean stopped;
+
+    ConcurrentScheduler(ExecutorService executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void schedule(final Runnable childStatement) {
+      if (stopped || (notifier != null && isStopRequested(notifier))) {
+        stopped = true;
+        return;
+      }
+      final EventLog eventLog = new EventLog();
+      eventLogs.add(eventLog);
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          EventLog.current.set(eventLog);
+          try {
+            childStatement.run();
+          } finally {
+            EventLog.current.remove();
+          }
+        }
+      }));
+    }
+
+    /**
+     * Waits for every child, replays each one's events in order, then rethrows the first child's failure, if any.
+     */
+    @Override
+    public void finished() {
+      Throwable failure = null;
+      int finished = 0;
+      try {
+        for (; finished < futures.size(); finished++) {
+          try {
+            futures.get(finished).get();
+          } catch (ExecutionException e) {
+            if (failure == null) {
+              failure = e.getCause();
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        for (Future<?> future : futures.subList(finished, futures.size())) {
+          future.cancel(true);
+        }
+        if (failure == null) {
+          failure = e;
+        }
+      } finally {
+        // children which didn't finish may have recorded a start without a finish, so only replay those which did
+        for (int i = 0; i < finished; i++) {
+          eventLogs.get(i).replay();
+        }
+        futures.clear();
+        eventLogs.clear();
+      }
+
+      if (stopped && failure == null) {
+        failure = new StoppedByUserException();
+      }
+      stopped = false;
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      } else if (failure != null) {
+        throw new RuntimeException(failure);
+      }
+    }
+  }
+
+  /**
+   * Records the events fired while running a child, to be replayed to the suite's notifier. A request to stop the
+   * suite's notifier is passed on to the child's, so it stops before its next test.
+   */
+  private static class EventLog extends RunListener {
+    static final ThreadLocal<EventLog> current = new ThreadLocal<>();
+
+    private final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+    private RunNotifier target;
+    private RunNotifier notifier;
+
+    RunNotifier recordFor(RunNotifier target) {
+      this.target = target;
+      notifier = new RunNotifier();
+      notifier.addListener(this);
+      return notifier;
+    }
+
+    private void forwardStop() {
+      if (isStopRequested(target)) {
+        notifier.pleaseStop();
+      }
+    }
+
+    void replay() {
+      synchronized (events) {
+        for (Event event : events) {
+          event.replayTo(target);
+        }
+      }
+    }
+
+    @Override
+    public void testStarted(final Description description) {
+      forwardStop();
+      events.add(new Event() {
+        @Override void replayTo(RunNotifier notifier) {
+          notifier.fireTestStarted(description);
+        }
+      });
+    }
+
+    @Override
+    public void testFailure(final Failure failure) {
+      events.add(new Event() {
+        @Override void replayTo(RunNotifier notifier) {
+          notifier.fireTestFailure(failure);
+        }
+      });
+    }
+
+    @Override
+    public void testAssumptionFailure(final Failure failure) {
+      events.add(new Event() {
+        @Override void replayTo(RunNotifier notifier) {
+          notifier.fireTestAssumptionFailed(failure);
+        }
+      });
+    }
+
+    @Override
+    public void testIgnored(final Description description) {
+      events.add(new Event() {
+        @Override void replayTo(RunNotifier notifier) {
+          notifier.fireTestIgnored(description);
+        }
+      });
+    }
+
+    @Override
+    public void testFinished(final Description description) {
+      forwardStop();
+      events.add(new Event() {
+        @Override void replayTo(RunNotifier notifier) {
+          notifier.fireTestFinished(description);
+        }
+      });
+    }
+
+    private abstract static class Event {
+      abstract void replayTo(RunNotifier notifier);
+    }
+  }
 }
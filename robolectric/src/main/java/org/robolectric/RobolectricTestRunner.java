@@ -18,15 +18,22 @@ import org.junit.runners.model.Statement;
 import org.junit.runners.model.TestClass;
 import org.robolectric.annotation.*;
 import org.robolectric.internal.InstrumentingClassLoaderFactory;
+import org.robolectric.internal.daemon.ApplicationClassLoader;
 import org.robolectric.internal.bytecode.*;
 import org.robolectric.internal.dependency.CachedDependencyResolver;
 import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.internal.dependency.IndexedDependencyResolver;
 import org.robolectric.internal.dependency.LocalDependencyResolver;
 import org.robolectric.internal.dependency.MavenDependencyResolver;
 import org.robolectric.internal.ParallelUniverse;
 import org.robolectric.internal.ParallelUniverseInterface;
 import org.robolectric.internal.SdkConfig;
 import org.robolectric.internal.SdkEnvironment;
+import org.robolectric.internal.SdkEnvironmentPrefetcher;
+import org.robolectric.internal.timing.TestTimingListener;
+import org.robolectric.internal.timing.TestTimingReport;
+import org.robolectric.internal.timing.TestTimings;
+import org.robolectric.internal.timing.TestTimings.Phase;
 import org.robolectric.manifest.AndroidManifest;
 import org.robolectric.res.Fs;
 import org.robolectric.res.FsFile;
@@ -37,6 +44,8 @@ import org.robolectric.res.ResourcePath;
 import org.robolectric.res.RoutingResourceLoader;
 import org.robolectric.util.Logger;
 import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+import org.robolectric.util.Trace;
 import org.robolectric.util.Pair;
 
 import java.io.File;
@@ -44,6 +53,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
+import java.net.URL;
 import java.security.SecureRandom;
 import java.util.*;
 
@@ -66,6 +76,10 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   }
 
   private final HashSet<Class<?>> loadedTestClasses = new HashSet<>();
+  private final Map<Method, Config> configsByMethod = new HashMap<>();
+  private final Map<Class<?>, HelperTestRunner> helperTestRunnersByClass = new HashMap<>();
+  private final Map<Pair<Class<?>, String>, FrameworkMethod> bootstrappedMethods = new HashMap<>();
+  private Config globalConfig;
 
   /**
    * Creates a runner to run {@code testClass}. Looks in your working directory for your AndroidManifest.xml file
@@ -88,7 +102,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     }
   }
 
-  protected DependencyResolver getJarResolver() {
+  protected synchronized DependencyResolver getJarResolver() {
     if (dependencyResolver == null) {
       if (Boolean.getBoolean("robolectric.offline")) {
         String dependencyDir = System.getProperty("robolectric.dependency.dir", ".");
@@ -97,7 +111,10 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
         File cacheDir = new File(new File(System.getProperty("java.io.tmpdir")), "robolectric");
         cacheDir.mkdir();
 
-        if (cacheDir.exists()) {
+        if (cacheDir.exists() && Boolean.getBoolean(IndexedDependencyResolver.ENABLED_PROPERTY)) {
+          Logger.info("Dependency cache location: %s", cacheDir.getAbsolutePath());
+          dependencyResolver = new IndexedDependencyResolver(RoboSettings.getMavenRepositoryUrl(), new File(cacheDir, "artifacts"));
+        } else if (cacheDir.exists()) {
           Logger.info("Dependency cache location: %s", cacheDir.getAbsolutePath());
           dependencyResolver = new CachedDependencyResolver(new MavenDependencyResolver(), cacheDir, 60 * 60 * 24 * 1000);
         } else {
@@ -139,7 +156,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   public static void injectClassHandler(ClassLoader robolectricClassLoader, ClassHandler classHandler) {
     String className = RobolectricInternals.class.getName();
     Class<?> robolectricInternalsClass = ReflectionHelpers.loadClass(robolectricClassLoader, className);
-    ReflectionHelpers.setStaticField(robolectricInternalsClass, "classHandler", classHandler);
+    ReflectionHelpers.callStaticMethod(robolectricInternalsClass, "setClassHandler", ClassParameter.from(ClassHandler.class, classHandler));
   }
 
   @Override
@@ -148,19 +165,90 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
+        prepareSdkEnvironments();
         try {
-          statement.evaluate();
+          try {
+            statement.evaluate();
+          } finally {
+            tearDownReusableApplication();
+          }
           for (Class<?> testClass : loadedTestClasses) {
             invokeAfterClass(testClass);
           }
         } finally {
           afterClass();
           loadedTestClasses.clear();
+          // helper runners and bootstrapped methods keep their environments' class loaders alive; configs are only
+          // needed while the class runs
+          configsByMethod.clear();
+          helperTestRunnersByClass.clear();
+          bootstrappedMethods.clear();
+          globalConfig = null;
         }
       }
     };
   }
 
+  /**
+   * Get the SDKs needed by this runner's tests ready. With the indexed dependency resolver, all of their jars are
+   * resolved concurrently; with prefetching enabled, every environment apart from the first one, which is needed
+   * straight away, is then created in the background. Only SDKs named in a test's config are considered, so no
+   * manifests are read up front.
+   */
+  private void prepareSdkEnvironments() {
+    DependencyResolver jarResolver = getJarResolver();
+    boolean resolveUpFront = jarResolver instanceof IndexedDependencyResolver;
+    if (!resolveUpFront && !SdkEnvironmentPrefetcher.isEnabled()) {
+      return;
+    }
+
+    Set<SdkConfig> sdkConfigs = new LinkedHashSet<>();
+    SdkConfig firstSdkConfig = null;
+    boolean foundFirstTest = false;
+    try {
+      for (FrameworkMethod method : getChildren()) {
+        Config config = getConfig(method.getMethod());
+        if (shouldIgnore(method, config) || !shouldRunApiVersion(config)) {
+          continue;
+        }
+        SdkConfig sdkConfig = config.sdk().length == 0 ? null : new SdkConfig(pickSdkVersion(config, null));
+        if (!foundFirstTest) {
+          foundFirstTest = true;
+          firstSdkConfig = sdkConfig;
+        }
+        if (sdkConfig != null) {
+          sdkConfigs.add(sdkConfig);
+        }
+      }
+    } catch (RuntimeException e) {
+      // the test will fail with the same error
+      Logger.debug("Couldn't work out which SDKs to prepare: %s", e);
+      return;
+    }
+
+    if (resolveUpFront) {
+      try {
+        ((IndexedDependencyResolver) jarResolver).resolveSdkDependencies(sdkConfigs);
+      } catch (RuntimeException e) {
+        // the test which needs the missing dependency will fail with the same error
+        Logger.debug("Couldn't resolve SDK dependencies: %s", e);
+      }
+    }
+
+    sdkConfigs.remove(firstSdkConfig);
+    if (SdkEnvironmentPrefetcher.isEnabled() && !sdkConfigs.isEmpty()) {
+      new SdkEnvironmentPrefetcher(getInstrumentingClassLoaderFactory(), jarResolver)
+          .prefetch(sdkConfigs, getApplicationClasspath());
+    }
+  }
+
+  private InstrumentingClassLoaderFactory getInstrumentingClassLoaderFactory() {
+    if (instrumentingClassLoaderFactory == null) {
+      instrumentingClassLoaderFactory = new InstrumentingClassLoaderFactory(createClassLoaderConfig(), getJarResolver());
+    }
+    return instrumentingClassLoaderFactory;
+  }
+
   private static void invokeAfterClass(final Class<?> clazz) throws Throwable {
     final TestClass testClass = new TestClass(clazz);
     final List<FrameworkMethod> afters = testClass.getAnnotatedMethods(AfterClass.class);
@@ -179,23 +267,54 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       eachNotifier.fireTestIgnored();
     } else if(shouldRunApiVersion(config)) {
       eachNotifier.fireTestStarted();
+      TestTimingListener timingListener = getTestTimingListener();
+      Trace.Span span = Trace.begin("RobolectricTestRunner.runChild", description.getDisplayName());
+      testTimings = new TestTimings(description);
+      InstrumentingClassLoader classLoader = null;
+      long loadedClassCount = 0;
+      long instrumentedClassCount = 0;
       try {
+        testTimings.start(Phase.MANIFEST);
         AndroidManifest appManifest = getAppManifest(config);
-        if (instrumentingClassLoaderFactory == null) {
-          instrumentingClassLoaderFactory = new InstrumentingClassLoaderFactory(createClassLoaderConfig(), getJarResolver());
+        testTimings.stop();
+
+        testTimings.start(Phase.SDK_ENVIRONMENT);
+        SdkEnvironment sdkEnvironment = getInstrumentingClassLoaderFactory().getSdkEnvironment(new SdkConfig(pickSdkVersion(config, appManifest)), getApplicationClasspath());
+        testTimings.stop();
+
+        if (sdkEnvironment.getRobolectricClassLoader() instanceof InstrumentingClassLoader) {
+          classLoader = (InstrumentingClassLoader) sdkEnvironment.getRobolectricClassLoader();
+          loadedClassCount = classLoader.getLoadedClassCount();
+          instrumentedClassCount = classLoader.getInstrumentedClassCount();
         }
-        SdkEnvironment sdkEnvironment = instrumentingClassLoaderFactory.getSdkEnvironment(new SdkConfig(pickSdkVersion(config, appManifest)));
         methodBlock(method, config, appManifest, sdkEnvironment).evaluate();
       } catch (AssumptionViolatedException e) {
         eachNotifier.addFailedAssumption(e);
       } catch (Throwable e) {
         eachNotifier.addFailure(e);
       } finally {
+        testTimings.finish();
+        if (classLoader != null) {
+          testTimings.setClassCounts(classLoader.getLoadedClassCount() - loadedClassCount, classLoader.getInstrumentedClassCount() - instrumentedClassCount);
+        }
+        if (timingListener != null) {
+          timingListener.testTimed(testTimings);
+        }
+        testTimings = null;
+        span.end();
         eachNotifier.fireTestFinished();
       }
     }
   }
 
+  /**
+   * @return A listener to notify with the time each test spent in each phase, or null. By default, the
+   * {@link TestTimingReport} for {@link TestTimingReport#REPORT_FILE_PROPERTY}, if it's set.
+   */
+  protected TestTimingListener getTestTimingListener() {
+    return TestTimingReport.fromSystemProperties();
+  }
+
   protected boolean shouldRunApiVersion(Config config) {
     return true;
   }
@@ -204,7 +323,24 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return method.getAnnotation(Ignore.class) != null;
   }
 
+  List<FrameworkMethod> getTestMethods() {
+    return getChildren();
+  }
+
+  /**
+   * @return The SDK {@code method} will run against, or null if it will be ignored or not run by this runner.
+   */
+  SdkConfig getSdkConfig(FrameworkMethod method) {
+    Config config = getConfig(method.getMethod());
+    if (shouldIgnore(method, config) || !shouldRunApiVersion(config)) {
+      return null;
+    }
+    return new SdkConfig(pickSdkVersion(config, getAppManifest(config)));
+  }
+
   private ParallelUniverseInterface parallelUniverseInterface;
+  private ReusableApplicationKey reusableApplicationKey;
+  private TestTimings testTimings;
 
   Statement methodBlock(final FrameworkMethod method, final Config config, final AndroidManifest appManifest, final SdkEnvironment sdkEnvironment) {
     return new Statement() {
@@ -213,22 +349,19 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
         // Configure shadows *BEFORE* setting the ClassLoader. This is necessary because
         // creating the ShadowMap loads all ShadowProviders via ServiceLoader and this is
         // not available once we install the Robolectric class loader.
+        testTimings.start(Phase.CONFIGURE_SHADOWS);
         configureShadows(sdkEnvironment, config);
+        testTimings.stop();
 
         Thread.currentThread().setContextClassLoader(sdkEnvironment.getRobolectricClassLoader());
 
         Class bootstrappedTestClass = sdkEnvironment.bootstrappedClass(getTestClass().getJavaClass());
-        HelperTestRunner helperTestRunner = getHelperTestRunner(bootstrappedTestClass);
-
-        final Method bootstrappedMethod;
-        try {
-          //noinspection unchecked
-          bootstrappedMethod = bootstrappedTestClass.getMethod(method.getName());
-        } catch (NoSuchMethodException e) {
-          throw new RuntimeException(e);
-        }
+        HelperTestRunner helperTestRunner = getCachedHelperTestRunner(bootstrappedTestClass);
+        final FrameworkMethod bootstrappedFrameworkMethod = getBootstrappedMethod(bootstrappedTestClass, method.getName());
+        final Method bootstrappedMethod = bootstrappedFrameworkMethod.getMethod();
 
         parallelUniverseInterface = getHooksInterface(sdkEnvironment);
+        ReusableApplicationKey applicationKey = null;
         try {
           try {
             // Only invoke @BeforeClass once per class
@@ -237,33 +370,66 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
             }
             assureTestLifecycle(sdkEnvironment);
 
-            parallelUniverseInterface.resetStaticState(config);
             parallelUniverseInterface.setSdkConfig(sdkEnvironment.getSdkConfig());
-
             int sdkVersion = pickSdkVersion(config, appManifest);
-            ReflectionHelpers.setStaticField(sdkEnvironment.bootstrappedClass(Build.VERSION.class), "SDK_INT", sdkVersion);
-
+            testTimings.start(Phase.SYSTEM_RESOURCES);
             ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(getJarResolver());
-            setUpApplicationState(bootstrappedMethod, parallelUniverseInterface, systemResourceLoader, appManifest, config);
+            testTimings.stop();
+            if (reusesApplication(config)) {
+              applicationKey = new ReusableApplicationKey(sdkEnvironment, sdkVersion, appManifest, config);
+            }
+
+            boolean reusedApplication = false;
+            if (applicationKey != null && applicationKey.equals(reusableApplicationKey)) {
+              reusableApplicationKey = null;
+              testTimings.start(Phase.SET_UP_APPLICATION);
+              reusedApplication = parallelUniverseInterface.resetApplicationState(systemResourceLoader, appManifest, config);
+              testTimings.stop();
+            }
+            if (!reusedApplication) {
+              testTimings.start(Phase.TEAR_DOWN_APPLICATION);
+              tearDownReusableApplication();
+              testTimings.stop();
+              testTimings.start(Phase.RESET_STATIC_STATE);
+              parallelUniverseInterface.resetStaticState(config);
+              testTimings.stop();
+              ReflectionHelpers.setStaticField(sdkEnvironment.bootstrappedClass(Build.VERSION.class), "SDK_INT", sdkVersion);
+              testTimings.start(Phase.SET_UP_APPLICATION);
+              setUpApplicationState(bootstrappedMethod, parallelUniverseInterface, systemResourceLoader, appManifest, config);
+              testTimings.stop();
+            }
             testLifecycle.beforeTest(bootstrappedMethod);
           } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
           }
 
-          final Statement statement = helperTestRunner.methodBlock(new FrameworkMethod(bootstrappedMethod));
+          final Statement statement = helperTestRunner.methodBlock(bootstrappedFrameworkMethod);
 
           // todo: this try/finally probably isn't right -- should mimic RunAfters? [xw]
           try {
+            testTimings.start(Phase.TEST);
             statement.evaluate();
           } finally {
+            testTimings.finish();
             try {
-              parallelUniverseInterface.tearDownApplication();
+              if (applicationKey == null) {
+                testTimings.start(Phase.TEAR_DOWN_APPLICATION);
+                parallelUniverseInterface.tearDownApplication();
+              }
             } finally {
+              testTimings.finish();
+              testTimings.start(Phase.AFTER_TEST_RESET);
               try {
                 internalAfterTest(bootstrappedMethod);
               } finally {
-                parallelUniverseInterface.resetStaticState(config); // afterward too, so stuff doesn't hold on to classes?
+                if (applicationKey == null) {
+                  parallelUniverseInterface.resetStaticState(config); // afterward too, so stuff doesn't hold on to classes?
+                } else {
+                  reusableApplicationKey = applicationKey;
+                }
+                testTimings.finish();
+                Logger.debug("%s ran %d shadow resetters", bootstrappedMethod, parallelUniverseInterface.getResetterCount());
                 // todo: is this really needed?
                 Thread.currentThread().setContextClassLoader(RobolectricTestRunner.class.getClassLoader());
               }
@@ -276,6 +442,27 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     };
   }
 
+  /**
+   * Tear down the application kept for the next test by {@link Config#reuseApplication()}, if any.
+   */
+  private void tearDownReusableApplication() {
+    if (reusableApplicationKey == null) {
+      return;
+    }
+
+    SdkEnvironment sdkEnvironment = reusableApplicationKey.sdkEnvironment;
+    reusableApplicationKey = null;
+    ParallelUniverseInterface parallelUniverse = getHooksInterface(sdkEnvironment);
+    ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    Thread.currentThread().setContextClassLoader(sdkEnvironment.getRobolectricClassLoader());
+    try {
+      parallelUniverse.tearDownApplication();
+    } finally {
+      parallelUniverse.resetStaticState(null);
+      Thread.currentThread().setContextClassLoader(contextClassLoader);
+    }
+  }
+
   private void invokeBeforeClass(final Class clazz) throws Throwable {
     if (!loadedTestClasses.contains(clazz)) {
       loadedTestClasses.add(clazz);
@@ -288,6 +475,33 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     }
   }
 
+  private HelperTestRunner getCachedHelperTestRunner(Class<?> bootstrappedTestClass) {
+    HelperTestRunner helperTestRunner = helperTestRunnersByClass.get(bootstrappedTestClass);
+    if (helperTestRunner == null) {
+      helperTestRunner = getHelperTestRunner(bootstrappedTestClass);
+      helperTestRunnersByClass.put(bootstrappedTestClass, helperTestRunner);
+    }
+    return helperTestRunner;
+  }
+
+  private FrameworkMethod getBootstrappedMethod(Class<?> bootstrappedTestClass, String name) {
+    Pair<Class<?>, String> key = new Pair<Class<?>, String>(bootstrappedTestClass, name);
+    FrameworkMethod bootstrappedMethod = bootstrappedMethods.get(key);
+    if (bootstrappedMethod == null) {
+      try {
+        bootstrappedMethod = new FrameworkMethod(bootstrappedTestClass.getMethod(name));
+      } catch (NoSuchMethodException e) {
+        throw new RuntimeException(e);
+      }
+      bootstrappedMethods.put(key, bootstrappedMethod);
+    }
+    return bootstrappedMethod;
+  }
+
+  /**
+   * Create the runner which runs tests in {@code bootstrappedTestClass}. It's called once per bootstrapped class, and
+   * the runner is reused for each of its tests.
+   */
   protected HelperTestRunner getHelperTestRunner(Class bootstrappedTestClass) {
     try {
       return new HelperTestRunner(bootstrappedTestClass);
@@ -366,13 +580,33 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return Fs.currentDirectory();
   }
 
+  /**
+   * @return The config for {@code method}, merged from the defaults, {@code robolectric.properties}, and the
+   * {@link Config} annotations on its class hierarchy and itself. It's computed once per method.
+   */
   public Config getConfig(Method method) {
-    Config config = DEFAULT_CONFIG;
+    Config config = configsByMethod.get(method);
+    if (config == null) {
+      config = buildConfig(method);
+      configsByMethod.put(method, config);
+    }
+    return config;
+  }
 
-    Config globalConfig = Config.Implementation.fromProperties(getConfigProperties());
-    if (globalConfig != null) {
-      config = new Config.Implementation(config, globalConfig);
+  private Config getGlobalConfig() {
+    if (globalConfig == null) {
+      Config config = DEFAULT_CONFIG;
+      Config propertiesConfig = Config.Implementation.fromProperties(getConfigProperties());
+      if (propertiesConfig != null) {
+        config = new Config.Implementation(config, propertiesConfig);
+      }
+      globalConfig = config;
     }
+    return globalConfig;
+  }
+
+  private Config buildConfig(Method method) {
+    Config config = getGlobalConfig();
 
     Config methodClassConfig = method.getDeclaringClass().getAnnotation(Config.class);
     if (methodClassConfig != null) {
@@ -402,8 +636,30 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return config;
   }
 
+  /**
+   * @return The classpath of the {@link ApplicationClassLoader} which loaded the test class, if any, whose application
+   * and test classes this runner's class loader can't see.
+   */
+  protected URL[] getApplicationClasspath() {
+    ClassLoader testClassLoader = getTestClass().getJavaClass().getClassLoader();
+    return testClassLoader instanceof ApplicationClassLoader ? ((ApplicationClassLoader) testClassLoader).getURLs() : new URL[0];
+  }
+
+  /**
+   * Forget the application manifests and resources loaded for earlier tests, e.g. because they may have changed
+   * since. System resources are kept.
+   */
+  public static void releaseApplicationResources() {
+    synchronized (appManifestsByFile) {
+      appManifestsByFile.clear();
+    }
+    synchronized (resourceLoadersByManifestAndConfig) {
+      resourceLoadersByManifestAndConfig.clear();
+    }
+  }
+
   protected Properties getConfigProperties() {
-    ClassLoader classLoader = getClass().getClassLoader();
+    ClassLoader classLoader = getApplicationClasspath().length == 0 ? getClass().getClassLoader() : getTestClass().getJavaClass().getClassLoader();
     try (InputStream resourceAsStream = classLoader.getResourceAsStream(CONFIG_PROPERTIES)) {
       if (resourceAsStream == null) return null;
       Properties properties = new Properties();
@@ -424,6 +680,11 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       }
     }
 
+    ClassLoader robolectricClassLoader = sdkEnvironment.getRobolectricClassLoader();
+    if (robolectricClassLoader instanceof InstrumentingClassLoader) {
+      ((InstrumentingClassLoader) robolectricClassLoader).interceptAllMethodsOf(shadowMap.getShadowedClassNames());
+    }
+
     ClassHandler classHandler = getClassHandler(sdkEnvironment, shadowMap);
     injectClassHandler(sdkEnvironment.getRobolectricClassLoader(), classHandler);
   }
@@ -434,6 +695,11 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       classHandler = sdkEnvironment.classHandlersByShadowMap.get(shadowMap);
       if (classHandler == null) {
         classHandler = createClassHandler(shadowMap, sdkEnvironment.getSdkConfig());
+        PersistentPlanCache planCache = PersistentPlanCache.fromSystemProperties(sdkEnvironment.getSdkConfig(), shadowMap);
+        if (planCache != null && classHandler instanceof ShadowWrangler) {
+          planCache.attach((ShadowWrangler) classHandler);
+        }
+        sdkEnvironment.classHandlersByShadowMap.put(shadowMap, classHandler);
       }
     }
     return classHandler;
@@ -455,6 +721,13 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     }
   }
 
+  private static boolean reusesApplication(Config config) {
+    if (config.reuseApplication().length > 1) {
+      throw new IllegalArgumentException("RobolectricTestRunner does not support multiple values for @Config.reuseApplication");
+    }
+    return config.reuseApplication().length == 1 && config.reuseApplication()[0];
+  }
+
   private ParallelUniverseInterface getHooksInterface(SdkEnvironment sdkEnvironment) {
     ClassLoader robolectricClassLoader = sdkEnvironment.getRobolectricClassLoader();
     try {
@@ -477,7 +750,9 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
   @TestOnly
   boolean allStateIsCleared() {
-    return testLifecycle == null;
+    return testLifecycle == null && reusableApplicationKey == null && loadedTestClasses.isEmpty()
+        && configsByMethod.isEmpty() && helperTestRunnersByClass.isEmpty() && bootstrappedMethods.isEmpty()
+        && globalConfig == null;
   }
 
   @Override
@@ -487,12 +762,23 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
   public final ResourceLoader getAppResourceLoader(SdkConfig sdkConfig, ResourceLoader systemResourceLoader, final AndroidManifest appManifest) {
     Pair<AndroidManifest, SdkConfig> androidManifestSdkConfigPair = new Pair<>(appManifest, sdkConfig);
-    ResourceLoader resourceLoader = resourceLoadersByManifestAndConfig.get(androidManifestSdkConfigPair);
-    if (resourceLoader == null) {
-      resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
-      resourceLoadersByManifestAndConfig.put(androidManifestSdkConfigPair, resourceLoader);
+    if (testTimings != null) {
+      testTimings.start(Phase.APP_RESOURCES);
+    }
+    try {
+      synchronized (resourceLoadersByManifestAndConfig) {
+        ResourceLoader resourceLoader = resourceLoadersByManifestAndConfig.get(androidManifestSdkConfigPair);
+        if (resourceLoader == null) {
+          resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
+          resourceLoadersByManifestAndConfig.put(androidManifestSdkConfigPair, resourceLoader);
+        }
+        return resourceLoader;
+      }
+    } finally {
+      if (testTimings != null) {
+        testTimings.stop();
+      }
     }
-    return resourceLoader;
   }
 
   protected ResourceLoader createAppResourceLoader(ResourceLoader systemResourceLoader, AndroidManifest appManifest) {
@@ -598,6 +884,54 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     }
   }
 
+  /**
+   * Identifies the application kept between tests by {@link Config#reuseApplication()}. A test may only reuse an
+   * application set up for an equal key.
+   */
+  private static class ReusableApplicationKey {
+    private final SdkEnvironment sdkEnvironment;
+    private final int sdkVersion;
+    private final AndroidManifest appManifest;
+    private final String qualifiers;
+    private final Class<?> applicationClass;
+    private final Set<Class<?>> shadows;
+
+    public ReusableApplicationKey(SdkEnvironment sdkEnvironment, int sdkVersion, AndroidManifest appManifest, Config config) {
+      this.sdkEnvironment = sdkEnvironment;
+      this.sdkVersion = sdkVersion;
+      this.appManifest = appManifest;
+      this.qualifiers = config.qualifiers();
+      this.applicationClass = config.application();
+      this.shadows = new HashSet<>(Arrays.asList(config.shadows()));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      ReusableApplicationKey that = (ReusableApplicationKey) o;
+
+      return sdkEnvironment == that.sdkEnvironment
+          && sdkVersion == that.sdkVersion
+          && (appManifest == null ? that.appManifest == null : appManifest.equals(that.appManifest))
+          && qualifiers.equals(that.qualifiers)
+          && applicationClass.equals(that.applicationClass)
+          && shadows.equals(that.shadows);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = System.identityHashCode(sdkEnvironment);
+      result = 31 * result + sdkVersion;
+      result = 31 * result + (appManifest == null ? 0 : appManifest.hashCode());
+      result = 31 * result + qualifiers.hashCode();
+      result = 31 * result + applicationClass.hashCode();
+      result = 31 * result + shadows.hashCode();
+      return result;
+    }
+  }
+
   private static <A extends Annotation> A defaultsFor(Class<A> annotation) {
     return annotation.cast(
         Proxy.newProxyInstance(annotation.getClassLoader(), new Class[] { annotation },
@@ -0,0 +1,343 @@
+package org.robolectric;
+
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.Suite;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.InstrumentingClassLoaderFactory;
+import org.robolectric.internal.InstrumentingClassLoaderFactory.EnvironmentKey;
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.util.Logger;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A suite which runs its {@link Suite.SuiteClasses} with their tests grouped by the environment they run in: tests
+ * using the same {@link SdkConfig}, {@link InstrumentationConfiguration} and {@link Config#shadows()} are run
+ * together, and each environment is used by all of its tests before the suite moves on to the next, so environments
+ * aren't evicted and rebuilt when a suite switches between many SDKs. Run it like any other test class, e.g. from
+ * Surefire:
+ *
+ * <pre>
+ * &#64;RunWith(SdkGroupingSuite.class)
+ * &#64;Suite.SuiteClasses({FooTest.class, BarTest.class})
+ * public class AllTests {
+ * }
+ * </pre>
+ *
+ * Classes run by a {@link RobolectricTestRunner}, {@link MultiApiRobolectricTestRunner} or
+ * {@link ParameterizedRobolectricTestRunner} are split up by environment; other classes are run first, as they are.
+ * Since each SDK loads its own copy of a test class, {@code @BeforeClass} and {@code @AfterClass} methods already run
+ * once for each environment a class uses.
+ */
+public class SdkGroupingSuite extends Suite {
+  private final Grouping grouping;
+
+  /*
+   * Only called reflectively. Do not use programmatically.
+   */
+  public SdkGroupingSuite(Class<?> klass, RunnerBuilder builder) throws InitializationError {
+    this(klass, new Grouping(builder, getSuiteClasses(klass)));
+  }
+
+  private SdkGroupingSuite(Class<?> klass, Grouping grouping) throws InitializationError {
+    super(klass, grouping.runners);
+    this.grouping = grouping;
+    Logger.info("Grouped tests by environment, avoiding %d of %d environment constructions",
+        getAvoidedEnvironmentConstructions(), grouping.constructionsBefore);
+  }
+
+  /**
+   * @return How many fewer environments the grouped tests need to construct than they would in their original order.
+   */
+  public int getAvoidedEnvironmentConstructions() {
+    return grouping.constructionsBefore - grouping.constructionsAfter;
+  }
+
+  private static Class<?>[] getSuiteClasses(Class<?> klass) throws InitializationError {
+    SuiteClasses annotation = klass.getAnnotation(SuiteClasses.class);
+    if (annotation == null) {
+      throw new InitializationError(String.format("class '%s' must have a SuiteClasses annotation", klass.getName()));
+    }
+    return annotation.value();
+  }
+
+  /**
+   * Counts the environments a sequence of tests constructs, given the cache in {@link InstrumentingClassLoaderFactory}.
+   */
+  static int countEnvironmentConstructions(List<EnvironmentKey> environments) {
+    Map<EnvironmentKey, Boolean> cache = InstrumentingClassLoaderFactory.newEnvironmentCache();
+
+    int constructions = 0;
+    for (EnvironmentKey environment : environments) {
+      // like InstrumentingClassLoaderFactory.getSdkEnvironment(), only put an environment when it's missing
+      if (!cache.containsKey(environment)) {
+        cache.put(environment, true);
+        constructions++;
+      }
+    }
+    return constructions;
+  }
+
+  private static class Grouping {
+    final List<Runner> runners = new ArrayList<>();
+    int constructionsBefore;
+    int constructionsAfter;
+
+    Grouping(RunnerBuilder builder, Class<?>[] classes) {
+      List<Leaf> leaves = new ArrayList<>();
+      List<EnvironmentKey> originalOrder = new ArrayList<>();
+      Set<GroupKey> firstUses = new LinkedHashSet<>();
+      for (Class<?> testClass : classes) {
+        Runner runner = builder.safeRunnerForClass(testClass);
+        List<RobolectricTestRunner> robolectricRunners = robolectricRunnersOf(runner);
+        if (robolectricRunners == null) {
+          runners.add(runner);
+          continue;
+        }
+        for (int i = 0; i < robolectricRunners.size(); i++) {
+          Leaf leaf = new Leaf(testClass, runner == robolectricRunners.get(i) ? -1 : i, robolectricRunners.get(i));
+          firstUses.addAll(leaf.groups.keySet());
+          originalOrder.addAll(leaf.environmentsInOriginalOrder);
+          leaves.add(leaf);
+        }
+      }
+
+      List<GroupKey> groups = new ArrayList<>(firstUses);
+      Collections.sort(groups, new GroupOrder(groups));
+
+      List<EnvironmentKey> groupedOrder = new ArrayList<>();
+      for (Leaf leaf : leaves) {
+        if (leaf.groups.isEmpty()) {
+          runners.add(leaf.runnerFor(builder, null));
+        }
+      }
+      for (GroupKey group : groups) {
+        for (Leaf leaf : leaves) {
+          List<Description> tests = leaf.groups.get(group);
+          if (tests != null) {
+            runners.add(leaf.runnerFor(builder, group));
+            for (int i = 0; i < tests.size(); i++) {
+              groupedOrder.add(group.environment);
+            }
+          }
+        }
+      }
+
+      constructionsBefore = countEnvironmentConstructions(originalOrder);
+      constructionsAfter = countEnvironmentConstructions(groupedOrder);
+    }
+
+    private static List<RobolectricTestRunner> robolectricRunnersOf(Runner runner) {
+      if (runner instanceof RobolectricTestRunner) {
+        return Collections.singletonList((RobolectricTestRunner) runner);
+      }
+
+      List<Runner> children;
+      if (runner instanceof MultiApiRobolectricTestRunner) {
+        children = ((MultiApiRobolectricTestRunner) runner).getChildren();
+      } else if (runner instanceof ParameterizedRobolectricTestRunner) {
+        children = ((ParameterizedRobolectricTestRunner) runner).getChildren();
+      } else {
+        return null;
+      }
+
+      List<RobolectricTestRunner> robolectricRunners = new ArrayList<>();
+      for (Runner child : children) {
+        if (!(child instanceof RobolectricTestRunner)) {
+          return null;
+        }
+        robolectricRunners.add((RobolectricTestRunner) child);
+      }
+      return robolectricRunners;
+    }
+  }
+
+  /**
+   * A {@link RobolectricTestRunner} for a suite class, or one of the children of the runner for a suite class, with
+   * its tests grouped by environment.
+   */
+  private static class Leaf {
+    final Class<?> testClass;
+    final int index;
+    final RobolectricTestRunner runner;
+    final Map<GroupKey, List<Description>> groups = new LinkedHashMap<>();
+    // Tests which won't use an environment, because they're ignored or skipped, are run with the first group
+    final List<Description> unassigned = new ArrayList<>();
+    final List<EnvironmentKey> environmentsInOriginalOrder = new ArrayList<>();
+    private boolean used;
+
+    Leaf(Class<?> testClass, int index, RobolectricTestRunner runner) {
+      this.testClass = testClass;
+      this.index = index;
+      this.runner = runner;
+
+      InstrumentationConfiguration instrumentationConfig = runner.createClassLoaderConfig();
+      URL[] applicationClasspath = runner.getApplicationClasspath();
+      List<FrameworkMethod> methods = runner.getTestMethods();
+      List<Description> descriptions = runner.getDescription().getChildren();
+      for (int i = 0; i < methods.size(); i++) {
+        FrameworkMethod method = methods.get(i);
+        SdkConfig sdkConfig = runner.getSdkConfig(method);
+        if (sdkConfig == null) {
+          unassigned.add(descriptions.get(i));
+          continue;
+        }
+
+        EnvironmentKey environment = new EnvironmentKey(instrumentationConfig, sdkConfig, applicationClasspath);
+        GroupKey group = new GroupKey(environment, shadowNames(runner.getConfig(method.getMethod())));
+        List<Description> tests = groups.get(group);
+        if (tests == null) {
+          tests = new ArrayList<>();
+          groups.put(group, tests);
+        }
+        tests.add(descriptions.get(i));
+        environmentsInOriginalOrder.add(environment);
+      }
+    }
+
+    /**
+     * @return A runner for the tests in {@code group}, or for all of the tests if none of them use an environment. The
+     * original runner is used for the first group; runners for other groups are created afresh and filtered to their
+     * tests.
+     */
+    Runner runnerFor(RunnerBuilder builder, GroupKey group) {
+      List<Description> tests = new ArrayList<>();
+      Runner groupRunner;
+      if (!used) {
+        used = true;
+        groupRunner = runner;
+        tests.addAll(unassigned);
+      } else {
+        Runner classRunner = builder.safeRunnerForClass(testClass);
+        groupRunner = index == -1 ? classRunner : Grouping.robolectricRunnersOf(classRunner).get(index);
+      }
+
+      if (groups.size() > 1) {
+        tests.addAll(groups.get(group));
+        try {
+          ((RobolectricTestRunner) groupRunner).filter(new OnlyTests(tests));
+        } catch (NoTestsRemainException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return index == -1 ? groupRunner : new NamedRunner(testClass.getName() + groupRunner.getDescription().getDisplayName(), groupRunner);
+    }
+
+    private static List<String> shadowNames(Config config) {
+      List<String> names = new ArrayList<>();
+      for (Class<?> shadow : config.shadows()) {
+        names.add(shadow.getName());
+      }
+      Collections.sort(names);
+      return names;
+    }
+  }
+
+  private static class GroupKey {
+    final EnvironmentKey environment;
+    final List<String> shadows;
+
+    GroupKey(EnvironmentKey environment, List<String> shadows) {
+      this.environment = environment;
+      this.shadows = shadows;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof GroupKey)) return false;
+      GroupKey that = (GroupKey) o;
+      return environment.equals(that.environment) && shadows.equals(that.shadows);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * environment.hashCode() + shadows.hashCode();
+    }
+  }
+
+  /**
+   * Orders groups by when their environment was first used, then by when the group was first used.
+   */
+  private static class GroupOrder implements java.util.Comparator<GroupKey> {
+    private final List<GroupKey> firstUses;
+    private final List<EnvironmentKey> environmentFirstUses = new ArrayList<>();
+
+    GroupOrder(List<GroupKey> firstUses) {
+      this.firstUses = new ArrayList<>(firstUses);
+      Set<EnvironmentKey> seen = new HashSet<>();
+      for (GroupKey group : firstUses) {
+        if (seen.add(group.environment)) {
+          environmentFirstUses.add(group.environment);
+        }
+      }
+    }
+
+    @Override
+    public int compare(GroupKey a, GroupKey b) {
+      int byEnvironment = environmentFirstUses.indexOf(a.environment) - environmentFirstUses.indexOf(b.environment);
+      return byEnvironment != 0 ? byEnvironment : firstUses.indexOf(a) - firstUses.indexOf(b);
+    }
+  }
+
+  private static class OnlyTests extends Filter {
+    private final Set<Description> tests;
+
+    OnlyTests(List<Description> tests) {
+      this.tests = new HashSet<>(tests);
+    }
+
+    @Override
+    public boolean shouldRun(Description description) {
+      return !description.isTest() || tests.contains(description);
+    }
+
+    @Override
+    public String describe() {
+      return "only " + tests;
+    }
+  }
+
+  /**
+   * Names the runner for one of a class's SDKs or parameters after the class, since it's no longer nested under the
+   * runner for the class.
+   */
+  private static class NamedRunner extends Runner {
+    private final Description description;
+    private final Runner runner;
+
+    NamedRunner(String name, Runner runner) {
+      this.runner = runner;
+      this.description = Description.createSuiteDescription(name);
+      for (Description child : runner.getDescription().getChildren()) {
+        description.addChild(child);
+      }
+    }
+
+    @Override
+    public Description getDescription() {
+      return description;
+    }
+
+    @Override
+    public void run(RunNotifier notifier) {
+      runner.run(notifier);
+    }
+  }
+}
@@ -1,46 +1,362 @@
 package org.robolectric.internal;
 
+import org.robolectric.internal.bytecode.AheadOfTimeInstrumenter;
 import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.InstrumentedClassCache;
 import org.robolectric.internal.bytecode.InstrumentingClassLoader;
 import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.util.Logger;
 import org.robolectric.util.Pair;
 
+import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class InstrumentingClassLoaderFactory {
 
+  /**
+   * When set, instrumented classes are cached in this directory and reused by later runs.
+   */
+  public static final String CLASS_CACHE_DIR_PROPERTY = "robolectric.classcache.dir";
+
+  /**
+   * When set, android-all classes are loaded from jars in this directory written by {@link AheadOfTimeInstrumenter},
+   * provided they were built with the same configuration.
+   */
+  public static final String PREINSTRUMENTED_DIR_PROPERTY = "robolectric.preinstrumented.dir";
+
+  /**
+   * When set to true, each thread gets its own {@link SdkEnvironment}s, so test classes can be run concurrently,
+   * e.g. by JUnit's {@link org.junit.experimental.ParallelComputer#classes()} or Surefire's {@code parallel=classes}.
+   * Environments for the same configuration share instrumented class bytes and system resources.
+   */
+  public static final String PARALLEL_PROPERTY = "robolectric.parallel";
+
   // Typical test suites will use a single test runner, therefore have a maximum of one SdkEnvironment per API level.
   private static final int CACHE_SIZE = SdkConfig.getSupportedApis().size();
 
-  // Simple LRU Cache. SdkEnvironments are unique across InstrumentingClassloaderConfig and SdkConfig
-  private static final LinkedHashMap<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment> sdkToEnvironment = new LinkedHashMap<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment>() {
+  // SdkEnvironments are unique across InstrumentingClassloaderConfig and SdkConfig. Each is created outside the lock
+  // by the first thread to ask for it, and other threads asking for the same one wait for its future.
+  private static final Map<EnvironmentKey, FutureTask<SdkEnvironment>> sdkToEnvironment = newEnvironmentCache();
+
+  // With PARALLEL_PROPERTY set, each thread has its own cache, and environments share state across threads.
+  private static final ThreadLocal<Map<EnvironmentKey, SdkEnvironment>> sdkToEnvironmentForThread = new ThreadLocal<Map<EnvironmentKey, SdkEnvironment>>() {
     @Override
-    protected boolean removeEldestEntry(Map.Entry<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment> eldest) {
+    protected Map<EnvironmentKey, SdkEnvironment> initialValue() {
+      return newEnvironmentCache();
+    }
+  };
+  // Bounded like the environment caches: the shared ResourceLoader refers to the R classes, and so the class loader,
+  // of the environment which created it, which therefore outlives that environment until its entry is evicted.
+  private static final LinkedHashMap<Pair<InstrumentationConfiguration, SdkConfig>, SharedState> sharedStateByConfig = new LinkedHashMap<Pair<InstrumentationConfiguration, SdkConfig>, SharedState>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Pair<InstrumentationConfiguration, SdkConfig>, SharedState> eldest) {
       return size() > CACHE_SIZE;
     }
   };
 
+  // One per cache directory, however many environments use it, so their hit counts are reported together.
+  private static final Map<File, InstrumentedClassCache> classCachesByDir = new LinkedHashMap<>();
+  private static boolean reportsAtShutdown;
+  private static volatile boolean usedSelectiveInstrumentation;
+
+  // Threads which run tests alongside others, whose environments mustn't be shared; see confineEnvironmentsToThread()
+  private static final ThreadLocal<Boolean> confinedThread = new ThreadLocal<>();
+
   private final InstrumentationConfiguration instrumentationConfig;
   private final DependencyResolver dependencyResolver;
+  private final boolean parallel;
+
+  /**
+   * @return An empty map with the eviction policy of the environment caches: once it holds more than one entry per
+   * supported API level, the entry inserted first is removed.
+   */
+  public static <V> Map<EnvironmentKey, V> newEnvironmentCache() {
+    return new LinkedHashMap<EnvironmentKey, V>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<EnvironmentKey, V> eldest) {
+        return size() > CACHE_SIZE;
+      }
+    };
+  }
+
+  /**
+   * Give the calling thread its own environments from now on, as if {@link #PARALLEL_PROPERTY} were set, so that
+   * environments set up on it aren't used by tests on other threads, e.g. because its classes recorded it as their
+   * main thread. For threads which run tests concurrently with others.
+   */
+  public static void confineEnvironmentsToThread() {
+    confinedThread.set(true);
+  }
 
   public InstrumentingClassLoaderFactory(InstrumentationConfiguration instrumentationConfig, DependencyResolver dependencyResolver) {
     this.instrumentationConfig = instrumentationConfig;
     this.dependencyResolver = dependencyResolver;
+    this.parallel = Boolean.getBoolean(PARALLEL_PROPERTY);
+  }
+
+  public SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig) {
+    return getSdkEnvironment(sdkConfig, new URL[0]);
+  }
+
+  /**
+   * @param sdkConfig The SDK to load.
+   * @param applicationClasspath Classpath for application and test classes which the parent class loader can't see,
+   *                             e.g. for tests run by a {@link org.robolectric.internal.daemon.TestDaemon}.
+   *                             Environments with such a classpath share instrumented SDK classes and system
+   *                             resources with earlier environments for the same configuration.
+   * @return The environment.
+   */
+  public SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig, URL[] applicationClasspath) {
+    EnvironmentKey key = new EnvironmentKey(instrumentationConfig, sdkConfig, applicationClasspath);
+
+    if (usesThreadEnvironments()) {
+      Map<EnvironmentKey, SdkEnvironment> environments = sdkToEnvironmentForThread.get();
+      SdkEnvironment sdkEnvironment = environments.get(key);
+      if (sdkEnvironment == null) {
+        sdkEnvironment = createSharingSdkEnvironment(sdkConfig, applicationClasspath);
+        environments.put(key, sdkEnvironment);
+      }
+      return sdkEnvironment;
+    }
+
+    FutureTask<SdkEnvironment> future;
+    boolean created = false;
+    synchronized (sdkToEnvironment) {
+      future = sdkToEnvironment.get(key);
+      if (future == null) {
+        future = new FutureTask<>(newEnvironmentCreator(sdkConfig, applicationClasspath));
+        sdkToEnvironment.put(key, future);
+        created = true;
+      }
+    }
+    if (created) {
+      future.run();
+    }
+
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      synchronized (sdkToEnvironment) {
+        if (sdkToEnvironment.get(key) == future) {
+          sdkToEnvironment.remove(key);
+        }
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Callable<SdkEnvironment> newEnvironmentCreator(final SdkConfig sdkConfig, final URL[] applicationClasspath) {
+    return new Callable<SdkEnvironment>() {
+      @Override
+      public SdkEnvironment call() {
+        return applicationClasspath.length == 0
+            ? createSdkEnvironment(sdkConfig, applicationClasspath, null, null)
+            : createSharingSdkEnvironment(sdkConfig, applicationClasspath);
+      }
+    };
+  }
+
+  /**
+   * @return True if {@link #getSdkEnvironment(SdkConfig, URL[])} would return an existing environment, or one
+   * another thread is creating, for the calling thread rather than creating one.
+   */
+  public boolean hasSdkEnvironment(SdkConfig sdkConfig, URL[] applicationClasspath) {
+    EnvironmentKey key = new EnvironmentKey(instrumentationConfig, sdkConfig, applicationClasspath);
+    if (usesThreadEnvironments()) {
+      return sdkToEnvironmentForThread.get().containsKey(key);
+    }
+    synchronized (sdkToEnvironment) {
+      return sdkToEnvironment.containsKey(key);
+    }
+  }
+
+  private boolean usesThreadEnvironments() {
+    return parallel || confinedThread.get() != null;
+  }
+
+  /**
+   * Discard the environments which load application classes from any of the given classpath entries, e.g. because
+   * they've changed. Environments created on other threads with {@link #PARALLEL_PROPERTY} set aren't affected.
+   *
+   * @param applicationClasspathEntries Application classpath entries.
+   * @return The number of environments discarded.
+   */
+  public static int releaseEnvironmentsFor(Collection<URL> applicationClasspathEntries) {
+    int released = releaseEnvironmentsFor(sdkToEnvironmentForThread.get(), applicationClasspathEntries);
+    synchronized (sdkToEnvironment) {
+      released += releaseEnvironmentsFor(sdkToEnvironment, applicationClasspathEntries);
+    }
+    return released;
   }
 
-  public synchronized SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig) {
+  private static int releaseEnvironmentsFor(Map<EnvironmentKey, ?> environments, Collection<URL> applicationClasspathEntries) {
+    int released = 0;
+    List<String> entries = toStrings(applicationClasspathEntries.toArray(new URL[applicationClasspathEntries.size()]));
+    for (Iterator<EnvironmentKey> iterator = environments.keySet().iterator(); iterator.hasNext(); ) {
+      if (!Collections.disjoint(iterator.next().applicationClasspath, entries)) {
+        iterator.remove();
+        released++;
+      }
+    }
+    return released;
+  }
 
+  private SdkEnvironment createSharingSdkEnvironment(SdkConfig sdkConfig, URL[] applicationClasspath) {
     Pair<InstrumentationConfiguration, SdkConfig> key = Pair.create(instrumentationConfig, sdkConfig);
+    SharedState sharedState;
+    synchronized (sharedStateByConfig) {
+      sharedState = sharedStateByConfig.get(key);
+      if (sharedState == null) {
+        sharedState = new SharedState();
+        sharedStateByConfig.put(key, sharedState);
+      }
+    }
+
+    return createSdkEnvironment(sdkConfig, applicationClasspath, sharedState.classBytes, sharedState.systemResources);
+  }
+
+  private SdkEnvironment createSdkEnvironment(SdkConfig sdkConfig, URL[] applicationClasspath, ConcurrentMap<String, byte[]> sharedClassBytes, SdkEnvironment.SharedSystemResources sharedSystemResources) {
+    URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
+    InstrumentationConfiguration config = instrumentationConfig.forClasspath(concat(urls, applicationClasspath));
+    InstrumentingClassLoader robolectricClassLoader = new InstrumentingClassLoader(config, createClassCache(config, urls), findPreinstrumentedJar(config, sdkConfig), urls, applicationClasspath, sharedClassBytes);
+    if (config.useSelectiveInstrumentation()) {
+      usedSelectiveInstrumentation = true;
+      reportAtShutdown();
+    }
+    return new SdkEnvironment(sdkConfig, robolectricClassLoader, sharedSystemResources);
+  }
+
+  /**
+   * Register a single shutdown hook which reports on the class caches and selective instrumentation. It refers only
+   * to totals and caches, not to environments, so environments that are discarded can be garbage collected.
+   */
+  private static synchronized void reportAtShutdown() {
+    if (reportsAtShutdown) {
+      return;
+    }
+    reportsAtShutdown = true;
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override public void run() {
+        synchronized (classCachesByDir) {
+          for (InstrumentedClassCache classCache : classCachesByDir.values()) {
+            Logger.info("%s", classCache);
+          }
+        }
+        if (usedSelectiveInstrumentation) {
+          long intercepted = InstrumentingClassLoader.getTotalInterceptedMethodCount();
+          long skipped = InstrumentingClassLoader.getTotalSkippedMethodCount();
+          Logger.info("Selective instrumentation: intercepted %d methods, skipped %d (%d%%)",
+              intercepted, skipped, intercepted + skipped == 0 ? 0 : 100 * skipped / (intercepted + skipped));
+        }
+      }
+    }, "Robolectric shutdown report"));
+  }
+
+  private URL findPreinstrumentedJar(InstrumentationConfiguration config, SdkConfig sdkConfig) {
+    String preinstrumentedDir = System.getProperty(PREINSTRUMENTED_DIR_PROPERTY);
+    if (preinstrumentedDir == null) {
+      return null;
+    }
+
+    URL jar = AheadOfTimeInstrumenter.findPreinstrumentedJar(new File(preinstrumentedDir), sdkConfig, config);
+    if (jar != null) {
+      Logger.debug("Loading pre-instrumented classes from: %s", jar);
+    }
+    return jar;
+  }
+
+  private InstrumentedClassCache createClassCache(InstrumentationConfiguration config, URL[] urls) {
+    String cacheDir = System.getProperty(CLASS_CACHE_DIR_PROPERTY);
+    if (cacheDir == null) {
+      return null;
+    }
 
-    SdkEnvironment sdkEnvironment = sdkToEnvironment.get(key);
-    if (sdkEnvironment == null) {
-      URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
-      ClassLoader robolectricClassLoader = new InstrumentingClassLoader(instrumentationConfig, urls);
-      sdkEnvironment = new SdkEnvironment(sdkConfig, robolectricClassLoader);
-      sdkToEnvironment.put(key, sdkEnvironment);
+    InstrumentedClassCache classCache = new InstrumentedClassCache(new File(cacheDir), SdkConfig.getRobolectricVersion(), config, urls);
+    synchronized (classCachesByDir) {
+      InstrumentedClassCache existing = classCachesByDir.get(classCache.getCacheDir());
+      if (existing != null) {
+        return existing;
+      }
+      classCachesByDir.put(classCache.getCacheDir(), classCache);
     }
-    return sdkEnvironment;
+    reportAtShutdown();
+    return classCache;
+  }
+
+  private static URL[] concat(URL[] urls, URL[] moreUrls) {
+    URL[] result = Arrays.copyOf(urls, urls.length + moreUrls.length);
+    System.arraycopy(moreUrls, 0, result, urls.length, moreUrls.length);
+    return result;
+  }
+
+  private static List<String> toStrings(URL[] urls) {
+    List<String> strings = new ArrayList<>(urls.length);
+    for (URL url : urls) {
+      strings.add(url.toString());
+    }
+    return strings;
+  }
+
+  /**
+   * Identifies the {@link SdkEnvironment} for a configuration, SDK and application classpath.
+   */
+  public static class EnvironmentKey {
+    final InstrumentationConfiguration instrumentationConfig;
+    final SdkConfig sdkConfig;
+    // URL.equals() may resolve host names, so compare the classpath's string forms
+    final List<String> applicationClasspath;
+
+    public EnvironmentKey(InstrumentationConfiguration instrumentationConfig, SdkConfig sdkConfig, URL[] applicationClasspath) {
+      this.instrumentationConfig = instrumentationConfig;
+      this.sdkConfig = sdkConfig;
+      this.applicationClasspath = toStrings(applicationClasspath);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof EnvironmentKey)) return false;
+      EnvironmentKey that = (EnvironmentKey) o;
+      return instrumentationConfig.equals(that.instrumentationConfig) && sdkConfig.equals(that.sdkConfig)
+          && applicationClasspath.equals(that.applicationClasspath);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = instrumentationConfig.hashCode();
+      result = 31 * result + sdkConfig.hashCode();
+      result = 31 * result + applicationClasspath.hashCode();
+      return result;
+    }
+  }
+
+  /**
+   * State shared by the environments created for the same configuration on different threads.
+   */
+  private static class SharedState {
+    final ConcurrentMap<String, byte[]> classBytes = new ConcurrentHashMap<>();
+    final SdkEnvironment.SharedSystemResources systemResources = new SdkEnvironment.SharedSystemResources();
   }
 }
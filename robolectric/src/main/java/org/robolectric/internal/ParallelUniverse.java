@@ -15,6 +15,7 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.ShadowsAdapter;
 import org.robolectric.TestLifecycle;
 import org.robolectric.annotation.Config;
+import org.robolectric.internal.bytecode.RobolectricInternals;
 import org.robolectric.internal.fakes.RoboInstrumentation;
 import org.robolectric.manifest.AndroidManifest;
 import org.robolectric.res.ResBundle;
@@ -24,6 +25,7 @@ import org.robolectric.shadows.ShadowLooper;
 import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.util.Scheduler;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.security.Security;
 
@@ -33,6 +35,7 @@ public class ParallelUniverse implements ParallelUniverseInterface {
   private static final String DEFAULT_PACKAGE_NAME = "org.robolectric.default";
   private final RobolectricTestRunner robolectricTestRunner;
   private final ShadowsAdapter shadowsAdapter = Robolectric.getShadowsAdapter();
+  private final int initialResetterCount = ResetterTracker.getResetterCount();
 
   private boolean loggingInitialized = false;
   private SdkConfig sdkConfig;
@@ -52,6 +55,11 @@ public class ParallelUniverse implements ParallelUniverseInterface {
     }
   }
 
+  @Override
+  public int getResetterCount() {
+    return ResetterTracker.getResetterCount() - initialResetterCount;
+  }
+
   /*
    * If the Config already has a version qualifier, do nothing. Otherwise, add a version
    * qualifier for the target api level (which comes from the manifest or Config.emulateSdk()).
@@ -72,15 +80,7 @@ public class ParallelUniverse implements ParallelUniverseInterface {
     RuntimeEnvironment.application = null;
     RuntimeEnvironment.setMasterScheduler(new Scheduler());
     RuntimeEnvironment.setMainThread(Thread.currentThread());
-    RuntimeEnvironment.setRobolectricPackageManager(new DefaultPackageManager(shadowsAdapter));
-    RuntimeEnvironment.getRobolectricPackageManager().addPackage(DEFAULT_PACKAGE_NAME);
-    ResourceLoader resourceLoader;
-    if (appManifest != null) {
-      resourceLoader = robolectricTestRunner.getAppResourceLoader(sdkConfig, systemResourceLoader, appManifest);
-      RuntimeEnvironment.getRobolectricPackageManager().addManifest(appManifest, resourceLoader);
-    } else {
-      resourceLoader = systemResourceLoader;
-    }
+    ResourceLoader resourceLoader = setUpPackageManager(systemResourceLoader, appManifest);
 
     if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
       Security.insertProviderAt(new BouncyCastleProvider(), 1);
@@ -88,12 +88,7 @@ public class ParallelUniverse implements ParallelUniverseInterface {
 
     shadowsAdapter.setSystemResources(systemResourceLoader);
     String qualifiers = addVersionQualifierToQualifiers(config.qualifiers());
-    Resources systemResources = Resources.getSystem();
-    Configuration configuration = systemResources.getConfiguration();
-    shadowsAdapter.overrideQualifiers(configuration, qualifiers);
-    systemResources.updateConfiguration(configuration, systemResources.getDisplayMetrics());
-    RuntimeEnvironment.setQualifiers(qualifiers);
-    RuntimeEnvironment.setApiLevel(sdkConfig.getApiLevel());
+    Configuration configuration = setUpSystemConfiguration(qualifiers);
 
     Class<?> contextImplClass = ReflectionHelpers.loadClass(getClass().getClassLoader(), shadowsAdapter.getShadowContextImplClassName());
 
@@ -114,28 +109,10 @@ public class ParallelUniverse implements ParallelUniverseInterface {
 
     final Application application = (Application) testLifecycle.createApplication(method, appManifest, config);
     if (application != null) {
-      String packageName = appManifest != null ? appManifest.getPackageName() : null;
-      if (packageName == null) packageName = DEFAULT_PACKAGE_NAME;
-
-      ApplicationInfo applicationInfo;
-      try {
-        applicationInfo = RuntimeEnvironment.getPackageManager().getApplicationInfo(packageName, 0);
-      } catch (PackageManager.NameNotFoundException e) {
-        throw new RuntimeException(e);
-      }
-
-      Class<?> compatibilityInfoClass = ReflectionHelpers.loadClass(getClass().getClassLoader(), "android.content.res.CompatibilityInfo");
+      ApplicationInfo applicationInfo = getApplicationInfo(appManifest);
+      Object loadedApk = getLoadedApk(activityThread, applicationInfo);
 
-      Object loadedApk = ReflectionHelpers.callInstanceMethod(activityThread, "getPackageInfo",
-          ClassParameter.from(ApplicationInfo.class, applicationInfo),
-          ClassParameter.from(compatibilityInfoClass, null),
-          ClassParameter.from(int.class, Context.CONTEXT_INCLUDE_CODE));
-
-      shadowsAdapter.bind(application, appManifest, resourceLoader);
-      if (appManifest == null) {
-        // todo: make this cleaner...
-        shadowsAdapter.setPackageName(application, applicationInfo.packageName);
-      }
+      bindApplication(application, appManifest, resourceLoader, applicationInfo);
       Resources appResources = application.getResources();
       ReflectionHelpers.setField(loadedApk, "mResources", appResources);
       try {
@@ -154,6 +131,111 @@ public class ParallelUniverse implements ParallelUniverseInterface {
     }
   }
 
+  @Override
+  public boolean resetApplicationState(ResourceLoader systemResourceLoader, AndroidManifest appManifest, Config config) {
+    Application application = RuntimeEnvironment.application;
+    Object activityThread = RuntimeEnvironment.getActivityThread();
+    if (application == null || activityThread == null || application.getBaseContext() == null) {
+      return false;
+    }
+
+    resetStaticState(config);
+    RuntimeEnvironment.setMasterScheduler(new Scheduler());
+    ShadowLooper.getShadowMainLooper().resetScheduler();
+    ResourceLoader resourceLoader = setUpPackageManager(systemResourceLoader, appManifest);
+    RuntimeEnvironment.setActivityThread(activityThread);
+
+    String qualifiers = addVersionQualifierToQualifiers(config.qualifiers());
+    Configuration configuration = setUpSystemConfiguration(qualifiers);
+    ReflectionHelpers.setField(activityThread, "mCompatConfiguration", configuration);
+
+    // new shadows drop whatever the last test recorded, e.g. started activities and system services
+    Context contextImpl = application.getBaseContext();
+    replaceShadow(contextImpl);
+    replaceShadow(application);
+    ApplicationInfo applicationInfo = getApplicationInfo(appManifest);
+    bindApplication(application, appManifest, resourceLoader, applicationInfo);
+
+    Resources appResources = application.getResources();
+    ReflectionHelpers.setField(getLoadedApk(activityThread, applicationInfo), "mResources", appResources);
+    ReflectionHelpers.setField(contextImpl, "mResources", appResources);
+    appResources.updateConfiguration(configuration, appResources.getDisplayMetrics());
+    shadowsAdapter.setAssetsQualifiers(appResources.getAssets(), qualifiers);
+
+    RuntimeEnvironment.application = application;
+    return true;
+  }
+
+  private ResourceLoader setUpPackageManager(ResourceLoader systemResourceLoader, AndroidManifest appManifest) {
+    RuntimeEnvironment.setRobolectricPackageManager(new DefaultPackageManager(shadowsAdapter));
+    RuntimeEnvironment.getRobolectricPackageManager().addPackage(DEFAULT_PACKAGE_NAME);
+    if (appManifest == null) {
+      return systemResourceLoader;
+    }
+    ResourceLoader resourceLoader = robolectricTestRunner.getAppResourceLoader(sdkConfig, systemResourceLoader, appManifest);
+    RuntimeEnvironment.getRobolectricPackageManager().addManifest(appManifest, resourceLoader);
+    return resourceLoader;
+  }
+
+  private Configuration setUpSystemConfiguration(String qualifiers) {
+    Resources systemResources = Resources.getSystem();
+    Configuration configuration = systemResources.getConfiguration();
+    shadowsAdapter.overrideQualifiers(configuration, qualifiers);
+    systemResources.updateConfiguration(configuration, systemResources.getDisplayMetrics());
+    RuntimeEnvironment.setQualifiers(qualifiers);
+    RuntimeEnvironment.setApiLevel(sdkConfig.getApiLevel());
+    return configuration;
+  }
+
+  private ApplicationInfo getApplicationInfo(AndroidManifest appManifest) {
+    String packageName = appManifest != null ? appManifest.getPackageName() : null;
+    if (packageName == null) packageName = DEFAULT_PACKAGE_NAME;
+
+    try {
+      return RuntimeEnvironment.getPackageManager().getApplicationInfo(packageName, 0);
+    } catch (PackageManager.NameNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Object getLoadedApk(Object activityThread, ApplicationInfo applicationInfo) {
+    Class<?> compatibilityInfoClass = ReflectionHelpers.loadClass(getClass().getClassLoader(), "android.content.res.CompatibilityInfo");
+
+    return ReflectionHelpers.callInstanceMethod(activityThread, "getPackageInfo",
+        ClassParameter.from(ApplicationInfo.class, applicationInfo),
+        ClassParameter.from(compatibilityInfoClass, null),
+        ClassParameter.from(int.class, Context.CONTEXT_INCLUDE_CODE));
+  }
+
+  private void bindApplication(Application application, AndroidManifest appManifest, ResourceLoader resourceLoader, ApplicationInfo applicationInfo) {
+    shadowsAdapter.bind(application, appManifest, resourceLoader);
+    if (appManifest == null) {
+      // todo: make this cleaner...
+      shadowsAdapter.setPackageName(application, applicationInfo.packageName);
+    }
+  }
+
+  private static void replaceShadow(Object instance) {
+    Object shadow;
+    try {
+      shadow = RobolectricInternals.initializing(instance);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    for (Class<?> clazz = instance.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+      try {
+        Field field = clazz.getDeclaredField(ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME);
+        if (field.get(instance) != null) {
+          field.set(instance, shadow);
+        }
+      } catch (NoSuchFieldException e) {
+        // not instrumented
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
   @Override
   public Thread getMainThread() {
     return RuntimeEnvironment.getMainThread();
@@ -11,6 +11,19 @@ public interface ParallelUniverseInterface {
 
   void setUpApplicationState(Method method, TestLifecycle testLifecycle, ResourceLoader systemResourceLoader, AndroidManifest appManifest, Config config);
 
+  /**
+   * Clean up after a test, keeping the application set up by {@link #setUpApplicationState} for the next test.
+   *
+   * @return False if there's no application to keep, in which case the caller must set it up again.
+   */
+  boolean resetApplicationState(ResourceLoader systemResourceLoader, AndroidManifest appManifest, Config config);
+
+  /**
+   * @return The number of shadow resetters run by {@link #resetStaticState} and {@link #resetApplicationState} for
+   * this universe, which lasts for a single test.
+   */
+  int getResetterCount();
+
   Thread getMainThread();
 
   void setMainThread(Thread newMainThread);
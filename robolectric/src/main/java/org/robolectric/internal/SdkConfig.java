@@ -25,7 +25,7 @@ public class SdkConfig {
     addSdk(Build.VERSION_CODES.KITKAT, "4.4_r1", "1");
     addSdk(Build.VERSION_CODES.LOLLIPOP, "5.0.0_r2", "1");
     addSdk(Build.VERSION_CODES.LOLLIPOP_MR1, "5.1.1_r9", "1");
-    ROBOLECTRIC_VERSION = getRobolectricVersion();
+    ROBOLECTRIC_VERSION = loadRobolectricVersion();
   }
 
   public static void addSdk(int sdkVersion, String androidVersion, String robolectricVersion) {
@@ -84,7 +84,11 @@ public class SdkConfig {
     return new DependencyJar(groupId, artifactId, version, classifier);
   }
 
-  private static String getRobolectricVersion() {
+  public static String getRobolectricVersion() {
+    return ROBOLECTRIC_VERSION;
+  }
+
+  private static String loadRobolectricVersion() {
     ClassLoader classLoader = SdkVersion.class.getClassLoader();
     try (InputStream is = classLoader.getResourceAsStream("robolectric-version.properties")) {
       final Properties properties = new Properties();
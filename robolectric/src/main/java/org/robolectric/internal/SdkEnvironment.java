@@ -1,41 +1,75 @@
 package org.robolectric.internal;
 
 import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.internal.bytecode.ClassHandler;
 import org.robolectric.internal.bytecode.ShadowMap;
-import org.robolectric.internal.bytecode.ShadowWrangler;
 import org.robolectric.res.Fs;
 import org.robolectric.res.PackageResourceLoader;
+import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceExtractor;
+import org.robolectric.res.ResourceIndex;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.ResourcePath;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class SdkEnvironment {
+  // Most suites use a single shadow map, plus a few more for tests with @Config(shadows=...).
+  private static final int CLASS_HANDLER_CACHE_SIZE = 16;
+
   private final SdkConfig sdkConfig;
   private final ClassLoader robolectricClassLoader;
-  public final Map<ShadowMap, ShadowWrangler> classHandlersByShadowMap = new HashMap<>();
+
+  // Simple LRU Cache; access must be synchronized on this SdkEnvironment.
+  public final Map<ShadowMap, ClassHandler> classHandlersByShadowMap = new LinkedHashMap<ShadowMap, ClassHandler>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<ShadowMap, ClassHandler> eldest) {
+      return size() > CLASS_HANDLER_CACHE_SIZE;
+    }
+  };
+  private final SharedSystemResources sharedSystemResources;
   private ResourceLoader systemResourceLoader;
 
   public SdkEnvironment(SdkConfig sdkConfig, ClassLoader robolectricClassLoader) {
+    this(sdkConfig, robolectricClassLoader, null);
+  }
+
+  /**
+   * @param sdkConfig The SDK.
+   * @param robolectricClassLoader The class loader for this environment.
+   * @param sharedSystemResources System resources shared with other environments for the same SDK, or null.
+   */
+  public SdkEnvironment(SdkConfig sdkConfig, ClassLoader robolectricClassLoader, SharedSystemResources sharedSystemResources) {
     this.sdkConfig = sdkConfig;
     this.robolectricClassLoader = robolectricClassLoader;
+    this.sharedSystemResources = sharedSystemResources;
   }
 
+  /**
+   * Create a loader for the SDK's system resources. The R classes are only read once resource ids are first needed,
+   * so resources can be loaded before this environment's shadows have been configured.
+   */
   public PackageResourceLoader createSystemResourceLoader(DependencyResolver dependencyResolver) {
     Fs systemResFs = Fs.fromJar(dependencyResolver.getLocalArtifactUrl(sdkConfig.getSystemResourceDependency()));
-    ResourceExtractor resourceExtractor;
+    Class<?> androidRClass;
+    Class<?> androidInternalRClass;
     try {
-      resourceExtractor = new ResourceExtractor(getRobolectricClassLoader().loadClass("com.android.internal.R"), getRobolectricClassLoader().loadClass("android.R"));
+      androidRClass = getRobolectricClassLoader().loadClass("android.R");
+      androidInternalRClass = getRobolectricClassLoader().loadClass("com.android.internal.R");
     } catch (ClassNotFoundException e) {
       throw new RuntimeException(e);
     }
-    ResourcePath resourcePath = new ResourcePath(resourceExtractor.getProcessedRFile(), resourceExtractor.getPackageName(), systemResFs.join("res"), systemResFs.join("assets"));
-    return new PackageResourceLoader(resourcePath, resourceExtractor);
+    ResourcePath resourcePath = new ResourcePath(androidRClass, androidRClass.getPackage().getName(), systemResFs.join("res"), systemResFs.join("assets"));
+    return new PackageResourceLoader(resourcePath, new SystemResourceIndex(androidInternalRClass, androidRClass));
   }
 
   public synchronized ResourceLoader getSystemResourceLoader(DependencyResolver dependencyResolver) {
+    if (sharedSystemResources != null) {
+      return sharedSystemResources.getSystemResourceLoader(this, dependencyResolver);
+    }
     if (systemResourceLoader == null) {
       systemResourceLoader = createSystemResourceLoader(dependencyResolver);
     }
@@ -57,4 +91,63 @@ public class SdkEnvironment {
   public SdkConfig getSdkConfig() {
     return sdkConfig;
   }
+
+  /**
+   * Reads the system R classes, which initializes them, when an id is first looked up.
+   */
+  private static class SystemResourceIndex extends ResourceIndex {
+    private final Class<?> androidInternalRClass;
+    private final Class<?> androidRClass;
+    private ResourceExtractor resourceExtractor;
+
+    SystemResourceIndex(Class<?> androidInternalRClass, Class<?> androidRClass) {
+      this.androidInternalRClass = androidInternalRClass;
+      this.androidRClass = androidRClass;
+    }
+
+    private synchronized ResourceExtractor getResourceExtractor() {
+      if (resourceExtractor == null) {
+        resourceExtractor = new ResourceExtractor(androidInternalRClass, androidRClass);
+      }
+      return resourceExtractor;
+    }
+
+    @Override
+    public Integer getResourceId(ResName resName) {
+      return getResourceExtractor().getResourceId(resName);
+    }
+
+    @Override
+    public ResName getResName(int resourceId) {
+      return getResourceExtractor().getResName(resourceId);
+    }
+
+    @Override
+    public Collection<String> getPackages() {
+      return Collections.singletonList(androidRClass.getPackage().getName());
+    }
+
+    @Override
+    public String toString() {
+      return "SystemResourceIndex{package=" + androidRClass + '}';
+    }
+  }
+
+  /**
+   * The system resources for an SDK, loaded by the first environment to need them and then shared with the others.
+   * The {@link ResourceLoader}'s resource path and index refer to that environment's {@code android.R} and
+   * {@code com.android.internal.R} classes, so its class loader stays reachable for as long as these are shared,
+   * even once the environment itself has been discarded; {@link InstrumentingClassLoaderFactory} keeps one instance
+   * per SDK and configuration, bounded like its environment caches.
+   */
+  public static class SharedSystemResources {
+    private ResourceLoader systemResourceLoader;
+
+    synchronized ResourceLoader getSystemResourceLoader(SdkEnvironment sdkEnvironment, DependencyResolver dependencyResolver) {
+      if (systemResourceLoader == null) {
+        systemResourceLoader = sdkEnvironment.createSystemResourceLoader(dependencyResolver);
+      }
+      return systemResourceLoader;
+    }
+  }
 }
@@ -0,0 +1,118 @@
+package org.robolectric.internal;
+
+import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.res.Fs;
+import org.robolectric.res.PackageResourceLoader;
+import org.robolectric.res.ResourceLoader;
+import org.robolectric.util.DaemonThreadFactory;
+import org.robolectric.util.Logger;
+import org.robolectric.util.Trace;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Gets {@link SdkEnvironment}s ready on background threads while earlier tests run: resolves each SDK's jars,
+ * indexes its android-all jar, creates its environment's class loader and loads its system resources, so that a test
+ * which is the first to need the SDK doesn't have to wait for all of that.
+ *
+ * Nothing is initialized in the environment: shadows are still configured, and the SDK's classes initialized, on the
+ * thread which runs the test, so static state such as {@code RuntimeEnvironment}'s main thread belongs to that thread.
+ *
+ * Prefetching is off unless {@code robolectric.prefetch} is set to true. With
+ * {@link InstrumentingClassLoaderFactory#PARALLEL_PROPERTY} set, environments belong to the thread which creates
+ * them, so only the jars are prefetched.
+ */
+public class SdkEnvironmentPrefetcher {
+
+  /**
+   * Set to true to load the SDKs needed by later tests in the background.
+   */
+  public static final String PREFETCH_PROPERTY = "robolectric.prefetch";
+
+  private static ExecutorService executor;
+
+  private final InstrumentingClassLoaderFactory instrumentingClassLoaderFactory;
+  private final DependencyResolver dependencyResolver;
+
+  public SdkEnvironmentPrefetcher(InstrumentingClassLoaderFactory instrumentingClassLoaderFactory, DependencyResolver dependencyResolver) {
+    this.instrumentingClassLoaderFactory = instrumentingClassLoaderFactory;
+    this.dependencyResolver = dependencyResolver;
+  }
+
+  public static boolean isEnabled() {
+    return Boolean.getBoolean(PREFETCH_PROPERTY);
+  }
+
+  /**
+   * Start getting the environments for {@code sdkConfigs} ready in the background.
+   *
+   * @param sdkConfigs The SDKs, in the order they'll be needed.
+   * @param applicationClasspath Classpath for application and test classes, as for
+   *                             {@link InstrumentingClassLoaderFactory#getSdkEnvironment(SdkConfig, URL[])}.
+   * @return A future for each SDK, which completes when it's ready.
+   */
+  public List<Future<?>> prefetch(Collection<SdkConfig> sdkConfigs, final URL[] applicationClasspath) {
+    List<Future<?>> futures = new ArrayList<>();
+    for (final SdkConfig sdkConfig : sdkConfigs) {
+      futures.add(getExecutor().submit(new Runnable() {
+        @Override public void run() {
+          try {
+            prefetch(sdkConfig, applicationClasspath);
+          } catch (RuntimeException | LinkageError e) {
+            // the first test to use the SDK will fail with the same error
+            Logger.debug("Couldn't prefetch %s: %s", sdkConfig, e);
+          }
+        }
+      }));
+    }
+    return futures;
+  }
+
+  private void prefetch(SdkConfig sdkConfig, URL[] applicationClasspath) {
+    if (instrumentingClassLoaderFactory.hasSdkEnvironment(sdkConfig, applicationClasspath)) {
+      return;
+    }
+
+    Trace.Span span = Trace.begin("SdkEnvironmentPrefetcher.prefetch", sdkConfig);
+    long startTime = System.currentTimeMillis();
+    try {
+      // Resolve jars before asking for the environment: with PARALLEL_PROPERTY set, they're all that can be shared
+      // with the test threads.
+      dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
+      Fs.fromJar(dependencyResolver.getLocalArtifactUrl(sdkConfig.getSystemResourceDependency()));
+      if (Boolean.getBoolean(InstrumentingClassLoaderFactory.PARALLEL_PROPERTY)) {
+        return;
+      }
+
+      SdkEnvironment sdkEnvironment = instrumentingClassLoaderFactory.getSdkEnvironment(sdkConfig, applicationClasspath);
+      ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(dependencyResolver);
+      if (systemResourceLoader instanceof PackageResourceLoader) {
+        ((PackageResourceLoader) systemResourceLoader).initialize();
+      }
+      Logger.debug("Prefetched %s in %dms", sdkConfig, System.currentTimeMillis() - startTime);
+    } finally {
+      span.end();
+    }
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+      executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("Robolectric prefetcher ") {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = super.newThread(runnable);
+          thread.setContextClassLoader(SdkEnvironmentPrefetcher.class.getClassLoader());
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+}
@@ -0,0 +1,176 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.internal.dependency.MavenDependencyResolver;
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes pre-instrumented copies of the android-all jars, so that test runs can load Android classes without
+ * instrumenting them. Each jar records the {@link InstrumentationConfiguration} it was built with, and is only
+ * used by {@link InstrumentingClassLoader} when that configuration matches the one in use.
+ *
+ * Usage: {@code AheadOfTimeInstrumenter <output dir> [api level...]}
+ */
+public class AheadOfTimeInstrumenter {
+  public static final String MANIFEST_PATH = "META-INF/robolectric-instrumentation.properties";
+
+  private static final String ROBOLECTRIC_VERSION_KEY = "robolectric.version";
+  private static final String ANDROID_ALL_VERSION_KEY = "android-all.version";
+  private static final String CONFIGURATION_KEY = "instrumentation.configuration";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: " + AheadOfTimeInstrumenter.class.getName() + " <output dir> [api level...]");
+      System.exit(1);
+    }
+
+    File outputDir = new File(args[0]);
+    List<Integer> apiLevels = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      apiLevels.add(Integer.parseInt(args[i]));
+    }
+    if (apiLevels.isEmpty()) {
+      apiLevels.addAll(new TreeSet<>(SdkConfig.getSupportedApis()));
+    }
+
+    InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+    DependencyResolver dependencyResolver = new MavenDependencyResolver();
+    for (int apiLevel : apiLevels) {
+      File jar = instrument(outputDir, new SdkConfig(apiLevel), config, dependencyResolver);
+      System.out.println("Wrote " + jar);
+    }
+
+    // the dependency resolver leaves non-daemon threads behind
+    System.exit(0);
+  }
+
+  /**
+   * Instrument every acquired class in an SDK's android-all jar.
+   *
+   * @param outputDir Directory to write the jar to.
+   * @param sdkConfig The SDK whose android-all jar should be instrumented.
+   * @param config The configuration to instrument with.
+   * @param dependencyResolver Resolver for the SDK's classpath.
+   * @return The pre-instrumented jar.
+   * @throws IOException if the jar couldn't be read or written.
+   */
+  public static File instrument(File outputDir, SdkConfig sdkConfig, InstrumentationConfiguration config, DependencyResolver dependencyResolver) throws IOException {
+    URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
+    config = config.forClasspath(urls);
+    File androidAllJar = toFile(dependencyResolver.getLocalArtifactUrl(sdkConfig.getSystemResourceDependency()));
+    InstrumentingClassLoader classLoader = new InstrumentingClassLoader(config, urls);
+
+    if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IOException("couldn't create " + outputDir);
+    }
+    File outputFile = jarFor(outputDir, sdkConfig);
+    File tempFile = File.createTempFile(outputFile.getName(), ".tmp", outputDir);
+    int classCount = 0;
+    try {
+      try (JarFile in = new JarFile(androidAllJar);
+           JarOutputStream out = new JarOutputStream(new FileOutputStream(tempFile))) {
+        out.putNextEntry(new ZipEntry(MANIFEST_PATH));
+        createManifest(sdkConfig, config).store(out, "Robolectric pre-instrumented " + androidAllJar.getName());
+        out.closeEntry();
+
+        for (Enumeration<JarEntry> entries = in.entries(); entries.hasMoreElements(); ) {
+          String entryName = entries.nextElement().getName();
+          if (!entryName.endsWith(".class")) continue;
+
+          String className = entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+          if (!config.shouldAcquire(className)) continue;
+
+          byte[] bytes;
+          try {
+            bytes = classLoader.getInstrumentedByteCode(className);
+          } catch (ClassNotFoundException e) {
+            throw new IOException("couldn't instrument " + className, e);
+          }
+          out.putNextEntry(new ZipEntry(entryName));
+          out.write(bytes);
+          out.closeEntry();
+          classCount++;
+        }
+      }
+      Files.move(tempFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      tempFile.delete();
+    }
+
+    Logger.info("Instrumented %d classes from %s", classCount, androidAllJar);
+    return outputFile;
+  }
+
+  /**
+   * Find a pre-instrumented android-all jar which was built with the given configuration.
+   *
+   * @param dir Directory containing pre-instrumented jars.
+   * @param sdkConfig The SDK being loaded.
+   * @param config The configuration in use.
+   * @return The jar, or null if there is none or it was built with a different configuration.
+   */
+  public static URL findPreinstrumentedJar(File dir, SdkConfig sdkConfig, InstrumentationConfiguration config) {
+    File jar = jarFor(dir, sdkConfig);
+    if (!jar.isFile()) {
+      return null;
+    }
+
+    try (JarFile jarFile = new JarFile(jar)) {
+      ZipEntry manifestEntry = jarFile.getEntry(MANIFEST_PATH);
+      if (manifestEntry != null) {
+        Properties manifest = new Properties();
+        try (InputStream manifestStream = jarFile.getInputStream(manifestEntry)) {
+          manifest.load(manifestStream);
+        }
+        if (manifest.equals(createManifest(sdkConfig, config))) {
+          return jar.toURI().toURL();
+        }
+      }
+    } catch (IOException e) {
+      Logger.info("Couldn't read %s: %s", jar, e);
+      return null;
+    }
+
+    Logger.info("%s was built with a different configuration; instrumenting at runtime", jar);
+    return null;
+  }
+
+  private static File jarFor(File dir, SdkConfig sdkConfig) {
+    return new File(dir, "android-all-" + sdkConfig.getSystemResourceDependency().getVersion() + "-instrumented.jar");
+  }
+
+  private static Properties createManifest(SdkConfig sdkConfig, InstrumentationConfiguration config) {
+    Properties properties = new Properties();
+    properties.setProperty(ROBOLECTRIC_VERSION_KEY, SdkConfig.getRobolectricVersion());
+    properties.setProperty(ANDROID_ALL_VERSION_KEY, sdkConfig.getSystemResourceDependency().getVersion());
+    properties.setProperty(CONFIGURATION_KEY, config.fingerprint());
+    return properties;
+  }
+
+  private static File toFile(URL url) throws IOException {
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException("not a local file: " + url, e);
+    }
+  }
+}
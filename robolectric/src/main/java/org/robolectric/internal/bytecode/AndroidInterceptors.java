@@ -0,0 +1,211 @@
+package org.robolectric.internal.bytecode;
+
+import android.content.Context;
+import org.robolectric.util.Function;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static java.lang.invoke.MethodType.methodType;
+import static org.robolectric.internal.bytecode.InstrumentationConfiguration.MethodRef;
+
+/**
+ * The {@link Interceptor}s Robolectric needs to run Android code.
+ */
+public class AndroidInterceptors {
+
+  public static List<Interceptor> all() {
+    return Arrays.asList(
+        new LinkedHashMapEldestInterceptor(),
+        new PolicyManagerMakeNewWindowInterceptor(),
+        new SystemTimeInterceptor(),
+        new SystemArrayCopyInterceptor(),
+        new LocaleAdjustLanguageCodeInterceptor(),
+        new SystemLogEInterceptor(),
+        new NoOpInterceptor()
+    );
+  }
+
+  public static class LinkedHashMapEldestInterceptor extends Interceptor {
+    public LinkedHashMapEldestInterceptor() {
+      super(new MethodRef(LinkedHashMap.class, "eldest"));
+    }
+
+    @Override
+    public Function<Object, Object> handle(MethodSignature methodSignature) {
+      return new Function<Object, Object>() {
+        @Override
+        public Object call(Class<?> theClass, Object value, Object[] params) {
+          LinkedHashMap map = (LinkedHashMap) value;
+          return map.isEmpty() ? null : map.entrySet().iterator().next();
+        }
+      };
+    }
+  }
+
+  public static class PolicyManagerMakeNewWindowInterceptor extends Interceptor {
+    public PolicyManagerMakeNewWindowInterceptor() {
+      super(new MethodRef("com.android.internal.policy.PolicyManager", "makeNewWindow"));
+    }
+
+    @Override
+    public Function<Object, Object> handle(MethodSignature methodSignature) {
+      return new Function<Object, Object>() {
+        @Override
+        public Object call(Class<?> theClass, Object value, Object[] params) {
+          ClassLoader cl = theClass.getClassLoader();
+          Class<?> shadowWindowClass;
+
+          try {
+            shadowWindowClass = cl.loadClass("org.robolectric.shadows.ShadowWindow");
+          } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+          }
+
+          Class<?> activityClass;
+
+          try {
+            activityClass = cl.loadClass(Context.class.getName());
+          } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+          }
+
+          Object context = params[0];
+          return ReflectionHelpers.callStaticMethod(shadowWindowClass, "create", ClassParameter.from(activityClass, context));
+        }
+      };
+    }
+  }
+
+  /**
+   * Routes {@link System#nanoTime()} and {@link System#currentTimeMillis()} to {@code ShadowSystemClock}, which is
+   * looked up once per class loader rather than on every call.
+   */
+  public static class SystemTimeInterceptor extends Interceptor {
+    public SystemTimeInterceptor() {
+      super(new MethodRef(System.class, "nanoTime"), new MethodRef(System.class, "currentTimeMillis"));
+    }
+
+    @Override
+    public Function<Object, Object> handle(final MethodSignature methodSignature) {
+      return new Function<Object, Object>() {
+        private volatile BoundMethod boundMethod;
+
+        @Override
+        public Object call(Class<?> theClass, Object value, Object[] params) {
+          ClassLoader classLoader = theClass.getClassLoader();
+          BoundMethod boundMethod = this.boundMethod;
+          if (boundMethod == null || boundMethod.classLoader != classLoader) {
+            this.boundMethod = boundMethod = new BoundMethod(classLoader, methodSignature.methodName);
+          }
+
+          try {
+            return (long) boundMethod.handle.invokeExact();
+          } catch (RuntimeException | Error e) {
+            throw e;
+          } catch (Throwable t) {
+            throw new RuntimeException(t);
+          }
+        }
+      };
+    }
+
+    private static class BoundMethod {
+      private final ClassLoader classLoader;
+      private final MethodHandle handle;
+
+      BoundMethod(ClassLoader classLoader, String methodName) {
+        this.classLoader = classLoader;
+        try {
+          Class<?> shadowSystemClockClass = classLoader.loadClass("org.robolectric.shadows.ShadowSystemClock");
+          this.handle = MethodHandles.publicLookup().findStatic(shadowSystemClockClass, methodName, methodType(long.class));
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+  }
+
+  public static class SystemArrayCopyInterceptor extends Interceptor {
+    public SystemArrayCopyInterceptor() {
+      super(new MethodRef(System.class, "arraycopy"));
+    }
+
+    @Override
+    public Function<Object, Object> handle(MethodSignature methodSignature) {
+      return new Function<Object, Object>() {
+        @Override
+        public Object call(Class<?> theClass, Object value, Object[] params) {
+          //noinspection SuspiciousSystemArraycopy
+          System.arraycopy(params[0], (Integer) params[1], params[2], (Integer) params[3], (Integer) params[4]);
+          return null;
+        }
+      };
+    }
+  }
+
+  public static class LocaleAdjustLanguageCodeInterceptor extends Interceptor {
+    public LocaleAdjustLanguageCodeInterceptor() {
+      super(new MethodRef("java.util.Locale", "adjustLanguageCode"));
+    }
+
+    @Override
+    public Function<Object, Object> handle(MethodSignature methodSignature) {
+      return new Function<Object, Object>() {
+        @Override
+        public Object call(Class<?> theClass, Object value, Object[] params) {
+          return params[0];
+        }
+      };
+    }
+  }
+
+  public static class SystemLogEInterceptor extends Interceptor {
+    public SystemLogEInterceptor() {
+      super(new MethodRef("java.lang.System", "logE"));
+    }
+
+    @Override
+    public Function<Object, Object> handle(MethodSignature methodSignature) {
+      return new Function<Object, Object>() {
+        @Override
+        public Object call(Class<?> theClass, Object value, Object[] params) {
+          String message = "System.logE: ";
+          for (Object param : params) {
+            message += param.toString();
+          }
+          System.err.println(message);
+          return null;
+        }
+      };
+    }
+  }
+
+  /**
+   * Methods which should do nothing, returning zero or null.
+   */
+  public static class NoOpInterceptor extends Interceptor {
+    public NoOpInterceptor() {
+      super(
+          new MethodRef(System.class, "loadLibrary"),
+          new MethodRef("android.os.StrictMode", "trackActivity"),
+          new MethodRef("android.os.StrictMode", "incrementExpectedActivityCount"),
+          new MethodRef("java.lang.AutoCloseable", "*"),
+          new MethodRef("android.util.LocaleUtil", "getLayoutDirectionFromLocale"),
+          new MethodRef("com.android.internal.policy.PolicyManager", "*"),
+          new MethodRef("android.view.FallbackEventHandler", "*"),
+          new MethodRef("android.view.IWindowSession", "*")
+      );
+    }
+
+    @Override
+    public Function<Object, Object> handle(MethodSignature methodSignature) {
+      return ShadowWrangler.returnZero(methodSignature);
+    }
+  }
+}
@@ -5,9 +5,11 @@ public interface ClassHandler {
 
   Object initializing(Object instance);
 
-  Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass);
+  // methodId identifies the method's signature; see MethodIds
+  Plan methodInvoked(int methodId, boolean isStatic, Class<?> theClass);
 
-  Object intercept(String signature, Object instance, Object[] params, Class theClass) throws Throwable;
+  // methodId identifies the intercepted method's signature; see MethodIds
+  Object intercept(int methodId, Object instance, Object[] params, Class theClass) throws Throwable;
 
   <T extends Throwable> T stripStackTrace(T throwable);
 
@@ -25,22 +25,32 @@ import org.robolectric.res.builder.XmlBlock;
 import org.robolectric.util.TempDirectory;
 import org.robolectric.util.Transcript;
 
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Configuration rules for {@link org.robolectric.internal.bytecode.InstrumentingClassLoader}.
  */
 public class InstrumentationConfiguration {
+  public static final String INVOKE_DYNAMIC_PROPERTY = "robolectric.invokedynamic";
+  public static final String SELECTIVE_INSTRUMENTATION_PROPERTY = "robolectric.selectiveInstrumentation";
+  public static final String LAZY_SHADOWS_PROPERTY = "robolectric.lazyShadows";
+
+  // bump when the shape of instrumented bytecode changes, so persistent caches don't serve stale classes
+  private static final int BYTECODE_FORMAT = 5;
 
   public static final class Builder {
 
@@ -50,6 +60,10 @@ public class InstrumentationConfiguration {
     private final Collection<String> classesToNotAquire = new HashSet<>();
     private final Collection<String> packagesToNotAquire = new HashSet<>();
     private final Collection<String> instrumentedClasses = new HashSet<>();
+    private boolean useInvokeDynamic = Boolean.getBoolean(INVOKE_DYNAMIC_PROPERTY);
+    private boolean useSelectiveInstrumentation = Boolean.getBoolean(SELECTIVE_INSTRUMENTATION_PROPERTY);
+    private ShadowedMethodIndex shadowedMethodIndex;
+    private boolean useLazyShadows = Boolean.getBoolean(LAZY_SHADOWS_PROPERTY);
 
     public Builder doNotAquireClass(String className) {
       this.classesToNotAquire.add(className);
@@ -81,26 +95,68 @@ public class InstrumentationConfiguration {
       return this;
     }
 
+    /**
+     * Dispatch instrumented methods through invokedynamic call sites rather than looking up a
+     * {@link ClassHandler.Plan} on every call. Defaults to the value of the {@code robolectric.invokedynamic}
+     * system property.
+     *
+     * @param useInvokeDynamic True to use invokedynamic.
+     * @return This builder.
+     */
+    public Builder useInvokeDynamic(boolean useInvokeDynamic) {
+      this.useInvokeDynamic = useInvokeDynamic;
+      return this;
+    }
+
+    /**
+     * Only intercept methods which could be shadowed according to the {@link ShadowedMethodIndex} generated for
+     * each shadow provider; other methods call their original code without consulting the {@link ClassHandler},
+     * unless {@link InstrumentingClassLoader#interceptAllMethodsOf(Collection)} is called for their class. The index
+     * is resolved by {@link InstrumentationConfiguration#forClasspath(URL[])}. Defaults to the value of the
+     * {@code robolectric.selectiveInstrumentation} system property.
+     *
+     * @param useSelectiveInstrumentation True to use selective instrumentation.
+     * @return This builder.
+     */
+    public Builder useSelectiveInstrumentation(boolean useSelectiveInstrumentation) {
+      this.useSelectiveInstrumentation = useSelectiveInstrumentation;
+      return this;
+    }
+
+    /**
+     * Use selective instrumentation with the given index, rather than the one generated for each shadow provider.
+     *
+     * @param shadowedMethodIndex The methods which could be shadowed.
+     * @return This builder.
+     */
+    public Builder useSelectiveInstrumentation(ShadowedMethodIndex shadowedMethodIndex) {
+      this.useSelectiveInstrumentation = true;
+      this.shadowedMethodIndex = shadowedMethodIndex;
+      return this;
+    }
+
+    /**
+     * Create each instance's shadow the first time it's needed, when a shadow method is called on the instance or
+     * the shadow is extracted, rather than when the instance is constructed. Instances on which no shadow method is
+     * ever called, like many {@code Rect}s and {@code Bundle}s, then never allocate a shadow. Shadows with side
+     * effects in their constructors see them happen later, so this is opt-in. Defaults to the value of the
+     * {@code robolectric.lazyShadows} system property.
+     *
+     * @param useLazyShadows True to create shadows lazily.
+     * @return This builder.
+     */
+    public Builder useLazyShadows(boolean useLazyShadows) {
+      this.useLazyShadows = useLazyShadows;
+      return this;
+    }
+
     public InstrumentationConfiguration build() {
-      interceptedMethods.addAll(Arrays.asList(
-          new MethodRef(LinkedHashMap.class, "eldest"),
-          new MethodRef(System.class, "loadLibrary"),
-          new MethodRef("android.os.StrictMode", "trackActivity"),
-          new MethodRef("android.os.StrictMode", "incrementExpectedActivityCount"),
-          new MethodRef("java.lang.AutoCloseable", "*"),
-          new MethodRef("android.util.LocaleUtil", "getLayoutDirectionFromLocale"),
-          new MethodRef("com.android.internal.policy.PolicyManager", "*"),
-          new MethodRef("android.view.FallbackEventHandler", "*"),
-          new MethodRef("android.view.IWindowSession", "*"),
-          new MethodRef("java.lang.System", "nanoTime"),
-          new MethodRef("java.lang.System", "currentTimeMillis"),
-          new MethodRef("java.lang.System", "arraycopy"),
-          new MethodRef("java.lang.System", "logE"),
-          new MethodRef("java.util.Locale", "adjustLanguageCode")
-      ));
+      interceptedMethods.addAll(Interceptors.load().getAllMethodRefs());
       classesToNotAquire.addAll(stringify(
           TestLifecycle.class,
           ShadowWrangler.class,
+          ShadowWrangler.ShadowMethodPlan.class,
+          ShadowMethodInvoker.class,
           AndroidManifest.class,
           R.class,
           InstrumentingClassLoader.class,
@@ -113,6 +169,7 @@ public class InstrumentationConfiguration {
           XmlBlock.class,
           ClassHandler.class,
           ClassHandler.Plan.class,
+          MethodIds.class,
           RealObject.class,
           Implements.class,
           Implementation.class,
@@ -149,7 +206,8 @@ public class InstrumentationConfiguration {
         instrumentedPackages.addAll(Arrays.asList(provider.getProvidedPackageNames()));
       }
 
-      return new InstrumentationConfiguration(classNameTranslations, interceptedMethods, instrumentedPackages, instrumentedClasses, classesToNotAquire, packagesToNotAquire);
+      return new InstrumentationConfiguration(classNameTranslations, interceptedMethods, instrumentedPackages, instrumentedClasses, classesToNotAquire, packagesToNotAquire, useInvokeDynamic,
+          useSelectiveInstrumentation, useSelectiveInstrumentation ? shadowedMethodIndex : null, useLazyShadows);
     }
   }
 
@@ -163,14 +221,22 @@ public class InstrumentationConfiguration {
   private final HashSet<MethodRef> interceptedMethods = new HashSet<>();
   private final Set<String> classesToNotAquire = new HashSet<>();
   private final Set<String> packagesToNotAquire = new HashSet<>();
+  private final boolean useInvokeDynamic;
+  private final boolean useSelectiveInstrumentation;
+  private final ShadowedMethodIndex shadowedMethodIndex;
+  private final boolean useLazyShadows;
 
-  private InstrumentationConfiguration(Map<String, String> classNameTranslations, Collection<MethodRef> interceptedMethods, Collection<String> instrumentedPackages, Collection<String> instrumentedClasses, Collection<String> classesToNotAquire, Collection<String> packagesToNotAquire) {
+  private InstrumentationConfiguration(Map<String, String> classNameTranslations, Collection<MethodRef> interceptedMethods, Collection<String> instrumentedPackages, Collection<String> instrumentedClasses, Collection<String> classesToNotAquire, Collection<String> packagesToNotAquire, boolean useInvokeDynamic, boolean useSelectiveInstrumentation, ShadowedMethodIndex shadowedMethodIndex, boolean useLazyShadows) {
     this.classNameTranslations.putAll(classNameTranslations);
     this.interceptedMethods.addAll(interceptedMethods);
     this.instrumentedPackages.addAll(instrumentedPackages);
     this.instrumentedClasses.addAll(instrumentedClasses);
     this.classesToNotAquire.addAll(classesToNotAquire);
     this.packagesToNotAquire.addAll(packagesToNotAquire);
+    this.useInvokeDynamic = useInvokeDynamic;
+    this.useSelectiveInstrumentation = useSelectiveInstrumentation;
+    this.shadowedMethodIndex = shadowedMethodIndex;
+    this.useLazyShadows = useLazyShadows;
   }
 
   /**
@@ -229,10 +295,102 @@ public class InstrumentationConfiguration {
     return Collections.unmodifiableMap(classNameTranslations);
   }
 
+  /**
+   * Determine if instrumented methods should dispatch through invokedynamic call sites linked by
+   * {@link InvokeDynamicSupport}.
+   *
+   * @return True if invokedynamic should be used.
+   */
+  public boolean useInvokeDynamic() {
+    return useInvokeDynamic;
+  }
+
+  /**
+   * Determine if only methods which could be shadowed should be intercepted.
+   *
+   * @return True if selective instrumentation is enabled and an index has been resolved.
+   */
+  public boolean useSelectiveInstrumentation() {
+    return shadowedMethodIndex != null;
+  }
+
+  /**
+   * Determine if shadows should be created on first use rather than when instances are constructed.
+   *
+   * @return True if shadows should be created lazily.
+   */
+  public boolean useLazyShadows() {
+    return useLazyShadows;
+  }
+
+  /**
+   * Resolve the {@link ShadowedMethodIndex} for a classpath. Shadow providers are built separately for each SDK, so
+   * the index depends on the classpath classes are loaded from as well as Robolectric's own.
+   *
+   * @param urls The classpath classes will be loaded from.
+   * @return A configuration using the index for the classpath, or this configuration if selective instrumentation
+   * is disabled, an index was given explicitly, or some shadow provider wasn't built with an index.
+   */
+  public InstrumentationConfiguration forClasspath(URL[] urls) {
+    if (!useSelectiveInstrumentation || shadowedMethodIndex != null) {
+      return this;
+    }
+
+    ShadowedMethodIndex index;
+    try (URLClassLoader classpath = new URLClassLoader(urls, null)) {
+      index = ShadowedMethodIndex.load(classpath, InstrumentationConfiguration.class.getClassLoader());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (index == null) {
+      return this;
+    }
+    return new InstrumentationConfiguration(classNameTranslations, interceptedMethods, instrumentedPackages, instrumentedClasses, classesToNotAquire, packagesToNotAquire, useInvokeDynamic,
+        true, index, useLazyShadows);
+  }
+
+  /**
+   * Determine if {@link org.robolectric.internal.bytecode.InstrumentingClassLoader} should always consult the
+   * {@link ClassHandler} when a method is called.
+   *
+   * @param className The fully-qualified class name.
+   * @param methodName The method name.
+   * @return True if the method could be shadowed, or selective instrumentation is disabled.
+   */
+  public boolean shouldInterceptMethod(String className, String methodName) {
+    return shadowedMethodIndex == null || shadowedMethodIndex.mayShadow(className, methodName);
+  }
+
   public boolean containsStubs(ClassInfo classInfo) {
     return classInfo.getName().startsWith("com.google.android.maps.");
   }
 
+  /**
+   * A stable description of every rule in this configuration, suitable for keying persistent caches of
+   * instrumented classes.
+   *
+   * @return Fingerprint of this configuration.
+   */
+  public String fingerprint() {
+    StringBuilder buf = new StringBuilder();
+    buf.append("bytecodeFormat=").append(BYTECODE_FORMAT);
+    buf.append("\ninstrumentedPackages=").append(new TreeSet<>(instrumentedPackages));
+    buf.append("\ninstrumentedClasses=").append(new TreeSet<>(instrumentedClasses));
+    buf.append("\nclassNameTranslations=").append(new TreeMap<>(classNameTranslations));
+    buf.append("\nclassesToNotAquire=").append(new TreeSet<>(classesToNotAquire));
+    buf.append("\npackagesToNotAquire=").append(new TreeSet<>(packagesToNotAquire));
+    TreeSet<String> methodRefs = new TreeSet<>();
+    for (MethodRef methodRef : interceptedMethods) {
+      methodRefs.add(methodRef.toString());
+    }
+    buf.append("\ninterceptedMethods=").append(methodRefs);
+    buf.append("\nuseInvokeDynamic=").append(useInvokeDynamic);
+    buf.append("\nuseSelectiveInstrumentation=").append(useSelectiveInstrumentation);
+    buf.append("\nuseLazyShadows=").append(useLazyShadows);
+    buf.append("\nshadowedMethodIndex=").append(shadowedMethodIndex == null ? null : shadowedMethodIndex.fingerprint());
+    return buf.toString();
+  }
+
   private static Collection<String> stringify(Class... classes) {
     ArrayList<String> strings = new ArrayList<>();
     for (Class aClass : classes) {
@@ -262,6 +420,10 @@ public class InstrumentationConfiguration {
     if (!classesToNotAquire.equals(that.classesToNotAquire)) return false;
     if (!instrumentedPackages.equals(that.instrumentedPackages)) return false;
     if (!interceptedMethods.equals(that.interceptedMethods)) return false;
+    if (useInvokeDynamic != that.useInvokeDynamic) return false;
+    if (useSelectiveInstrumentation != that.useSelectiveInstrumentation) return false;
+    if (useLazyShadows != that.useLazyShadows) return false;
+    if (shadowedMethodIndex != null ? !shadowedMethodIndex.equals(that.shadowedMethodIndex) : that.shadowedMethodIndex != null) return false;
 
     return true;
   }
@@ -272,6 +434,10 @@ public class InstrumentationConfiguration {
     result = 31 * result + classNameTranslations.hashCode();
     result = 31 * result + interceptedMethods.hashCode();
     result = 31 * result + classesToNotAquire.hashCode();
+    result = 31 * result + (useInvokeDynamic ? 1 : 0);
+    result = 31 * result + (useSelectiveInstrumentation ? 1 : 0);
+    result = 31 * result + (useLazyShadows ? 1 : 0);
+    result = 31 * result + (shadowedMethodIndex != null ? shadowedMethodIndex.hashCode() : 0);
     return result;
   }
 
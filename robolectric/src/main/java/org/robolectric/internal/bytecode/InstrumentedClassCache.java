@@ -0,0 +1,121 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.util.Digests;
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent cache of the bytes produced by {@link InstrumentingClassLoader}, shared across JVM runs.
+ *
+ * Entries are grouped in a directory keyed by the Robolectric version, the {@link InstrumentationConfiguration},
+ * and the identity of the jars classes are loaded from; each entry is named for a digest of the original class bytes.
+ * Entries are written to a temporary file and atomically renamed into place, so concurrent writers (e.g. forked
+ * test JVMs) never observe a partially written class.
+ */
+public class InstrumentedClassCache {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private final File cacheDir;
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  public InstrumentedClassCache(File baseDir, String robolectricVersion, InstrumentationConfiguration config, URL... urls) {
+    StringBuilder key = new StringBuilder();
+    key.append(robolectricVersion).append('\n').append(config.fingerprint());
+    for (URL url : urls) {
+      key.append('\n').append(url);
+      File file = toFile(url);
+      if (file != null) {
+        // jars are identified by size and timestamp rather than content, so a warm run doesn't re-hash android-all
+        key.append(':').append(file.length()).append(':').append(file.lastModified());
+      }
+    }
+    this.cacheDir = new File(baseDir, Digests.sha1Hex(key.toString().getBytes(UTF8)));
+  }
+
+  /**
+   * Look up previously instrumented bytes for a class.
+   *
+   * @param origClassBytes The uninstrumented class bytes.
+   * @return The instrumented class bytes, or null if none are cached.
+   */
+  public byte[] load(byte[] origClassBytes) {
+    File entry = entryFor(origClassBytes);
+    if (entry.isFile()) {
+      try {
+        byte[] bytes = Files.readAllBytes(entry.toPath());
+        hits.incrementAndGet();
+        return bytes;
+      } catch (IOException e) {
+        Logger.debug("Failed to read cached class %s: %s", entry, e);
+      }
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Store instrumented bytes for a class. Failures are logged and otherwise ignored.
+   *
+   * @param origClassBytes The uninstrumented class bytes.
+   * @param instrumentedClassBytes The instrumented class bytes.
+   */
+  public void store(byte[] origClassBytes, byte[] instrumentedClassBytes) {
+    File entry = entryFor(origClassBytes);
+    try {
+      if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+        throw new IOException("couldn't create " + cacheDir);
+      }
+      File tempFile = File.createTempFile(entry.getName(), ".tmp", cacheDir);
+      try {
+        Files.write(tempFile.toPath(), instrumentedClassBytes);
+        Files.move(tempFile.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        tempFile.delete();
+      }
+    } catch (IOException e) {
+      Logger.debug("Failed to cache class %s: %s", entry, e);
+    }
+  }
+
+  public int getHitCount() {
+    return hits.get();
+  }
+
+  public int getMissCount() {
+    return misses.get();
+  }
+
+  public File getCacheDir() {
+    return cacheDir;
+  }
+
+  @Override
+  public String toString() {
+    return "InstrumentedClassCache{" +
+        "cacheDir=" + cacheDir +
+        ", hits=" + hits +
+        ", misses=" + misses +
+        '}';
+  }
+
+  private File entryFor(byte[] origClassBytes) {
+    return new File(cacheDir, Digests.sha1Hex(origClassBytes) + ".class");
+  }
+
+  private static File toFile(URL url) {
+    if (!"file".equals(url.getProtocol())) return null;
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+}
@@ -3,6 +3,7 @@ package org.robolectric.internal.bytecode;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -11,20 +12,25 @@ import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.JSRInlinerAdapter;
 import org.objectweb.asm.commons.Method;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
 import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.TypeInsnNode;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.internal.ResetterTracker;
 import org.robolectric.internal.ShadowedObject;
 import org.robolectric.internal.Shadow;
 import org.robolectric.internal.ShadowConstants;
 import org.objectweb.asm.tree.VarInsnNode;
 import org.robolectric.util.Logger;
+import org.robolectric.util.Trace;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,12 +38,18 @@ import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.objectweb.asm.Type.ARRAY;
 import static org.objectweb.asm.Type.OBJECT;
@@ -55,23 +67,93 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
   private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
 
   private static final Method INITIALIZING_METHOD = new Method("initializing", "(Ljava/lang/Object;)Ljava/lang/Object;");
-  private static final Method METHOD_INVOKED_METHOD = new Method("methodInvoked", "(Ljava/lang/String;ZLjava/lang/Class;)L" + PLAN_TYPE.getInternalName() + ";");
+  private static final Method METHOD_INVOKED_METHOD = new Method("methodInvoked", "(IZLjava/lang/Class;)L" + PLAN_TYPE.getInternalName() + ";");
+  private static final Method METHOD_IDS_METHOD = new Method("methodIds", "([Ljava/lang/String;)[I");
+  private static final Method INTERCEPTS_ALL_METHODS_METHOD = new Method("interceptsAllMethods", "(Ljava/lang/Class;)Z");
   private static final Method PLAN_RUN_METHOD = new Method("run", OBJECT_TYPE, new Type[]{OBJECT_TYPE, OBJECT_TYPE, Type.getType(Object[].class)});
   private static final Method HANDLE_EXCEPTION_METHOD = new Method("cleanStackTrace", THROWABLE_TYPE, new Type[]{THROWABLE_TYPE});
   private static final String DIRECT_OBJECT_MARKER_TYPE_DESC = Type.getObjectType(DirectObjectMarker.class.getName().replace('.', '/')).getDescriptor();
   private static final String ROBO_INIT_METHOD_NAME = "$$robo$init";
+  private static final String METHOD_IDS_FIELD_NAME = "$$robo$methodIds";
+  private static final Method GET_METHOD_IDS_METHOD = new Method("$$robo$getMethodIds", "()[I");
+  private static final String INTERCEPT_ALL_FIELD_NAME = "$$robo$interceptAll";
+  private static final String RESETTER_DESC = Type.getDescriptor(Resetter.class);
+  private static final Type INT_ARRAY_TYPE = Type.getType(int[].class);
   private static final String GET_ROBO_DATA_SIGNATURE = "()Ljava/lang/Object;";
+  private static final Handle BOOTSTRAP_HANDLE = new Handle(H_INVOKESTATIC, Type.getInternalName(InvokeDynamicSupport.class), "bootstrap",
+      "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;I)Ljava/lang/invoke/CallSite;");
 
   private final URLClassLoader urls;
+  private final URLClassLoader applicationUrls;
   private final InstrumentationConfiguration config;
-  private final Map<String, Class> classes = new HashMap<>();
+  private final ConcurrentMap<String, Class> classes = new ConcurrentHashMap<>();
   private final Map<String, String> classesToRemap;
   private final Set<InstrumentationConfiguration.MethodRef> methodsToIntercept;
+  private final InstrumentedClassCache classCache;
+  private final URLClassLoader preinstrumentedClasses;
+  private final ConcurrentMap<String, byte[]> sharedClassBytes;
+  private final Set<String> classesToInterceptAll = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final AtomicLong interceptedMethodCount = new AtomicLong();
+  private final AtomicLong skippedMethodCount = new AtomicLong();
+  // across every loader, so they can be reported without keeping loaders alive
+  private static final AtomicLong totalInterceptedMethodCount = new AtomicLong();
+  private static final AtomicLong totalSkippedMethodCount = new AtomicLong();
+  private final AtomicLong loadedClassCount = new AtomicLong();
+  private final AtomicLong instrumentedClassCount = new AtomicLong();
+
+  static {
+    registerAsParallelCapable();
+  }
 
   public InstrumentingClassLoader(InstrumentationConfiguration config, URL... urls) {
+    this(config, null, urls);
+  }
+
+  public InstrumentingClassLoader(InstrumentationConfiguration config, InstrumentedClassCache classCache, URL... urls) {
+    this(config, classCache, null, urls);
+  }
+
+  /**
+   * @param config The instrumentation configuration.
+   * @param classCache Persistent cache of instrumented classes, or null.
+   * @param preinstrumentedJar A jar written by {@link AheadOfTimeInstrumenter} with this configuration, or null.
+   * @param urls The classpath to load classes from.
+   */
+  public InstrumentingClassLoader(InstrumentationConfiguration config, InstrumentedClassCache classCache, URL preinstrumentedJar, URL[] urls) {
+    this(config, classCache, preinstrumentedJar, urls, null);
+  }
+
+  /**
+   * @param config The instrumentation configuration.
+   * @param classCache Persistent cache of instrumented classes, or null.
+   * @param preinstrumentedJar A jar written by {@link AheadOfTimeInstrumenter} with this configuration, or null.
+   * @param urls The classpath to load classes from.
+   * @param sharedClassBytes Instrumented classes shared with other loaders for the same configuration, or null.
+   */
+  public InstrumentingClassLoader(InstrumentationConfiguration config, InstrumentedClassCache classCache, URL preinstrumentedJar, URL[] urls, ConcurrentMap<String, byte[]> sharedClassBytes) {
+    this(config, classCache, preinstrumentedJar, urls, new URL[0], sharedClassBytes);
+  }
+
+  /**
+   * @param config The instrumentation configuration.
+   * @param classCache Persistent cache of instrumented classes, or null.
+   * @param preinstrumentedJar A jar written by {@link AheadOfTimeInstrumenter} with this configuration, or null.
+   * @param urls The classpath to load classes from.
+   * @param applicationUrls Classpath for application and test classes which aren't visible to the parent class
+   *                        loader. Classes loaded from it are never shared with other loaders, since they may change.
+   * @param sharedClassBytes Instrumented classes shared with other loaders for the same configuration, or null.
+   */
+  public InstrumentingClassLoader(InstrumentationConfiguration config, InstrumentedClassCache classCache, URL preinstrumentedJar, URL[] urls, URL[] applicationUrls, ConcurrentMap<String, byte[]> sharedClassBytes) {
     super(InstrumentingClassLoader.class.getClassLoader());
     this.config = config;
+    this.classCache = classCache;
+    this.sharedClassBytes = sharedClassBytes;
+    this.preinstrumentedClasses = preinstrumentedJar == null ? null : new URLClassLoader(new URL[] {preinstrumentedJar}, null);
     this.urls = new URLClassLoader(urls, null);
+    this.applicationUrls = applicationUrls.length == 0 ? null : new URLClassLoader(applicationUrls, null);
+    for (URL url : applicationUrls) {
+      Logger.debug("Loading application classes from: %s", url);
+    }
     classesToRemap = convertToSlashes(config.classNameTranslations());
     methodsToIntercept = convertToSlashes(config.methodsToIntercept());
     for (URL url : urls) {
@@ -80,34 +162,116 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
   }
 
   @Override
-  synchronized public Class loadClass(String name) throws ClassNotFoundException {
+  public Class loadClass(String name) throws ClassNotFoundException {
     Class<?> theClass = classes.get(name);
-    if (theClass != null) {
-      if (theClass == MissingClassMarker.class) {
-        throw new ClassNotFoundException(name);
-      } else {
-        return theClass;
+    if (theClass == null) {
+      synchronized (getClassLoadingLock(name)) {
+        theClass = classes.get(name);
+        if (theClass == null) {
+          try {
+            if (config.shouldAcquire(name)) {
+              theClass = findClass(name);
+            } else {
+              theClass = getParent().loadClass(name);
+            }
+          } catch (ClassNotFoundException e) {
+            classes.put(name, MissingClassMarker.class);
+            throw e;
+          }
+          classes.put(name, theClass);
+        }
       }
     }
 
-    try {
-      if (config.shouldAcquire(name)) {
-        theClass = findClass(name);
-      } else {
-        theClass = getParent().loadClass(name);
-      }
-    } catch (ClassNotFoundException e) {
-      classes.put(name, MissingClassMarker.class);
-      throw e;
+    if (theClass == MissingClassMarker.class) {
+      throw new ClassNotFoundException(name);
     }
-
-    classes.put(name, theClass);
     return theClass;
   }
 
   private static class MissingClassMarker {
   }
 
+  /**
+   * Make every instrumented method of the given classes consult the {@link ClassHandler}, even those skipped by
+   * selective instrumentation because no shadow provider could shadow them, e.g. because shadows were added by
+   * {@link org.robolectric.annotation.Config#shadows()}. Classes which have already been loaded are updated in place.
+   *
+   * @param classNames Fully-qualified class names.
+   */
+  public void interceptAllMethodsOf(Collection<String> classNames) {
+    if (!config.useSelectiveInstrumentation()) {
+      return;
+    }
+
+    for (String className : classNames) {
+      if (classesToInterceptAll.add(className)) {
+        Class<?> theClass = classes.get(className);
+        if (theClass != null && theClass.getClassLoader() == this) {
+          try {
+            theClass.getField(INTERCEPT_ALL_FIELD_NAME).setBoolean(null, true);
+          } catch (NoSuchFieldException e) {
+            // no methods were skipped
+          } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @param className A fully-qualified class name.
+   * @return True if {@link #interceptAllMethodsOf(Collection)} has been called for the class.
+   */
+  public boolean interceptsAllMethodsOf(String className) {
+    return classesToInterceptAll.contains(className);
+  }
+
+  /**
+   * @return The number of methods instrumented by this class loader which always consult the {@link ClassHandler}.
+   */
+  public long getInterceptedMethodCount() {
+    return interceptedMethodCount.get();
+  }
+
+  /**
+   * @return The number of methods instrumented by this class loader which call their original code directly
+   * unless {@link #interceptAllMethodsOf(Collection)} is called for their class.
+   */
+  public long getSkippedMethodCount() {
+    return skippedMethodCount.get();
+  }
+
+  /**
+   * @return Like {@link #getInterceptedMethodCount()}, but for every class loader in this JVM.
+   */
+  public static long getTotalInterceptedMethodCount() {
+    return totalInterceptedMethodCount.get();
+  }
+
+  /**
+   * @return Like {@link #getSkippedMethodCount()}, but for every class loader in this JVM.
+   */
+  public static long getTotalSkippedMethodCount() {
+    return totalSkippedMethodCount.get();
+  }
+
+  /**
+   * @return The number of classes this class loader has loaded itself, rather than delegating to its parent.
+   */
+  public long getLoadedClassCount() {
+    return loadedClassCount.get();
+  }
+
+  /**
+   * @return The number of classes this class loader has instrumented, rather than finding them already instrumented
+   * in a cache, a pre-instrumented jar or another environment.
+   */
+  public long getInstrumentedClassCount() {
+    return instrumentedClassCount.get();
+  }
+
   @Override
   public InputStream getResourceAsStream(String resName) {
     InputStream fromUrlsClassLoader = urls.getResourceAsStream(resName);
@@ -118,38 +282,34 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
   }
 
   @Override
-  protected Class<?> findClass(final String className) throws ClassNotFoundException {
-    if (config.shouldAcquire(className)) {
-      final byte[] origClassBytes = getByteCode(className);
-
-      ClassNode classNode = new ClassNode(Opcodes.ASM4) {
-        @Override
-        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-          desc = remapParamType(desc);
-          return super.visitField(access, name, desc, signature, value);
-        }
-
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-          MethodVisitor methodVisitor = super.visitMethod(access, name, remapParams(desc), signature, exceptions);
-          return new JSRInlinerAdapter(methodVisitor, access, name, desc, signature, exceptions);
-        }
-      };
+  protected URL findResource(String name) {
+    return applicationUrls == null ? null : applicationUrls.findResource(name);
+  }
 
-      final ClassReader classReader = new ClassReader(origClassBytes);
-      classReader.accept(classNode, 0);
+  @Override
+  protected Enumeration<URL> findResources(String name) throws IOException {
+    return applicationUrls == null ? Collections.<URL>emptyEnumeration() : applicationUrls.findResources(name);
+  }
 
-      classNode.interfaces.add(Type.getInternalName(ShadowedObject.class));
+  private boolean isApplicationClass(String className) {
+    if (applicationUrls == null) {
+      return false;
+    }
+    String classFilename = className.replace('.', '/') + ".class";
+    return urls.findResource(classFilename) == null && getParent().getResource(classFilename) == null
+        && applicationUrls.findResource(classFilename) != null;
+  }
 
+  @Override
+  protected Class<?> findClass(final String className) throws ClassNotFoundException {
+    if (config.shouldAcquire(className)) {
       try {
-        byte[] bytes;
-        ClassInfo classInfo = new ClassInfo(className, classNode);
-        if (config.shouldInstrument(classInfo)) {
-          bytes = getInstrumentedBytes(classNode, config.containsStubs(classInfo));
-        } else {
-          bytes = origClassBytes;
+        byte[] bytes = getPreinstrumentedByteCode(className);
+        if (bytes == null) {
+          bytes = getInstrumentedByteCode(className);
         }
         ensurePackage(className);
+        loadedClassCount.incrementAndGet();
         return defineClass(className, bytes, 0, bytes.length);
       } catch (Exception e) {
         throw new ClassNotFoundException("couldn't load " + className, e);
@@ -162,6 +322,212 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
     }
   }
 
+  byte[] getInstrumentedByteCode(String className) throws ClassNotFoundException {
+    ConcurrentMap<String, byte[]> sharedClassBytes = isApplicationClass(className) ? null : this.sharedClassBytes;
+    byte[] bytes = sharedClassBytes == null ? null : sharedClassBytes.get(className);
+    if (bytes != null) {
+      return bytes;
+    }
+
+    byte[] origClassBytes = getByteCode(className);
+    bytes = classCache == null ? null : classCache.load(origClassBytes);
+    if (bytes == null) {
+      instrumentedClassCount.incrementAndGet();
+      Trace.Span span = Trace.begin("InstrumentingClassLoader.instrument", className);
+      try {
+        bytes = transformBytes(className, origClassBytes);
+      } finally {
+        span.end();
+      }
+      if (classCache != null) {
+        classCache.store(origClassBytes, bytes);
+      }
+    }
+    if (sharedClassBytes != null) {
+      sharedClassBytes.putIfAbsent(className, bytes);
+    }
+    return bytes;
+  }
+
+  private byte[] getPreinstrumentedByteCode(String className) throws IOException {
+    if (preinstrumentedClasses == null) {
+      return null;
+    }
+
+    try (InputStream classBytesStream = preinstrumentedClasses.getResourceAsStream(className.replace('.', '/') + ".class")) {
+      return classBytesStream == null ? null : readBytes(classBytesStream);
+    }
+  }
+
+  private byte[] transformBytes(String className, byte[] origClassBytes) throws ClassNotFoundException {
+    ClassNode classNode = new ClassNode(Opcodes.ASM4) {
+      @Override
+      public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        desc = remapParamType(desc);
+        return super.visitField(access, name, desc, signature, value);
+      }
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        MethodVisitor methodVisitor = super.visitMethod(access, name, remapParams(desc), signature, exceptions);
+        return new JSRInlinerAdapter(methodVisitor, access, name, desc, signature, exceptions);
+      }
+    };
+
+    final ClassReader classReader = new ClassReader(origClassBytes);
+    classReader.accept(classNode, 0);
+
+    classNode.interfaces.add(Type.getInternalName(ShadowedObject.class));
+
+    ClassInfo classInfo = new ClassInfo(className, classNode);
+    if (config.shouldInstrument(classInfo)) {
+      return getInstrumentedBytes(classNode, config.containsStubs(classInfo));
+    } else if (hasResetter(classNode)) {
+      return addTouchedFlag(origClassBytes);
+    } else {
+      return origClassBytes;
+    }
+  }
+
+  private static boolean hasResetter(ClassNode classNode) {
+    for (Object method : classNode.methods) {
+      if (hasAnnotation((MethodNode) method, RESETTER_DESC)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Add a {@link ShadowConstants#TOUCHED_FIELD_NAME} flag to a class with resetters, so {@link ResetterTracker} can
+   * skip them when the class hasn't been used. The flag is set at the start of every method which uses the class's
+   * static fields, other than the static initializer.
+   *
+   * That's only safe if the static state the resetters reset can't change without such a method running, so the
+   * class is left alone if it has static fields which other classes could change, or if its resetters reach into
+   * other classes, other than through the JDK.
+   */
+  private byte[] addTouchedFlag(byte[] origClassBytes) {
+    ClassNode classNode = new ClassNode();
+    new ClassReader(origClassBytes).accept(classNode, 0);
+    if (!canTrackUse(classNode)) {
+      return origClassBytes;
+    }
+
+    Set<String> staticFields = new HashSet<>();
+    for (Object field : classNode.fields) {
+      FieldNode fieldNode = (FieldNode) field;
+      if ((fieldNode.access & ACC_STATIC) != 0 && !isImmutableConstant(fieldNode)) {
+        staticFields.add(fieldNode.name);
+      }
+    }
+
+    for (Object method : classNode.methods) {
+      MethodNode methodNode = (MethodNode) method;
+      if (!methodNode.name.equals("<clinit>") && usesStaticFields(methodNode, classNode.name, staticFields)) {
+        InsnList touch = new InsnList();
+        touch.add(new InsnNode(ICONST_1));
+        touch.add(new FieldInsnNode(PUTSTATIC, classNode.name, ShadowConstants.TOUCHED_FIELD_NAME, "Z"));
+        methodNode.instructions.insert(touch);
+      }
+    }
+    classNode.fields.add(new FieldNode(ACC_PUBLIC | ACC_STATIC | ACC_SYNTHETIC, ShadowConstants.TOUCHED_FIELD_NAME, "Z", null, null));
+
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    classNode.accept(writer);
+    return writer.toByteArray();
+  }
+
+  private static boolean canTrackUse(ClassNode classNode) {
+    if ((classNode.access & ACC_INTERFACE) != 0) {
+      return false;
+    }
+
+    for (Object field : classNode.fields) {
+      FieldNode fieldNode = (FieldNode) field;
+      if ((fieldNode.access & ACC_STATIC) != 0 && (fieldNode.access & ACC_PRIVATE) == 0 && !isImmutableConstant(fieldNode)) {
+        return false;
+      }
+    }
+
+    Map<String, MethodNode> methods = new HashMap<>();
+    List<MethodNode> toCheck = new ArrayList<>();
+    for (Object method : classNode.methods) {
+      MethodNode methodNode = (MethodNode) method;
+      methods.put(methodNode.name + methodNode.desc, methodNode);
+      if (hasAnnotation(methodNode, RESETTER_DESC)) {
+        toCheck.add(methodNode);
+      }
+    }
+
+    // follow calls from the resetters to other methods of the class
+    Set<MethodNode> checked = new HashSet<>();
+    while (!toCheck.isEmpty()) {
+      MethodNode methodNode = toCheck.remove(toCheck.size() - 1);
+      if (!checked.add(methodNode)) {
+        continue;
+      }
+      for (ListIterator<AbstractInsnNode> iterator = methodNode.instructions.iterator(); iterator.hasNext(); ) {
+        AbstractInsnNode node = iterator.next();
+        String owner = null;
+        if (node instanceof FieldInsnNode) {
+          owner = ((FieldInsnNode) node).owner;
+        } else if (node instanceof MethodInsnNode) {
+          MethodInsnNode methodInsnNode = (MethodInsnNode) node;
+          owner = methodInsnNode.owner;
+          MethodNode callee = methods.get(methodInsnNode.name + methodInsnNode.desc);
+          if (owner.equals(classNode.name) && callee != null) {
+            toCheck.add(callee);
+          } else if (owner.startsWith(classNode.name + "$") && methodInsnNode.name.equals("<init>")) {
+            // a new instance of a nested class can only change the class's state by calling its methods
+            owner = null;
+          }
+        } else if (node instanceof LdcInsnNode && ((LdcInsnNode) node).cst instanceof Type) {
+          owner = ((Type) ((LdcInsnNode) node).cst).getInternalName();
+        } else if (node instanceof InvokeDynamicInsnNode) {
+          return false;
+        }
+        if (owner != null && !owner.equals(classNode.name) && !owner.startsWith("java/") && !owner.startsWith("[")) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean usesStaticFields(MethodNode methodNode, String className, Set<String> staticFields) {
+    for (ListIterator<AbstractInsnNode> iterator = methodNode.instructions.iterator(); iterator.hasNext(); ) {
+      AbstractInsnNode node = iterator.next();
+      if (node instanceof FieldInsnNode) {
+        FieldInsnNode fieldInsnNode = (FieldInsnNode) node;
+        if (fieldInsnNode.owner.equals(className) && staticFields.contains(fieldInsnNode.name)
+            && (fieldInsnNode.getOpcode() == GETSTATIC || fieldInsnNode.getOpcode() == PUTSTATIC)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isImmutableConstant(FieldNode fieldNode) {
+    if ((fieldNode.access & ACC_FINAL) == 0) {
+      return false;
+    }
+    Type type = Type.getType(fieldNode.desc);
+    return type.getSort() != ARRAY && (type.getSort() != OBJECT || type.getDescriptor().equals("Ljava/lang/String;"));
+  }
+
+  private static boolean hasAnnotation(MethodNode methodNode, String annotationDesc) {
+    if (methodNode.visibleAnnotations != null) {
+      for (Object annotation : methodNode.visibleAnnotations) {
+        if (((AnnotationNode) annotation).desc.equals(annotationDesc)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   protected byte[] getByteCode(String className) throws ClassNotFoundException {
     String classFilename = className.replace('.', '/') + ".class";
     try (InputStream classBytesStream = getResourceAsStream(classFilename)) {
@@ -179,7 +545,11 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       String pckgName = className.substring(0, lastDotIndex);
       Package pckg = getPackage(pckgName);
       if (pckg == null) {
-        definePackage(pckgName, null, null, null, null, null, null, null);
+        try {
+          definePackage(pckgName, null, null, null, null, null, null, null);
+        } catch (IllegalArgumentException e) {
+          // another thread defined it first
+        }
       }
     }
   }
@@ -364,6 +734,8 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
     private final String internalClassName;
     private final String className;
     private final Type classType;
+    private final List<String> methodSignatures = new ArrayList<>();
+    private boolean hasSkippedMethods;
 
     public ClassInstrumentor(ClassNode classNode, boolean containsStubs) {
       this.classNode = classNode;
@@ -378,6 +750,12 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       makePublic(classNode);
       classNode.access = classNode.access & ~ACC_FINAL;
 
+      // invokedynamic needs V51 bytecode, which in turn needs stack map frames; see InstrumentingClassWriter
+      if (config.useInvokeDynamic() && classNode.version < V1_7) {
+        classNode.version = V1_7;
+      }
+
+      boolean hasStaticInitializer = false;
       Set<String> foundMethods = new HashSet<>();
       List<MethodNode> methods = new ArrayList<>(classNode.methods);
       for (MethodNode method : methods) {
@@ -387,7 +765,7 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
 
         if (method.name.equals("<clinit>")) {
           method.name = ShadowConstants.STATIC_INITIALIZER_METHOD_NAME;
-          classNode.methods.add(generateStaticInitializerNotifierMethod());
+          hasStaticInitializer = true;
         } else if (method.name.equals("<init>")) {
           instrumentConstructor(method);
         } else if (!isSyntheticAccessorMethod(method) && !Modifier.isAbstract(method.access)) {
@@ -436,15 +814,9 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       {
         MethodNode initMethodNode = new MethodNode(ACC_PROTECTED, ROBO_INIT_METHOD_NAME, "()V", null, null);
         MyGenerator m = new MyGenerator(initMethodNode);
-        Label alreadyInitialized = new Label();
-        m.loadThis();                                         // this
-        m.getField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
-        m.ifNonNull(alreadyInitialized);
-        m.loadThis();                                         // this
-        m.loadThis();                                         // this, this
-        m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, INITIALIZING_METHOD); // this, __robo_data__
-        m.putField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);
-        m.mark(alreadyInitialized);
+        if (!config.useLazyShadows()) {
+          generateInitializeRoboData(m);
+        }
         m.returnValue();
         classNode.methods.add(initMethodNode);
       }
@@ -452,6 +824,9 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       {
         MethodNode initMethodNode = new MethodNode(ACC_PUBLIC, ShadowConstants.GET_ROBO_DATA_METHOD_NAME, GET_ROBO_DATA_SIGNATURE, null, null);
         MyGenerator m = new MyGenerator(initMethodNode);
+        if (config.useLazyShadows()) {
+          generateInitializeRoboData(m);
+        }
         m.loadThis();                                         // this
         m.getField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
         m.returnValue();
@@ -465,6 +840,19 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
           fieldNode.access &= ~(Modifier.FINAL);
         }
       }
+
+      if (!methodSignatures.isEmpty()) {
+        classNode.fields.add(new FieldNode(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, METHOD_IDS_FIELD_NAME,
+            INT_ARRAY_TYPE.getDescriptor(), null, null));
+        classNode.methods.add(generateMethodIdsMethod());
+      }
+      if (hasSkippedMethods) {
+        classNode.fields.add(new FieldNode(ACC_PUBLIC | ACC_STATIC | ACC_SYNTHETIC, INTERCEPT_ALL_FIELD_NAME,
+            Type.BOOLEAN_TYPE.getDescriptor(), null, null));
+      }
+      if (hasStaticInitializer || hasSkippedMethods || !methodSignatures.isEmpty()) {
+        classNode.methods.add(generateStaticInitializerNotifierMethod(hasStaticInitializer));
+      }
     }
 
     private boolean isSyntheticAccessorMethod(MethodNode method) {
@@ -697,15 +1085,18 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       }
 
       // instance []
-      instructions.add(new LdcInsnNode(targetMethod.owner + "/" + targetMethod.name + targetMethod.desc)); // target method signature
-      // instance [] signature
-      instructions.add(new InsnNode(DUP_X2));       // signature instance [] signature
-      instructions.add(new InsnNode(POP));          // signature instance []
-
-      instructions.add(new LdcInsnNode(classType)); // signature instance [] class
+      instructions.add(new MethodInsnNode(INVOKESTATIC, internalClassName, GET_METHOD_IDS_METHOD.getName(),
+          GET_METHOD_IDS_METHOD.getDescriptor(), false)); // instance [] ids
+      instructions.add(new LdcInsnNode(methodSignatures.size()));  // instance [] ids index
+      instructions.add(new InsnNode(IALOAD));       // instance [] methodId
+      methodSignatures.add(targetMethod.owner + "/" + targetMethod.name + targetMethod.desc);
+      instructions.add(new InsnNode(DUP_X2));       // methodId instance [] methodId
+      instructions.add(new InsnNode(POP));          // methodId instance []
+
+      instructions.add(new LdcInsnNode(classType)); // methodId instance [] class
       instructions.add(new MethodInsnNode(INVOKESTATIC,
           Type.getType(RobolectricInternals.class).getInternalName(), "intercept",
-          "(Ljava/lang/String;Ljava/lang/Object;[Ljava/lang/Object;Ljava/lang/Class;)Ljava/lang/Object;"));
+          "(ILjava/lang/Object;[Ljava/lang/Object;Ljava/lang/Class;)Ljava/lang/Object;"));
 
       final Type returnType = Type.getReturnType(targetMethod.desc);
       switch (returnType.getSort()) {
@@ -761,16 +1152,73 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       method.access = (method.access | ACC_PRIVATE) & ~(ACC_PUBLIC | ACC_PROTECTED);
     }
 
-    private MethodNode generateStaticInitializerNotifierMethod() {
+    /**
+     * Generates a static initializer which looks up the IDs of this class's instrumented methods and whether methods
+     * skipped by selective instrumentation should be intercepted, and, if the class had a static initializer of its
+     * own, notifies the class handler so it can run it.
+     */
+    private MethodNode generateStaticInitializerNotifierMethod(boolean notifyClassHandler) {
       MethodNode methodNode = new MethodNode(ACC_STATIC, "<clinit>", "()V", "()V", null);
       MyGenerator m = new MyGenerator(methodNode);
-      m.push(classType);
-      m.invokeStatic(Type.getType(RobolectricInternals.class), new Method("classInitializing", "(Ljava/lang/Class;)V"));
+      if (hasSkippedMethods) {
+        m.push(classType);
+        m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, INTERCEPTS_ALL_METHODS_METHOD);
+        m.putStatic(classType, INTERCEPT_ALL_FIELD_NAME, Type.BOOLEAN_TYPE);
+      }
+      if (!methodSignatures.isEmpty()) {
+        m.invokeStatic(classType, GET_METHOD_IDS_METHOD);
+        m.pop();
+      }
+      if (notifyClassHandler) {
+        m.push(classType);
+        m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, new Method("classInitializing", "(Ljava/lang/Class;)V"));
+      }
+      m.returnValue();
+      m.endMethod();
+      return methodNode;
+    }
+
+    /**
+     * Generates a method which returns the IDs of this class's instrumented methods, looking them up if the static
+     * initializer hasn't yet. Instrumented code can run before then when classes' static initializers refer to each
+     * other, e.g. when a superclass's static initializer creates an instance of a subclass which is being initialized.
+     */
+    private MethodNode generateMethodIdsMethod() {
+      MethodNode methodNode = new MethodNode(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, GET_METHOD_IDS_METHOD.getName(),
+          GET_METHOD_IDS_METHOD.getDescriptor(), null, null);
+      MyGenerator m = new MyGenerator(methodNode);
+      Label alreadyInitialized = new Label();
+      m.getStatic(classType, METHOD_IDS_FIELD_NAME, INT_ARRAY_TYPE);
+      m.ifNonNull(alreadyInitialized);
+      m.push(methodSignatures.size());
+      m.newArray(Type.getType(String.class));
+      for (int i = 0; i < methodSignatures.size(); i++) {
+        m.dup();
+        m.push(i);
+        m.push(methodSignatures.get(i));
+        m.arrayStore(Type.getType(String.class));
+      }
+      m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, METHOD_IDS_METHOD);
+      m.putStatic(classType, METHOD_IDS_FIELD_NAME, INT_ARRAY_TYPE);
+      m.mark(alreadyInitialized);
+      m.getStatic(classType, METHOD_IDS_FIELD_NAME, INT_ARRAY_TYPE);
       m.returnValue();
       m.endMethod();
       return methodNode;
     }
 
+    private void generateInitializeRoboData(MyGenerator m) {
+      Label alreadyInitialized = new Label();
+      m.loadThis();                                         // this
+      m.getField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
+      m.ifNonNull(alreadyInitialized);
+      m.loadThis();                                         // this
+      m.loadThis();                                         // this, this
+      m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, INITIALIZING_METHOD); // this, __robo_data__
+      m.putField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);
+      m.mark(alreadyInitialized);
+    }
+
     private void generateCallToClassHandler(MethodNode originalMethod, String originalMethodName, MyGenerator m) {
       int planLocalVar = m.newLocal(PLAN_TYPE);
       int exceptionLocalVar = m.newLocal(THROWABLE_TYPE);
@@ -810,8 +1258,33 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
         m.mark(notInstanceOfThis);
       }
 
-      // prepare for call to classHandler.methodInvoked(String signature, boolean isStatic)
-      m.push(classType.getInternalName() + "/" + originalMethodName + originalMethod.desc);
+      if (!originalMethodName.equals(ShadowConstants.CONSTRUCTOR_METHOD_NAME)) {
+        if (config.shouldInterceptMethod(className, originalMethodName)) {
+          interceptedMethodCount.incrementAndGet();
+          totalInterceptedMethodCount.incrementAndGet();
+        } else {
+          // no shadow provider could shadow this method, so only consult the class handler if asked to
+          hasSkippedMethods = true;
+          skippedMethodCount.incrementAndGet();
+          totalSkippedMethodCount.incrementAndGet();
+          Label interceptAll = new Label();
+          m.getStatic(classType, INTERCEPT_ALL_FIELD_NAME, Type.BOOLEAN_TYPE);
+          m.visitJumpInsn(IFNE, interceptAll);
+          generateDirectCall(originalMethod, exceptionLocalVar, m);
+          m.mark(interceptAll);
+        }
+      }
+
+      if (config.useInvokeDynamic()) {
+        generateInvokeDynamic(originalMethod, originalMethodName, m);
+        return;
+      }
+
+      // prepare for call to classHandler.methodInvoked(int methodId, boolean isStatic, Class theClass)
+      m.invokeStatic(classType, GET_METHOD_IDS_METHOD);
+      m.push(methodSignatures.size());
+      m.arrayLoad(Type.INT_TYPE);
+      methodSignatures.add(classType.getInternalName() + "/" + originalMethodName + originalMethod.desc);
       m.push(m.isStatic());
       m.push(classType);                                         // my class
       m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, METHOD_INVOKED_METHOD);
@@ -872,23 +1345,57 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
 
       if (!originalMethod.name.equals("<init>")) {
         m.mark(directCall);
-        TryCatch tryCatchForDirect = m.tryStart(THROWABLE_TYPE);
-        m.invokeMethod(classType.getInternalName(), originalMethod.name, originalMethod.desc);
-        tryCatchForDirect.end();
-        m.returnValue();
-
-        // catch(Throwable)
-        tryCatchForDirect.handler();
-        m.storeLocal(exceptionLocalVar);
-        m.loadLocal(exceptionLocalVar);
-        m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, HANDLE_EXCEPTION_METHOD);
-        m.throwException();
+        generateDirectCall(originalMethod, exceptionLocalVar, m);
       }
 
       m.mark(doReturn);
       m.returnValue();
     }
 
+    private void generateDirectCall(MethodNode originalMethod, int exceptionLocalVar, MyGenerator m) {
+      TryCatch tryCatchForDirect = m.tryStart(THROWABLE_TYPE);
+      m.invokeMethod(classType.getInternalName(), originalMethod.name, originalMethod.desc);
+      tryCatchForDirect.end();
+      m.returnValue();
+
+      // catch(Throwable)
+      tryCatchForDirect.handler();
+      m.storeLocal(exceptionLocalVar);
+      m.loadLocal(exceptionLocalVar);
+      m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, HANDLE_EXCEPTION_METHOD);
+      m.throwException();
+    }
+
+    private void generateInvokeDynamic(MethodNode originalMethod, String originalMethodName, MyGenerator m) {
+      int exceptionLocalVar = m.newLocal(THROWABLE_TYPE);
+      String callSiteDesc = m.isStatic() ? originalMethod.desc
+          : Type.getMethodDescriptor(m.getReturnType(), prepend(classType, Type.getArgumentTypes(originalMethod.desc)));
+
+      // the call site is linked by InvokeDynamicSupport to the shadow method, the original code, or the plan
+      TryCatch tryCatchForCallSite = m.tryStart(THROWABLE_TYPE);
+      if (!m.isStatic()) {
+        m.loadThis();                                         // this
+      }
+      m.loadArgs();                                           // [this], [args]
+      m.invokeDynamic(originalMethodName, callSiteDesc, BOOTSTRAP_HANDLE, m.isStatic() ? 1 : 0);
+      tryCatchForCallSite.end();
+      m.returnValue();
+
+      // catch(Throwable)
+      tryCatchForCallSite.handler();
+      m.storeLocal(exceptionLocalVar);
+      m.loadLocal(exceptionLocalVar);
+      m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, HANDLE_EXCEPTION_METHOD);
+      m.throwException();
+    }
+
+    private Type[] prepend(Type type, Type[] types) {
+      Type[] result = new Type[types.length + 1];
+      result[0] = type;
+      System.arraycopy(types, 0, result, 1, types.length);
+      return result;
+    }
+
     private boolean isEnum() {
       return (classNode.access & ACC_ENUM) != 0;
     }
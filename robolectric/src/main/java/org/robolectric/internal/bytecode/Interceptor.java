@@ -0,0 +1,36 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.util.Function;
+
+import static org.robolectric.internal.bytecode.InstrumentationConfiguration.MethodRef;
+
+/**
+ * Replaces calls to one or more methods which can't be shadowed, e.g. because they're part of the JDK.
+ *
+ * Call sites of an interceptor's methods are rewritten by {@link InstrumentingClassLoader} to go through
+ * {@link ClassHandler#intercept(int, Object, Object[], Class)}. {@link ShadowWrangler} asks the interceptor for a
+ * handler the first time each method is called, and reuses it for later calls.
+ *
+ * Interceptors may be registered as services in {@code META-INF/services/org.robolectric.internal.bytecode.Interceptor}
+ * to be picked up by {@link Interceptors#load()}.
+ */
+public abstract class Interceptor {
+  private final MethodRef[] methodRefs;
+
+  public Interceptor(MethodRef... methodRefs) {
+    this.methodRefs = methodRefs;
+  }
+
+  /**
+   * @return The methods to intercept; a method name of {@code *} intercepts every method of a class.
+   */
+  public MethodRef[] getMethodRefs() {
+    return methodRefs;
+  }
+
+  /**
+   * @param methodSignature An intercepted method.
+   * @return A handler to call in place of the method.
+   */
+  public abstract Function<Object, Object> handle(MethodSignature methodSignature);
+}
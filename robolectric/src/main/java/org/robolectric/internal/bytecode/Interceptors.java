@@ -0,0 +1,73 @@
+package org.robolectric.internal.bytecode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import static org.robolectric.internal.bytecode.InstrumentationConfiguration.MethodRef;
+
+/**
+ * Registry of {@link Interceptor}s, keyed by the methods they intercept.
+ */
+public class Interceptors {
+  private final Map<MethodRef, Interceptor> interceptors = new HashMap<>();
+
+  public Interceptors(Interceptor... interceptors) {
+    this(Arrays.asList(interceptors));
+  }
+
+  public Interceptors(Collection<Interceptor> interceptors) {
+    for (Interceptor interceptor : interceptors) {
+      for (MethodRef methodRef : interceptor.getMethodRefs()) {
+        this.interceptors.put(methodRef, interceptor);
+      }
+    }
+  }
+
+  /**
+   * Robolectric's own interceptors, followed by any registered as {@link Interceptor} services, which may replace
+   * them. The services are looked up once, the first time this is called.
+   *
+   * @return The registry.
+   */
+  public static Interceptors load() {
+    return LoadedInterceptorsHolder.INSTANCE;
+  }
+
+  private static class LoadedInterceptorsHolder {
+    private static final Interceptors INSTANCE;
+
+    static {
+      List<Interceptor> interceptors = new ArrayList<>(AndroidInterceptors.all());
+      for (Interceptor interceptor : ServiceLoader.load(Interceptor.class)) {
+        interceptors.add(interceptor);
+      }
+      INSTANCE = new Interceptors(interceptors);
+    }
+  }
+
+  /**
+   * @return Every method intercepted by this registry.
+   */
+  public Collection<MethodRef> getAllMethodRefs() {
+    return Collections.unmodifiableSet(interceptors.keySet());
+  }
+
+  /**
+   * @param className The fully-qualified name of the class declaring the method.
+   * @param methodName The method name.
+   * @return The interceptor for the method or its class, or null if there is none.
+   */
+  public Interceptor findInterceptor(String className, String methodName) {
+    Interceptor interceptor = interceptors.get(new MethodRef(className, methodName));
+    if (interceptor == null) {
+      interceptor = interceptors.get(new MethodRef(className, "*"));
+    }
+    return interceptor;
+  }
+}
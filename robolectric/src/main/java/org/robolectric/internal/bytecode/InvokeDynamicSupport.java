@@ -0,0 +1,190 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.internal.Shadow;
+import org.robolectric.internal.ShadowConstants;
+import org.robolectric.internal.ShadowedObject;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Links the invokedynamic call sites generated by {@link InstrumentingClassLoader} when
+ * {@link InstrumentationConfiguration#useInvokeDynamic()} is set.
+ *
+ * Each call site asks the current {@link ClassHandler} for a {@link ClassHandler.Plan} the first time it's
+ * invoked, and binds directly to the shadow method or the original code where it can, so later calls skip
+ * the plan lookup, argument boxing and reflection. Call sites are guarded by a {@link SwitchPoint} which is
+ * invalidated when the class handler changes, causing every site to relink against the new handler.
+ *
+ * Like {@link RobolectricInternals}, this class is loaded separately by each {@link InstrumentingClassLoader}.
+ */
+public class InvokeDynamicSupport {
+  private static final MethodHandle RELINK;
+  private static final MethodHandle RUN_PLAN;
+  private static final MethodHandle NULL_TO_ZERO;
+
+  static {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      RELINK = lookup.findVirtual(ShadowCallSite.class, "relinkAndInvoke", methodType(Object.class, Object[].class));
+      RUN_PLAN = lookup.findStatic(InvokeDynamicSupport.class, "runPlan",
+          methodType(Object.class, ClassHandler.Plan.class, Object.class, Object[].class));
+      NULL_TO_ZERO = lookup.findStatic(InvokeDynamicSupport.class, "nullToZero",
+          methodType(Object.class, Object.class, Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static volatile SwitchPoint switchPoint = new SwitchPoint();
+
+  /**
+   * Bootstrap method for instrumented methods.
+   *
+   * @param caller Lookup for the instrumented class.
+   * @param name The name of the instrumented method.
+   * @param type The type of the call site; for instance methods, the first parameter is the receiver.
+   * @param isStatic 1 if the instrumented method is static, else 0.
+   * @return A call site which links itself on first use.
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  public static CallSite bootstrap(MethodHandles.Lookup caller, String name, MethodType type, int isStatic) {
+    return new ShadowCallSite(caller, name, type, isStatic != 0);
+  }
+
+  static synchronized void classHandlerChanged() {
+    SwitchPoint oldSwitchPoint = switchPoint;
+    switchPoint = new SwitchPoint();
+    SwitchPoint.invalidateAll(new SwitchPoint[] {oldSwitchPoint});
+  }
+
+  private static Object runPlan(ClassHandler.Plan plan, Object instance, Object[] params) throws Throwable {
+    Object roboData = instance == null ? null : ((ShadowedObject) instance).$$robo$getData();
+    return plan.run(instance, roboData, params);
+  }
+
+  private static Object nullToZero(Object value, Object zero) {
+    return value == null ? zero : value;
+  }
+
+  static class ShadowCallSite extends MutableCallSite {
+    private final MethodHandles.Lookup caller;
+    private final String name;
+    private final boolean isStatic;
+    private final MethodHandle relink;
+
+    ShadowCallSite(MethodHandles.Lookup caller, String name, MethodType type, boolean isStatic) {
+      super(type);
+      this.caller = caller;
+      this.name = name;
+      this.isStatic = isStatic;
+      this.relink = RELINK.bindTo(this).asCollector(Object[].class, type.parameterCount()).asType(type);
+      setTarget(relink);
+    }
+
+    Object relinkAndInvoke(Object[] args) throws Throwable {
+      // read the switch point before consulting the class handler, so a concurrent change forces another relink
+      SwitchPoint currentSwitchPoint = switchPoint;
+      MethodHandle target = link();
+      setTarget(currentSwitchPoint.guardWithTest(target, relink));
+      return target.invokeWithArguments(args);
+    }
+
+    private MethodHandle link() throws NoSuchMethodException, IllegalAccessException {
+      Class<?> theClass = caller.lookupClass();
+      MethodType methodType = isStatic ? type() : type().dropParameterTypes(0, 1);
+      String signature = theClass.getName().replace('.', '/') + "/" + name + methodType.toMethodDescriptorString();
+      ClassHandler.Plan plan = RobolectricInternals.methodInvoked(MethodIds.idFor(signature), isStatic, theClass);
+
+      if (plan == null) {
+        String directMethodName = Shadow.directMethodName(name);
+        return isStatic
+            ? caller.findStatic(theClass, directMethodName, methodType)
+            : caller.findSpecial(theClass, directMethodName, methodType, theClass);
+      }
+
+      if (plan == ShadowWrangler.DO_NOTHING_PLAN) {
+        return doNothing();
+      }
+
+      if (plan instanceof ShadowWrangler.ShadowMethodPlan) {
+        MethodHandle shadowMethod = bindShadowMethod(((ShadowWrangler.ShadowMethodPlan) plan).getShadowMethod());
+        if (shadowMethod != null) {
+          return shadowMethod;
+        }
+      }
+
+      return bindPlan(plan);
+    }
+
+    private MethodHandle doNothing() {
+      Class<?> returnType = type().returnType();
+      MethodHandle constant = returnType == void.class
+          ? MethodHandles.constant(Object.class, null)
+          : MethodHandles.constant(returnType, zeroFor(returnType));
+      return MethodHandles.dropArguments(constant, 0, type().parameterList()).asType(type());
+    }
+
+    /**
+     * Bind directly to a shadow method, or return null if it can't be called without the generic plan's
+     * conversions (e.g. a loose signature whose null result must become a primitive zero).
+     */
+    private MethodHandle bindShadowMethod(Method shadowMethod) throws NoSuchMethodException, IllegalAccessException {
+      boolean shadowIsStatic = Modifier.isStatic(shadowMethod.getModifiers());
+      if (isStatic && !shadowIsStatic) {
+        return null;
+      }
+
+      Class<?> returnType = type().returnType();
+      if (returnType.isPrimitive() && returnType != void.class && shadowMethod.getReturnType() != returnType) {
+        return null;
+      }
+
+      shadowMethod.setAccessible(true);
+      MethodHandle handle = caller.unreflect(shadowMethod);
+      if (!shadowIsStatic) {
+        MethodHandle getRoboData = caller.findVirtual(caller.lookupClass(), ShadowConstants.GET_ROBO_DATA_METHOD_NAME, methodType(Object.class));
+        handle = MethodHandles.filterArguments(handle.asType(handle.type().changeParameterType(0, Object.class)), 0, getRoboData);
+      } else if (!isStatic) {
+        handle = MethodHandles.dropArguments(handle, 0, type().parameterType(0));
+      }
+
+      try {
+        return handle.asType(type());
+      } catch (WrongMethodTypeException e) {
+        return null;
+      }
+    }
+
+    private MethodHandle bindPlan(ClassHandler.Plan plan) {
+      MethodHandle handle = RUN_PLAN.bindTo(plan);
+      int paramCount = type().parameterCount();
+      if (isStatic) {
+        handle = MethodHandles.insertArguments(handle, 0, (Object) null);
+      } else {
+        paramCount--;
+      }
+      handle = handle.asCollector(Object[].class, paramCount);
+
+      Class<?> returnType = type().returnType();
+      if (returnType.isPrimitive() && returnType != void.class) {
+        handle = MethodHandles.filterReturnValue(handle, MethodHandles.insertArguments(NULL_TO_ZERO, 1, zeroFor(returnType)));
+      }
+      return handle.asType(type());
+    }
+  }
+
+  private static Object zeroFor(Class<?> type) {
+    return type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0) : null;
+  }
+}
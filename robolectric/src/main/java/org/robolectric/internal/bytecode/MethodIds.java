@@ -0,0 +1,69 @@
+package org.robolectric.internal.bytecode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns each instrumented method signature a small integer ID, so {@link ClassHandler}s can keep per-method state
+ * in arrays rather than maps keyed by signature strings.
+ *
+ * IDs are assigned when an instrumented class is initialized, and are shared by every {@link InstrumentingClassLoader}
+ * in the JVM; they aren't stable across JVMs, so they never appear in instrumented bytecode.
+ */
+public class MethodIds {
+  private static final Map<String, Integer> ids = new HashMap<>();
+  private static String[] signatures = new String[1024];
+  private static int count;
+
+  /**
+   * Look up or assign the IDs of a class's instrumented methods.
+   *
+   * @param methodSignatures Method signatures, e.g. {@code android/view/View/getId()I}.
+   * @return The ID of each signature, in the same order.
+   */
+  public static synchronized int[] idsFor(String[] methodSignatures) {
+    int[] methodIds = new int[methodSignatures.length];
+    for (int i = 0; i < methodSignatures.length; i++) {
+      methodIds[i] = idFor(methodSignatures[i]);
+    }
+    return methodIds;
+  }
+
+  /**
+   * Look up or assign the ID of an instrumented method.
+   *
+   * @param methodSignature Method signature, e.g. {@code android/view/View/getId()I}.
+   * @return The method's ID.
+   */
+  public static synchronized int idFor(String methodSignature) {
+    Integer id = ids.get(methodSignature);
+    if (id == null) {
+      if (count == signatures.length) {
+        signatures = Arrays.copyOf(signatures, count * 2);
+      }
+      id = count++;
+      signatures[id] = methodSignature;
+      ids.put(methodSignature, id);
+    }
+    return id;
+  }
+
+  /**
+   * @param methodId A method ID.
+   * @return The signature the ID was assigned to.
+   */
+  public static synchronized String signatureOf(int methodId) {
+    if (methodId < 0 || methodId >= count) {
+      throw new IllegalArgumentException("unknown method ID " + methodId);
+    }
+    return signatures[methodId];
+  }
+
+  /**
+   * @return The number of IDs assigned so far.
+   */
+  public static synchronized int size() {
+    return count;
+  }
+}
@@ -0,0 +1,115 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.util.Digests;
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Persists the parts of a {@link ShadowWrangler}'s plan table that can be reused by later JVM runs, so the first
+ * test in a new JVM doesn't have to recalculate them.
+ *
+ * Only methods of classes with no shadow are persisted: their plans depend on nothing but the {@link ShadowMap},
+ * whereas plans for shadowed classes depend on the shadow classes' code, which may change between runs. Each
+ * file is named for a digest of the Robolectric version, the SDK, and {@link ShadowMap#fingerprint()}, and is
+ * written to a temporary file and atomically renamed into place.
+ */
+public class PersistentPlanCache {
+
+  /**
+   * When set, plans are cached in this directory and reused by later runs.
+   */
+  public static final String PLAN_CACHE_DIR_PROPERTY = "robolectric.plancache.dir";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File file;
+
+  public PersistentPlanCache(File baseDir, String robolectricVersion, SdkConfig sdkConfig, ShadowMap shadowMap) {
+    String key = robolectricVersion + "\n" + sdkConfig.getApiLevel() + "\n" + shadowMap.fingerprint();
+    this.file = new File(baseDir, Digests.sha1Hex(key.getBytes(UTF8)) + ".plans");
+  }
+
+  /**
+   * @param sdkConfig The SDK the plans are for.
+   * @param shadowMap The shadow map the plans are for.
+   * @return A plan cache in the directory named by {@link #PLAN_CACHE_DIR_PROPERTY}, or null if it isn't set.
+   */
+  public static PersistentPlanCache fromSystemProperties(SdkConfig sdkConfig, ShadowMap shadowMap) {
+    String cacheDir = System.getProperty(PLAN_CACHE_DIR_PROPERTY);
+    if (cacheDir == null) {
+      return null;
+    }
+    return new PersistentPlanCache(new File(cacheDir), SdkConfig.getRobolectricVersion(), sdkConfig, shadowMap);
+  }
+
+  /**
+   * Seed a class handler with previously cached plans, and save its plans when the JVM exits. Handlers which have
+   * been garbage collected by then aren't saved.
+   *
+   * @param shadowWrangler The class handler.
+   */
+  public void attach(ShadowWrangler shadowWrangler) {
+    shadowWrangler.addUnshadowedMethodSignatures(load());
+
+    final WeakReference<ShadowWrangler> shadowWranglerRef = new WeakReference<>(shadowWrangler);
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override public void run() {
+        ShadowWrangler shadowWrangler = shadowWranglerRef.get();
+        if (shadowWrangler != null) {
+          store(shadowWrangler.getUnshadowedMethodSignatures());
+        }
+      }
+    }));
+  }
+
+  /**
+   * @return Signatures of methods of unshadowed classes, or an empty list if none are cached.
+   */
+  public List<String> load() {
+    if (file.isFile()) {
+      try {
+        return Files.readAllLines(file.toPath(), UTF8);
+      } catch (IOException e) {
+        Logger.debug("Failed to read cached plans %s: %s", file, e);
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Store signatures of methods of unshadowed classes. Failures are logged and otherwise ignored.
+   *
+   * @param signatures Method signatures, e.g. {@code android/view/View/getId()I}.
+   */
+  public void store(List<String> signatures) {
+    File dir = file.getParentFile();
+    try {
+      if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+        throw new IOException("couldn't create " + dir);
+      }
+      File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+      try {
+        Files.write(tempFile.toPath(), new TreeSet<>(signatures), UTF8);
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        tempFile.delete();
+      }
+    } catch (IOException e) {
+      Logger.debug("Failed to cache plans %s: %s", file, e);
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+}
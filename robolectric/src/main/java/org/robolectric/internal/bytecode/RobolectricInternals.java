@@ -8,6 +8,14 @@ public class RobolectricInternals {
   @SuppressWarnings("UnusedDeclaration")
   private static ClassHandler classHandler; // initialized via magic by SdkEnvironment
 
+  @SuppressWarnings("UnusedDeclaration")
+  public static void setClassHandler(ClassHandler classHandler) {
+    if (RobolectricInternals.classHandler != classHandler) {
+      RobolectricInternals.classHandler = classHandler;
+      InvokeDynamicSupport.classHandlerChanged();
+    }
+  }
+
   @SuppressWarnings("UnusedDeclaration")
   public static void classInitializing(Class clazz) throws Exception {
     classHandler.classInitializing(clazz);
@@ -19,8 +27,20 @@ public class RobolectricInternals {
   }
 
   @SuppressWarnings("UnusedDeclaration")
-  public static ClassHandler.Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
-    return classHandler.methodInvoked(signature, isStatic, theClass);
+  public static ClassHandler.Plan methodInvoked(int methodId, boolean isStatic, Class<?> theClass) {
+    return classHandler.methodInvoked(methodId, isStatic, theClass);
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  public static int[] methodIds(String[] signatures) {
+    return MethodIds.idsFor(signatures);
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  public static boolean interceptsAllMethods(Class<?> theClass) {
+    ClassLoader classLoader = theClass.getClassLoader();
+    return classLoader instanceof InstrumentingClassLoader
+        && ((InstrumentingClassLoader) classLoader).interceptsAllMethodsOf(theClass.getName());
   }
 
   @SuppressWarnings("UnusedDeclaration")
@@ -28,9 +48,9 @@ public class RobolectricInternals {
     return classHandler.stripStackTrace(exception);
   }
 
-  public static Object intercept(String signature, Object instance, Object[] params, Class theClass) throws Throwable {
+  public static Object intercept(int methodId, Object instance, Object[] params, Class theClass) throws Throwable {
     try {
-      return classHandler.intercept(signature, instance, params, theClass);
+      return classHandler.intercept(methodId, instance, params, theClass);
     } catch (java.lang.LinkageError e) {
       throw new Exception(e);
     }
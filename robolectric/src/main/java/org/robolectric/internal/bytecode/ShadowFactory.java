@@ -0,0 +1,101 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.annotation.RealObject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the shadows for instances of one instrumented class. {@link ShadowWrangler} resolves a factory once for
+ * each class, so creating a shadow doesn't walk the class hierarchy, load the shadow class or reflect over its fields.
+ *
+ * The shadow's constructor and {@link RealObject} fields are bound as {@link MethodHandle}s when the factory is
+ * created, which avoids the access checks of {@link Class#newInstance()} and {@link Field#set(Object, Object)}.
+ */
+abstract class ShadowFactory {
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+  private static final MethodType INJECTOR_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  /**
+   * @param instance The instance being initialized.
+   * @return The new shadow.
+   */
+  abstract Object createShadowFor(Object instance);
+
+  /**
+   * @param shadow The object to return for every instance.
+   * @return A factory which always returns the given object.
+   */
+  static ShadowFactory constant(final Object shadow) {
+    return new ShadowFactory() {
+      @Override
+      Object createShadowFor(Object instance) {
+        return shadow;
+      }
+    };
+  }
+
+  /**
+   * @param shadowClass The shadow class, which must have an empty constructor.
+   * @return A factory for instances of the shadow class.
+   */
+  static ShadowFactory forShadowClass(Class<?> shadowClass) {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      if (Modifier.isAbstract(shadowClass.getModifiers())) {
+        throw new InstantiationException(shadowClass.getName() + " is abstract");
+      }
+      Constructor<?> constructor = shadowClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      MethodHandle constructorHandle = lookup.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+
+      List<MethodHandle> injectors = new ArrayList<>();
+      for (Class<?> clazz = shadowClass; clazz != null; clazz = clazz.getSuperclass()) {
+        for (Field field : clazz.getDeclaredFields()) {
+          if (field.isAnnotationPresent(RealObject.class)) {
+            field.setAccessible(true);
+            MethodHandle setter = lookup.unreflectSetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+              setter = MethodHandles.dropArguments(setter, 0, Object.class);
+            }
+            injectors.add(setter.asType(INJECTOR_TYPE));
+          }
+        }
+      }
+      return new MethodHandleShadowFactory(constructorHandle, injectors.toArray(new MethodHandle[injectors.size()]));
+    } catch (InstantiationException | NoSuchMethodException | IllegalAccessException | SecurityException e) {
+      throw new RuntimeException("Could not instantiate shadow, missing public empty constructor.", e);
+    }
+  }
+
+  private static class MethodHandleShadowFactory extends ShadowFactory {
+    private final MethodHandle constructor;
+    private final MethodHandle[] injectors;
+
+    MethodHandleShadowFactory(MethodHandle constructor, MethodHandle[] injectors) {
+      this.constructor = constructor;
+      this.injectors = injectors;
+    }
+
+    @Override
+    Object createShadowFor(Object instance) {
+      try {
+        Object shadow = (Object) constructor.invokeExact();
+        for (MethodHandle injector : injectors) {
+          injector.invokeExact(shadow, instance);
+        }
+        return shadow;
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new RuntimeException(t);
+      }
+    }
+  }
+}
@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.TreeMap;
 
 public class ShadowMap {
   public static final ShadowMap EMPTY = new ShadowMap(Collections.<String, ShadowConfig>emptyMap());
@@ -71,6 +72,35 @@ public class ShadowMap {
     return new ShadowInfo(className, new ShadowConfig(clazz.getName(), annotation));
   }
 
+  /**
+   * A stable description of this map and of the shadows registered by every {@link ShadowProvider}, suitable for
+   * keying persistent caches of {@link ShadowWrangler} plans.
+   *
+   * @return Fingerprint of this shadow map.
+   */
+  public String fingerprint() {
+    StringBuilder buf = new StringBuilder();
+    buf.append("providedShadows=").append(new TreeMap<>(SHADOWS));
+    buf.append("\nshadows={");
+    for (Map.Entry<String, ShadowConfig> entry : new TreeMap<>(map).entrySet()) {
+      ShadowConfig shadowConfig = entry.getValue();
+      buf.append(entry.getKey()).append('=').append(shadowConfig.shadowClassName)
+          .append(':').append(shadowConfig.callThroughByDefault)
+          .append(':').append(shadowConfig.inheritImplementationMethods)
+          .append(':').append(shadowConfig.looseSignatures)
+          .append(';');
+    }
+    buf.append('}');
+    return buf.toString();
+  }
+
+  /**
+   * @return Names of the classes shadowed by this map, excluding those registered by {@link ShadowProvider}s.
+   */
+  public Collection<String> getShadowedClassNames() {
+    return Collections.unmodifiableSet(map.keySet());
+  }
+
   public Builder newBuilder() {
     return new Builder(this);
   }
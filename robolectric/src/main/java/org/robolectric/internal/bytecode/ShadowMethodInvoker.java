@@ -0,0 +1,14 @@
+package org.robolectric.internal.bytecode;
+
+/**
+ * Calls a shadow method directly, without reflection. See {@link ShadowMethodInvokers}.
+ */
+public interface ShadowMethodInvoker {
+  /**
+   * @param shadow The shadow instance, or null for static shadow methods.
+   * @param params The arguments, with primitives boxed.
+   * @return The shadow method's result, boxed if primitive, or null if void.
+   * @throws Throwable Anything thrown by the shadow method, unwrapped.
+   */
+  Object invoke(Object shadow, Object[] params) throws Throwable;
+}
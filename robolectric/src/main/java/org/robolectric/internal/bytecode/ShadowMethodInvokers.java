@@ -0,0 +1,138 @@
+package org.robolectric.internal.bytecode;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates {@link ShadowMethodInvoker}s for shadow methods.
+ *
+ * Public shadow methods of public classes get a generated class which unboxes the arguments and calls the method
+ * directly, so unlike {@link Method#invoke(Object, Object...)} there's no slow native path before the JVM's
+ * inflation threshold and no wrapping of exceptions. Other shadow methods fall back to a {@link MethodHandle}.
+ */
+class ShadowMethodInvokers {
+  private static final Type OBJECT_TYPE = Type.getType(Object.class);
+  private static final Type OBJECT_ARRAY_TYPE = Type.getType(Object[].class);
+  private static final String INVOKER_INTERNAL_NAME = Type.getInternalName(ShadowMethodInvoker.class);
+  private static final org.objectweb.asm.commons.Method INVOKE_METHOD =
+      new org.objectweb.asm.commons.Method("invoke", OBJECT_TYPE, new Type[] {OBJECT_TYPE, OBJECT_ARRAY_TYPE});
+
+  private static final AtomicInteger invokerCount = new AtomicInteger();
+  private static final Map<ClassLoader, InvokerClassLoader> invokerClassLoaders = new WeakHashMap<>();
+
+  static ShadowMethodInvoker create(Method shadowMethod) {
+    Class<?> shadowClass = shadowMethod.getDeclaringClass();
+    if (Modifier.isPublic(shadowClass.getModifiers()) && Modifier.isPublic(shadowMethod.getModifiers())
+        && !shadowClass.isInterface() && shadowClass.getClassLoader() != null) {
+      try {
+        String className = ShadowMethodInvoker.class.getName() + "$$" + shadowClass.getSimpleName()
+            + "$" + shadowMethod.getName() + "$" + invokerCount.incrementAndGet();
+        Class<?> invokerClass = invokerClassLoaderFor(shadowClass.getClassLoader())
+            .define(className, generateInvokerClass(className.replace('.', '/'), shadowMethod));
+        return (ShadowMethodInvoker) invokerClass.newInstance();
+      } catch (LinkageError | ReflectiveOperationException e) {
+        // e.g. the shadow class's loader can't see ShadowMethodInvoker; use a method handle instead
+      }
+    }
+    return new MethodHandleInvoker(shadowMethod);
+  }
+
+  private static synchronized InvokerClassLoader invokerClassLoaderFor(ClassLoader shadowClassLoader) {
+    InvokerClassLoader invokerClassLoader = invokerClassLoaders.get(shadowClassLoader);
+    if (invokerClassLoader == null) {
+      invokerClassLoader = new InvokerClassLoader(shadowClassLoader);
+      invokerClassLoaders.put(shadowClassLoader, invokerClassLoader);
+    }
+    return invokerClassLoader;
+  }
+
+  private static byte[] generateInvokerClass(String internalName, Method shadowMethod) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+        internalName, null, OBJECT_TYPE.getInternalName(), new String[] {INVOKER_INTERNAL_NAME});
+
+    org.objectweb.asm.commons.Method constructor = org.objectweb.asm.commons.Method.getMethod("void <init>()");
+    GeneratorAdapter m = new GeneratorAdapter(Opcodes.ACC_PUBLIC, constructor, null, null, writer);
+    m.loadThis();
+    m.invokeConstructor(OBJECT_TYPE, constructor);
+    m.returnValue();
+    m.endMethod();
+
+    Type shadowType = Type.getType(shadowMethod.getDeclaringClass());
+    boolean isStatic = Modifier.isStatic(shadowMethod.getModifiers());
+    Class<?>[] paramTypes = shadowMethod.getParameterTypes();
+
+    m = new GeneratorAdapter(Opcodes.ACC_PUBLIC, INVOKE_METHOD, null, null, writer);
+    if (!isStatic) {
+      m.loadArg(0);
+      m.checkCast(shadowType);
+    }
+    for (int i = 0; i < paramTypes.length; i++) {
+      m.loadArg(1);
+      m.push(i);
+      m.arrayLoad(OBJECT_TYPE);
+      m.unbox(Type.getType(paramTypes[i]));
+    }
+    org.objectweb.asm.commons.Method method = org.objectweb.asm.commons.Method.getMethod(shadowMethod);
+    if (isStatic) {
+      m.invokeStatic(shadowType, method);
+    } else {
+      m.invokeVirtual(shadowType, method);
+    }
+    Type returnType = method.getReturnType();
+    if (returnType == Type.VOID_TYPE) {
+      m.visitInsn(Opcodes.ACONST_NULL);
+    } else {
+      m.box(returnType);
+    }
+    m.returnValue();
+    m.endMethod();
+
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private static class InvokerClassLoader extends ClassLoader {
+    InvokerClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String className, byte[] bytes) {
+      return defineClass(className, bytes, 0, bytes.length);
+    }
+  }
+
+  private static class MethodHandleInvoker implements ShadowMethodInvoker {
+    private final MethodHandle handle;
+
+    MethodHandleInvoker(Method shadowMethod) {
+      shadowMethod.setAccessible(true);
+      MethodHandle handle;
+      try {
+        handle = MethodHandles.lookup().unreflect(shadowMethod).asFixedArity();
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+      handle = handle.asType(handle.type().generic());
+      if (Modifier.isStatic(shadowMethod.getModifiers())) {
+        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+      }
+      this.handle = handle.asSpreader(Object[].class, shadowMethod.getParameterTypes().length);
+    }
+
+    @Override
+    public Object invoke(Object shadow, Object[] params) throws Throwable {
+      return handle.invokeExact(shadow, params);
+    }
+  }
+}
@@ -1,17 +1,15 @@
 package org.robolectric.internal.bytecode;
 
-import android.content.Context;
 import org.robolectric.annotation.Implements;
-import org.robolectric.annotation.RealObject;
-import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.util.Function;
 import org.robolectric.internal.ShadowConstants;
 import org.robolectric.internal.Shadow;
-import org.robolectric.util.ReflectionHelpers.ClassParameter;
 
 import java.lang.reflect.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class ShadowWrangler implements ClassHandler {
   public static final Function<Object, Object> DO_NOTHING_HANDLER = new Function<Object, Object>() {
@@ -30,15 +28,21 @@ public class ShadowWrangler implements ClassHandler {
   private static final boolean STRIP_SHADOW_STACK_TRACES = true;
   private static final ShadowConfig NO_SHADOW_CONFIG = new ShadowConfig(Object.class.getName(), true, false, false);
   private static final Object NO_SHADOW = new Object();
+  private static final ShadowFactory NO_SHADOW_FACTORY = ShadowFactory.constant(NO_SHADOW);
   private final ShadowMap shadowMap;
-  private final Map<Class, MetaShadow> metaShadowMap = new HashMap<>();
-  private final Map<String, Plan> planCache = new LinkedHashMap<String, Plan>() {
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
-      return size() > 500;
-    }
-  };
+  // stand in for CALL_REAL_CODE_PLAN (null) in the plan table, which uses null for "not yet calculated"
+  private static final Plan CALL_REAL_CODE_MARKER = new MarkerPlan();
+  // ... for methods of classes with no shadow at all, whose plans depend only on the shadow map
+  private static final Plan UNSHADOWED_MARKER = new MarkerPlan();
+  private volatile AtomicReferenceArray<Plan> plans = new AtomicReferenceArray<>(1024);
+  private final AtomicLong planCacheHits = new AtomicLong();
+  private final AtomicLong planCacheMisses = new AtomicLong();
+  private final AtomicLong planComputeTimeNanos = new AtomicLong();
   private final Map<Class, ShadowConfig> shadowConfigCache = new ConcurrentHashMap<>();
+  private final Map<Class, ShadowFactory> shadowFactories = new ConcurrentHashMap<>();
+  private final Interceptors interceptors;
+  // handlers for intercepted call sites, indexed by method ID like the plan table
+  private volatile AtomicReferenceArray<Function<Object, Object>> interceptionHandlers = new AtomicReferenceArray<>(64);
   public static final HashMap<String, Object> PRIMITIVE_RETURN_VALUES = new HashMap<>();
 
   static {
@@ -52,7 +56,12 @@ public class ShadowWrangler implements ClassHandler {
   }
 
   public ShadowWrangler(ShadowMap shadowMap) {
+    this(shadowMap, Interceptors.load());
+  }
+
+  public ShadowWrangler(ShadowMap shadowMap, Interceptors interceptors) {
     this.shadowMap = shadowMap;
+    this.interceptors = interceptors;
   }
 
   public static Class<?> loadClass(String paramType, ClassLoader classLoader) {
@@ -108,13 +117,99 @@ public class ShadowWrangler implements ClassHandler {
   }
 
   @Override
-  public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
-    if (planCache.containsKey(signature)) return planCache.get(signature);
-    Plan plan = calculatePlan(signature, isStatic, theClass);
-    planCache.put(signature, plan);
+  public Plan methodInvoked(int methodId, boolean isStatic, Class<?> theClass) {
+    AtomicReferenceArray<Plan> plans = this.plans;
+    Plan plan = methodId < plans.length() ? plans.get(methodId) : null;
+    if (plan != null) {
+      planCacheHits.incrementAndGet();
+      return plan == CALL_REAL_CODE_MARKER || plan == UNSHADOWED_MARKER ? CALL_REAL_CODE_PLAN : plan;
+    }
+
+    // plans are deterministic, so racing threads may both calculate one but will store equivalent results
+    planCacheMisses.incrementAndGet();
+    long startTime = System.nanoTime();
+    plan = calculatePlan(MethodIds.signatureOf(methodId), isStatic, theClass);
+    planComputeTimeNanos.addAndGet(System.nanoTime() - startTime);
+    if (plan == CALL_REAL_CODE_PLAN) {
+      storePlan(methodId, getShadowConfig(theClass) == null ? UNSHADOWED_MARKER : CALL_REAL_CODE_MARKER);
+    } else {
+      storePlan(methodId, plan);
+    }
     return plan;
   }
 
+  /**
+   * Seed the plan table with methods previously found to belong to classes with no shadow, e.g. by an earlier
+   * run with an equivalent {@link ShadowMap}.
+   *
+   * @param signatures Method signatures, e.g. {@code android/view/View/getId()I}.
+   */
+  public void addUnshadowedMethodSignatures(Collection<String> signatures) {
+    for (String signature : signatures) {
+      int methodId = MethodIds.idFor(signature);
+      if (methodId >= plans.length() || plans.get(methodId) == null) {
+        storePlan(methodId, UNSHADOWED_MARKER);
+      }
+    }
+  }
+
+  /**
+   * @return Signatures of methods known to belong to classes with no shadow, which always call real code.
+   */
+  public List<String> getUnshadowedMethodSignatures() {
+    AtomicReferenceArray<Plan> plans = this.plans;
+    List<String> signatures = new ArrayList<>();
+    for (int i = 0; i < plans.length(); i++) {
+      if (plans.get(i) == UNSHADOWED_MARKER) {
+        signatures.add(MethodIds.signatureOf(i));
+      }
+    }
+    return signatures;
+  }
+
+  private synchronized void storePlan(int methodId, Plan plan) {
+    if (methodId >= plans.length()) {
+      plans = grow(plans, methodId);
+    }
+    plans.set(methodId, plan);
+  }
+
+  private synchronized void storeInterceptionHandler(int methodId, Function<Object, Object> handler) {
+    if (methodId >= interceptionHandlers.length()) {
+      interceptionHandlers = grow(interceptionHandlers, methodId);
+    }
+    interceptionHandlers.set(methodId, handler);
+  }
+
+  private static <T> AtomicReferenceArray<T> grow(AtomicReferenceArray<T> table, int index) {
+    AtomicReferenceArray<T> newTable = new AtomicReferenceArray<>(Math.max(table.length() * 2, index + 1));
+    for (int i = 0; i < table.length(); i++) {
+      newTable.set(i, table.get(i));
+    }
+    return newTable;
+  }
+
+  /**
+   * @return The number of method invocations whose plan was already cached.
+   */
+  public long getPlanCacheHitCount() {
+    return planCacheHits.get();
+  }
+
+  /**
+   * @return The number of method invocations which required a plan to be calculated.
+   */
+  public long getPlanCacheMissCount() {
+    return planCacheMisses.get();
+  }
+
+  /**
+   * @return Total time spent calculating plans, in nanoseconds.
+   */
+  public long getPlanComputeTimeNanos() {
+    return planComputeTimeNanos.get();
+  }
+
   private Plan calculatePlan(String signature, boolean isStatic, Class<?> theClass) {
     final InvocationProfile invocationProfile = new InvocationProfile(signature, isStatic, theClass.getClassLoader());
     ShadowConfig shadowConfig = getShadowConfig(invocationProfile.clazz);
@@ -223,96 +318,32 @@ public class ShadowWrangler implements ClassHandler {
   }
 
   @Override
-  public Object intercept(String signature, Object instance, Object[] params, Class theClass) throws Throwable {
-    final MethodSignature methodSignature = MethodSignature.parse(signature);
-    return getInterceptionHandler(methodSignature).call(theClass, instance, params);
+  public Object intercept(int methodId, Object instance, Object[] params, Class theClass) throws Throwable {
+    AtomicReferenceArray<Function<Object, Object>> handlers = this.interceptionHandlers;
+    Function<Object, Object> handler = methodId < handlers.length() ? handlers.get(methodId) : null;
+    if (handler == null) {
+      // like plans, handlers are deterministic, so a racing thread will store an equivalent one
+      handler = getInterceptionHandler(MethodSignature.parse(MethodIds.signatureOf(methodId)));
+      storeInterceptionHandler(methodId, handler);
+    }
+    return handler.call(theClass, instance, params);
   }
 
-  @SuppressWarnings("UnnecessaryBoxing")
   public Function<Object, Object> getInterceptionHandler(final MethodSignature methodSignature) {
-    // TODO: move these somewhere else!
-    if (methodSignature.matches(LinkedHashMap.class.getName(), "eldest")) {
-      return new Function<Object, Object>() {
-        @Override
-        public Object call(Class<?> theClass, Object value, Object[] params) {
-          LinkedHashMap map = (LinkedHashMap) value;
-          return map.isEmpty() ? null : map.entrySet().iterator().next();
-        }
-      };
-    } else if (methodSignature.matches("com.android.internal.policy.PolicyManager", "makeNewWindow")) {
-      return new Function<Object, Object>() {
-        @Override
-        public Object call(Class<?> theClass, Object value, Object[] params) {
-          ClassLoader cl = theClass.getClassLoader();
-          Class<?> shadowWindowClass;
-
-          try {
-            shadowWindowClass = cl.loadClass("org.robolectric.shadows.ShadowWindow");
-          } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-          }
-
-          Class<?> activityClass;
-
-          try {
-            activityClass = cl.loadClass(Context.class.getName());
-          } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-          }
-
-          Object context = params[0];
-          return ReflectionHelpers.callStaticMethod(shadowWindowClass, "create", ClassParameter.from(activityClass, context));
-        }
-      };
-    } else if (methodSignature.matches("java.lang.System", "nanoTime") || methodSignature.matches("java.lang.System", "currentTimeMillis")) {
-      return new Function<Object, Object>() {
-        @Override
-        public Object call(Class<?> theClass, Object value, Object[] params) {
-          ClassLoader cl = theClass.getClassLoader();
-          Class<?> shadowSystemClockClass;
-          try {
-            shadowSystemClockClass = cl.loadClass("org.robolectric.shadows.ShadowSystemClock");
-          } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-          }
-
-          return ReflectionHelpers.callStaticMethod(shadowSystemClockClass, methodSignature.methodName);
-        }
-      };
-    } else if (methodSignature.matches("java.lang.System", "arraycopy")) {
-      return new Function<Object, Object>() {
-        @Override
-        public Object call(Class<?> theClass, Object value, Object[] params) {
-          //noinspection SuspiciousSystemArraycopy
-          System.arraycopy(params[0], (Integer) params[1], params[2], (Integer) params[3], (Integer) params[4]);
-          return null;
-        }
-      };
-    } else if (methodSignature.matches("java.util.Locale", "adjustLanguageCode")) {
-      return new Function<Object, Object>() {
-        @Override
-        public Object call(Class<?> theClass, Object value, Object[] params) {
-          return params[0];
-        }
-      };
-    } else if (methodSignature.matches("java.lang.System", "logE")) {
-      return new Function<Object, Object>() {
-        @Override
-        public Object call(Class<?> theClass, Object value, Object[] params) {
-          String message = "System.logE: ";
-          for (Object param : params) {
-            message += param.toString();
-          }
-          System.err.println(message);
-          return null;
-        }
-      };
-    }
+    Interceptor interceptor = interceptors.findInterceptor(methodSignature.className, methodSignature.methodName);
+    return interceptor == null ? returnZero(methodSignature) : interceptor.handle(methodSignature);
+  }
 
+  /**
+   * @param methodSignature A method.
+   * @return A handler which returns zero, false or null, as appropriate for the method's return type.
+   */
+  public static Function<Object, Object> returnZero(MethodSignature methodSignature) {
+    final Object zero = PRIMITIVE_RETURN_VALUES.get(methodSignature.returnType);
     return new Function<Object, Object>() {
       @Override
       public Object call(Class<?> theClass, Object value, Object[] params) {
-        return PRIMITIVE_RETURN_VALUES.get(methodSignature.returnType);
+        return zero;
       }
     };
   }
@@ -338,7 +369,9 @@ public class ShadowWrangler implements ClassHandler {
           continue;
         }
 
-        if (className.equals(ShadowMethodPlan.class.getName())) {
+        if (className.equals(ShadowMethodPlan.class.getName())
+            || className.startsWith(ShadowMethodInvoker.class.getName())
+            || className.startsWith(InvokeDynamicSupport.class.getName())) {
           continue;
         }
 
@@ -348,7 +381,7 @@ public class ShadowWrangler implements ClassHandler {
               stackTraceElement.getFileName(), stackTraceElement.getLineNumber());
         }
 
-        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.")) {
+        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.") || className.startsWith("java.lang.invoke.")) {
           continue;
         }
 
@@ -364,23 +397,25 @@ public class ShadowWrangler implements ClassHandler {
   }
 
   public Object createShadowFor(Object instance) {
-    String shadowClassName = getShadowClassName(instance);
-
-    if (shadowClassName == null) return NO_SHADOW;
-
-    try {
-      Class<?> shadowClass = loadClass(shadowClassName, instance.getClass().getClassLoader());
-      Object shadow = shadowClass.newInstance();
-      injectRealObjectOn(shadow, shadowClass, instance);
+    Class<?> clazz = instance.getClass();
+    ShadowFactory shadowFactory = shadowFactories.get(clazz);
+    if (shadowFactory == null) {
+      // factories are deterministic, so racing threads may both create one but will store equivalent results
+      shadowFactory = createShadowFactory(clazz);
+      shadowFactories.put(clazz, shadowFactory);
+    }
+    return shadowFactory.createShadowFor(instance);
+  }
 
-      return shadow;
-    } catch (InstantiationException | IllegalAccessException e) {
-      throw new RuntimeException("Could not instantiate shadow, missing public empty constructor.", e);
+  private ShadowFactory createShadowFactory(Class<?> clazz) {
+    String shadowClassName = getShadowClassName(clazz);
+    if (shadowClassName == null) {
+      return NO_SHADOW_FACTORY;
     }
+    return ShadowFactory.forShadowClass(loadClass(shadowClassName, clazz.getClassLoader()));
   }
 
-  private String getShadowClassName(Object instance) {
-    Class clazz = instance.getClass();
+  private String getShadowClassName(Class<?> clazz) {
     ShadowConfig shadowConfig = null;
     while (shadowConfig == null && clazz != null) {
       shadowConfig = getShadowConfig(clazz);
@@ -389,24 +424,6 @@ public class ShadowWrangler implements ClassHandler {
     return shadowConfig == null ? null : shadowConfig.shadowClassName;
   }
 
-  private void injectRealObjectOn(Object shadow, Class<?> shadowClass, Object instance) {
-    MetaShadow metaShadow = getMetaShadow(shadowClass);
-    for (Field realObjectField : metaShadow.realObjectFields) {
-      writeField(shadow, instance, realObjectField);
-    }
-  }
-
-  private MetaShadow getMetaShadow(Class<?> shadowClass) {
-    synchronized (metaShadowMap) {
-      MetaShadow metaShadow = metaShadowMap.get(shadowClass);
-      if (metaShadow == null) {
-        metaShadow = new MetaShadow(shadowClass);
-        metaShadowMap.put(shadowClass, metaShadow);
-      }
-      return metaShadow;
-    }
-  }
-
   private Class<?> findDirectShadowClass(Class<?> originalClass) {
     ShadowConfig shadowConfig = getShadowConfig(originalClass);
     if (shadowConfig == null) {
@@ -415,19 +432,29 @@ public class ShadowWrangler implements ClassHandler {
     return loadClass(shadowConfig.shadowClassName, originalClass.getClassLoader());
   }
 
-  private void writeField(Object target, Object value, Field realObjectField) {
-    try {
-      realObjectField.set(target, value);
-    } catch (IllegalAccessException e) {
-      throw new RuntimeException(e);
+  /**
+   * Only ever compared by identity; {@link #methodInvoked(int, boolean, Class)} never hands one out.
+   */
+  private static class MarkerPlan implements Plan {
+    @Override
+    public Object run(Object instance, Object roboData, Object[] params) throws Exception {
+      throw new IllegalStateException("marker plans aren't runnable");
     }
   }
 
-  private static class ShadowMethodPlan implements Plan {
+  public static class ShadowMethodPlan implements Plan {
     private final Method shadowMethod;
+    private final boolean isStatic;
+    private final ShadowMethodInvoker invoker;
 
     public ShadowMethodPlan(Method shadowMethod) {
       this.shadowMethod = shadowMethod;
+      this.isStatic = Modifier.isStatic(shadowMethod.getModifiers());
+      this.invoker = ShadowMethodInvokers.create(shadowMethod);
+    }
+
+    public Method getShadowMethod() {
+      return shadowMethod;
     }
 
     @Override
@@ -435,28 +462,13 @@ public class ShadowWrangler implements ClassHandler {
       //noinspection UnnecessaryLocalVariable
       Object shadow = roboData;
       try {
-        return shadowMethod.invoke(shadow, params);
-      } catch (IllegalArgumentException e) {
-        throw new IllegalArgumentException("attempted to invoke " + shadowMethod
-            + (shadow == null ? "" : " on instance of " + shadow.getClass() + ", but " + shadow.getClass().getSimpleName() + " doesn't extend " + shadowMethod.getDeclaringClass().getSimpleName()));
-      } catch (InvocationTargetException e) {
-        throw e.getCause();
-      }
-    }
-  }
-
-  private class MetaShadow {
-    final List<Field> realObjectFields = new ArrayList<>();
-
-    public MetaShadow(Class<?> shadowClass) {
-      while (shadowClass != null) {
-        for (Field field : shadowClass.getDeclaredFields()) {
-          if (field.isAnnotationPresent(RealObject.class)) {
-            field.setAccessible(true);
-            realObjectFields.add(field);
-          }
+        return invoker.invoke(shadow, params);
+      } catch (ClassCastException e) {
+        if (!isStatic && shadow != null && !shadowMethod.getDeclaringClass().isInstance(shadow)) {
+          throw new IllegalArgumentException("attempted to invoke " + shadowMethod
+              + " on instance of " + shadow.getClass() + ", but " + shadow.getClass().getSimpleName() + " doesn't extend " + shadowMethod.getDeclaringClass().getSimpleName());
         }
-        shadowClass = shadowClass.getSuperclass();
+        throw e;
       }
     }
   }
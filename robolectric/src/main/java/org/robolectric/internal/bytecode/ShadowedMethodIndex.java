@@ -0,0 +1,169 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.internal.ShadowProvider;
+import org.robolectric.util.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The names of the methods which could be shadowed by the {@link ShadowProvider}s on a classpath, read from the
+ * index written for each provider by the annotation processor.
+ *
+ * Methods are indexed by name rather than signature, since {@link ShadowWrangler} may match a shadow method with
+ * loose signatures. Classes are keyed by name with {@code $} replaced by {@code .}, since shadow providers name
+ * nested classes by their canonical names; a few unrelated classes may share a key, which is harmless.
+ */
+public class ShadowedMethodIndex {
+  public static final String INDEX_PATH = "META-INF/robolectric/shadowed-methods/";
+  private static final String SERVICES_PATH = "META-INF/services/";
+  private static final String ALL_METHODS = "*";
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final Map<String, Set<String>> shadowedMethods;
+
+  ShadowedMethodIndex(Map<String, Set<String>> shadowedMethods) {
+    this.shadowedMethods = shadowedMethods;
+  }
+
+  /**
+   * Load and merge the indexes of every {@link ShadowProvider} registered on the given classpaths. Shadow jars are
+   * built separately for each SDK, so the same provider may be indexed more than once.
+   *
+   * @param classLoaders Class loaders for the classpaths.
+   * @return The index, or null if any provider was built without one.
+   */
+  public static ShadowedMethodIndex load(ClassLoader... classLoaders) {
+    Map<String, Set<String>> shadowedMethods = new HashMap<>();
+    try {
+      for (ClassLoader classLoader : classLoaders) {
+        for (String providerName : readProviderNames(classLoader)) {
+          Enumeration<URL> indexes = classLoader.getResources(INDEX_PATH + providerName);
+          if (!indexes.hasMoreElements()) {
+            Logger.debug("No shadowed method index for %s", providerName);
+            return null;
+          }
+          while (indexes.hasMoreElements()) {
+            try (InputStream in = indexes.nextElement().openStream()) {
+              read(new InputStreamReader(in, UTF8), shadowedMethods);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("couldn't read shadowed method index", e);
+    }
+    return new ShadowedMethodIndex(shadowedMethods);
+  }
+
+  /**
+   * @param index Index contents, one {@code className:methodName,methodName} line per class.
+   * @return The index.
+   */
+  public static ShadowedMethodIndex parse(String index) {
+    Map<String, Set<String>> shadowedMethods = new HashMap<>();
+    try {
+      read(new StringReader(index), shadowedMethods);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return new ShadowedMethodIndex(shadowedMethods);
+  }
+
+  /**
+   * Determine whether a method could have a shadow, and so must be intercepted.
+   *
+   * @param className The fully-qualified class name.
+   * @param methodName The method name.
+   * @return True if the method could have a shadow.
+   */
+  public boolean mayShadow(String className, String methodName) {
+    Set<String> methodNames = shadowedMethods.get(key(className));
+    return methodNames != null && (methodNames.contains(ALL_METHODS) || methodNames.contains(methodName));
+  }
+
+  /**
+   * A stable description of this index, suitable for keying persistent caches of instrumented classes.
+   *
+   * @return Fingerprint of this index.
+   */
+  public String fingerprint() {
+    TreeMap<String, Set<String>> sorted = new TreeMap<>();
+    for (Map.Entry<String, Set<String>> entry : shadowedMethods.entrySet()) {
+      sorted.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+    }
+    return sorted.toString();
+  }
+
+  private static Set<String> readProviderNames(ClassLoader classLoader) throws IOException {
+    Set<String> providerNames = new TreeSet<>();
+    Enumeration<URL> services = classLoader.getResources(SERVICES_PATH + ShadowProvider.class.getName());
+    while (services.hasMoreElements()) {
+      try (InputStream in = services.nextElement().openStream()) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          int comment = line.indexOf('#');
+          String providerName = (comment == -1 ? line : line.substring(0, comment)).trim();
+          if (!providerName.isEmpty()) {
+            providerNames.add(providerName);
+          }
+        }
+      }
+    }
+    return providerNames;
+  }
+
+  private static void read(Reader reader, Map<String, Set<String>> shadowedMethods) throws IOException {
+    BufferedReader in = new BufferedReader(reader);
+    String line;
+    while ((line = in.readLine()) != null) {
+      int colon = line.indexOf(':');
+      if (colon == -1) {
+        continue;
+      }
+      String className = line.substring(0, colon);
+      String methodNames = line.substring(colon + 1);
+      add(shadowedMethods, className, methodNames.isEmpty() ? new String[0] : methodNames.split(","));
+    }
+  }
+
+  private static void add(Map<String, Set<String>> shadowedMethods, String className, String[] methodNames) {
+    Set<String> names = shadowedMethods.get(key(className));
+    if (names == null) {
+      names = new HashSet<>();
+      shadowedMethods.put(key(className), names);
+    }
+    names.addAll(Arrays.asList(methodNames));
+  }
+
+  private static String key(String className) {
+    return className.replace('$', '.');
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    return shadowedMethods.equals(((ShadowedMethodIndex) o).shadowedMethods);
+  }
+
+  @Override
+  public int hashCode() {
+    return shadowedMethods.hashCode();
+  }
+}
@@ -0,0 +1,17 @@
+package org.robolectric.internal.daemon;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Loads the application and test classes of tests run by a {@link TestDaemon}, which may change between runs, on top
+ * of the daemon's own classpath.
+ *
+ * {@link org.robolectric.RobolectricTestRunner} adds this loader's classpath to the
+ * {@link org.robolectric.internal.SdkEnvironment}s for the test classes it loads, since they can't see it otherwise.
+ */
+public class ApplicationClassLoader extends URLClassLoader {
+  public ApplicationClassLoader(URL[] urls, ClassLoader parent) {
+    super(urls, parent);
+  }
+}
@@ -0,0 +1,76 @@
+package org.robolectric.internal.daemon;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cheap fingerprints of classpath entries, used to tell which have changed between runs without reading them.
+ */
+class ClasspathStamps {
+  private final Map<File, String> stamps = new LinkedHashMap<>();
+
+  ClasspathStamps(List<File> entries) {
+    for (File entry : entries) {
+      stamps.put(entry, stamp(entry));
+    }
+  }
+
+  /**
+   * @param previous Stamps taken earlier, or null.
+   * @return Entries which have been added, removed or changed since the earlier stamps were taken.
+   */
+  List<File> changedSince(ClasspathStamps previous) {
+    List<File> changed = new ArrayList<>();
+    for (Map.Entry<File, String> entry : stamps.entrySet()) {
+      if (previous == null || !entry.getValue().equals(previous.stamps.get(entry.getKey()))) {
+        changed.add(entry.getKey());
+      }
+    }
+    if (previous != null) {
+      for (File entry : previous.stamps.keySet()) {
+        if (!stamps.containsKey(entry)) {
+          changed.add(entry);
+        }
+      }
+    }
+    return changed;
+  }
+
+  List<File> getEntries() {
+    return new ArrayList<>(stamps.keySet());
+  }
+
+  /**
+   * @return A stamp which changes when the file, or any file in the directory, is added, removed or rewritten.
+   */
+  static String stamp(File entry) {
+    if (entry.isDirectory()) {
+      long[] totals = new long[3];
+      addDirectory(entry, totals);
+      return "dir:" + totals[0] + ":" + totals[1] + ":" + totals[2];
+    } else if (entry.isFile()) {
+      return "file:" + entry.length() + ":" + entry.lastModified();
+    } else {
+      return "missing";
+    }
+  }
+
+  private static void addDirectory(File directory, long[] totals) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        addDirectory(file, totals);
+      } else {
+        totals[0]++;
+        totals[1] += file.length();
+        totals[2] += file.lastModified();
+      }
+    }
+  }
+}
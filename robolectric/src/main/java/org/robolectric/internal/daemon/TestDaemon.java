@@ -0,0 +1,301 @@
+package org.robolectric.internal.daemon;
+
+import org.jetbrains.annotations.TestOnly;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.InstrumentingClassLoaderFactory;
+import org.robolectric.util.Digests;
+import org.robolectric.util.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived process which runs tests sent by {@link TestDaemonClient}s over a local socket, keeping
+ * {@link org.robolectric.internal.SdkEnvironment}s, and the system resources loaded for them, warm between runs.
+ * Start it with {@link TestDaemonLauncher}.
+ *
+ * Application and test classes are loaded for each run by an {@link ApplicationClassLoader} from the classpath sent
+ * by the client. When entries of that classpath change, only the environments which load classes from them are
+ * discarded; the instrumented SDK classes and system resources are reused by the environments which replace them.
+ * Application resources are reloaded for every run.
+ *
+ * Runs are handled one at a time. Each request is a series of lines, {@code classpath <path>} for each application
+ * classpath entry and {@code test <class name>} for each test class, followed by {@code run}; the daemon replies
+ * with a line for each test event, and finally {@code done <run> <failed> <ignored> <millis>}. A {@code stop} request
+ * shuts the daemon down.
+ *
+ * The socket only listens on the loopback interface, but any local user could connect to it, so every request must
+ * start with {@code token <token>}. The daemon writes its port and a random token to a port file only its owner can
+ * read, and ignores requests without that token.
+ */
+public class TestDaemon {
+
+  /**
+   * Minutes the daemon waits for a request before exiting. Defaults to 180.
+   */
+  public static final String IDLE_TIMEOUT_PROPERTY = "robolectric.daemon.idleTimeout";
+
+  static final Charset UTF8 = Charset.forName("UTF-8");
+  static final String CLASSPATH = "classpath";
+  static final String TEST = "test";
+  static final String RUN = "run";
+  static final String STOP = "stop";
+  static final String STARTED = "started";
+  static final String FAILED = "failed";
+  static final String ASSUMPTION_FAILED = "assumptionFailed";
+  static final String TRACE = "trace";
+  static final String IGNORED = "ignored";
+  static final String FINISHED = "finished";
+  static final String ERROR = "error";
+  static final String DONE = "done";
+  static final String TOKEN = "token";
+
+  private final ServerSocket serverSocket;
+  private final byte[] token;
+  private ClasspathStamps applicationClasspath;
+  private ApplicationClassLoader applicationClassLoader;
+  private List<File> lastChangedEntries = new ArrayList<>();
+
+  /**
+   * @param serverSocket The socket to accept requests on.
+   * @param token The token requests must start with.
+   */
+  public TestDaemon(ServerSocket serverSocket, String token) {
+    this.serverSocket = serverSocket;
+    this.token = token.getBytes(UTF8);
+  }
+
+  /**
+   * Handle requests until a {@code stop} request arrives or the server socket times out. A request which fails is
+   * logged, and the daemon carries on with the next one.
+   */
+  public void serve() throws IOException {
+    while (true) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (SocketTimeoutException e) {
+        Logger.info("Test daemon idle, exiting");
+        return;
+      }
+      try (Socket ignored = socket) {
+        if (!handle(socket)) {
+          return;
+        }
+      } catch (IOException e) {
+        Logger.error("Test daemon couldn't handle request: %s", e);
+      }
+    }
+  }
+
+  private boolean handle(Socket socket) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF8));
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF8), true);
+
+    String tokenLine = in.readLine();
+    if (tokenLine == null || !tokenLine.startsWith(TOKEN + " ")
+        || !MessageDigest.isEqual(token, tokenLine.substring(TOKEN.length() + 1).getBytes(UTF8))) {
+      Logger.info("Test daemon ignoring request without a valid token");
+      out.println(ERROR + " missing or invalid token");
+      return true;
+    }
+
+    List<File> classpath = new ArrayList<>();
+    List<String> testClassNames = new ArrayList<>();
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (line.equals(STOP)) {
+        return false;
+      } else if (line.equals(RUN)) {
+        try {
+          run(classpath, testClassNames, out);
+        } catch (IOException | RuntimeException | LinkageError e) {
+          Logger.error("Test daemon run failed: %s", e);
+          out.println(ERROR + " run failed: " + e);
+        }
+        return true;
+      } else if (line.startsWith(CLASSPATH + " ")) {
+        classpath.add(new File(line.substring(CLASSPATH.length() + 1)));
+      } else if (line.startsWith(TEST + " ")) {
+        testClassNames.add(line.substring(TEST.length() + 1));
+      } else {
+        out.println(ERROR + " unexpected request: " + line);
+        return true;
+      }
+    }
+    return true;
+  }
+
+  private void run(List<File> classpath, List<String> testClassNames, PrintWriter out) throws IOException {
+    ApplicationClassLoader classLoader = updateApplicationClassLoader(classpath);
+    RobolectricTestRunner.releaseApplicationResources();
+
+    List<Class<?>> testClasses = new ArrayList<>();
+    for (String testClassName : testClassNames) {
+      try {
+        testClasses.add(classLoader.loadClass(testClassName));
+      } catch (ClassNotFoundException e) {
+        out.println(ERROR + " no such test class: " + testClassName);
+      }
+    }
+
+    Thread thread = Thread.currentThread();
+    ClassLoader contextClassLoader = thread.getContextClassLoader();
+    thread.setContextClassLoader(classLoader);
+    try {
+      JUnitCore junit = new JUnitCore();
+      junit.addListener(new StreamingListener(out));
+      Result result = junit.run(testClasses.toArray(new Class[testClasses.size()]));
+      out.println(DONE + " " + result.getRunCount() + " " + result.getFailureCount() + " " + result.getIgnoreCount() + " " + result.getRunTime());
+    } finally {
+      thread.setContextClassLoader(contextClassLoader);
+    }
+  }
+
+  private ApplicationClassLoader updateApplicationClassLoader(List<File> classpath) throws IOException {
+    ClasspathStamps stamps = new ClasspathStamps(classpath);
+    lastChangedEntries = stamps.changedSince(applicationClasspath);
+    if (applicationClassLoader == null || !lastChangedEntries.isEmpty()) {
+      if (applicationClassLoader != null) {
+        int released = InstrumentingClassLoaderFactory.releaseEnvironmentsFor(toUrls(lastChangedEntries));
+        Logger.info("Application classpath changed (%s), released %d environments", lastChangedEntries, released);
+        applicationClassLoader.close();
+      }
+      applicationClassLoader = new ApplicationClassLoader(toUrls(classpath).toArray(new URL[classpath.size()]), TestDaemon.class.getClassLoader());
+    }
+    applicationClasspath = stamps;
+    return applicationClassLoader;
+  }
+
+  @TestOnly
+  List<File> getLastChangedEntries() {
+    return lastChangedEntries;
+  }
+
+  private static List<URL> toUrls(List<File> files) throws MalformedURLException {
+    List<URL> urls = new ArrayList<>();
+    for (File file : files) {
+      urls.add(file.toURI().toURL());
+    }
+    return urls;
+  }
+
+  /**
+   * @return A random token for a daemon to require of its clients.
+   */
+  static String newToken() {
+    byte[] bytes = new byte[32];
+    new SecureRandom().nextBytes(bytes);
+    return Digests.toHex(bytes);
+  }
+
+  /**
+   * Write a daemon's port and token to a file which only the current user can read, replacing it atomically.
+   */
+  static void writePortFile(File portFile, int port, String token) throws IOException {
+    File tempFile = new File(portFile.getPath() + ".tmp");
+    tempFile.delete();
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      Files.createFile(tempFile.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } else if (!tempFile.createNewFile() || !tempFile.setReadable(false, false) || !tempFile.setReadable(true, true)) {
+      throw new IOException("couldn't create " + tempFile);
+    }
+    try (PrintWriter writer = new PrintWriter(tempFile, "UTF-8")) {
+      writer.println(port);
+      writer.println(token);
+    }
+    Files.move(tempFile.toPath(), portFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @param args The file to write the daemon's port and token to, which is deleted when the daemon exits.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("usage: " + TestDaemon.class.getName() + " <port file>");
+      System.exit(2);
+    }
+
+    File portFile = new File(args[0]);
+    try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName(null))) {
+      serverSocket.setSoTimeout((int) TimeUnit.MINUTES.toMillis(Integer.getInteger(IDLE_TIMEOUT_PROPERTY, 180)));
+      String token = newToken();
+      writePortFile(portFile, serverSocket.getLocalPort(), token);
+      Logger.info("Test daemon listening on port %d", serverSocket.getLocalPort());
+      try {
+        new TestDaemon(serverSocket, token).serve();
+      } finally {
+        portFile.delete();
+      }
+    }
+    System.exit(0);
+  }
+
+  private static class StreamingListener extends RunListener {
+    private final PrintWriter out;
+
+    StreamingListener(PrintWriter out) {
+      this.out = out;
+    }
+
+    @Override
+    public void testStarted(Description description) {
+      out.println(STARTED + " " + description.getDisplayName());
+    }
+
+    @Override
+    public void testFailure(Failure failure) {
+      report(FAILED, failure);
+    }
+
+    @Override
+    public void testAssumptionFailure(Failure failure) {
+      report(ASSUMPTION_FAILED, failure);
+    }
+
+    @Override
+    public void testIgnored(Description description) {
+      out.println(IGNORED + " " + description.getDisplayName());
+    }
+
+    @Override
+    public void testFinished(Description description) {
+      out.println(FINISHED + " " + description.getDisplayName());
+    }
+
+    private void report(String event, Failure failure) {
+      out.println(event + " " + failure.getDescription().getDisplayName());
+      StringWriter trace = new StringWriter();
+      failure.getException().printStackTrace(new PrintWriter(trace));
+      for (String line : trace.toString().split("\r?\n")) {
+        out.println(TRACE + " " + line);
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package org.robolectric.internal.daemon;
+
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+import static org.robolectric.internal.daemon.TestDaemon.*;
+
+/**
+ * Sends test classes to a {@link TestDaemon} and reports the results it streams back, in the style of JUnit's text
+ * runner.
+ */
+public class TestDaemonClient {
+  private final int port;
+  private final String token;
+
+  /**
+   * @param port The daemon's port.
+   * @param token The token the daemon requires of its clients.
+   */
+  public TestDaemonClient(int port, String token) {
+    this.port = port;
+    this.token = token;
+  }
+
+  /**
+   * @param portFile A port file written by a {@link TestDaemon}.
+   * @return A client for the daemon, or null if the file is missing or incomplete.
+   */
+  public static TestDaemonClient fromPortFile(File portFile) {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(portFile), UTF8))) {
+      String port = reader.readLine();
+      String token = reader.readLine();
+      return port == null || token == null ? null : new TestDaemonClient(Integer.parseInt(port.trim()), token.trim());
+    } catch (IOException | NumberFormatException e) {
+      return null;
+    }
+  }
+
+  @TestOnly
+  int getPort() {
+    return port;
+  }
+
+  @TestOnly
+  String getToken() {
+    return token;
+  }
+
+  /**
+   * @return True if a daemon is listening on the port.
+   */
+  public boolean isRunning() {
+    try (Socket ignored = connect()) {
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Run tests in the daemon.
+   *
+   * @param applicationClasspath Classpath entries holding application and test classes.
+   * @param testClassNames Fully-qualified names of the test classes to run.
+   * @param out Stream to report progress and results to.
+   * @return True if every test passed.
+   */
+  public boolean run(List<File> applicationClasspath, List<String> testClassNames, PrintStream out) throws IOException {
+    try (Socket socket = connect()) {
+      PrintWriter request = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF8), true);
+      request.println(TOKEN + " " + token);
+      for (File entry : applicationClasspath) {
+        request.println(CLASSPATH + " " + entry.getPath());
+      }
+      for (String testClassName : testClassNames) {
+        request.println(TEST + " " + testClassName);
+      }
+      request.println(RUN);
+
+      BufferedReader response = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF8));
+      boolean errors = false;
+      String line;
+      while ((line = response.readLine()) != null) {
+        int space = line.indexOf(' ');
+        String event = space == -1 ? line : line.substring(0, space);
+        String detail = space == -1 ? "" : line.substring(space + 1);
+        switch (event) {
+          case STARTED:
+            out.print('.');
+            break;
+          case FAILED:
+            out.println();
+            out.println("FAILED: " + detail);
+            break;
+          case ASSUMPTION_FAILED:
+            out.println();
+            out.println("Assumption failed: " + detail);
+            break;
+          case TRACE:
+            out.println(detail);
+            break;
+          case IGNORED:
+            out.print('I');
+            break;
+          case ERROR:
+            out.println();
+            out.println("ERROR: " + detail);
+            errors = true;
+            break;
+          case DONE:
+            String[] counts = detail.split(" ");
+            out.println();
+            out.println("Tests run: " + counts[0] + ", Failures: " + counts[1] + ", Ignored: " + counts[2] + ", Time: " + counts[3] + "ms");
+            return !errors && Integer.parseInt(counts[1]) == 0;
+          default:
+            break;
+        }
+      }
+      throw new IOException("test daemon disconnected before the run finished");
+    }
+  }
+
+  /**
+   * Ask the daemon to exit.
+   */
+  public void stop() throws IOException {
+    try (Socket socket = connect()) {
+      PrintWriter request = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF8), true);
+      request.println(TOKEN + " " + token);
+      request.println(STOP);
+    }
+  }
+
+  private Socket connect() throws IOException {
+    return new Socket(InetAddress.getByName(null), port);
+  }
+}
@@ -0,0 +1,127 @@
+package org.robolectric.internal.daemon;
+
+import org.robolectric.util.Digests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs test classes in a warm {@link TestDaemon}, starting one if there isn't one already:
+ * {@code java -cp <test classpath> org.robolectric.internal.daemon.TestDaemonLauncher com.example.FooTest ...}
+ *
+ * Jars on the classpath are treated as libraries, which the daemon loads once. Directories are treated as
+ * application and test classes, which are sent with each run so the daemon can pick up changes to them. Each daemon
+ * serves a single combination of libraries, working directory and {@code robolectric.*} system properties; a daemon
+ * whose libraries have changed is left to exit once it's been idle for {@link TestDaemon#IDLE_TIMEOUT_PROPERTY}.
+ */
+public class TestDaemonLauncher {
+
+  /**
+   * Directory holding the daemons' port and log files. Defaults to {@code ~/.robolectric/daemon}.
+   */
+  public static final String DAEMON_DIR_PROPERTY = "robolectric.daemon.dir";
+
+  private static final long START_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.err.println("usage: " + TestDaemonLauncher.class.getName() + " <test class>...");
+      System.exit(2);
+    }
+
+    List<File> libraries = new ArrayList<>();
+    List<File> applicationClasspath = new ArrayList<>();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      File file = new File(entry).getAbsoluteFile();
+      (file.isDirectory() ? applicationClasspath : libraries).add(file);
+    }
+    List<String> properties = robolectricProperties();
+
+    TestDaemonClient client = findOrStartDaemon(libraries, properties);
+    boolean success = client.run(applicationClasspath, Arrays.asList(args), System.out);
+    System.exit(success ? 0 : 1);
+  }
+
+  private static TestDaemonClient findOrStartDaemon(List<File> libraries, List<String> properties) throws IOException, InterruptedException {
+    File daemonDir = new File(System.getProperty(DAEMON_DIR_PROPERTY, new File(System.getProperty("user.home"), ".robolectric/daemon").getPath()));
+    if (!daemonDir.isDirectory() && !daemonDir.mkdirs()) {
+      throw new IOException("couldn't create " + daemonDir);
+    }
+
+    String daemonKey = daemonKey(libraries, properties);
+    File portFile = new File(daemonDir, daemonKey + ".port");
+    TestDaemonClient client = TestDaemonClient.fromPortFile(portFile);
+    if (client != null) {
+      if (client.isRunning()) {
+        return client;
+      }
+      portFile.delete();
+    }
+
+    File logFile = new File(daemonDir, daemonKey + ".log");
+    List<String> command = new ArrayList<>();
+    command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+    command.add("-cp");
+    command.add(join(libraries));
+    command.addAll(properties);
+    command.add(TestDaemon.class.getName());
+    command.add(portFile.getPath());
+    System.out.println("Starting test daemon, logging to " + logFile);
+    new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+        .start();
+
+    long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline) {
+      client = TestDaemonClient.fromPortFile(portFile);
+      if (client != null) {
+        return client;
+      }
+      Thread.sleep(100);
+    }
+    throw new IOException("test daemon didn't start, see " + logFile);
+  }
+
+  private static List<String> robolectricProperties() {
+    Map<String, String> sorted = new TreeMap<>();
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith("robolectric.")) {
+        sorted.put(name, System.getProperty(name));
+      }
+    }
+    List<String> properties = new ArrayList<>();
+    for (Map.Entry<String, String> entry : sorted.entrySet()) {
+      properties.add("-D" + entry.getKey() + "=" + entry.getValue());
+    }
+    return properties;
+  }
+
+  private static String daemonKey(List<File> libraries, List<String> properties) {
+    StringBuilder key = new StringBuilder(new File("").getAbsolutePath());
+    for (File library : libraries) {
+      key.append('\n').append(library).append(' ').append(ClasspathStamps.stamp(library));
+    }
+    for (String property : properties) {
+      key.append('\n').append(property);
+    }
+    return Digests.sha1Hex(key.toString().getBytes(TestDaemon.UTF8)).substring(0, 16);
+  }
+
+  private static String join(List<File> files) {
+    StringBuilder buf = new StringBuilder();
+    for (File file : files) {
+      if (buf.length() > 0) {
+        buf.append(File.pathSeparator);
+      }
+      buf.append(file.getPath());
+    }
+    return buf.toString();
+  }
+}
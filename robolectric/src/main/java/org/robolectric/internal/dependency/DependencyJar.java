@@ -32,4 +32,9 @@ public class DependencyJar {
   public String getClassifier() {
     return classifier;
   }
+
+  @Override
+  public String toString() {
+    return groupId + ":" + artifactId + ":" + version + (classifier == null ? "" : ":" + classifier);
+  }
 }
@@ -0,0 +1,446 @@
+package org.robolectric.internal.dependency;
+
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.util.DaemonThreadFactory;
+import org.robolectric.util.Digests;
+import org.robolectric.util.Logger;
+import org.robolectric.util.Trace;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves artifacts from a Maven-layout repository without Maven: each artifact is taken from the local Maven
+ * repository if it's there, or else downloaded into a cache directory, in parallel, and verified against the
+ * repository's {@code .sha256} or {@code .sha1} checksum. Local artifacts are verified against the checksum file next
+ * to them if there is one; either way their digest is recorded in the index.
+ *
+ * Resolved artifacts are recorded in a single index file in the cache directory, which is read once per resolver.
+ * Artifacts found in the index are checked only by comparing their size and modification time with what was
+ * recorded, so a fully cached run doesn't read or hash any jars. Repositories may be {@code file:} URLs, which is
+ * handy for tests and for mirrors on a shared drive.
+ *
+ * Artifacts are resolved by exact version; unlike {@link MavenDependencyResolver} this doesn't look up snapshots or
+ * transitive dependencies in remote repositories.
+ */
+public class IndexedDependencyResolver implements DependencyResolver {
+
+  /**
+   * The number of artifacts to download at once. Defaults to 4.
+   */
+  public static final String THREADS_PROPERTY = "robolectric.dependency.threads";
+
+  /**
+   * Set to {@code true} to resolve dependencies with an {@code IndexedDependencyResolver} rather than Maven.
+   */
+  public static final String ENABLED_PROPERTY = "robolectric.dependency.indexed";
+
+  static final String INDEX_FILE_NAME = "artifacts.idx";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final int TIMEOUT_MILLIS = (int) TimeUnit.MINUTES.toMillis(1);
+  private static final String[] CHECKSUM_ALGORITHMS = {"SHA-256", "SHA-1"};
+
+  private final String repositoryUrl;
+  private final File localRepository;
+  private final File cacheDir;
+  private final ThreadPoolExecutor executor;
+  private final Map<String, URL> resolved = new ConcurrentHashMap<>();
+  private Map<String, IndexEntry> index;
+
+  /**
+   * Create a resolver for {@code repositoryUrl} which uses the user's local Maven repository and caches downloads
+   * in {@code cacheDir}.
+   */
+  public IndexedDependencyResolver(String repositoryUrl, File cacheDir) {
+    this(repositoryUrl, defaultLocalRepository(), cacheDir, Integer.getInteger(THREADS_PROPERTY, 4));
+  }
+
+  /**
+   * @param repositoryUrl Base URL of the repository to download artifacts from.
+   * @param localRepository A Maven local repository to look in before downloading, or null.
+   * @param cacheDir Directory to download artifacts to and keep the index in.
+   * @param threads The number of artifacts to resolve at once.
+   */
+  public IndexedDependencyResolver(String repositoryUrl, File localRepository, File cacheDir, int threads) {
+    this.repositoryUrl = repositoryUrl.endsWith("/") ? repositoryUrl : repositoryUrl + "/";
+    this.localRepository = localRepository;
+    this.cacheDir = cacheDir;
+    this.executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("Robolectric dependency resolver "));
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Get an array of local artifact URLs for the given dependencies, in the same order. Dependencies which haven't
+   * been resolved before are resolved concurrently.
+   */
+  @Override
+  public URL[] getLocalArtifactUrls(DependencyJar... dependencies) {
+    resolveAll(Arrays.asList(dependencies));
+
+    URL[] urls = new URL[dependencies.length];
+    for (int i = 0; i < dependencies.length; i++) {
+      urls[i] = resolved.get(key(dependencies[i]));
+    }
+    return urls;
+  }
+
+  @Override
+  public URL getLocalArtifactUrl(DependencyJar dependency) {
+    return getLocalArtifactUrls(dependency)[0];
+  }
+
+  /**
+   * Resolve the classpath and system resource dependencies of each of {@code sdkConfigs} concurrently.
+   */
+  public void resolveSdkDependencies(Collection<SdkConfig> sdkConfigs) {
+    List<DependencyJar> dependencies = new ArrayList<>();
+    for (SdkConfig sdkConfig : sdkConfigs) {
+      for (DependencyJar dependency : sdkConfig.getSdkClasspathDependencies()) {
+        dependencies.add(dependency);
+      }
+      dependencies.add(sdkConfig.getSystemResourceDependency());
+    }
+    resolveAll(dependencies);
+  }
+
+  /**
+   * Resolve {@code dependencies} concurrently, waiting until they're all done.
+   *
+   * @throws RuntimeException if any of them couldn't be resolved.
+   */
+  public void resolveAll(Collection<DependencyJar> dependencies) {
+    Map<String, DependencyJar> unresolved = new LinkedHashMap<>();
+    for (DependencyJar dependency : dependencies) {
+      String key = key(dependency);
+      if (!resolved.containsKey(key)) {
+        unresolved.put(key, dependency);
+      }
+    }
+    if (unresolved.isEmpty()) {
+      return;
+    }
+
+    final Map<String, IndexEntry> index = getIndex();
+    List<Future<IndexEntry>> futures = new ArrayList<>();
+    for (final Map.Entry<String, DependencyJar> entry : unresolved.entrySet()) {
+      final IndexEntry indexEntry;
+      synchronized (this) {
+        indexEntry = index.get(entry.getKey());
+      }
+      if (indexEntry != null && indexEntry.isValid()) {
+        resolved.put(entry.getKey(), fileToUrl(indexEntry.file));
+      } else {
+        futures.add(executor.submit(new Callable<IndexEntry>() {
+          @Override public IndexEntry call() throws Exception {
+            return resolve(entry.getValue());
+          }
+        }));
+      }
+    }
+    if (futures.isEmpty()) {
+      return;
+    }
+
+    List<IndexEntry> newEntries = new ArrayList<>();
+    RuntimeException failure = null;
+    for (Future<IndexEntry> future : futures) {
+      try {
+        newEntries.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = new RuntimeException(e.getCause().getMessage(), e.getCause());
+        }
+      }
+    }
+
+    synchronized (this) {
+      for (IndexEntry entry : newEntries) {
+        index.put(entry.key, entry);
+        resolved.put(entry.key, fileToUrl(entry.file));
+      }
+      writeIndex();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private IndexEntry resolve(DependencyJar dependency) throws IOException {
+    Trace.Span span = Trace.begin("IndexedDependencyResolver.resolve", dependency);
+    try {
+      String path = path(dependency);
+      if (localRepository != null) {
+        File local = new File(localRepository, path);
+        if (local.isFile()) {
+          return new IndexEntry(key(dependency), local, verifyLocal(local));
+        }
+      }
+      File file = new File(cacheDir, path);
+      return new IndexEntry(key(dependency), file, download(repositoryUrl + path, file));
+    } finally {
+      span.end();
+    }
+  }
+
+  private String verifyLocal(File file) throws IOException {
+    for (String algorithm : CHECKSUM_ALGORITHMS) {
+      File checksumFile = new File(file.getPath() + checksumExtension(algorithm));
+      if (checksumFile.isFile()) {
+        String expected = parseChecksum(readFully(new FileInputStream(checksumFile)));
+        String actual;
+        try (InputStream in = new FileInputStream(file)) {
+          actual = digest(algorithm, in, null);
+        }
+        if (!actual.equals(expected)) {
+          throw new IOException(algorithm + " checksum mismatch for " + file + ": expected " + expected + " but was " + actual);
+        }
+        return algorithm + ":" + actual;
+      }
+    }
+
+    // Nothing to check against, but record the digest so the index says exactly which jar was used.
+    String algorithm = CHECKSUM_ALGORITHMS[0];
+    try (InputStream in = new FileInputStream(file)) {
+      return algorithm + ":" + digest(algorithm, in, null);
+    }
+  }
+
+  private String download(String url, File file) throws IOException {
+    String algorithm = null;
+    String expected = null;
+    for (String candidate : CHECKSUM_ALGORITHMS) {
+      try {
+        expected = parseChecksum(readFully(open(url + checksumExtension(candidate))));
+        algorithm = candidate;
+        break;
+      } catch (FileNotFoundException e) {
+        // try the next algorithm
+      }
+    }
+    if (algorithm == null) {
+      throw new IOException("no checksum found for " + url);
+    }
+
+    File dir = file.getParentFile();
+    if (!dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("couldn't create " + dir);
+    }
+    File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+    try {
+      Logger.info("Downloading %s", url);
+      String actual;
+      try (InputStream in = open(url); OutputStream out = new FileOutputStream(tempFile)) {
+        actual = digest(algorithm, in, out);
+      }
+      if (!actual.equals(expected)) {
+        throw new IOException(algorithm + " checksum mismatch for " + url + ": expected " + expected + " but was " + actual);
+      }
+      if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+        throw new IOException("couldn't move " + tempFile + " to " + file);
+      }
+      return algorithm + ":" + actual;
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  private synchronized Map<String, IndexEntry> getIndex() {
+    if (index == null) {
+      index = readIndex(new File(cacheDir, INDEX_FILE_NAME));
+    }
+    return index;
+  }
+
+  private static Map<String, IndexEntry> readIndex(File indexFile) {
+    Map<String, IndexEntry> entries = new LinkedHashMap<>();
+    if (!indexFile.isFile()) {
+      return entries;
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), UTF8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        IndexEntry entry = IndexEntry.parse(line);
+        if (entry != null) {
+          entries.put(entry.key, entry);
+        }
+      }
+    } catch (IOException e) {
+      Logger.info("Ignoring unreadable dependency index %s: %s", indexFile, e);
+    }
+    return entries;
+  }
+
+  private void writeIndex() {
+    File indexFile = new File(cacheDir, INDEX_FILE_NAME);
+    try {
+      if (!cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+        throw new IOException("couldn't create " + cacheDir);
+      }
+
+      // Other processes may have added artifacts since we read the index.
+      Map<String, IndexEntry> merged = readIndex(indexFile);
+      merged.putAll(index);
+
+      File tempFile = File.createTempFile(INDEX_FILE_NAME, ".tmp", cacheDir);
+      try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), UTF8))) {
+        for (IndexEntry entry : merged.values()) {
+          writer.println(entry.format());
+        }
+      }
+      if (!tempFile.renameTo(indexFile) && !(indexFile.delete() && tempFile.renameTo(indexFile))) {
+        tempFile.delete();
+        throw new IOException("couldn't move " + tempFile + " to " + indexFile);
+      }
+    } catch (IOException e) {
+      Logger.info("Couldn't write dependency index %s: %s", indexFile, e);
+    }
+  }
+
+  private static InputStream open(String url) throws IOException {
+    URLConnection connection = new URL(url).openConnection();
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    return connection.getInputStream();
+  }
+
+  private static String digest(String algorithm, InputStream in, OutputStream out) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    byte[] buf = new byte[64 * 1024];
+    int count;
+    while ((count = in.read(buf)) != -1) {
+      digest.update(buf, 0, count);
+      if (out != null) {
+        out.write(buf, 0, count);
+      }
+    }
+    return Digests.toHex(digest.digest());
+  }
+
+  private static String readFully(InputStream in) throws IOException {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8))) {
+      StringBuilder buf = new StringBuilder();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        buf.append(line).append('\n');
+      }
+      return buf.toString();
+    }
+  }
+
+  /**
+   * Checksum files hold the hex digest, sometimes followed by the file name.
+   */
+  private static String parseChecksum(String contents) throws IOException {
+    String[] words = contents.trim().split("\\s+");
+    if (words[0].isEmpty()) {
+      throw new IOException("empty checksum");
+    }
+    return words[0].toLowerCase(Locale.US);
+  }
+
+  private static String checksumExtension(String algorithm) {
+    return "." + algorithm.replace("-", "").toLowerCase(Locale.US);
+  }
+
+  private static String path(DependencyJar dependency) {
+    String fileName = dependency.getArtifactId() + "-" + dependency.getVersion()
+        + (dependency.getClassifier() == null ? "" : "-" + dependency.getClassifier()) + "." + dependency.getType();
+    return dependency.getGroupId().replace('.', '/') + "/" + dependency.getArtifactId() + "/" + dependency.getVersion() + "/" + fileName;
+  }
+
+  private static String key(DependencyJar dependency) {
+    return dependency + ":" + dependency.getType();
+  }
+
+  private static File defaultLocalRepository() {
+    String localRepository = System.getProperty("maven.repo.local");
+    return localRepository != null ? new File(localRepository) : new File(System.getProperty("user.home"), ".m2/repository");
+  }
+
+  private static URL fileToUrl(File file) {
+    try {
+      return file.toURI().toURL();
+    } catch (MalformedURLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static class IndexEntry {
+    private final String key;
+    private final File file;
+    private final long length;
+    private final long lastModified;
+    private final String checksum;
+
+    IndexEntry(String key, File file, String checksum) {
+      this(key, file, file.length(), file.lastModified(), checksum);
+    }
+
+    private IndexEntry(String key, File file, long length, long lastModified, String checksum) {
+      this.key = key;
+      this.file = file;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.checksum = checksum;
+    }
+
+    boolean isValid() {
+      return checksum != null && file.length() == length && file.lastModified() == lastModified;
+    }
+
+    String format() {
+      return key + "\t" + file.getPath() + "\t" + length + "\t" + lastModified + "\t" + (checksum == null ? "-" : checksum);
+    }
+
+    static IndexEntry parse(String line) {
+      String[] fields = line.split("\t");
+      if (fields.length != 5) {
+        return null;
+      }
+      try {
+        return new IndexEntry(fields[0], new File(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+            fields[4].equals("-") ? null : fields[4]);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+  }
+}
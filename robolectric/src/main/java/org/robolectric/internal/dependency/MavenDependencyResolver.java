@@ -5,10 +5,12 @@ import org.apache.maven.artifact.ant.RemoteRepository;
 import org.apache.maven.model.Dependency;
 import org.apache.tools.ant.Project;
 import org.robolectric.RoboSettings;
+import org.robolectric.util.Trace;
 import org.robolectric.util.Util;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Hashtable;
 
 public class MavenDependencyResolver implements DependencyResolver {
@@ -27,10 +29,20 @@ public class MavenDependencyResolver implements DependencyResolver {
 
   /**
    * Get an array of local artifact URLs for the given dependencies. The order of the URLs is guaranteed to be the
-   * same as the input order of dependencies, i.e., urls[i] is the local artifact URL for dependencies[i].
+   * same as the input order of dependencies, i.e., urls[i] is the local artifact URL for dependencies[i]. Calls are
+   * serialized, since they share an Ant project.
    */
   @Override
-  public URL[] getLocalArtifactUrls(DependencyJar... dependencies) {
+  public synchronized URL[] getLocalArtifactUrls(DependencyJar... dependencies) {
+    Trace.Span span = Trace.begin("MavenDependencyResolver.getLocalArtifactUrls", Arrays.toString(dependencies));
+    try {
+      return resolve(dependencies);
+    } finally {
+      span.end();
+    }
+  }
+
+  private URL[] resolve(DependencyJar... dependencies) {
     DependenciesTask dependenciesTask = createDependenciesTask();
     configureMaven(dependenciesTask);
     RemoteRepository remoteRepository = new RemoteRepository();
@@ -0,0 +1,13 @@
+package org.robolectric.internal.timing;
+
+/**
+ * Notified with the {@link TestTimings} of each test run by {@link org.robolectric.RobolectricTestRunner}. Install
+ * one by overriding {@link org.robolectric.RobolectricTestRunner#getTestTimingListener()}.
+ */
+public interface TestTimingListener {
+
+  /**
+   * Called once a test has finished, whether or not it passed. May be called from several threads at once.
+   */
+  void testTimed(TestTimings timings);
+}
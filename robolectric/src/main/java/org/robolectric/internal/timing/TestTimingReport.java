@@ -0,0 +1,120 @@
+package org.robolectric.internal.timing;
+
+import org.robolectric.internal.timing.TestTimings.Phase;
+import org.robolectric.util.Logger;
+import org.robolectric.util.Strings;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the {@link TestTimings} of every test in the run and writes them to a file when the JVM exits, as CSV if
+ * the file name ends with {@code .csv} and as JSON otherwise. Times are in milliseconds.
+ */
+public class TestTimingReport implements TestTimingListener {
+
+  /**
+   * When set, the timings of every test are written to this file.
+   */
+  public static final String REPORT_FILE_PROPERTY = "robolectric.timing.report";
+
+  private static TestTimingReport instance;
+
+  private final File file;
+  private final List<TestTimings> allTimings = new ArrayList<>();
+
+  public TestTimingReport(File file) {
+    this.file = file;
+  }
+
+  /**
+   * @return The report for the file given by {@link #REPORT_FILE_PROPERTY}, shared by every runner, or null.
+   */
+  public static synchronized TestTimingReport fromSystemProperties() {
+    String fileName = System.getProperty(REPORT_FILE_PROPERTY);
+    if (fileName == null) {
+      return null;
+    }
+
+    if (instance == null) {
+      instance = new TestTimingReport(new File(fileName));
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            instance.write();
+          } catch (IOException e) {
+            Logger.error("Couldn't write test timing report to %s: %s", instance.file, e);
+          }
+        }
+      }));
+    }
+    return instance;
+  }
+
+  @Override
+  public synchronized void testTimed(TestTimings timings) {
+    allTimings.add(timings);
+  }
+
+  public synchronized void write() throws IOException {
+    try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+      if (file.getName().endsWith(".csv")) {
+        writeCsv(writer);
+      } else {
+        writeJson(writer);
+      }
+    }
+    Logger.info("Wrote timings for %d tests to %s", allTimings.size(), file);
+  }
+
+  private void writeCsv(PrintWriter writer) {
+    writer.print("class,method");
+    for (Phase phase : Phase.values()) {
+      writer.print("," + phase.name().toLowerCase(Locale.US));
+    }
+    writer.println(",total,loaded_classes,instrumented_classes");
+
+    for (TestTimings timings : allTimings) {
+      writer.print(csvField(timings.getDescription().getClassName()) + "," + csvField(timings.getDescription().getMethodName()));
+      for (Phase phase : Phase.values()) {
+        writer.print("," + millis(timings.getNanos(phase)));
+      }
+      writer.println("," + millis(timings.getTotalNanos()) + "," + timings.getLoadedClassCount() + "," + timings.getInstrumentedClassCount());
+    }
+  }
+
+  private void writeJson(PrintWriter writer) {
+    writer.println("[");
+    for (int i = 0; i < allTimings.size(); i++) {
+      TestTimings timings = allTimings.get(i);
+      writer.print("  {\"class\": " + Strings.toJsonString(timings.getDescription().getClassName())
+          + ", \"method\": " + Strings.toJsonString(timings.getDescription().getMethodName()));
+      for (Phase phase : Phase.values()) {
+        writer.print(", \"" + phase.name().toLowerCase(Locale.US) + "\": " + millis(timings.getNanos(phase)));
+      }
+      writer.print(", \"total\": " + millis(timings.getTotalNanos())
+          + ", \"loaded_classes\": " + timings.getLoadedClassCount()
+          + ", \"instrumented_classes\": " + timings.getInstrumentedClassCount() + "}");
+      writer.println(i < allTimings.size() - 1 ? "," : "");
+    }
+    writer.println("]");
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.US, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  private static String csvField(String value) {
+    if (value == null) {
+      return "";
+    }
+    return value.contains(",") || value.contains("\"") ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+  }
+}
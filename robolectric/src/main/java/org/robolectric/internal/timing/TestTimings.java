@@ -0,0 +1,121 @@
+package org.robolectric.internal.timing;
+
+import org.junit.runner.Description;
+import org.robolectric.util.Trace;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * Time spent in each phase of a single test run by {@link org.robolectric.RobolectricTestRunner}.
+ *
+ * Phases may be nested, e.g. app resource loading happens while setting up the application; time spent in a nested
+ * phase is only counted against the nested phase. Time between phases, from when the timings are created until the
+ * last phase stops, is counted against {@link Phase#OTHER}, so the phases add up to the test's total time. Each phase
+ * except {@link Phase#OTHER} is also recorded as a {@link Trace} span.
+ */
+public class TestTimings {
+  public enum Phase {
+    MANIFEST,
+    SDK_ENVIRONMENT,
+    CONFIGURE_SHADOWS,
+    RESET_STATIC_STATE,
+    SYSTEM_RESOURCES,
+    APP_RESOURCES,
+    SET_UP_APPLICATION,
+    TEST,
+    TEAR_DOWN_APPLICATION,
+    AFTER_TEST_RESET,
+    // time between the other phases
+    OTHER
+  }
+
+  private final Description description;
+  private final long[] nanos = new long[Phase.values().length];
+  private final Deque<Phase> pausedPhases = new ArrayDeque<>();
+  private final Deque<Trace.Span> spans = new ArrayDeque<>();
+  private Phase currentPhase;
+  private long currentPhaseStart;
+  private long loadedClassCount;
+  private long instrumentedClassCount;
+
+  public TestTimings(Description description) {
+    this.description = description;
+    this.currentPhaseStart = System.nanoTime();
+  }
+
+  /**
+   * Start timing a phase, pausing the current phase, if any, until the new one is stopped.
+   */
+  public void start(Phase phase) {
+    long now = System.nanoTime();
+    if (currentPhase != null) {
+      nanos[currentPhase.ordinal()] += now - currentPhaseStart;
+      pausedPhases.push(currentPhase);
+    } else {
+      nanos[Phase.OTHER.ordinal()] += now - currentPhaseStart;
+    }
+    currentPhase = phase;
+    currentPhaseStart = now;
+    spans.push(Trace.begin("RobolectricTestRunner." + phase.name().toLowerCase(Locale.US), description.getDisplayName()));
+  }
+
+  /**
+   * Stop timing the current phase, resuming the phase it interrupted, if any.
+   */
+  public void stop() {
+    long now = System.nanoTime();
+    if (currentPhase != null) {
+      nanos[currentPhase.ordinal()] += now - currentPhaseStart;
+      spans.pop().end();
+    }
+    currentPhase = pausedPhases.poll();
+    currentPhaseStart = now;
+  }
+
+  /**
+   * Stop timing any phases left running, e.g. because they threw.
+   */
+  public void finish() {
+    while (currentPhase != null) {
+      stop();
+    }
+  }
+
+  public Description getDescription() {
+    return description;
+  }
+
+  public long getNanos(Phase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  public long getTotalNanos() {
+    long total = 0;
+    for (long phaseNanos : nanos) {
+      total += phaseNanos;
+    }
+    return total;
+  }
+
+  /**
+   * @return The number of classes the test's {@link org.robolectric.internal.bytecode.InstrumentingClassLoader}
+   * loaded while the test ran.
+   */
+  public long getLoadedClassCount() {
+    return loadedClassCount;
+  }
+
+  /**
+   * @return The number of those classes which had to be instrumented, rather than being found in a cache.
+   */
+  public long getInstrumentedClassCount() {
+    return instrumentedClassCount;
+  }
+
+  public void setClassCounts(long loadedClassCount, long instrumentedClassCount) {
+    this.loadedClassCount = loadedClassCount;
+    this.instrumentedClassCount = instrumentedClassCount;
+  }
+}
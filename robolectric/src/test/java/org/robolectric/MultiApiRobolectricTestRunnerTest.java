@@ -2,18 +2,30 @@ package org.robolectric;
 
 import android.os.Build;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.Description;
 import org.junit.runner.RunWith;
 import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
 import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
 import org.junit.runners.JUnit4;
+import org.junit.runners.model.InitializationError;
 import org.robolectric.annotation.Config;
+import org.robolectric.internal.InstrumentingClassLoaderFactory;
 import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -30,6 +42,11 @@ public class MultiApiRobolectricTestRunnerTest {
     numSupportedApis = SdkConfig.getSupportedApis().size();
   }
 
+  @After
+  public void tearDown() {
+    System.clearProperty(MultiApiRobolectricTestRunner.THREADS_PROPERTY);
+  }
+
   @Test
   public void createChildrenForEachSupportedApi() throws Throwable {
     MultiApiRobolectricTestRunner runner = new MultiApiRobolectricTestRunner(TestWithNoConfig.class);
@@ -86,6 +103,149 @@ public class MultiApiRobolectricTestRunnerTest {
     verify(runListener, times(5)).testFinished(any(Description.class));
   }
 
+  @Test
+  public void withThreadsProperty_shouldRunApisConcurrentlyAndReportResultsInApiOrder() throws Throwable {
+    System.setProperty(MultiApiRobolectricTestRunner.THREADS_PROPERTY, "2");
+    MultiApiRobolectricTestRunner runner = new MultiApiRobolectricTestRunner(TestOnWorkerThreads.class) {
+      @Override
+      protected TestRunnerForApiVersion createTestRunner(Integer integer) throws InitializationError {
+        return new TestRunnerForApiVersion(getTestClass().getJavaClass(), integer) {
+          @Override
+          public InstrumentationConfiguration createClassLoaderConfig() {
+            // a configuration of our own, so we can tell whether its environments were shared with this thread
+            return WORKER_THREAD_CONFIG;
+          }
+        };
+      }
+    };
+
+    RunNotifier runNotifier = new RunNotifier();
+    final List<String> events = new ArrayList<>();
+    runNotifier.addListener(new RunListener() {
+      @Override public void testStarted(Description description) {
+        events.add("started " + description.getMethodName());
+      }
+
+      @Override public void testFailure(Failure failure) {
+        events.add("failed " + failure.getDescription().getMethodName() + ": " + failure.getMessage());
+      }
+
+      @Override public void testFinished(Description description) {
+        events.add("finished " + description.getMethodName());
+      }
+    });
+    runner.run(runNotifier);
+
+    List<String> expected = new ArrayList<>();
+    for (Integer apiLevel : SdkConfig.getSupportedApis()) {
+      expected.add("started shouldRunOnItsOwnMainThread[" + apiLevel + "]");
+      expected.add("finished shouldRunOnItsOwnMainThread[" + apiLevel + "]");
+    }
+    assertThat(events).isEqualTo(expected);
+
+    InstrumentingClassLoaderFactory factory = new InstrumentingClassLoaderFactory(WORKER_THREAD_CONFIG, null);
+    for (Integer apiLevel : SdkConfig.getSupportedApis()) {
+      assertThat(factory.hasSdkEnvironment(new SdkConfig(apiLevel), new URL[0])).as("environment for " + apiLevel).isFalse();
+    }
+  }
+
+  @Test
+  public void withThreadsProperty_whenAnApiFails_shouldReportEveryApiBeforeRethrowing() throws Throwable {
+    System.setProperty(MultiApiRobolectricTestRunner.THREADS_PROPERTY, "2");
+    final int firstApiLevel = SdkConfig.getSupportedApis().iterator().next();
+    MultiApiRobolectricTestRunner runner = new MultiApiRobolectricTestRunner(TestOnWorkerThreads.class) {
+      @Override
+      protected TestRunnerForApiVersion createTestRunner(final Integer integer) throws InitializationError {
+        return new TestRunnerForApiVersion(getTestClass().getJavaClass(), integer) {
+          @Override
+          public InstrumentationConfiguration createClassLoaderConfig() {
+            return WORKER_THREAD_CONFIG;
+          }
+
+          @Override
+          public void run(RunNotifier notifier) {
+            if (integer == firstApiLevel) {
+              throw new IllegalStateException("runner failed");
+            }
+            super.run(notifier);
+          }
+        };
+      }
+    };
+
+    RunNotifier runNotifier = new RunNotifier();
+    final List<String> events = new ArrayList<>();
+    runNotifier.addListener(new RunListener() {
+      @Override public void testFailure(Failure failure) {
+        events.add("failed: " + failure.getMessage());
+      }
+
+      @Override public void testFinished(Description description) {
+        events.add("finished " + description.getMethodName());
+      }
+    });
+    runner.run(runNotifier);
+
+    List<String> expected = new ArrayList<>();
+    for (Integer apiLevel : SdkConfig.getSupportedApis()) {
+      if (apiLevel != firstApiLevel) {
+        expected.add("finished shouldRunOnItsOwnMainThread[" + apiLevel + "]");
+      }
+    }
+    expected.add("failed: runner failed");
+    assertThat(events).isEqualTo(expected);
+  }
+
+  @Test
+  public void withThreadsProperty_whenAskedToStop_shouldNotStartMoreApis() throws Throwable {
+    System.setProperty(MultiApiRobolectricTestRunner.THREADS_PROPERTY, "2");
+    final int firstApiLevel = SdkConfig.getSupportedApis().iterator().next();
+    final RunNotifier runNotifier = new RunNotifier();
+    final List<Integer> ranApiLevels = Collections.synchronizedList(new ArrayList<Integer>());
+    MultiApiRobolectricTestRunner runner = new MultiApiRobolectricTestRunner(TestOnWorkerThreads.class) {
+      @Override
+      protected TestRunnerForApiVersion createTestRunner(final Integer integer) throws InitializationError {
+        return new TestRunnerForApiVersion(getTestClass().getJavaClass(), integer) {
+          @Override
+          public InstrumentationConfiguration createClassLoaderConfig() {
+            return WORKER_THREAD_CONFIG;
+          }
+
+          @Override
+          public void run(RunNotifier notifier) {
+            ranApiLevels.add(integer);
+            if (integer == firstApiLevel) {
+              runNotifier.pleaseStop();
+            }
+            super.run(notifier);
+          }
+        };
+      }
+    };
+
+    try {
+      runner.run(runNotifier);
+      fail("expected the run to stop");
+    } catch (StoppedByUserException expected) {
+    }
+
+    // only the API running alongside the first one could have started
+    assertThat(ranApiLevels).contains(firstApiLevel);
+    assertThat(ranApiLevels.size()).isLessThanOrEqualTo(2).isLessThan(numSupportedApis);
+  }
+
+  private static final InstrumentationConfiguration WORKER_THREAD_CONFIG =
+      InstrumentationConfiguration.newBuilder().doNotAquireClass(TestOnWorkerThreads.class.getName() + "$Unused").build();
+
+  @RunWith(MultiApiRobolectricTestRunner.class)
+  public static class TestOnWorkerThreads {
+
+    @Test public void shouldRunOnItsOwnMainThread() {
+      assertThat(Thread.currentThread().getName()).startsWith("Robolectric API runner");
+      assertThat(RuntimeEnvironment.isMainThread()).isTrue();
+    }
+  }
+
   @RunWith(MultiApiRobolectricTestRunner.class)
   public class TestWithNoConfig {
 
@@ -0,0 +1,93 @@
+package org.robolectric;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.ParallelComputer;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.Failure;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.InstrumentingClassLoaderFactory;
+import org.robolectric.internal.SdkEnvironment;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.res.ResourceLoader;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ParallelTestRunnerTest {
+
+  public static class StateHolder {
+    public static final CyclicBarrier barrier = new CyclicBarrier(2);
+    public static final Map<String, SdkEnvironment> sdkEnvironments = new ConcurrentHashMap<>();
+    public static final Map<String, ResourceLoader> systemResourceLoaders = new ConcurrentHashMap<>();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    System.clearProperty(InstrumentingClassLoaderFactory.PARALLEL_PROPERTY);
+  }
+
+  @Test
+  public void withParallelProperty_shouldRunTestClassesConcurrentlyInSeparateEnvironments() throws Exception {
+    System.setProperty(InstrumentingClassLoaderFactory.PARALLEL_PROPERTY, "true");
+
+    assertNoFailures(JUnitCore.runClasses(ParallelComputer.classes(), FirstTest.class, SecondTest.class));
+
+    SdkEnvironment first = StateHolder.sdkEnvironments.get(FirstTest.class.getName());
+    SdkEnvironment second = StateHolder.sdkEnvironments.get(SecondTest.class.getName());
+    assertThat(first.getRobolectricClassLoader()).isNotSameAs(second.getRobolectricClassLoader());
+    assertThat(StateHolder.systemResourceLoaders.get(FirstTest.class.getName()))
+        .isNotNull()
+        .isSameAs(StateHolder.systemResourceLoaders.get(SecondTest.class.getName()));
+  }
+
+  private static void assertNoFailures(Result result) {
+    if (!result.wasSuccessful()) {
+      for (Failure failure : result.getFailures()) {
+        fail(failure.getMessage(), failure.getException());
+      }
+    }
+  }
+
+  @RunWith(Runner.class)
+  @Config(manifest = Config.NONE)
+  public static class FirstTest {
+    @Test public void shouldRunAlongsideTheOtherTest() throws Exception {
+      StateHolder.barrier.await(60, TimeUnit.SECONDS);
+    }
+  }
+
+  @RunWith(Runner.class)
+  @Config(manifest = Config.NONE)
+  public static class SecondTest {
+    @Test public void shouldRunAlongsideTheOtherTest() throws Exception {
+      StateHolder.barrier.await(60, TimeUnit.SECONDS);
+    }
+  }
+
+  public static class Runner extends RobolectricTestRunner {
+    public Runner(Class<?> testClass) throws InitializationError {
+      super(testClass);
+    }
+
+    @Override public InstrumentationConfiguration createClassLoaderConfig() {
+      return InstrumentationConfiguration.newBuilder()
+          .doNotAquireClass(StateHolder.class.getName())
+          .build();
+    }
+
+    @Override protected void configureShadows(SdkEnvironment sdkEnvironment, Config config) {
+      super.configureShadows(sdkEnvironment, config);
+      StateHolder.sdkEnvironments.put(getTestClass().getName(), sdkEnvironment);
+      StateHolder.systemResourceLoaders.put(getTestClass().getName(), sdkEnvironment.getSystemResourceLoader(getJarResolver()));
+    }
+  }
+}
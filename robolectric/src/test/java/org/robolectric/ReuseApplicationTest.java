@@ -0,0 +1,56 @@
+package org.robolectric;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(TestRunners.WithDefaults.class)
+@Config(reuseApplication = true)
+public class ReuseApplicationTest {
+  private static Application firstApplication;
+
+  @Test
+  public void shouldResetStateRecordedByTheApplicationBetweenTests() throws Exception {
+    verifyCleanApplicationAndDirtyIt();
+  }
+
+  @Test
+  public void shouldResetStateRecordedByTheApplicationBetweenTests_again() throws Exception {
+    verifyCleanApplicationAndDirtyIt();
+  }
+
+  @Test
+  public void shouldResetStateRecordedByTheApplicationBetweenTests_onceMore() throws Exception {
+    verifyCleanApplicationAndDirtyIt();
+  }
+
+  private void verifyCleanApplicationAndDirtyIt() {
+    Application application = RuntimeEnvironment.application;
+    if (firstApplication == null) {
+      firstApplication = application;
+    }
+    assertThat(application).isSameAs(firstApplication);
+    assertThat(application.getResources().getString(R.string.hello)).isEqualTo("Hello");
+
+    assertThat(shadowOf(application).getNextStartedActivity()).isNull();
+    SharedPreferences preferences = application.getSharedPreferences("prefs", Context.MODE_PRIVATE);
+    assertThat(preferences.getAll()).isEmpty();
+    assertThat(RuntimeEnvironment.getMasterScheduler().size()).isZero();
+
+    application.startActivity(new Intent(application, Activity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK));
+    preferences.edit().putBoolean("dirty", true).commit();
+    RuntimeEnvironment.getMasterScheduler().pause();
+    RuntimeEnvironment.getMasterScheduler().postDelayed(new Runnable() {
+      @Override public void run() {
+      }
+    }, 1000);
+  }
+}
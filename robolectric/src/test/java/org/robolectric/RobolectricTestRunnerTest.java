@@ -94,6 +94,14 @@ public class RobolectricTestRunnerTest {
         new int[] {9}, "furf", TestFakeApp.class, "com.example.method", "from-method", "method/res", "method/assets", new Class[]{Test1.class}, new String[]{"libs/method"}, BuildConfigConstants.class);
   }
 
+  @Test
+  public void whenMethodConfigSetsReuseApplication_getConfig_shouldOverrideClassConfig() throws Exception {
+    assertThat(configFor(Test7.class, "withoutAnnotation").reuseApplication()).containsExactly(true);
+    assertThat(configFor(Test7.class, "withDefaultsAnnotation").reuseApplication()).containsExactly(true);
+    assertThat(configFor(Test7.class, "withReuseApplicationOff").reuseApplication()).containsExactly(false);
+    assertThat(configFor(Test2.class, "withoutAnnotation").reuseApplication()).isEmpty();
+  }
+
   @Test
   public void shouldLoadDefaultsFromPropertiesFile() throws Exception {
     Properties properties = properties(
@@ -241,6 +249,24 @@ public class RobolectricTestRunnerTest {
   public static class Test6 extends Test5 {
   }
 
+  @Ignore
+  @Config(reuseApplication = true)
+  public static class Test7 {
+    @Test
+    public void withoutAnnotation() throws Exception {
+    }
+
+    @Test
+    @Config
+    public void withDefaultsAnnotation() throws Exception {
+    }
+
+    @Test
+    @Config(reuseApplication = false)
+    public void withReuseApplicationOff() throws Exception {
+    }
+  }
+
   private String stringify(Config config) {
     int[] sdk = config.sdk();
     String manifest = config.manifest();
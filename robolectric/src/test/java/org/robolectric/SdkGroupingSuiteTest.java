@@ -0,0 +1,143 @@
+package org.robolectric;
+
+import android.os.Build;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.RunListener;
+import org.junit.runners.Suite;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.InstrumentingClassLoaderFactory.EnvironmentKey;
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SdkGroupingSuiteTest {
+
+  @Test
+  public void shouldRunEachEnvironmentsTestsTogether() throws Exception {
+    final List<String> started = new ArrayList<>();
+    final List<String> ignored = new ArrayList<>();
+    JUnitCore junit = new JUnitCore();
+    junit.addListener(new RunListener() {
+      @Override public void testStarted(Description description) {
+        started.add(description.getMethodName());
+      }
+
+      @Override public void testIgnored(Description description) {
+        ignored.add(description.getMethodName());
+      }
+    });
+
+    Result result = junit.run(Request.aClass(GroupedSuite.class));
+    assertThat(result.getFailures()).isEmpty();
+    assertThat(started).containsOnly("first18", "second18", "first21", "second21", "third21", "first16[16]", "first16[17]");
+    assertThat(ignored).containsOnly("ignored");
+
+    List<String> sdks = new ArrayList<>();
+    for (String testName : started) {
+      String sdk = testName.replaceAll(".*(\\d\\d)\\]?$", "$1");
+      if (sdks.isEmpty() || !sdks.get(sdks.size() - 1).equals(sdk)) {
+        sdks.add(sdk);
+      }
+    }
+    assertThat(sdks).hasSize(4).containsOnly("16", "17", "18", "21");
+  }
+
+  @Test
+  public void shouldCountAvoidedEnvironmentConstructions() throws Exception {
+    InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+    List<EnvironmentKey> environments = new ArrayList<>();
+    for (int i = 0; i <= SdkConfig.getSupportedApis().size(); i++) {
+      environments.add(new EnvironmentKey(config, new SdkConfig(18), new URL[] {new URL("file:/app" + i + "/")}));
+    }
+
+    List<EnvironmentKey> interleaved = new ArrayList<>(environments);
+    interleaved.addAll(environments);
+    List<EnvironmentKey> grouped = new ArrayList<>();
+    for (EnvironmentKey environment : environments) {
+      grouped.add(environment);
+      grouped.add(environment);
+    }
+
+    assertThat(SdkGroupingSuite.countEnvironmentConstructions(interleaved)).isEqualTo(2 * environments.size());
+    assertThat(SdkGroupingSuite.countEnvironmentConstructions(grouped)).isEqualTo(environments.size());
+  }
+
+  @Test
+  public void countEnvironmentConstructions_shouldEvictInInsertionOrderLikeTheFactory() throws Exception {
+    InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+    List<EnvironmentKey> environments = new ArrayList<>();
+    for (int i = 0; i <= SdkConfig.getSupportedApis().size(); i++) {
+      environments.add(new EnvironmentKey(config, new SdkConfig(18), new URL[] {new URL("file:/app" + i + "/")}));
+    }
+
+    // using the first environment again doesn't save it from eviction when the cache overflows
+    List<EnvironmentKey> sequence = new ArrayList<>(environments.subList(0, environments.size() - 1));
+    sequence.add(environments.get(0));
+    sequence.add(environments.get(environments.size() - 1));
+    sequence.add(environments.get(0));
+
+    assertThat(SdkGroupingSuite.countEnvironmentConstructions(sequence)).isEqualTo(environments.size() + 1);
+  }
+
+  @Test
+  public void shouldReportAvoidedEnvironmentConstructions() throws Exception {
+    SdkGroupingSuite suite = (SdkGroupingSuite) Request.aClass(GroupedSuite.class).getRunner();
+    assertThat(suite.getAvoidedEnvironmentConstructions()).isZero();
+  }
+
+  @RunWith(SdkGroupingSuite.class)
+  @Suite.SuiteClasses({MixedSdks.class, MoreMixedSdks.class, MultipleSdks.class})
+  public static class GroupedSuite {
+  }
+
+  @RunWith(TestRunners.WithDefaults.class)
+  @Config(manifest = Config.NONE)
+  public static class MixedSdks {
+    @Test @Config(sdk = 18) public void first18() throws Exception {
+      assertThat(Build.VERSION.SDK_INT).isEqualTo(18);
+    }
+
+    @Test @Config(sdk = 21) public void first21() throws Exception {
+      assertThat(Build.VERSION.SDK_INT).isEqualTo(21);
+    }
+
+    @Test @Config(sdk = 18) public void second18() throws Exception {
+      assertThat(Build.VERSION.SDK_INT).isEqualTo(18);
+    }
+
+    @Test @Ignore public void ignored() throws Exception {
+      throw new AssertionError("shouldn't run");
+    }
+  }
+
+  @RunWith(TestRunners.WithDefaults.class)
+  @Config(manifest = Config.NONE, sdk = 21)
+  public static class MoreMixedSdks {
+    @Test public void second21() throws Exception {
+      assertThat(Build.VERSION.SDK_INT).isEqualTo(21);
+    }
+
+    @Test public void third21() throws Exception {
+      assertThat(Build.VERSION.SDK_INT).isEqualTo(21);
+    }
+  }
+
+  @RunWith(MultiApiRobolectricTestRunner.class)
+  @Config(manifest = Config.NONE, sdk = {16, 17})
+  public static class MultipleSdks {
+    @Test public void first16() throws Exception {
+      assertThat(Build.VERSION.SDK_INT).isLessThanOrEqualTo(17);
+    }
+  }
+}
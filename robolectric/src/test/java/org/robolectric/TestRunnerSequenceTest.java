@@ -14,8 +14,10 @@ import org.robolectric.res.FsFile;
 import org.robolectric.util.Transcript;
 
 import java.lang.reflect.Method;
+import java.util.Properties;
 
 import static org.assertj.core.api.Assertions.fail;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.robolectric.util.TestUtil.resourceFile;
 
@@ -66,18 +68,163 @@ public class TestRunnerSequenceTest {
     );
   }
 
+  @Test public void whenReusingApplication_shouldSetUpApplicationOnceForTheClass() throws Exception {
+    StateHolder.transcript = new Transcript();
+    assertNoFailures(run(new Runner(ReusingTest.class)));
+    StateHolder.transcript.assertEventsSoFar(
+        "configureShadows",
+        "createApplication",
+        "application.onCreate",
+        "beforeTest",
+        "application.beforeTest",
+        "prepareTest",
+        "application.prepareTest",
+        "TEST!",
+        "afterTest",
+        "application.afterTest",
+        "configureShadows",
+        "beforeTest",
+        "application.beforeTest",
+        "prepareTest",
+        "application.prepareTest",
+        "TEST!",
+        "afterTest",
+        "application.afterTest",
+        "application.onTerminate"
+    );
+  }
+
+  @Test public void whenReusingApplication_shouldSetUpApplicationAgainWhenQualifiersChange() throws Exception {
+    StateHolder.transcript = new Transcript();
+    assertNoFailures(run(new Runner(ReusingTestWithDifferentQualifiers.class)));
+    StateHolder.transcript.assertEventsSoFar(
+        "configureShadows",
+        "createApplication",
+        "application.onCreate",
+        "beforeTest",
+        "application.beforeTest",
+        "prepareTest",
+        "application.prepareTest",
+        "TEST!",
+        "afterTest",
+        "application.afterTest",
+        "configureShadows",
+        "application.onTerminate",
+        "createApplication",
+        "application.onCreate",
+        "beforeTest",
+        "application.beforeTest",
+        "prepareTest",
+        "application.prepareTest",
+        "TEST!",
+        "afterTest",
+        "application.afterTest",
+        "application.onTerminate"
+    );
+  }
+
+  @Test public void whenReusingApplication_shouldSetUpApplicationAgainWhenShadowsChange() throws Exception {
+    StateHolder.transcript = new Transcript();
+    assertNoFailures(run(new Runner(ReusingTestWithDifferentShadows.class)));
+    StateHolder.transcript.assertEventsSoFar(
+        "configureShadows",
+        "createApplication",
+        "application.onCreate",
+        "beforeTest",
+        "application.beforeTest",
+        "prepareTest",
+        "application.prepareTest",
+        "TEST!",
+        "afterTest",
+        "application.afterTest",
+        "configureShadows",
+        "application.onTerminate",
+        "createApplication",
+        "application.onCreate",
+        "beforeTest",
+        "application.beforeTest",
+        "prepareTest",
+        "application.prepareTest",
+        "TEST!",
+        "afterTest",
+        "application.afterTest",
+        "application.onTerminate"
+    );
+  }
+
+  @Test public void whenReusingApplication_shouldReleaseAllStateAfterClass() throws Exception {
+    StateHolder.transcript = new Transcript();
+    RobolectricTestRunner robolectricTestRunner = new Runner(ReusingTest.class);
+    robolectricTestRunner.run(new RunNotifier());
+    assertTrue(robolectricTestRunner.allStateIsCleared());
+  }
+
   @Test public void shouldReleaseAllStateAfterClassSoWeDontLeakMemory() throws Exception {
     RobolectricTestRunner robolectricTestRunner = new Runner(SimpleTest.class);
     robolectricTestRunner.run(new RunNotifier());
     assertTrue(robolectricTestRunner.allStateIsCleared());
   }
 
+  @Test public void shouldReadConfigAndCreateHelperTestRunnerOncePerClass() throws Exception {
+    StateHolder.transcript = new Transcript();
+    final int[] configPropertiesReads = new int[1];
+    final int[] helperTestRunners = new int[1];
+    assertNoFailures(run(new Runner(ReusingTest.class) {
+      @Override protected Properties getConfigProperties() {
+        configPropertiesReads[0]++;
+        return super.getConfigProperties();
+      }
+
+      @Override protected HelperTestRunner getHelperTestRunner(Class bootstrappedTestClass) {
+        helperTestRunners[0]++;
+        return super.getHelperTestRunner(bootstrappedTestClass);
+      }
+    }));
+    assertEquals(1, configPropertiesReads[0]);
+    assertEquals(1, helperTestRunners[0]);
+  }
+
   public static class SimpleTest {
     @Test public void shouldDoNothingMuch() throws Exception {
       StateHolder.transcript.add("TEST!");
     }
   }
 
+  @Config(reuseApplication = true)
+  public static class ReusingTest {
+    @Test public void shouldDoNothingMuch() throws Exception {
+      StateHolder.transcript.add("TEST!");
+    }
+
+    @Test public void shouldDoNothingMuchAgain() throws Exception {
+      StateHolder.transcript.add("TEST!");
+    }
+  }
+
+  @Config(reuseApplication = true)
+  public static class ReusingTestWithDifferentQualifiers {
+    @Test public void shouldDoNothingMuch() throws Exception {
+      StateHolder.transcript.add("TEST!");
+    }
+
+    @Test @Config(qualifiers = "land")
+    public void shouldDoNothingMuchInLandscape() throws Exception {
+      StateHolder.transcript.add("TEST!");
+    }
+  }
+
+  @Config(reuseApplication = true)
+  public static class ReusingTestWithDifferentShadows {
+    @Test public void shouldDoNothingMuch() throws Exception {
+      StateHolder.transcript.add("TEST!");
+    }
+
+    @Test @Config(shadows = TemporaryBindingsTest.TemporaryShadowView.class)
+    public void shouldDoNothingMuchWithAnotherShadow() throws Exception {
+      StateHolder.transcript.add("TEST!");
+    }
+  }
+
   private Result run(Runner runner) throws InitializationError {
     RunNotifier notifier = new RunNotifier();
     Result result = new Result();
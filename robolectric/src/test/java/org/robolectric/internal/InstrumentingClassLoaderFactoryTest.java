@@ -0,0 +1,104 @@
+package org.robolectric.internal;
+
+import org.junit.Test;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.dependency.DependencyJar;
+import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.internal.dependency.MavenDependencyResolver;
+
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class InstrumentingClassLoaderFactoryTest {
+  private final MavenDependencyResolver mavenDependencyResolver = new MavenDependencyResolver();
+
+  @Test
+  public void whenCreatingAnEnvironmentFails_shouldTryAgainNextTime() throws Exception {
+    InstrumentingClassLoaderFactory factory = new InstrumentingClassLoaderFactory(newConfig("$FailsOnce"), new DependencyResolver() {
+      boolean failed;
+
+      @Override
+      public URL[] getLocalArtifactUrls(DependencyJar... dependencies) {
+        if (!failed) {
+          failed = true;
+          throw new RuntimeException("expected failure");
+        }
+        return mavenDependencyResolver.getLocalArtifactUrls(dependencies);
+      }
+
+      @Override
+      public URL getLocalArtifactUrl(DependencyJar dependency) {
+        return mavenDependencyResolver.getLocalArtifactUrl(dependency);
+      }
+    });
+    SdkConfig sdkConfig = new SdkConfig(21);
+
+    try {
+      factory.getSdkEnvironment(sdkConfig);
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage()).isEqualTo("expected failure");
+    }
+    assertThat(factory.hasSdkEnvironment(sdkConfig, new URL[0])).isFalse();
+
+    assertThat(factory.getSdkEnvironment(sdkConfig).getSdkConfig()).isEqualTo(sdkConfig);
+  }
+
+  @Test
+  public void shouldCreateOtherEnvironmentsWhileOneIsBeingCreated() throws Exception {
+    final SdkConfig slowSdkConfig = new SdkConfig(16);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final InstrumentingClassLoaderFactory factory = new InstrumentingClassLoaderFactory(newConfig("$Slow"), new DependencyResolver() {
+      @Override
+      public URL[] getLocalArtifactUrls(DependencyJar... dependencies) {
+        if (dependencies[0].toString().equals(slowSdkConfig.getSdkClasspathDependencies()[0].toString())) {
+          started.countDown();
+          try {
+            release.await(30, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        return mavenDependencyResolver.getLocalArtifactUrls(dependencies);
+      }
+
+      @Override
+      public URL getLocalArtifactUrl(DependencyJar dependency) {
+        return mavenDependencyResolver.getLocalArtifactUrl(dependency);
+      }
+    });
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<SdkEnvironment> slowEnvironment = executor.submit(new Callable<SdkEnvironment>() {
+        @Override public SdkEnvironment call() {
+          return factory.getSdkEnvironment(slowSdkConfig);
+        }
+      });
+      assertThat(started.await(30, TimeUnit.SECONDS)).isTrue();
+
+      assertThat(factory.getSdkEnvironment(new SdkConfig(21))).isNotNull();
+      assertThat(release.getCount()).isEqualTo(1);
+
+      release.countDown();
+      assertThat(slowEnvironment.get().getSdkConfig()).isEqualTo(slowSdkConfig);
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  private static InstrumentationConfiguration newConfig(String suffix) {
+    // a configuration of our own, so environments created by other tests aren't reused
+    return InstrumentationConfiguration.newBuilder().doNotAquireClass(InstrumentingClassLoaderFactoryTest.class.getName() + suffix).build();
+  }
+}
@@ -0,0 +1,169 @@
+package org.robolectric.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.RobolectricInternals;
+import org.robolectric.internal.dependency.DependencyJar;
+import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.internal.dependency.IndexedDependencyResolver;
+import org.robolectric.internal.dependency.MavenDependencyResolver;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SdkEnvironmentPrefetcherTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldPrefetchLaterSdksInTheBackground() throws Exception {
+    final RecordingDependencyResolver dependencyResolver = new RecordingDependencyResolver();
+    RobolectricTestRunner runner = new RobolectricTestRunner(TwoSdks.class) {
+      @Override
+      protected DependencyResolver getJarResolver() {
+        dependencyResolver.delegate = super.getJarResolver();
+        return dependencyResolver;
+      }
+
+      @Override
+      public InstrumentationConfiguration createClassLoaderConfig() {
+        // a configuration of our own, so environments created by other tests aren't reused
+        return InstrumentationConfiguration.newBuilder().doNotAquireClass(TwoSdks.class.getName() + "$Unused").build();
+      }
+    };
+
+    RunNotifier notifier = new RunNotifier();
+    Result result = new Result();
+    notifier.addListener(result.createListener());
+    System.setProperty(SdkEnvironmentPrefetcher.PREFETCH_PROPERTY, "true");
+    try {
+      runner.run(notifier);
+    } finally {
+      System.clearProperty(SdkEnvironmentPrefetcher.PREFETCH_PROPERTY);
+    }
+
+    assertThat(result.getFailureCount()).isEqualTo(0);
+    // JUnit doesn't promise to run the tests in order, but whichever SDK comes second should have been prefetched
+    boolean prefetchedJellyBean = dependencyResolver.resolved.contains("Robolectric prefetcher: " + new SdkConfig(16).getSystemResourceDependency());
+    boolean prefetchedLollipop = dependencyResolver.resolved.contains("Robolectric prefetcher: " + new SdkConfig(21).getSystemResourceDependency());
+    assertThat(prefetchedJellyBean).isNotEqualTo(prefetchedLollipop);
+  }
+
+  @Test
+  public void whenEnvironmentExists_shouldDoNothing() throws Exception {
+    RecordingDependencyResolver dependencyResolver = new RecordingDependencyResolver();
+    InstrumentingClassLoaderFactory factory = new InstrumentingClassLoaderFactory(InstrumentationConfiguration.newBuilder().build(), dependencyResolver) {
+      @Override
+      public boolean hasSdkEnvironment(SdkConfig sdkConfig, URL[] applicationClasspath) {
+        return true;
+      }
+    };
+
+    new SdkEnvironmentPrefetcher(factory, dependencyResolver).prefetch(Collections.singleton(new SdkConfig(21)), new URL[0]).get(0).get();
+
+    assertThat(dependencyResolver.resolved).isEmpty();
+  }
+
+  @Test
+  public void shouldLeaveShadowsToTheTestThread() throws Exception {
+    RecordingDependencyResolver dependencyResolver = new RecordingDependencyResolver();
+    dependencyResolver.delegate = new MavenDependencyResolver();
+    // a configuration of our own, so the environment hasn't been used by a test yet
+    InstrumentingClassLoaderFactory factory = new InstrumentingClassLoaderFactory(
+        InstrumentationConfiguration.newBuilder().doNotAquireClass(TwoSdks.class.getName() + "$Unprefetched").build(), dependencyResolver);
+    SdkConfig sdkConfig = new SdkConfig(21);
+
+    new SdkEnvironmentPrefetcher(factory, dependencyResolver).prefetch(Collections.singleton(sdkConfig), new URL[0]).get(0).get();
+
+    SdkEnvironment sdkEnvironment = factory.getSdkEnvironment(sdkConfig, new URL[0]);
+    assertThat(factory.hasSdkEnvironment(sdkConfig, new URL[0])).isTrue();
+    Class<?> robolectricInternals = sdkEnvironment.bootstrappedClass(RobolectricInternals.class);
+    assertThat((Object) ReflectionHelpers.getStaticField(robolectricInternals, "classHandler")).isNull();
+  }
+
+  @Test
+  public void withIndexedResolver_shouldResolveEveryConfiguredSdkUpFront() throws Exception {
+    final RecordingIndexedDependencyResolver dependencyResolver = new RecordingIndexedDependencyResolver(temporaryFolder.newFolder("cache"));
+    RobolectricTestRunner runner = new RobolectricTestRunner(TwoSdks.class) {
+      @Override
+      protected DependencyResolver getJarResolver() {
+        return dependencyResolver;
+      }
+    };
+
+    RunNotifier notifier = new RunNotifier();
+    Result result = new Result();
+    notifier.addListener(result.createListener());
+    runner.run(notifier);
+
+    assertThat(result.getFailureCount()).isEqualTo(0);
+    assertThat(dependencyResolver.resolvedSdks).containsOnly(new SdkConfig(16), new SdkConfig(21));
+  }
+
+  @Config(manifest = Config.NONE)
+  public static class TwoSdks {
+    @Test @Config(sdk = 16)
+    public void onJellyBean() {
+    }
+
+    @Test @Config(sdk = 21)
+    public void onLollipop() {
+    }
+  }
+
+  private static class RecordingIndexedDependencyResolver extends IndexedDependencyResolver {
+    final List<SdkConfig> resolvedSdks = Collections.synchronizedList(new ArrayList<SdkConfig>());
+    final DependencyResolver delegate = new MavenDependencyResolver();
+
+    RecordingIndexedDependencyResolver(File cacheDir) {
+      super("http://example.com/", null, cacheDir, 1);
+    }
+
+    @Override
+    public void resolveSdkDependencies(Collection<SdkConfig> sdkConfigs) {
+      resolvedSdks.addAll(sdkConfigs);
+    }
+
+    @Override
+    public URL[] getLocalArtifactUrls(DependencyJar... dependencies) {
+      return delegate.getLocalArtifactUrls(dependencies);
+    }
+
+    @Override
+    public URL getLocalArtifactUrl(DependencyJar dependency) {
+      return delegate.getLocalArtifactUrl(dependency);
+    }
+  }
+
+  private static class RecordingDependencyResolver implements DependencyResolver {
+    final List<String> resolved = Collections.synchronizedList(new ArrayList<String>());
+    DependencyResolver delegate;
+
+    @Override
+    public URL[] getLocalArtifactUrls(DependencyJar... dependencies) {
+      for (DependencyJar dependency : dependencies) {
+        resolved.add(Thread.currentThread().getName().replaceAll(" \\d+$", "") + ": " + dependency);
+      }
+      return delegate.getLocalArtifactUrls(dependencies);
+    }
+
+    @Override
+    public URL getLocalArtifactUrl(DependencyJar dependency) {
+      resolved.add(Thread.currentThread().getName().replaceAll(" \\d+$", "") + ": " + dependency);
+      return delegate.getLocalArtifactUrl(dependency);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.ShadowConstants;
+import org.robolectric.internal.bytecode.testing.AnExampleClass;
+import org.robolectric.internal.dependency.DependencyJar;
+import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.Util.readBytes;
+
+public class AheadOfTimeInstrumenterTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final String CLASS_FILE_NAME = AnExampleClass.class.getName().replace('.', '/') + ".class";
+
+  private final InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+  private final SdkConfig sdkConfig = new SdkConfig(18);
+  private File outputDir;
+  private DependencyResolver dependencyResolver;
+
+  @Before
+  public void setUp() throws Exception {
+    outputDir = temporaryFolder.newFolder("instrumented");
+
+    // stand in for android-all with a jar holding a single instrumentable class
+    final File androidAll = new File(temporaryFolder.getRoot(), "android-all.jar");
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(androidAll));
+         InputStream in = getClass().getClassLoader().getResourceAsStream(CLASS_FILE_NAME)) {
+      out.putNextEntry(new ZipEntry(CLASS_FILE_NAME));
+      out.write(readBytes(in));
+      out.closeEntry();
+    }
+
+    dependencyResolver = new DependencyResolver() {
+      @Override
+      public URL[] getLocalArtifactUrls(DependencyJar... dependencies) {
+        return new URL[] {getLocalArtifactUrl(null)};
+      }
+
+      @Override
+      public URL getLocalArtifactUrl(DependencyJar dependency) {
+        try {
+          return androidAll.toURI().toURL();
+        } catch (MalformedURLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+  @Test
+  public void shouldWriteInstrumentedClassesAndManifest() throws Exception {
+    File jar = AheadOfTimeInstrumenter.instrument(outputDir, sdkConfig, config, dependencyResolver);
+
+    try (JarFile jarFile = new JarFile(jar)) {
+      assertThat(jarFile.getEntry(AheadOfTimeInstrumenter.MANIFEST_PATH)).isNotNull();
+      assertThat(jarFile.getEntry(CLASS_FILE_NAME)).isNotNull();
+    }
+    assertThat(outputDir.list()).containsOnly(jar.getName());
+  }
+
+  @Test
+  public void shouldOnlyFindJarsBuiltWithTheSameConfiguration() throws Exception {
+    File jar = AheadOfTimeInstrumenter.instrument(outputDir, sdkConfig, config, dependencyResolver);
+    InstrumentationConfiguration otherConfig = InstrumentationConfiguration.newBuilder().addInstrumentedPackage("com.example.").build();
+
+    assertThat(AheadOfTimeInstrumenter.findPreinstrumentedJar(outputDir, sdkConfig, config)).isEqualTo(jar.toURI().toURL());
+    assertThat(AheadOfTimeInstrumenter.findPreinstrumentedJar(outputDir, sdkConfig, otherConfig)).isNull();
+    assertThat(AheadOfTimeInstrumenter.findPreinstrumentedJar(outputDir, new SdkConfig(19), config)).isNull();
+  }
+
+  @Test
+  public void instrumentingClassLoaderShouldLoadPreinstrumentedClassesWithoutReadingOriginals() throws Exception {
+    AheadOfTimeInstrumenter.instrument(outputDir, sdkConfig, config, dependencyResolver);
+    URL jar = AheadOfTimeInstrumenter.findPreinstrumentedJar(outputDir, sdkConfig, config);
+
+    InstrumentingClassLoader classLoader = new InstrumentingClassLoader(config, null, jar, new URL[0]) {
+      @Override
+      protected byte[] getByteCode(String className) throws ClassNotFoundException {
+        throw new AssertionError("shouldn't instrument " + className + " at runtime");
+      }
+    };
+    Class<?> exampleClass = classLoader.loadClass(AnExampleClass.class.getName());
+    assertThat(exampleClass.getClassLoader()).isSameAs(classLoader);
+    assertThat(exampleClass.getField(ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME)).isNotNull();
+  }
+}
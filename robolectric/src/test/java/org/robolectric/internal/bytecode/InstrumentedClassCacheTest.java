@@ -0,0 +1,70 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.internal.ShadowConstants;
+import org.robolectric.internal.bytecode.testing.AnExampleClass;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstrumentedClassCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+
+  @Test
+  public void shouldReturnNullAndCountMissWhenEmpty() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(temporaryFolder.getRoot(), "1.0", config);
+
+    assertThat(cache.load(new byte[] {1, 2, 3})).isNull();
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldReturnStoredBytesAcrossInstances() throws Exception {
+    new InstrumentedClassCache(temporaryFolder.getRoot(), "1.0", config).store(new byte[] {1, 2, 3}, new byte[] {4, 5});
+
+    InstrumentedClassCache cache = new InstrumentedClassCache(temporaryFolder.getRoot(), "1.0", config);
+    assertThat(cache.load(new byte[] {1, 2, 3})).isEqualTo(new byte[] {4, 5});
+    assertThat(cache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotShareEntriesAcrossVersionsOrConfigurations() throws Exception {
+    File root = temporaryFolder.getRoot();
+    InstrumentationConfiguration otherConfig = InstrumentationConfiguration.newBuilder().addInstrumentedPackage("com.example.").build();
+
+    InstrumentedClassCache cache = new InstrumentedClassCache(root, "1.0", config);
+    assertThat(new InstrumentedClassCache(root, "1.0", config).getCacheDir()).isEqualTo(cache.getCacheDir());
+    assertThat(new InstrumentedClassCache(root, "1.1", config).getCacheDir()).isNotEqualTo(cache.getCacheDir());
+    assertThat(new InstrumentedClassCache(root, "1.0", otherConfig).getCacheDir()).isNotEqualTo(cache.getCacheDir());
+  }
+
+  @Test
+  public void shouldNotLeaveTemporaryFilesBehind() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(temporaryFolder.getRoot(), "1.0", config);
+    cache.store(new byte[] {1}, new byte[] {2});
+    cache.store(new byte[] {1}, new byte[] {2});
+
+    assertThat(cache.getCacheDir().list()).hasSize(1);
+  }
+
+  @Test
+  public void instrumentingClassLoaderShouldReuseCachedClasses() throws Exception {
+    InstrumentedClassCache coldCache = new InstrumentedClassCache(temporaryFolder.getRoot(), "1.0", config);
+    Class<?> coldClass = new InstrumentingClassLoader(config, coldCache).loadClass(AnExampleClass.class.getName());
+    assertThat(coldCache.getHitCount()).isEqualTo(0);
+    assertThat(coldCache.getMissCount()).isGreaterThan(0);
+
+    InstrumentedClassCache warmCache = new InstrumentedClassCache(temporaryFolder.getRoot(), "1.0", config);
+    Class<?> warmClass = new InstrumentingClassLoader(config, warmCache).loadClass(AnExampleClass.class.getName());
+    assertThat(warmCache.getMissCount()).isEqualTo(0);
+    assertThat(warmCache.getHitCount()).isEqualTo(coldCache.getMissCount());
+    assertThat(warmClass).isNotSameAs(coldClass);
+    assertThat(warmClass.getField(ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME)).isNotNull();
+  }
+}
@@ -0,0 +1,177 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.After;
+import org.junit.Test;
+import org.robolectric.internal.bytecode.testing.AChild;
+import org.robolectric.internal.bytecode.testing.AClassToForget;
+import org.robolectric.internal.bytecode.testing.AClassToRemember;
+import org.robolectric.internal.bytecode.testing.AClassWithFunnyConstructors;
+import org.robolectric.internal.bytecode.testing.AClassWithMethodReturningArray;
+import org.robolectric.internal.bytecode.testing.AClassWithNativeMethod;
+import org.robolectric.internal.bytecode.testing.AClassWithStaticMethod;
+import org.robolectric.internal.bytecode.testing.AFinalClass;
+import org.robolectric.internal.bytecode.testing.AGrandparent;
+import org.robolectric.internal.bytecode.testing.AParent;
+import org.robolectric.internal.bytecode.testing.AnEnum;
+import org.robolectric.internal.bytecode.testing.AnExampleClass;
+import org.robolectric.internal.bytecode.testing.AnInstrumentedChild;
+import org.robolectric.internal.bytecode.testing.AnUninstrumentedClass;
+import org.robolectric.internal.bytecode.testing.AnUninstrumentedParent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class InstrumentingClassLoaderConcurrencyTest {
+  private static final int THREADS = 8;
+  private static final String MISSING_CLASS_NAME = "org.robolectric.internal.bytecode.testing.ANonexistentClass";
+
+  private final InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+  private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldDefineEachClassOnceWhenLoadedFromManyThreads() throws Exception {
+    final List<String> classNames = new ArrayList<>();
+    for (Class<?> clazz : Arrays.asList(AChild.class, AParent.class, AGrandparent.class, AClassToForget.class,
+        AClassToRemember.class, AClassWithFunnyConstructors.class, AClassWithMethodReturningArray.class,
+        AClassWithNativeMethod.class, AClassWithStaticMethod.class, AFinalClass.class, AnEnum.class,
+        AnExampleClass.class, AnInstrumentedChild.class, AnUninstrumentedClass.class, AnUninstrumentedParent.class)) {
+      classNames.add(clazz.getName());
+    }
+    classNames.add(MISSING_CLASS_NAME);
+
+    final CountingClassLoader classLoader = new CountingClassLoader(config);
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<List<Class<?>>>> futures = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      final int seed = i;
+      futures.add(executor.submit(new Callable<List<Class<?>>>() {
+        @Override
+        public List<Class<?>> call() throws Exception {
+          List<String> shuffled = new ArrayList<>(classNames);
+          Collections.shuffle(shuffled, new Random(seed));
+          start.await();
+
+          List<Class<?>> loaded = new ArrayList<>();
+          for (String className : shuffled) {
+            try {
+              loaded.add(classLoader.loadClass(className));
+            } catch (ClassNotFoundException e) {
+              assertThat(className).isEqualTo(MISSING_CLASS_NAME);
+            }
+          }
+          return loaded;
+        }
+      }));
+    }
+    start.countDown();
+
+    for (Future<List<Class<?>>> future : futures) {
+      for (Class<?> loadedClass : future.get(30, TimeUnit.SECONDS)) {
+        assertThat(loadedClass).isSameAs(classLoader.loadClass(loadedClass.getName()));
+      }
+    }
+    for (String className : classNames) {
+      assertThat(classLoader.findClassCounts.get(className).get()).as(className).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void shouldInstrumentDistinctClassesConcurrently() throws Exception {
+    final CountDownLatch firstEntered = new CountDownLatch(1);
+    final CountDownLatch secondEntered = new CountDownLatch(1);
+    final InstrumentingClassLoader classLoader = new RendezvousClassLoader(config, firstEntered, secondEntered);
+
+    Future<Class<?>> first = executor.submit(loadClassTask(classLoader, AnExampleClass.class.getName()));
+    Future<Class<?>> second = executor.submit(loadClassTask(classLoader, AClassToRemember.class.getName()));
+    try {
+      assertThat(first.get(30, TimeUnit.SECONDS).getClassLoader()).isSameAs(classLoader);
+      assertThat(second.get(30, TimeUnit.SECONDS).getClassLoader()).isSameAs(classLoader);
+    } catch (Exception e) {
+      fail("classes weren't loaded concurrently: " + e);
+    }
+  }
+
+  private static Callable<Class<?>> loadClassTask(final ClassLoader classLoader, final String className) {
+    return new Callable<Class<?>>() {
+      @Override
+      public Class<?> call() throws Exception {
+        return classLoader.loadClass(className);
+      }
+    };
+  }
+
+  private static class CountingClassLoader extends InstrumentingClassLoader {
+    static {
+      registerAsParallelCapable();
+    }
+
+    private final ConcurrentHashMap<String, AtomicInteger> findClassCounts = new ConcurrentHashMap<>();
+
+    public CountingClassLoader(InstrumentationConfiguration config) {
+      super(config);
+    }
+
+    @Override
+    protected Class<?> findClass(String className) throws ClassNotFoundException {
+      findClassCounts.putIfAbsent(className, new AtomicInteger());
+      findClassCounts.get(className).incrementAndGet();
+      return super.findClass(className);
+    }
+  }
+
+  /**
+   * Holds {@link AnExampleClass} inside findClass() until {@link AClassToRemember} has entered findClass() on
+   * another thread, which can only happen if the loader doesn't serialize instrumentation.
+   */
+  private static class RendezvousClassLoader extends InstrumentingClassLoader {
+    static {
+      registerAsParallelCapable();
+    }
+
+    private final CountDownLatch firstEntered;
+    private final CountDownLatch secondEntered;
+
+    public RendezvousClassLoader(InstrumentationConfiguration config, CountDownLatch firstEntered, CountDownLatch secondEntered) {
+      super(config);
+      this.firstEntered = firstEntered;
+      this.secondEntered = secondEntered;
+    }
+
+    @Override
+    protected Class<?> findClass(String className) throws ClassNotFoundException {
+      try {
+        if (className.equals(AnExampleClass.class.getName())) {
+          firstEntered.countDown();
+          if (!secondEntered.await(10, TimeUnit.SECONDS)) {
+            throw new ClassNotFoundException("never saw a concurrent findClass()");
+          }
+        } else if (className.equals(AClassToRemember.class.getName())) {
+          firstEntered.await();
+          secondEntered.countDown();
+        }
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return super.findClass(className);
+    }
+  }
+}
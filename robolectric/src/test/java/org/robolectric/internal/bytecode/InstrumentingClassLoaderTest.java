@@ -4,6 +4,7 @@ import android.os.Build;
 
 import org.junit.Test;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.ResetterTracker;
 import org.robolectric.internal.Shadow;
 import org.robolectric.internal.ShadowConstants;
 import org.robolectric.internal.ShadowExtractor;
@@ -15,6 +16,7 @@ import org.robolectric.internal.bytecode.testing.AClassThatRefersToAForgettableC
 import org.robolectric.internal.bytecode.testing.AClassThatRefersToAForgettableClassInMethodCallsReturningPrimitive;
 import org.robolectric.internal.bytecode.testing.AClassToForget;
 import org.robolectric.internal.bytecode.testing.AClassToRemember;
+import org.robolectric.internal.bytecode.testing.AClassWithCircularStaticInitialization;
 import org.robolectric.internal.bytecode.testing.AClassWithEqualsHashCodeToString;
 import org.robolectric.internal.bytecode.testing.AClassWithFunnyConstructors;
 import org.robolectric.internal.bytecode.testing.AClassWithMethodReturningArray;
@@ -27,6 +29,9 @@ import org.robolectric.internal.bytecode.testing.AClassWithNoDefaultConstructor;
 import org.robolectric.internal.bytecode.testing.AClassWithStaticMethod;
 import org.robolectric.internal.bytecode.testing.AClassWithoutEqualsHashCodeToString;
 import org.robolectric.internal.bytecode.testing.AFinalClass;
+import org.robolectric.internal.bytecode.testing.AShadowWhoseResetterResetsAnotherClass;
+import org.robolectric.internal.bytecode.testing.AShadowWithPublicStaticState;
+import org.robolectric.internal.bytecode.testing.AShadowWithStaticState;
 import org.robolectric.internal.bytecode.testing.AnEnum;
 import org.robolectric.internal.bytecode.testing.AnExampleClass;
 import org.robolectric.internal.bytecode.testing.AnInstrumentedChild;
@@ -618,8 +623,8 @@ public class InstrumentingClassLoaderTest {
     }
 
     @Override
-    public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
-      final InvocationProfile invocationProfile = new InvocationProfile(signature, isStatic, getClass().getClassLoader());
+    public Plan methodInvoked(int methodId, boolean isStatic, Class<?> theClass) {
+      final InvocationProfile invocationProfile = new InvocationProfile(MethodIds.signatureOf(methodId), isStatic, getClass().getClassLoader());
       return new Plan() {
         @Override
         public Object run(Object instance, Object roboData, Object[] params) throws Exception {
@@ -633,9 +638,9 @@ public class InstrumentingClassLoaderTest {
     }
 
     @Override
-    public Object intercept(String signature, Object instance, Object[] params, Class theClass) throws Throwable {
+    public Object intercept(int methodId, Object instance, Object[] params, Class theClass) throws Throwable {
       StringBuilder buf = new StringBuilder();
-      buf.append("intercept: ").append(signature).append(" with params (");
+      buf.append("intercept: ").append(MethodIds.signatureOf(methodId)).append(" with params (");
       for (int i = 0; i < params.length; i++) {
         if (i > 0) buf.append(", ");
         Object param = params[i];
@@ -657,6 +662,69 @@ public class InstrumentingClassLoaderTest {
     this.classLoader = classLoader;
   }
 
+  @Test
+  public void withLazyShadows_shouldCreateShadowOnFirstAccess() throws Exception {
+    classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().useLazyShadows(true).build());
+    Class<?> clazz = loadClass(AClassWithNoDefaultConstructor.class);
+    Object instance = clazz.getConstructor().newInstance();
+    Field roboDataField = clazz.getField(ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME);
+    assertThat(roboDataField.get(instance)).isNull();
+
+    assertThat(ShadowExtractor.extract(instance)).isEqualTo("a shadow!");
+    assertThat(roboDataField.get(instance)).isEqualTo("a shadow!");
+  }
+
+  @Test
+  public void withoutLazyShadows_shouldCreateShadowInConstructor() throws Exception {
+    classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().useLazyShadows(false).build());
+    Class<?> clazz = loadClass(AClassWithNoDefaultConstructor.class);
+    Object instance = clazz.getConstructor().newInstance();
+
+    assertThat(clazz.getField(ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME).get(instance)).isEqualTo("a shadow!");
+  }
+
+  @Test
+  public void shouldCallConstructorsOfClassesWhoseStaticInitializersAreInProgress() throws Exception {
+    classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().build());
+    RobolectricTestRunner.injectClassHandler(classLoader, new ShadowWrangler(ShadowMap.EMPTY));
+
+    // initializing AMiddle initializes its superclass, which creates an ALeaf before AMiddle's initializer has run
+    Class.forName(AClassWithCircularStaticInitialization.AMiddle.class.getName(), true, classLoader);
+
+    Object instance = classLoader.loadClass(AClassWithCircularStaticInitialization.class.getName()).getField("INSTANCE").get(null);
+    assertThat(instance.getClass().getName()).isEqualTo(AClassWithCircularStaticInitialization.ALeaf.class.getName());
+  }
+
+  @Test
+  public void shouldTrackUseOfClassesWithResetters() throws Exception {
+    Class<?> clazz = loadClass(AShadowWithStaticState.class);
+    assertThat(ResetterTracker.isTouched(clazz)).isFalse();
+
+    clazz.getMethod("getMaxValues").invoke(null);
+    assertThat(ResetterTracker.isTouched(clazz)).isFalse();
+
+    clazz.getMethod("addValue", String.class).invoke(null, "value");
+    assertThat(ResetterTracker.isTouched(clazz)).isTrue();
+
+    clazz.getMethod("reset").invoke(null);
+    ResetterTracker.resetterInvoked(clazz);
+    assertThat(ResetterTracker.isTouched(clazz)).isFalse();
+  }
+
+  @Test
+  public void shouldNotTrackUseOfClassesWhoseStaticStateOtherClassesCanChange() throws Exception {
+    Class<?> clazz = loadClass(AShadowWithPublicStaticState.class);
+    assertThat(clazz.getDeclaredFields()).extracting("name").doesNotContain(ShadowConstants.TOUCHED_FIELD_NAME);
+    assertThat(ResetterTracker.isTouched(clazz)).isTrue();
+  }
+
+  @Test
+  public void shouldNotTrackUseOfClassesWhoseResettersResetOtherClasses() throws Exception {
+    Class<?> clazz = loadClass(AShadowWhoseResetterResetsAnotherClass.class);
+    assertThat(clazz.getDeclaredFields()).extracting("name").doesNotContain(ShadowConstants.TOUCHED_FIELD_NAME);
+    assertThat(ResetterTracker.isTouched(clazz)).isTrue();
+  }
+
   private Class<?> loadClass(Class<?> clazz) throws ClassNotFoundException {
     if (classLoader == null) {
       classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().build());
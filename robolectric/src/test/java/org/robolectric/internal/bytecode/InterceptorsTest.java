@@ -0,0 +1,63 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Test;
+import org.robolectric.util.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.internal.bytecode.InstrumentationConfiguration.MethodRef;
+
+public class InterceptorsTest {
+
+  @Test
+  public void findInterceptor_shouldPreferExactMethodOverWildcard() throws Exception {
+    Interceptor exact = new ConstantInterceptor("exact", new MethodRef("a.B", "c"));
+    Interceptor wildcard = new ConstantInterceptor("wildcard", new MethodRef("a.B", "*"));
+    Interceptors interceptors = new Interceptors(exact, wildcard);
+
+    assertThat(interceptors.findInterceptor("a.B", "c")).isSameAs(exact);
+    assertThat(interceptors.findInterceptor("a.B", "d")).isSameAs(wildcard);
+    assertThat(interceptors.findInterceptor("a.C", "c")).isNull();
+  }
+
+  @Test
+  public void getAllMethodRefs_shouldIncludeEveryInterceptedMethod() throws Exception {
+    Interceptors interceptors = new Interceptors(new ConstantInterceptor("value", new MethodRef("a.B", "c"), new MethodRef("a.B", "d")));
+
+    assertThat(interceptors.getAllMethodRefs()).containsOnly(new MethodRef("a.B", "c"), new MethodRef("a.B", "d"));
+  }
+
+  @Test
+  public void load_shouldIncludeRobolectricInterceptors() throws Exception {
+    Interceptors interceptors = Interceptors.load();
+
+    assertThat(interceptors.getAllMethodRefs()).contains(new MethodRef(System.class, "nanoTime"), new MethodRef(System.class, "currentTimeMillis"));
+    assertThat(interceptors.findInterceptor("java.lang.System", "nanoTime")).isInstanceOf(AndroidInterceptors.SystemTimeInterceptor.class);
+  }
+
+  @Test
+  public void instrumentationConfiguration_shouldInterceptMethodsOfRobolectricInterceptors() throws Exception {
+    assertThat(InstrumentationConfiguration.newBuilder().build().methodsToIntercept())
+        .containsAll(Interceptors.load().getAllMethodRefs());
+  }
+
+  static class ConstantInterceptor extends Interceptor {
+    private final Object value;
+    int handleCount;
+
+    ConstantInterceptor(Object value, MethodRef... methodRefs) {
+      super(methodRefs);
+      this.value = value;
+    }
+
+    @Override
+    public Function<Object, Object> handle(MethodSignature methodSignature) {
+      handleCount++;
+      return new Function<Object, Object>() {
+        @Override
+        public Object call(Class<?> theClass, Object ignored, Object[] params) {
+          return value;
+        }
+      };
+    }
+  }
+}
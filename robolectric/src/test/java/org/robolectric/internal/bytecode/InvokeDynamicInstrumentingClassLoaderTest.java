@@ -0,0 +1,125 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Test;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.internal.bytecode.testing.AClassWithMethodReturningInteger;
+import org.robolectric.internal.bytecode.testing.AClassWithStaticMethod;
+import org.robolectric.internal.bytecode.testing.AnExampleClass;
+import org.robolectric.util.Transcript;
+
+import java.lang.reflect.Method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks dispatch through invokedynamic call sites.
+ */
+public class InvokeDynamicInstrumentingClassLoaderTest {
+  private final Transcript transcript = new Transcript();
+  private final InstrumentingClassLoaderTest.MyClassHandler classHandler = new InstrumentingClassLoaderTest.MyClassHandler(transcript);
+
+  @Test
+  public void callingNormalMethodShouldInvokeClassHandler() throws Exception {
+    Class<?> exampleClass = loadClass(AnExampleClass.class);
+    Method normalMethod = exampleClass.getMethod("normalMethod", String.class, int.class);
+
+    Object exampleInstance = exampleClass.newInstance();
+    assertThat(normalMethod.invoke(exampleInstance, "value1", 123))
+        .isEqualTo("response from methodInvoked: AnExampleClass.normalMethod(java.lang.String value1, int 123)");
+    transcript.assertEventsSoFar("methodInvoked: AnExampleClass.__constructor__()",
+        "methodInvoked: AnExampleClass.normalMethod(java.lang.String value1, int 123)");
+  }
+
+  @Test
+  public void callingStaticMethodShouldInvokeClassHandler() throws Exception {
+    Class<?> exampleClass = loadClass(AClassWithStaticMethod.class);
+
+    assertThat(exampleClass.getMethod("staticMethod", String.class).invoke(null, "value1"))
+        .isEqualTo("response from methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value1)");
+    transcript.assertEventsSoFar("methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value1)");
+  }
+
+  @Test
+  public void shouldRelinkCallSitesWhenClassHandlerChanges() throws Exception {
+    Class<?> exampleClass = loadClass(AnExampleClass.class);
+    Method normalMethod = exampleClass.getMethod("normalMethod", String.class, int.class);
+    Object exampleInstance = exampleClass.newInstance();
+    normalMethod.invoke(exampleInstance, "value1", 123);
+
+    Transcript otherTranscript = new Transcript();
+    RobolectricTestRunner.injectClassHandler(exampleClass.getClassLoader(), new InstrumentingClassLoaderTest.MyClassHandler(otherTranscript));
+    normalMethod.invoke(exampleInstance, "value2", 456);
+
+    transcript.assertEventsSoFar("methodInvoked: AnExampleClass.__constructor__()",
+        "methodInvoked: AnExampleClass.normalMethod(java.lang.String value1, int 123)");
+    otherTranscript.assertEventsSoFar("methodInvoked: AnExampleClass.normalMethod(java.lang.String value2, int 456)");
+  }
+
+  @Test
+  public void shouldCallShadowMethodsWithoutReflection() throws Exception {
+    Class<?> exampleClass = loadClassWithShadows(AnExampleClass.class, ShadowAnExampleClass.class);
+    Object exampleInstance = exampleClass.newInstance();
+
+    Object result = exampleClass.getMethod("normalMethod", String.class, int.class).invoke(exampleInstance, "value1", 123);
+
+    assertThat(result).isEqualTo("shadow normalMethod(value1, 123) on " + exampleInstance.getClass().getSimpleName() + " without reflection");
+  }
+
+  @Test
+  public void shouldCallStaticShadowMethods() throws Exception {
+    Class<?> exampleClass = loadClassWithShadows(AClassWithStaticMethod.class, ShadowAClassWithStaticMethod.class);
+
+    assertThat(exampleClass.getMethod("staticMethod", String.class).invoke(null, "value1")).isEqualTo("shadow staticMethod(value1)");
+  }
+
+  @Test
+  public void shouldReturnZeroForUnimplementedMethodsReturningPrimitives() throws Exception {
+    Class<?> exampleClass = loadClassWithShadows(AClassWithMethodReturningInteger.class, ShadowAClassWithMethodReturningInteger.class);
+    Object exampleInstance = exampleClass.newInstance();
+
+    assertThat(exampleClass.getMethod("normalMethodReturningInteger", int.class).invoke(exampleInstance, 123)).isEqualTo(0);
+  }
+
+  private Class<?> loadClass(Class<?> clazz) throws ClassNotFoundException {
+    ClassLoader classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().useInvokeDynamic(true).build());
+    RobolectricTestRunner.injectClassHandler(classLoader, classHandler);
+    return classLoader.loadClass(clazz.getName());
+  }
+
+  private Class<?> loadClassWithShadows(Class<?> clazz, Class<?>... shadowClasses) throws ClassNotFoundException {
+    Class<?> loadedClass = loadClass(clazz);
+    ShadowMap shadowMap = new ShadowMap.Builder().addShadowClasses(shadowClasses).build();
+    RobolectricTestRunner.injectClassHandler(loadedClass.getClassLoader(), new ShadowWrangler(shadowMap));
+    return loadedClass;
+  }
+
+  @Implements(AnExampleClass.class)
+  public static class ShadowAnExampleClass {
+    @RealObject Object realObject;
+
+    @Implementation
+    public String normalMethod(String stringArg, int intArg) {
+      boolean calledViaPlan = false;
+      for (StackTraceElement element : new Throwable().getStackTrace()) {
+        calledViaPlan |= element.getClassName().equals(ShadowWrangler.ShadowMethodPlan.class.getName());
+      }
+      return "shadow normalMethod(" + stringArg + ", " + intArg + ") on " + realObject.getClass().getSimpleName()
+          + (calledViaPlan ? " with reflection" : " without reflection");
+    }
+  }
+
+  @Implements(AClassWithStaticMethod.class)
+  public static class ShadowAClassWithStaticMethod {
+    @Implementation
+    public static String staticMethod(String stringArg) {
+      return "shadow staticMethod(" + stringArg + ")";
+    }
+  }
+
+  @Implements(value = AClassWithMethodReturningInteger.class, callThroughByDefault = false)
+  public static class ShadowAClassWithMethodReturningInteger {
+  }
+}
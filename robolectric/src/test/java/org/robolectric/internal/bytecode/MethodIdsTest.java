@@ -0,0 +1,34 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MethodIdsTest {
+  @Test
+  public void shouldReturnTheSameIdForTheSameSignature() throws Exception {
+    int id = MethodIds.idFor("com/example/Foo/bar()V");
+
+    assertThat(MethodIds.idFor("com/example/Foo/bar()V")).isEqualTo(id);
+    assertThat(MethodIds.idsFor(new String[] {"com/example/Foo/baz()V", "com/example/Foo/bar()V"})[1]).isEqualTo(id);
+  }
+
+  @Test
+  public void shouldReturnDistinctIdsForDistinctSignatures() throws Exception {
+    int[] ids = MethodIds.idsFor(new String[] {"com/example/Foo/qux()V", "com/example/Foo/qux(I)V"});
+
+    assertThat(ids[0]).isNotEqualTo(ids[1]);
+  }
+
+  @Test
+  public void shouldMapIdsBackToSignatures() throws Exception {
+    int id = MethodIds.idFor("com/example/Foo/quux()Ljava/lang/String;");
+
+    assertThat(MethodIds.signatureOf(id)).isEqualTo("com/example/Foo/quux()Ljava/lang/String;");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectUnknownIds() throws Exception {
+    MethodIds.signatureOf(MethodIds.size());
+  }
+}
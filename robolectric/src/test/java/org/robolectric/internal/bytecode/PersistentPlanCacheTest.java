@@ -0,0 +1,48 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.bytecode.testing.AClassWithStaticMethod;
+import org.robolectric.internal.bytecode.testing.AnExampleClass;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersistentPlanCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final SdkConfig sdkConfig = new SdkConfig(18);
+
+  @Test
+  public void shouldReturnEmptyListWhenNothingIsCached() throws Exception {
+    PersistentPlanCache cache = new PersistentPlanCache(temporaryFolder.getRoot(), "1.0", sdkConfig, ShadowMap.EMPTY);
+
+    assertThat(cache.load()).isEmpty();
+  }
+
+  @Test
+  public void shouldReturnStoredSignaturesAcrossInstances() throws Exception {
+    new PersistentPlanCache(temporaryFolder.getRoot(), "1.0", sdkConfig, ShadowMap.EMPTY)
+        .store(Arrays.asList("com/example/Foo/bar()V", "com/example/Foo/baz(I)I"));
+
+    PersistentPlanCache cache = new PersistentPlanCache(temporaryFolder.getRoot(), "1.0", sdkConfig, ShadowMap.EMPTY);
+    assertThat(cache.load()).containsOnly("com/example/Foo/bar()V", "com/example/Foo/baz(I)I");
+  }
+
+  @Test
+  public void shouldNotShareEntriesAcrossVersionsSdksOrShadowMaps() throws Exception {
+    File root = temporaryFolder.getRoot();
+    ShadowMap otherShadowMap = new ShadowMap.Builder()
+        .addShadowClass(AnExampleClass.class, AClassWithStaticMethod.class, true, false, false).build();
+
+    PersistentPlanCache cache = new PersistentPlanCache(root, "1.0", sdkConfig, ShadowMap.EMPTY);
+    assertThat(new PersistentPlanCache(root, "1.0", sdkConfig, ShadowMap.EMPTY).getFile()).isEqualTo(cache.getFile());
+    assertThat(new PersistentPlanCache(root, "1.1", sdkConfig, ShadowMap.EMPTY).getFile()).isNotEqualTo(cache.getFile());
+    assertThat(new PersistentPlanCache(root, "1.0", new SdkConfig(19), ShadowMap.EMPTY).getFile()).isNotEqualTo(cache.getFile());
+    assertThat(new PersistentPlanCache(root, "1.0", sdkConfig, otherShadowMap).getFile()).isNotEqualTo(cache.getFile());
+  }
+}
@@ -0,0 +1,128 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Test;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.Shadow;
+import org.robolectric.internal.bytecode.testing.AClassWithStaticMethod;
+import org.robolectric.internal.bytecode.testing.AnExampleClass;
+import org.robolectric.util.Transcript;
+
+import java.net.URL;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SelectiveInstrumentationTest {
+  private final Transcript transcript = new Transcript();
+
+  @Test
+  public void methodsWhichCouldNotBeShadowed_shouldCallRealCodeWithoutConsultingClassHandler() throws Exception {
+    InstrumentingClassLoader classLoader = createClassLoader(AnExampleClass.class.getName() + ":otherMethod");
+    Class<?> exampleClass = loadClass(classLoader, AnExampleClass.class);
+
+    Object result = exampleClass.getMethod("normalMethod", String.class, int.class).invoke(exampleClass.newInstance(), "value1", 123);
+
+    assertThat(result).isEqualTo("normalMethod(value1, 123)");
+    transcript.assertEventsSoFar("methodInvoked: AnExampleClass.__constructor__()");
+    assertThat(classLoader.getSkippedMethodCount()).isGreaterThan(0);
+  }
+
+  @Test
+  public void staticMethodsWhichCouldNotBeShadowed_shouldCallRealCodeWithoutConsultingClassHandler() throws Exception {
+    Class<?> exampleClass = loadClass(createClassLoader(""), AClassWithStaticMethod.class);
+
+    assertThat(exampleClass.getMethod("staticMethod", String.class).invoke(null, "value1")).isEqualTo("staticMethod(value1)");
+    transcript.assertNoEventsSoFar();
+  }
+
+  @Test
+  public void methodsWhichCouldBeShadowed_shouldConsultClassHandler() throws Exception {
+    InstrumentingClassLoader classLoader = createClassLoader(AnExampleClass.class.getName() + ":normalMethod");
+    Class<?> exampleClass = loadClass(classLoader, AnExampleClass.class);
+
+    exampleClass.getMethod("normalMethod", String.class, int.class).invoke(exampleClass.newInstance(), "value1", 123);
+
+    transcript.assertEventsSoFar("methodInvoked: AnExampleClass.__constructor__()",
+        "methodInvoked: AnExampleClass.normalMethod(java.lang.String value1, int 123)");
+    assertThat(classLoader.getInterceptedMethodCount()).isGreaterThan(0);
+  }
+
+  @Test
+  public void methodsOfClassesShadowedAtRuntime_shouldConsultClassHandler() throws Exception {
+    InstrumentingClassLoader classLoader = createClassLoader("");
+    classLoader.interceptAllMethodsOf(Collections.singleton(AClassWithStaticMethod.class.getName()));
+    Class<?> exampleClass = loadClass(classLoader, AClassWithStaticMethod.class);
+
+    exampleClass.getMethod("staticMethod", String.class).invoke(null, "value1");
+
+    transcript.assertEventsSoFar("methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value1)");
+  }
+
+  @Test
+  public void methodsOfClassesShadowedAtRuntimeAfterLoading_shouldConsultClassHandler() throws Exception {
+    InstrumentingClassLoader classLoader = createClassLoader("");
+    Class<?> exampleClass = loadClass(classLoader, AClassWithStaticMethod.class);
+    exampleClass.getMethod("staticMethod", String.class).invoke(null, "value1");
+
+    classLoader.interceptAllMethodsOf(Collections.singleton(AClassWithStaticMethod.class.getName()));
+    exampleClass.getMethod("staticMethod", String.class).invoke(null, "value2");
+
+    transcript.assertEventsSoFar("methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value2)");
+  }
+
+  @Test
+  public void directlyOn_shouldStillWorkForMethodsWhichCouldNotBeShadowed() throws Exception {
+    Class<?> exampleClass = loadClass(createClassLoader(""), AnExampleClass.class);
+    Object exampleInstance = exampleClass.newInstance();
+
+    Object result = exampleClass.getMethod("normalMethod", String.class, int.class)
+        .invoke(Shadow.directlyOn(exampleInstance, (Class<Object>) exampleClass), "value1", 123);
+
+    assertThat(result).isEqualTo("normalMethod(value1, 123)");
+  }
+
+  @Test
+  public void withInvokeDynamic_methodsOfClassesShadowedAtRuntime_shouldConsultClassHandler() throws Exception {
+    InstrumentingClassLoader classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder()
+        .useInvokeDynamic(true)
+        .useSelectiveInstrumentation(ShadowedMethodIndex.parse(""))
+        .build());
+    Class<?> exampleClass = loadClass(classLoader, AClassWithStaticMethod.class);
+    exampleClass.getMethod("staticMethod", String.class).invoke(null, "value1");
+
+    classLoader.interceptAllMethodsOf(Collections.singleton(AClassWithStaticMethod.class.getName()));
+    exampleClass.getMethod("staticMethod", String.class).invoke(null, "value2");
+
+    transcript.assertEventsSoFar("methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value2)");
+  }
+
+  @Test
+  public void shouldIncludeIndexInConfigurationFingerprint() throws Exception {
+    InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder()
+        .useSelectiveInstrumentation(ShadowedMethodIndex.parse("a.B:c")).build();
+    InstrumentationConfiguration otherConfig = InstrumentationConfiguration.newBuilder()
+        .useSelectiveInstrumentation(ShadowedMethodIndex.parse("a.B:d")).build();
+
+    assertThat(config.fingerprint()).isNotEqualTo(otherConfig.fingerprint());
+    assertThat(config).isNotEqualTo(otherConfig);
+  }
+
+  @Test
+  public void forClasspath_shouldNotResolveIndexUnlessEnabled() throws Exception {
+    InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().useSelectiveInstrumentation(false).build();
+
+    assertThat(config.forClasspath(new URL[0])).isSameAs(config);
+    assertThat(config.shouldInterceptMethod(AnExampleClass.class.getName(), "normalMethod")).isTrue();
+  }
+
+  private InstrumentingClassLoader createClassLoader(String index) {
+    return new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder()
+        .useSelectiveInstrumentation(ShadowedMethodIndex.parse(index))
+        .build());
+  }
+
+  private Class<?> loadClass(ClassLoader classLoader, Class<?> clazz) throws ClassNotFoundException {
+    RobolectricTestRunner.injectClassHandler(classLoader, new InstrumentingClassLoaderTest.MyClassHandler(transcript));
+    return classLoader.loadClass(clazz.getName());
+  }
+}
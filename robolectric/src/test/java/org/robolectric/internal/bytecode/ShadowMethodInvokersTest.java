@@ -0,0 +1,35 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShadowMethodInvokersTest {
+  @Test
+  public void shouldGenerateInvokersForPublicShadowMethods() throws Throwable {
+    ShadowMethodInvoker invoker = ShadowMethodInvokers.create(PublicShadow.class.getMethod("add", int.class, long.class));
+
+    assertThat(invoker.getClass().getName()).startsWith(ShadowMethodInvoker.class.getName() + "$$");
+    assertThat(invoker.invoke(new PublicShadow(), new Object[] {1, 2L})).isEqualTo(3L);
+  }
+
+  @Test
+  public void shouldFallBackForNonPublicShadowClasses() throws Throwable {
+    ShadowMethodInvoker invoker = ShadowMethodInvokers.create(PrivateShadow.class.getMethod("greet", String.class));
+
+    assertThat(invoker.getClass().getName().startsWith(ShadowMethodInvoker.class.getName() + "$$")).isFalse();
+    assertThat(invoker.invoke(null, new Object[] {"world"})).isEqualTo("hello world");
+  }
+
+  public static class PublicShadow {
+    public long add(int a, long b) {
+      return a + b;
+    }
+  }
+
+  private static class PrivateShadow {
+    public static String greet(String name) {
+      return "hello " + name;
+    }
+  }
+}
@@ -2,9 +2,12 @@ package org.robolectric.internal.bytecode;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.robolectric.annotation.RealObject;
 import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.bytecode.testing.AnExampleClass;
 import org.robolectric.util.Function;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -42,7 +45,7 @@ public class ShadowWranglerUnitTest {
     map.put(2, "two");
 
     Map.Entry<Integer, String> result = (Map.Entry<Integer, String>)
-        shadowWrangler.intercept("java/util/LinkedHashMap/eldest()Ljava/lang/Object;", map, null, getClass());
+        shadowWrangler.intercept(MethodIds.idFor("java/util/LinkedHashMap/eldest()Ljava/lang/Object;"), map, null, getClass());
 
     Map.Entry<Integer, String> eldestMember = map.entrySet().iterator().next();
     assertThat(result).isEqualTo(eldestMember);
@@ -55,8 +58,172 @@ public class ShadowWranglerUnitTest {
     LinkedHashMap<Integer, String> map = new LinkedHashMap<>();
 
     Map.Entry<Integer, String> result = (Map.Entry<Integer, String>)
-        shadowWrangler.intercept("java/util/LinkedHashMap/eldest()Ljava/lang/Object;", map, null, getClass());
+        shadowWrangler.intercept(MethodIds.idFor("java/util/LinkedHashMap/eldest()Ljava/lang/Object;"), map, null, getClass());
 
     assertThat(result).isNull();
   }
+
+  @Test
+  public void intercept_shouldUseRegisteredInterceptorsAndResolveEachSignatureOnce() throws Throwable {
+    InterceptorsTest.ConstantInterceptor interceptor = new InterceptorsTest.ConstantInterceptor("intercepted",
+        new InstrumentationConfiguration.MethodRef("java.lang.String", "intern"));
+    shadowWrangler = new ShadowWrangler(ShadowMap.EMPTY, new Interceptors(interceptor));
+
+    assertThat(shadowWrangler.intercept(MethodIds.idFor("java/lang/String/intern()Ljava/lang/String;"), "s", new Object[0], getClass())).isEqualTo("intercepted");
+    assertThat(shadowWrangler.intercept(MethodIds.idFor("java/lang/String/intern()Ljava/lang/String;"), "s", new Object[0], getClass())).isEqualTo("intercepted");
+    assertThat(interceptor.handleCount).isEqualTo(1);
+  }
+
+  @Test
+  public void intercept_whenNoInterceptorIsRegistered_shouldReturnZero() throws Throwable {
+    shadowWrangler = new ShadowWrangler(ShadowMap.EMPTY, new Interceptors());
+
+    assertThat(shadowWrangler.intercept(MethodIds.idFor("java/lang/System/nanoTime()J"), null, new Object[0], getClass())).isEqualTo(0L);
+  }
+
+  @Test
+  public void methodInvoked_shouldCachePlansByMethodId() throws Exception {
+    int methodId = MethodIds.idFor("org/robolectric/internal/bytecode/testing/AnExampleClass/normalMethod(Ljava/lang/String;I)Ljava/lang/String;");
+
+    assertThat(shadowWrangler.methodInvoked(methodId, false, AnExampleClass.class)).isNull();
+    assertThat(shadowWrangler.methodInvoked(methodId, false, AnExampleClass.class)).isNull();
+
+    assertThat(shadowWrangler.getPlanCacheMissCount()).isEqualTo(1);
+    assertThat(shadowWrangler.getPlanCacheHitCount()).isEqualTo(1);
+    assertThat(shadowWrangler.getPlanComputeTimeNanos()).isGreaterThanOrEqualTo(0);
+  }
+
+  @Test
+  public void methodInvoked_shouldRememberMethodsOfUnshadowedClasses() throws Exception {
+    String signature = "org/robolectric/internal/bytecode/testing/AnExampleClass/normalMethod(Ljava/lang/String;I)Ljava/lang/String;";
+    shadowWrangler.methodInvoked(MethodIds.idFor(signature), false, AnExampleClass.class);
+
+    assertThat(shadowWrangler.getUnshadowedMethodSignatures()).containsExactly(signature);
+  }
+
+  @Test
+  public void addUnshadowedMethodSignatures_shouldSeedPlanTable() throws Exception {
+    String signature = "com/example/Unshadowed/method()V";
+    shadowWrangler.addUnshadowedMethodSignatures(Collections.singletonList(signature));
+
+    assertThat(shadowWrangler.methodInvoked(MethodIds.idFor(signature), false, AnExampleClass.class)).isNull();
+    assertThat(shadowWrangler.getPlanCacheHitCount()).isEqualTo(1);
+    assertThat(shadowWrangler.getPlanCacheMissCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shadowMethodPlan_shouldInvokeInstanceStaticAndPrimitiveShadowMethods() throws Throwable {
+    ShadowForPlans shadow = new ShadowForPlans();
+
+    assertThat(planFor("concat", String.class, int.class).run(null, shadow, new Object[] {"a", 1})).isEqualTo("a1");
+    assertThat(planFor("twice", int.class).run(null, null, new Object[] {21})).isEqualTo(42);
+    assertThat(planFor("join", String[].class).run(null, shadow, new Object[] {new String[] {"a", "b"}})).isEqualTo("ab");
+    assertThat(planFor("doNothing").run(null, shadow, new Object[0])).isNull();
+  }
+
+  @Test
+  public void shadowMethodPlan_shouldThrowExceptionsFromShadowMethodsUnwrapped() throws Throwable {
+    try {
+      planFor("fail").run(null, new ShadowForPlans(), new Object[0]);
+      throw new AssertionError("expected an exception");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("from shadow");
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shadowMethodPlan_shouldRejectShadowsOfTheWrongClass() throws Throwable {
+    planFor("doNothing").run(null, new Object(), new Object[0]);
+  }
+
+  @Test
+  public void createShadowFor_shouldCreateNewShadowWithRealObjectsInjected() throws Exception {
+    shadowWrangler = new ShadowWrangler(new ShadowMap.Builder()
+        .addShadowClass(Shadowed.class, ShadowForShadowed.class, true, false, false).build());
+    SubclassOfShadowed instance = new SubclassOfShadowed();
+
+    ShadowForShadowed shadow = (ShadowForShadowed) shadowWrangler.createShadowFor(instance);
+    assertThat(shadow.realObject).isSameAs(instance);
+    assertThat(shadow.realShadowed).isSameAs(instance);
+    assertThat(shadowWrangler.createShadowFor(instance)).isNotSameAs(shadow);
+  }
+
+  @Test
+  public void createShadowFor_shouldInjectStaticRealObjectFields() throws Exception {
+    shadowWrangler = new ShadowWrangler(new ShadowMap.Builder()
+        .addShadowClass(Shadowed.class, ShadowWithStaticRealObject.class, true, false, false).build());
+    Shadowed instance = new Shadowed();
+
+    shadowWrangler.createShadowFor(instance);
+    assertThat(ShadowWithStaticRealObject.realShadowed).isSameAs(instance);
+  }
+
+  @Test
+  public void createShadowFor_whenClassHasNoShadow_shouldReturnTheSameMarkerForEveryInstance() throws Exception {
+    Object shadow = shadowWrangler.createShadowFor(new Shadowed());
+
+    assertThat(shadow).isNotInstanceOf(ShadowForShadowed.class);
+    assertThat(shadowWrangler.createShadowFor(new Shadowed())).isSameAs(shadow);
+  }
+
+  @Test
+  public void createShadowFor_whenShadowHasNoEmptyConstructor_shouldThrowException() throws Exception {
+    shadowWrangler = new ShadowWrangler(new ShadowMap.Builder()
+        .addShadowClass(Shadowed.class, ShadowWithoutEmptyConstructor.class, true, false, false).build());
+
+    try {
+      shadowWrangler.createShadowFor(new Shadowed());
+      throw new AssertionError("expected an exception");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage()).isEqualTo("Could not instantiate shadow, missing public empty constructor.");
+    }
+  }
+
+  private ShadowWrangler.ShadowMethodPlan planFor(String methodName, Class<?>... paramTypes) throws Exception {
+    return new ShadowWrangler.ShadowMethodPlan(ShadowForPlans.class.getMethod(methodName, paramTypes));
+  }
+
+  public static class ShadowForPlans {
+    public String concat(String a, int b) {
+      return a + b;
+    }
+
+    public static int twice(int value) {
+      return value * 2;
+    }
+
+    public String join(String... values) {
+      return values[0] + values[1];
+    }
+
+    public void doNothing() {
+    }
+
+    public void fail() {
+      throw new IllegalStateException("from shadow");
+    }
+  }
+
+  public static class Shadowed {
+  }
+
+  public static class SubclassOfShadowed extends Shadowed {
+  }
+
+  public static class BaseShadowForShadowed {
+    @RealObject Object realObject;
+  }
+
+  public static class ShadowForShadowed extends BaseShadowForShadowed {
+    @RealObject private Shadowed realShadowed;
+  }
+
+  public static class ShadowWithStaticRealObject {
+    @RealObject static Shadowed realShadowed;
+  }
+
+  public static class ShadowWithoutEmptyConstructor {
+    public ShadowWithoutEmptyConstructor(String value) {
+    }
+  }
 }
@@ -0,0 +1,47 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShadowedMethodIndexTest {
+
+  @Test
+  public void mayShadow_shouldMatchIndexedMethodNames() throws Exception {
+    ShadowedMethodIndex index = ShadowedMethodIndex.parse("android.view.View:getId,setId\n");
+
+    assertThat(index.mayShadow("android.view.View", "getId")).isTrue();
+    assertThat(index.mayShadow("android.view.View", "setId")).isTrue();
+    assertThat(index.mayShadow("android.view.View", "getTag")).isFalse();
+    assertThat(index.mayShadow("android.widget.TextView", "getId")).isFalse();
+  }
+
+  @Test
+  public void mayShadow_shouldMatchAllMethodsOfClassesWhoseShadowsDoNotCallThrough() throws Exception {
+    ShadowedMethodIndex index = ShadowedMethodIndex.parse("android.view.View:*\n");
+
+    assertThat(index.mayShadow("android.view.View", "anything")).isTrue();
+  }
+
+  @Test
+  public void mayShadow_shouldMatchNoMethodsOfClassesWithEmptyEntries() throws Exception {
+    ShadowedMethodIndex index = ShadowedMethodIndex.parse("android.view.View:\n");
+
+    assertThat(index.mayShadow("android.view.View", "")).isFalse();
+    assertThat(index.mayShadow("android.view.View", "getId")).isFalse();
+  }
+
+  @Test
+  public void mayShadow_shouldMatchNestedClassesByBinaryOrCanonicalName() throws Exception {
+    ShadowedMethodIndex index = ShadowedMethodIndex.parse("android.view.View$BaseSavedState:writeToParcel\n");
+
+    assertThat(index.mayShadow("android.view.View$BaseSavedState", "writeToParcel")).isTrue();
+    assertThat(index.mayShadow("android.view.View.BaseSavedState", "writeToParcel")).isTrue();
+  }
+
+  @Test
+  public void fingerprint_shouldNotDependOnOrder() throws Exception {
+    assertThat(ShadowedMethodIndex.parse("a.B:c,d\na.C:e").fingerprint())
+        .isEqualTo(ShadowedMethodIndex.parse("a.C:e\na.B:d,c").fingerprint());
+  }
+}
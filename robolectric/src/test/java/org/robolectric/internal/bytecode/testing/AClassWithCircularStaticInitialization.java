@@ -0,0 +1,16 @@
+package org.robolectric.internal.bytecode.testing;
+
+import org.robolectric.annotation.internal.Instrument;
+
+@Instrument
+public class AClassWithCircularStaticInitialization {
+  public static final AClassWithCircularStaticInitialization INSTANCE = new ALeaf();
+
+  @Instrument
+  public static class AMiddle extends AClassWithCircularStaticInitialization {
+  }
+
+  @Instrument
+  public static class ALeaf extends AMiddle {
+  }
+}
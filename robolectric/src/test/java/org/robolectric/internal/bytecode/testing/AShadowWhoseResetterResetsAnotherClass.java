@@ -0,0 +1,10 @@
+package org.robolectric.internal.bytecode.testing;
+
+import org.robolectric.annotation.Resetter;
+
+public class AShadowWhoseResetterResetsAnotherClass {
+  @Resetter
+  public static void reset() {
+    AShadowWithStaticState.reset();
+  }
+}
@@ -0,0 +1,13 @@
+package org.robolectric.internal.bytecode.testing;
+
+import org.robolectric.annotation.Resetter;
+
+public class AShadowWithPublicStaticState {
+  public static final int MAX_VALUE = 10;
+  public static String value;
+
+  @Resetter
+  public static void reset() {
+    value = null;
+  }
+}
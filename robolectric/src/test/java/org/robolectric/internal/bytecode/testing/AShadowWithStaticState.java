@@ -0,0 +1,28 @@
+package org.robolectric.internal.bytecode.testing;
+
+import org.robolectric.annotation.Resetter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AShadowWithStaticState {
+  private static final int MAX_VALUES = 10;
+  private static final List<String> values = new ArrayList<>();
+
+  public static int getMaxValues() {
+    return MAX_VALUES;
+  }
+
+  public static void addValue(String value) {
+    values.add(value);
+  }
+
+  @Resetter
+  public static void reset() {
+    clearValues();
+  }
+
+  private static void clearValues() {
+    values.clear();
+  }
+}
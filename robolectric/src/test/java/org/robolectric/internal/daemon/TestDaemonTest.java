@@ -0,0 +1,179 @@
+package org.robolectric.internal.daemon;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestDaemonTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private TestDaemon daemon;
+  private TestDaemonClient client;
+  private Thread daemonThread;
+  private ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+  @Before
+  public void setUp() throws Exception {
+    final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName(null));
+    String token = TestDaemon.newToken();
+    daemon = new TestDaemon(serverSocket, token);
+    client = new TestDaemonClient(serverSocket.getLocalPort(), token);
+    daemonThread = new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          daemon.serve();
+          serverSocket.close();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    daemonThread.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.stop();
+    daemonThread.join();
+  }
+
+  @Test
+  public void shouldRunTestsAndStreamResultsBack() throws Exception {
+    assertThat(run(Collections.<File>emptyList(), PassingTests.class.getName())).isTrue();
+    assertThat(output.toString()).contains("Tests run: 1, Failures: 0");
+
+    assertThat(run(Collections.<File>emptyList(), PassingTests.class.getName(), FailingTests.class.getName())).isFalse();
+    assertThat(output.toString())
+        .contains("FAILED: shouldFail(" + FailingTests.class.getName() + ")")
+        .contains("java.lang.AssertionError: expected failure")
+        .contains("Tests run: 2, Failures: 1");
+  }
+
+  @Test
+  public void shouldReportMissingTestClasses() throws Exception {
+    assertThat(run(Collections.<File>emptyList(), "com.example.NoSuchTest")).isFalse();
+    assertThat(output.toString()).contains("ERROR: no such test class: com.example.NoSuchTest");
+  }
+
+  @Test
+  public void shouldIgnoreRequestsWithoutTheToken() throws Exception {
+    TestDaemonClient intruder = new TestDaemonClient(client.getPort(), TestDaemon.newToken());
+    assertThat(intruder.isRunning()).isTrue();
+    try {
+      intruder.run(Collections.<File>emptyList(), Collections.singletonList(PassingTests.class.getName()), new PrintStream(output, true));
+      fail("expected the daemon to disconnect");
+    } catch (IOException expected) {
+    }
+    assertThat(output.toString()).contains("ERROR: missing or invalid token").doesNotContain("Tests run");
+
+    intruder.stop();
+    assertThat(run(Collections.<File>emptyList(), PassingTests.class.getName())).isTrue();
+  }
+
+  @Test
+  public void whenRunFails_shouldReportItAndKeepServing() throws Exception {
+    File classes = temporaryFolder.newFolder("classes");
+    File brokenClass = new File(classes, "daemontest/Broken.class");
+    assertThat(brokenClass.getParentFile().mkdirs()).isTrue();
+    Files.write(brokenClass.toPath(), "not a class".getBytes("UTF-8"));
+
+    try {
+      run(Arrays.asList(classes), "daemontest.Broken");
+      fail("expected the daemon to disconnect");
+    } catch (IOException expected) {
+    }
+    assertThat(output.toString()).contains("ERROR: run failed: java.lang.ClassFormatError");
+
+    assertThat(run(Collections.<File>emptyList(), PassingTests.class.getName())).isTrue();
+  }
+
+  @Test
+  public void portFile_shouldOnlyBeReadableByItsOwner() throws Exception {
+    File portFile = new File(temporaryFolder.getRoot(), "daemon.port");
+    TestDaemon.writePortFile(portFile, 1234, "secret");
+
+    TestDaemonClient fromPortFile = TestDaemonClient.fromPortFile(portFile);
+    assertThat(fromPortFile.getPort()).isEqualTo(1234);
+    assertThat(fromPortFile.getToken()).isEqualTo("secret");
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(portFile.toPath()))).isEqualTo("rw-------");
+    }
+  }
+
+  @Test
+  public void shouldPickUpChangedApplicationClasses() throws Exception {
+    File classes = temporaryFolder.newFolder("classes");
+    compile(classes, "Greeting", "package daemontest; public class Greeting { public static String get() { return \"hello\"; } }");
+    compile(classes, "GreetingTest", "package daemontest;\n"
+        + "import org.junit.Test;\n"
+        + "import org.junit.runner.RunWith;\n"
+        + "import org.robolectric.RobolectricTestRunner;\n"
+        + "import org.robolectric.RuntimeEnvironment;\n"
+        + "import org.robolectric.annotation.Config;\n"
+        + "import static org.junit.Assert.*;\n"
+        + "@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE)\n"
+        + "public class GreetingTest {\n"
+        + "  @Test public void shouldGreet() {\n"
+        + "    assertNotNull(RuntimeEnvironment.application);\n"
+        + "    assertEquals(\"hello\", Greeting.get());\n"
+        + "  }\n"
+        + "}\n");
+
+    assertThat(run(Arrays.asList(classes), "daemontest.GreetingTest")).as(output.toString()).isTrue();
+    assertThat(run(Arrays.asList(classes), "daemontest.GreetingTest")).as(output.toString()).isTrue();
+    assertThat(daemon.getLastChangedEntries()).isEmpty();
+
+    compile(classes, "Greeting", "package daemontest; public class Greeting { public static String get() { return \"goodbye\"; } }");
+    assertThat(run(Arrays.asList(classes), "daemontest.GreetingTest")).isFalse();
+    assertThat(daemon.getLastChangedEntries()).containsExactly(classes);
+    assertThat(output.toString()).contains("expected:<[hello]> but was:<[goodbye]>");
+  }
+
+  private boolean run(java.util.List<File> applicationClasspath, String... testClassNames) throws IOException {
+    return client.run(applicationClasspath, Arrays.asList(testClassNames), new PrintStream(output, true));
+  }
+
+  private void compile(File classes, String className, String source) throws IOException {
+    File sourceFile = new File(temporaryFolder.getRoot(), className + ".java");
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8")) {
+      writer.write(source);
+    }
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    int result = compiler.run(null, null, null, "-cp", System.getProperty("java.class.path") + File.pathSeparator + classes.getPath(),
+        "-d", classes.getPath(), sourceFile.getPath());
+    assertThat(result).isZero();
+  }
+
+  public static class PassingTests {
+    @Test public void shouldPass() throws Exception {
+    }
+  }
+
+  public static class FailingTests {
+    @Test public void shouldFail() throws Exception {
+      throw new AssertionError("expected failure");
+    }
+  }
+}
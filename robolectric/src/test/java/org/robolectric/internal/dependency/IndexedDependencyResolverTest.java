@@ -0,0 +1,196 @@
+package org.robolectric.internal.dependency;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class IndexedDependencyResolverTest {
+  private static final DependencyJar JSON = new DependencyJar("org.json", "json", "20080701", null);
+  private static final DependencyJar SHADOWS = new DependencyJar("org.robolectric", "shadows-core", "3.1", "16");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File repository;
+  private File localRepository;
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    repository = temporaryFolder.newFolder("repository");
+    localRepository = temporaryFolder.newFolder("local");
+    cacheDir = temporaryFolder.newFolder("cache");
+  }
+
+  @Test
+  public void shouldDownloadAndVerifyArtifactsInOrder() throws Exception {
+    publish(repository, JSON, "json contents", "SHA-1");
+    publish(repository, SHADOWS, "shadows contents", "SHA-256");
+
+    URL[] urls = createResolver().getLocalArtifactUrls(SHADOWS, JSON);
+
+    assertThat(urls).hasSize(2);
+    assertThat(contents(urls[0])).isEqualTo("shadows contents");
+    assertThat(contents(urls[1])).isEqualTo("json contents");
+    assertThat(new File(urls[0].toURI()).getPath()).startsWith(cacheDir.getPath());
+    assertThat(new File(cacheDir, IndexedDependencyResolver.INDEX_FILE_NAME)).exists();
+  }
+
+  @Test
+  public void whenChecksumDoesNotMatch_shouldFailWithoutCachingTheArtifact() throws Exception {
+    File artifact = publish(repository, JSON, "json contents", "SHA-1");
+    write(new File(artifact.getPath() + ".sha1"), sha("SHA-1", "something else"));
+
+    try {
+      createResolver().getLocalArtifactUrl(JSON);
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage()).contains("checksum mismatch");
+    }
+    assertThat(new File(cacheDir, "org/json/json/20080701/json-20080701.jar")).doesNotExist();
+  }
+
+  @Test
+  public void whenThereIsNoChecksum_shouldFail() throws Exception {
+    File artifact = publish(repository, JSON, "json contents", "SHA-1");
+    new File(artifact.getPath() + ".sha1").delete();
+
+    try {
+      createResolver().getLocalArtifactUrl(JSON);
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage()).contains("no checksum");
+    }
+  }
+
+  @Test
+  public void shouldUseIndexFromEarlierRunsWithoutTheRepository() throws Exception {
+    publish(repository, JSON, "json contents", "SHA-1");
+    URL url = createResolver().getLocalArtifactUrl(JSON);
+
+    delete(repository);
+
+    assertThat(createResolver().getLocalArtifactUrl(JSON)).isEqualTo(url);
+  }
+
+  @Test
+  public void whenCachedArtifactChanges_shouldDownloadItAgain() throws Exception {
+    publish(repository, JSON, "json contents", "SHA-1");
+    URL url = createResolver().getLocalArtifactUrl(JSON);
+
+    write(new File(url.toURI()), "corrupted");
+
+    assertThat(contents(createResolver().getLocalArtifactUrl(JSON))).isEqualTo("json contents");
+  }
+
+  @Test
+  public void shouldPreferLocalRepository() throws Exception {
+    publish(localRepository, JSON, "local json contents", null);
+
+    URL url = createResolver().getLocalArtifactUrl(JSON);
+
+    assertThat(new File(url.toURI()).getPath()).startsWith(localRepository.getPath());
+    assertThat(contents(url)).isEqualTo("local json contents");
+  }
+
+  @Test
+  public void whenLocalArtifactHasNoChecksum_shouldRecordItsDigest() throws Exception {
+    publish(localRepository, JSON, "local json contents", null);
+
+    createResolver().getLocalArtifactUrl(JSON);
+
+    String index = new String(Files.readAllBytes(new File(cacheDir, IndexedDependencyResolver.INDEX_FILE_NAME).toPath()), "UTF-8");
+    assertThat(index).contains("SHA-256:" + sha("SHA-256", "local json contents"));
+  }
+
+  @Test
+  public void whenLocalChecksumDoesNotMatch_shouldFail() throws Exception {
+    File artifact = publish(localRepository, JSON, "local json contents", "SHA-1");
+    write(new File(artifact.getPath() + ".sha1"), sha("SHA-1", "something else"));
+
+    try {
+      createResolver().getLocalArtifactUrl(JSON);
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage()).contains("checksum mismatch");
+    }
+  }
+
+  @Test
+  public void resolveSdkDependencies_shouldResolveEverySdk() throws Exception {
+    SdkConfig jellyBean = new SdkConfig(16);
+    SdkConfig kitKat = new SdkConfig(19);
+    for (SdkConfig sdkConfig : Arrays.asList(jellyBean, kitKat)) {
+      for (DependencyJar dependency : sdkConfig.getSdkClasspathDependencies()) {
+        publish(repository, dependency, dependency.toString(), "SHA-1");
+      }
+    }
+    IndexedDependencyResolver resolver = createResolver();
+
+    resolver.resolveSdkDependencies(Arrays.asList(jellyBean, kitKat));
+    delete(repository);
+
+    URL[] urls = resolver.getLocalArtifactUrls(kitKat.getSdkClasspathDependencies());
+    for (int i = 0; i < urls.length; i++) {
+      assertThat(contents(urls[i])).isEqualTo(kitKat.getSdkClasspathDependencies()[i].toString());
+    }
+    assertThat(contents(resolver.getLocalArtifactUrl(jellyBean.getSystemResourceDependency())))
+        .isEqualTo(jellyBean.getSystemResourceDependency().toString());
+  }
+
+  private IndexedDependencyResolver createResolver() throws Exception {
+    return new IndexedDependencyResolver(repository.toURI().toURL().toString(), localRepository, cacheDir, 4);
+  }
+
+  private static File publish(File repository, DependencyJar dependency, String contents, String algorithm) throws Exception {
+    File dir = new File(repository, dependency.getGroupId().replace('.', '/') + "/" + dependency.getArtifactId() + "/" + dependency.getVersion());
+    dir.mkdirs();
+    File artifact = new File(dir, dependency.getArtifactId() + "-" + dependency.getVersion()
+        + (dependency.getClassifier() == null ? "" : "-" + dependency.getClassifier()) + ".jar");
+    write(artifact, contents);
+    if (algorithm != null) {
+      write(new File(artifact.getPath() + "." + algorithm.replace("-", "").toLowerCase()), sha(algorithm, contents) + "  " + artifact.getName());
+    }
+    return artifact;
+  }
+
+  private static String sha(String algorithm, String contents) throws Exception {
+    StringBuilder buf = new StringBuilder();
+    for (byte b : MessageDigest.getInstance(algorithm).digest(contents.getBytes("UTF-8"))) {
+      buf.append(String.format("%02x", b));
+    }
+    return buf.toString();
+  }
+
+  private static void write(File file, String contents) throws IOException {
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(contents.getBytes("UTF-8"));
+    }
+  }
+
+  private static String contents(URL url) throws Exception {
+    return new String(Files.readAllBytes(new File(url.toURI()).toPath()), "UTF-8");
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
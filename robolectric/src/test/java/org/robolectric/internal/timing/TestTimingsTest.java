@@ -0,0 +1,144 @@
+package org.robolectric.internal.timing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.TestRunners;
+import org.robolectric.internal.timing.TestTimings.Phase;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestTimingsTest {
+  private static final List<TestTimings> recordedTimings = Collections.synchronizedList(new ArrayList<TestTimings>());
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldNotCountNestedPhasesAgainstTheEnclosingPhase() throws Exception {
+    long startTime = System.nanoTime();
+    TestTimings timings = new TestTimings(Description.createTestDescription(TestTimingsTest.class, "test"));
+    timings.start(Phase.SET_UP_APPLICATION);
+    Thread.sleep(20);
+    timings.start(Phase.APP_RESOURCES);
+    Thread.sleep(50);
+    timings.stop();
+    timings.start(Phase.TEST);
+    timings.finish();
+    long elapsedNanos = System.nanoTime() - startTime;
+
+    assertThat(timings.getNanos(Phase.APP_RESOURCES)).isGreaterThanOrEqualTo(50000000L);
+    assertThat(timings.getNanos(Phase.SET_UP_APPLICATION)).isGreaterThanOrEqualTo(20000000L);
+    // if the nested phase were also counted against the enclosing one, the phases would add up to more than elapsed
+    assertThat(timings.getTotalNanos()).isEqualTo(timings.getNanos(Phase.APP_RESOURCES)
+        + timings.getNanos(Phase.SET_UP_APPLICATION) + timings.getNanos(Phase.TEST) + timings.getNanos(Phase.OTHER))
+        .isLessThanOrEqualTo(elapsedNanos);
+  }
+
+  @Test
+  public void shouldCountTimeBetweenPhasesAsOther() throws Exception {
+    TestTimings timings = new TestTimings(Description.createTestDescription(TestTimingsTest.class, "test"));
+    Thread.sleep(20);
+    timings.start(Phase.MANIFEST);
+    timings.stop();
+    Thread.sleep(30);
+    timings.start(Phase.TEST);
+    timings.finish();
+
+    assertThat(timings.getNanos(Phase.OTHER)).isGreaterThanOrEqualTo(50000000L);
+    assertThat(timings.getTotalNanos()).isEqualTo(timings.getNanos(Phase.MANIFEST) + timings.getNanos(Phase.OTHER)
+        + timings.getNanos(Phase.TEST));
+  }
+
+  @Test
+  public void shouldReportTimingsForEachTest() throws Exception {
+    recordedTimings.clear();
+    Result result = JUnitCore.runClasses(TimedTest.class);
+    assertThat(result.getFailures()).isEmpty();
+
+    assertThat(recordedTimings).hasSize(2);
+    for (TestTimings timings : recordedTimings) {
+      assertThat(timings.getDescription().getClassName()).isEqualTo(TimedTest.class.getName());
+      assertThat(timings.getNanos(Phase.TEST)).isGreaterThan(0);
+      assertThat(timings.getNanos(Phase.SET_UP_APPLICATION)).isGreaterThan(0);
+      assertThat(timings.getNanos(Phase.AFTER_TEST_RESET)).isGreaterThan(0);
+    }
+  }
+
+  @Test
+  public void shouldWriteJsonReport() throws Exception {
+    File file = new File(temporaryFolder.getRoot(), "timings.json");
+    TestTimingReport report = new TestTimingReport(file);
+    report.testTimed(timings("shouldDoThings"));
+    report.testTimed(timings("shouldDo\"Quoted\"Things"));
+    report.write();
+
+    String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertThat(json)
+        .startsWith("[\n")
+        .contains("{\"class\": \"com.example.FooTest\", \"method\": \"shouldDoThings\", \"manifest\": 0.000, ")
+        .contains("\"method\": \"shouldDo\\\"Quoted\\\"Things\"")
+        .doesNotContain("\"test\": 0.000")
+        .contains("\"loaded_classes\": 12, \"instrumented_classes\": 5},\n")
+        .endsWith("}\n]\n");
+  }
+
+  @Test
+  public void shouldWriteCsvReport() throws Exception {
+    File file = new File(temporaryFolder.getRoot(), "timings.csv");
+    TestTimingReport report = new TestTimingReport(file);
+    report.testTimed(timings("shouldDoThings"));
+    report.write();
+
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0)).isEqualTo("class,method,manifest,sdk_environment,configure_shadows,reset_static_state,"
+        + "system_resources,app_resources,set_up_application,test,tear_down_application,after_test_reset,"
+        + "other,total,loaded_classes,instrumented_classes");
+    assertThat(lines.get(1)).startsWith("com.example.FooTest,shouldDoThings,0.000,").endsWith(",12,5");
+  }
+
+  private static TestTimings timings(String methodName) throws InterruptedException {
+    TestTimings timings = new TestTimings(Description.createSuiteDescription(methodName + "(com.example.FooTest)"));
+    timings.start(Phase.TEST);
+    Thread.sleep(3);
+    timings.stop();
+    timings.setClassCounts(12, 5);
+    return timings;
+  }
+
+  @RunWith(TimingRunner.class)
+  public static class TimedTest {
+    @Test public void first() throws Exception {
+    }
+
+    @Test public void second() throws Exception {
+    }
+  }
+
+  public static class TimingRunner extends TestRunners.WithDefaults {
+    public TimingRunner(Class<?> testClass) throws InitializationError {
+      super(testClass);
+    }
+
+    @Override
+    protected TestTimingListener getTestTimingListener() {
+      return new TestTimingListener() {
+        @Override public void testTimed(TestTimings timings) {
+          recordedTimings.add(timings);
+        }
+      };
+    }
+  }
+}
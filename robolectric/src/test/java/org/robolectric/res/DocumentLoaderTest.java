@@ -0,0 +1,121 @@
+package org.robolectric.res;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.res.builder.XmlBlock;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.robolectric.util.TestUtil.*;
+
+public class DocumentLoaderTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void loadingConcurrently_shouldMatchLoadingOneFileAtATime() throws Exception {
+    for (ResourcePath resourcePath : Arrays.asList(testResources(), systemResources())) {
+      assertThat(load(resourcePath, 4)).isEqualTo(load(resourcePath, 1));
+    }
+  }
+
+  @Test
+  public void loadingConcurrently_shouldKeepOverrideOrder() throws Exception {
+    File values = temporaryFolder.newFolder("res/values");
+    for (int i = 0; i < 20; i++) {
+      temporaryFolder.newFile("res/values/strings" + i + ".xml", "<resources><string name=\"greeting\">Hello " + i + "</string></resources>");
+    }
+    ResourcePath resourcePath = new ResourcePath(null, TEST_PACKAGE, Fs.newFile(values.getParentFile()), null);
+
+    List<String> loadedOneAtATime = load(resourcePath, 1);
+    assertThat(loadedOneAtATime).hasSize(1);
+    assertThat(load(resourcePath, 4)).isEqualTo(loadedOneAtATime);
+  }
+
+  @Test
+  public void whenAFileCannotBeParsed_shouldFail() throws Exception {
+    File values = temporaryFolder.newFolder("res/values");
+    temporaryFolder.newFile("res/values/strings.xml", "<resources><string name=\"greeting\">Hello</string></resources>");
+    temporaryFolder.newFile("res/values/broken.xml", "<resources><string name=\"greeting\">Hello</resources>");
+    ResourcePath resourcePath = new ResourcePath(null, TEST_PACKAGE, Fs.newFile(values.getParentFile()), null);
+
+    try {
+      load(resourcePath, 4);
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage()).contains("broken.xml");
+    }
+  }
+
+  @Test
+  public void whenALoaderCannotLoadFilesSeparately_shouldLoadThemInOrderOnTheCallingThread() throws Exception {
+    File values = temporaryFolder.newFolder("res/values");
+    for (int i = 0; i < 20; i++) {
+      temporaryFolder.newFile("res/values/strings" + i + ".xml", "<resources/>");
+    }
+    ResourcePath resourcePath = new ResourcePath(null, TEST_PACKAGE, Fs.newFile(values.getParentFile()), null);
+    final List<String> loaded = new ArrayList<>();
+    XmlLoader xmlLoader = new XmlLoader() {
+      @Override
+      protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) {
+        loaded.add(Thread.currentThread().getName() + ": " + xmlFile.getName());
+      }
+    };
+
+    new DocumentLoader(resourcePath, 4).load("values", xmlLoader);
+
+    List<String> expected = new ArrayList<>();
+    for (FsFile file : resourcePath.resourceBase.join("values").listFiles()) {
+      expected.add(Thread.currentThread().getName() + ": " + file.getName());
+    }
+    assertThat(loaded).isEqualTo(expected);
+  }
+
+  /**
+   * Load some of the resources, and describe everything that was loaded, in order.
+   */
+  private static List<String> load(ResourcePath resourcePath, int threads) throws Exception {
+    ResBunch data = new ResBunch();
+    ResBundle<XmlBlock> xmlDocuments = new ResBundle<>();
+    DocumentLoader documentLoader = new DocumentLoader(resourcePath, threads);
+    documentLoader.load("values",
+        new ValueResourceLoader(data, "/resources/string", "string", ResType.CHAR_SEQUENCE),
+        new ValueResourceLoader(data, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
+        new AttrResourceLoader(data),
+        new StyleResourceLoader(data));
+    if (resourcePath.resourceBase.join("layout").exists()) {
+      documentLoader.load("layout", new OpaqueFileLoader(data, "layout"), new XmlBlockLoader(xmlDocuments, "layout"));
+    }
+
+    List<String> description = new ArrayList<>();
+    for (ResBundle<TypedResource> bundle : data.getBundles().values()) {
+      describe(bundle, description);
+    }
+    describe(xmlDocuments, description);
+    Collections.sort(description);
+    return description;
+  }
+
+  private static <T> void describe(ResBundle<T> bundle, List<String> description) {
+    for (Map.Entry<ResName, List<ResBundle.Value<T>>> entry : bundle.getValues().entrySet()) {
+      StringBuilder buf = new StringBuilder(entry.getKey().getFullyQualifiedName()).append(':');
+      for (ResBundle.Value<T> value : entry.getValue()) {
+        Object item = value.getValue();
+        if (item instanceof XmlBlock) {
+          item = ((XmlBlock) item).getFilename();
+        } else if (((TypedResource) item).getData() instanceof TypedResource[]) {
+          item = Arrays.toString((TypedResource[]) ((TypedResource) item).getData());
+        }
+        buf.append(' ').append(value.getQualifiers()).append('=').append(item);
+      }
+      description.add(buf.toString());
+    }
+  }
+}
@@ -8,6 +8,9 @@ public class EmptyResourceLoader extends XResourceLoader {
   void doInitialize() {
   }
 
+  void doLoad(String part) {
+  }
+
   @Override public boolean providesFor(String namespace) {
     return true;
   }
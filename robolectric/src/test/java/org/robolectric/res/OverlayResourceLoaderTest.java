@@ -0,0 +1,38 @@
+package org.robolectric.res;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.*;
+
+public class OverlayResourceLoaderTest {
+
+  @Test
+  public void shouldMergeLibraryResourcesWhenFirstNeeded() throws Exception {
+    OverlayResourceLoader loader = createLoader();
+
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "string", "in_main_and_lib1"), "").asString()).isEqualTo("from main");
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "string", "only_in_lib1"), "").asString()).isEqualTo("from lib1");
+    assertThat(loader.xmlDocuments.size()).isEqualTo(0);
+    assertThat(loader.getXml(new ResName(TEST_PACKAGE, "layout", "activity_main"), "")).isNotNull();
+  }
+
+  @Test
+  public void initializingAfterSomeResourcesWereMerged_shouldMergeTheRestOnce() throws Exception {
+    OverlayResourceLoader loader = createLoader();
+    loader.getValue(new ResName(TEST_PACKAGE, "string", "in_main_and_lib1"), "");
+    loader.initialize();
+
+    ResName resName = new ResName(TEST_PACKAGE, "string", "in_main_and_lib1");
+    assertThat(loader.data.getBundle("string").getValues().get(resName)).hasSize(2);
+    assertThat(loader.getValue(resName, "").asString()).isEqualTo("from main");
+    assertThat(loader.getPreferenceNode(new ResName(TEST_PACKAGE, "xml", "preferences"), "")).isNotNull();
+  }
+
+  private static OverlayResourceLoader createLoader() {
+    return new OverlayResourceLoader(TEST_PACKAGE, Arrays.asList(
+        new PackageResourceLoader(testResources()), new PackageResourceLoader(lib1Resources())));
+  }
+}
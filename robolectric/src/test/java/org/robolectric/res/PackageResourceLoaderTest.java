@@ -1,10 +1,23 @@
 package org.robolectric.res;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.robolectric.util.TestUtil.*;
 import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assert.fail;
 
 public class PackageResourceLoaderTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
   @Test
   public void shouldLoadResourcesFromGradleOutputDirectories() {
@@ -53,4 +66,98 @@ public class PackageResourceLoaderTest {
     assertThat(value).describedAs("Item color from gradle output is not loaded").isNotNull();
     assertThat(value.asString()).isEqualTo("1.0");
   }
+
+  @Test
+  public void whenOnlyAStringIsRead_shouldNotLoadOtherKindsOfResources() {
+    PackageResourceLoader loader = new PackageResourceLoader(testResources());
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+
+    assertThat(loader.xmlDocuments.size()).isEqualTo(0);
+    assertThat(loader.drawableData.size()).isEqualTo(0);
+    assertThat(loader.preferenceData.size()).isEqualTo(0);
+    assertThat(loader.rawResources.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void resourcesLoadedWhenFirstNeeded_shouldMatchResourcesLoadedAllAtOnce() throws Exception {
+    PackageResourceLoader everything = new PackageResourceLoader(testResources());
+    everything.initialize();
+
+    assertThat(describe(new PackageResourceLoader(testResources()))).isEqualTo(describe(everything));
+  }
+
+  @Test
+  public void whenDifferentKindsOfResourcesAreFirstReadConcurrently_shouldLoadEachCorrectly() throws Exception {
+    String expected = describe(new PackageResourceLoader(testResources()));
+
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      for (int i = 0; i < 5; i++) {
+        final PackageResourceLoader loader = new PackageResourceLoader(testResources());
+        List<Future<String>> futures = new ArrayList<>();
+        for (int j = 0; j < 4; j++) {
+          futures.add(executorService.submit(new Callable<String>() {
+            @Override public String call() throws Exception {
+              return describe(loader);
+            }
+          }));
+        }
+        for (Future<String> future : futures) {
+          assertThat(future.get()).isEqualTo(expected);
+        }
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void whenAFamilyFailsToLoad_shouldLoadItFromScratchNextTime() throws Exception {
+    File res = temporaryFolder.newFolder("res");
+    temporaryFolder.newFile("res/values/strings.xml", "<resources><string name=\"greeting\">Hello</string></resources>");
+    temporaryFolder.newFile("res/layout/a.xml", "<LinearLayout/>");
+    temporaryFolder.newFile("res/layout/b.xml", "<LinearLayout>");
+    PackageResourceLoader loader = new PackageResourceLoader(new ResourcePath(null, TEST_PACKAGE, Fs.newFile(res), null));
+    ResName layout = new ResName(TEST_PACKAGE, "layout", "a");
+
+    try {
+      loader.getValue(layout, "");
+      fail();
+    } catch (RuntimeException expected) {
+    }
+    temporaryFolder.newFile("res/layout/b.xml", "<LinearLayout/>");
+
+    assertThat(loader.getValue(layout, "")).isNotNull();
+    assertThat(loader.data.getBundle("layout").getValues().get(layout)).hasSize(1);
+  }
+
+  @Test
+  public void loadOtherResources_shouldBeCalledOnceEverythingIsLoaded() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    PackageResourceLoader loader = new PackageResourceLoader(testResources()) {
+      @Override
+      protected void loadOtherResources(ResourcePath resourcePath) {
+        calls.add(resourcePath.getPackageName());
+      }
+    };
+
+    describe(loader);
+    assertThat(calls).isEmpty();
+
+    loader.initialize();
+    assertThat(calls).containsExactly(TEST_PACKAGE);
+  }
+
+  /**
+   * Read one resource of each kind.
+   */
+  private static String describe(PackageResourceLoader loader) throws Exception {
+    return loader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()
+        + " " + loader.getValue(new ResName(TEST_PACKAGE, "layout", "activity_main"), "").asString()
+        + " " + loader.getXml(new ResName(TEST_PACKAGE, "layout", "activity_main"), "").getFilename()
+        + " " + loader.getPlural(new ResName(TEST_PACKAGE, "plurals", "beer"), 2, "").getString()
+        + " " + loader.getDrawableNode(new ResName(TEST_PACKAGE, "drawable", "an_image"), "").getFsFile()
+        + " " + loader.getPreferenceNode(new ResName(TEST_PACKAGE, "xml", "preferences"), "").getName()
+        + " " + readString(loader.getRawValue(new ResName(TEST_PACKAGE, "raw", "raw_resource")));
+  }
 }
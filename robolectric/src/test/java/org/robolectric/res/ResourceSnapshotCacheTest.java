@@ -0,0 +1,112 @@
+package org.robolectric.res;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.res.builder.XmlBlock;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.*;
+
+public class ResourceSnapshotCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir = temporaryFolder.newFolder("cache");
+  }
+
+  @Test
+  public void shouldWriteSnapshotAfterFirstLoad() throws Exception {
+    ResourcePath resourcePath = testResources();
+    ResourceSnapshotCache cache = new ResourceSnapshotCache(cacheDir);
+    assertThat(cache.restore(resourcePath, new PackageResourceLoader(resourcePath))).isFalse();
+
+    createLoader(resourcePath).initialize();
+
+    assertThat(cache.snapshotFile(resourcePath)).exists();
+    assertThat(cache.restore(resourcePath, new PackageResourceLoader(resourcePath))).isTrue();
+  }
+
+  @Test
+  public void restoredResourcesShouldMatchParsedResources() throws Exception {
+    createLoader(testResources()).initialize();
+    PackageResourceLoader loader = createLoader(testResources());
+
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+    TypedResource[] items = (TypedResource[]) loader.getValue(new ResName(TEST_PACKAGE, "array", "items"), "").getData();
+    assertThat(items).hasSize(2);
+    assertThat(items[1].asString()).isEqualTo("bar");
+    assertThat(loader.getPlural(new ResName(TEST_PACKAGE, "plurals", "beer"), 2, "").getString()).isEqualTo("Two beers");
+
+    StyleData style = (StyleData) loader.getValue(new ResName(TEST_PACKAGE, "style", "Theme_Robolectric"), "").getData();
+    assertThat(style.getParent()).isEqualTo("@android:style/Theme");
+    assertThat(style.getAttrValue(new ResName("android", "attr", "buttonStyle")).value).isEqualTo("@style/Widget.Robolectric.Button");
+
+    AttrData attrData = (AttrData) loader.getValue(new ResName(TEST_PACKAGE, "attr", "itemType"), "").getData();
+    assertThat(attrData.getFormat()).isEqualTo("enum|enum");
+    assertThat(attrData.getValueFor("ungulate")).isEqualTo("1");
+
+    TypedResource layout = loader.getValue(new ResName(TEST_PACKAGE, "layout", "activity_main"), "");
+    assertThat(layout.isFile()).isTrue();
+    XmlBlock xmlBlock = loader.getXml(new ResName(TEST_PACKAGE, "layout", "activity_main"), "");
+    assertThat(xmlBlock.getFilename()).isEqualTo(layout.asString());
+    assertThat(xmlBlock.getDocument().getDocumentElement()).isNotNull();
+
+    DrawableNode drawable = loader.getDrawableNode(new ResName(TEST_PACKAGE, "drawable", "an_image"), "");
+    assertThat(drawable.getFsFile()).isEqualTo(resourceFile("res", "drawable", "an_image.png"));
+    assertThat(readString(loader.getRawValue(new ResName(TEST_PACKAGE, "raw", "raw_resource")))).isEqualTo("raw txt file contents");
+    assertThat(loader.getPreferenceNode(new ResName(TEST_PACKAGE, "xml", "preferences"), "").getName()).isEqualTo("PreferenceScreen");
+  }
+
+  @Test
+  public void shouldRestoreResourcesFromJars() throws Exception {
+    ResourceSnapshotCache cache = new ResourceSnapshotCache(cacheDir);
+    createLoader(systemResources()).initialize();
+    assertThat(cache.restore(systemResources(), new PackageResourceLoader(systemResources()))).isTrue();
+
+    assertThat(createLoader(systemResources()).getValue(new ResName("android", "string", "ok"), "").asString()).isEqualTo("OK");
+  }
+
+  @Test
+  public void whenAResourceFileChanges_shouldIgnoreSnapshot() throws Exception {
+    File valuesFile = temporaryFolder.newFile("res/values/strings.xml",
+        "<resources><string name=\"greeting\">Hello</string></resources>");
+    ResourcePath resourcePath = new ResourcePath(null, TEST_PACKAGE, Fs.newFile(valuesFile.getParentFile().getParentFile()), null);
+    createLoader(resourcePath).initialize();
+
+    temporaryFolder.newFile("res/values/strings.xml", "<resources><string name=\"greeting\">Goodbye</string></resources>");
+    valuesFile.setLastModified(valuesFile.lastModified() + 2000);
+
+    assertThat(new ResourceSnapshotCache(cacheDir).restore(resourcePath, new PackageResourceLoader(resourcePath))).isFalse();
+    assertThat(createLoader(resourcePath).getValue(new ResName(TEST_PACKAGE, "string", "greeting"), "").asString()).isEqualTo("Goodbye");
+  }
+
+  @Test
+  public void whenSnapshotIsTruncated_shouldIgnoreIt() throws Exception {
+    ResourcePath resourcePath = testResources();
+    ResourceSnapshotCache cache = new ResourceSnapshotCache(cacheDir);
+    createLoader(resourcePath).initialize();
+    File snapshotFile = cache.snapshotFile(resourcePath);
+    try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+      file.setLength(file.length() / 2);
+    }
+
+    assertThat(cache.restore(resourcePath, new PackageResourceLoader(resourcePath))).isFalse();
+  }
+
+  private PackageResourceLoader createLoader(ResourcePath resourcePath) {
+    System.setProperty(ResourceSnapshotCache.CACHE_DIR_PROPERTY, cacheDir.getPath());
+    try {
+      return new PackageResourceLoader(resourcePath);
+    } finally {
+      System.clearProperty(ResourceSnapshotCache.CACHE_DIR_PROPERTY);
+    }
+  }
+}
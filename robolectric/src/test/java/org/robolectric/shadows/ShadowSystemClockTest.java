@@ -10,6 +10,7 @@ import org.robolectric.Robolectric;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.TestRunners;
 import org.robolectric.internal.Shadow;
+import org.robolectric.internal.bytecode.MethodIds;
 import org.robolectric.internal.bytecode.RobolectricInternals;
 import org.robolectric.util.Scheduler;
 
@@ -94,10 +95,10 @@ public class ShadowSystemClockTest {
   public void shouldInterceptSystemTimeCalls() throws Throwable {
     scheduler.advanceTo(314159265L, TimeUnit.NANOSECONDS);
     long systemNanoTime = (Long) RobolectricInternals.intercept(
-        "java/lang/System/nanoTime()J", null, null, getClass());
+        MethodIds.idFor("java/lang/System/nanoTime()J"), null, null, getClass());
     assertThat(systemNanoTime).as("nanoTime").isEqualTo(314159265L);
     long systemMilliTime = (Long) RobolectricInternals.intercept(
-        "java/lang/System/currentTimeMillis()J", null, null, getClass());
+        MethodIds.idFor("java/lang/System/currentTimeMillis()J"), null, null, getClass());
     assertThat(systemMilliTime).as("currentTimeMillis").isEqualTo(314L);
   }
 }